@@ -27,14 +27,20 @@ public class AsyncHttpRequest {
 
     private final Map<String, List<String>> headers;
 
-    private final byte[] body;
+    private final AsyncHttpRequestBody body;
 
     private final Duration writeTimeout;
 
     private final Duration readTimeout;
 
+    private final Duration timeout;
+
     private final List<AsyncHttpClientListener> listeners;
 
+    private final boolean streamResponse;
+
+    private final RequestCompression compression;
+
     /**
      * Constructor
      *
@@ -44,23 +50,32 @@ public class AsyncHttpRequest {
      * @param body the body
      * @param writeTimeout the write timeout
      * @param readTimeout the read timeout
+     * @param timeout the total timeout, or null if none
      * @param listeners the listeners
+     * @param streamResponse whether the response body is streamed
+     * @param compression the compression of the body, or null if the client's
      */
     private AsyncHttpRequest(
             HttpMethod method,
             URI uri,
             Map<String, List<String>> headers,
-            byte[] body,
+            AsyncHttpRequestBody body,
             Duration writeTimeout,
             Duration readTimeout,
-            List<AsyncHttpClientListener> listeners) {
+            Duration timeout,
+            List<AsyncHttpClientListener> listeners,
+            boolean streamResponse,
+            RequestCompression compression) {
         this.method = method;
         this.uri = uri;
         this.headers = headers;
         this.body = body;
         this.writeTimeout = writeTimeout;
         this.readTimeout = readTimeout;
+        this.timeout = timeout;
         this.listeners = listeners;
+        this.streamResponse = streamResponse;
+        this.compression = compression;
     }
 
     /**
@@ -91,11 +106,22 @@ public class AsyncHttpRequest {
     }
 
     /**
-     * Gets the body
+     * Gets the body as a byte array, bodies which are not byte arrays are copied into memory
      *
      * @return the body
+     * @deprecated use {@link #getRequestBody()}, which does not copy the body
      */
+    @Deprecated
     public byte[] getBody() {
+        return body.toByteArray();
+    }
+
+    /**
+     * Gets the body
+     *
+     * @return the body
+     */
+    public AsyncHttpRequestBody getRequestBody() {
         return body;
     }
 
@@ -117,6 +143,16 @@ public class AsyncHttpRequest {
         return readTimeout;
     }
 
+    /**
+     * Gets the total timeout, the deadline covering acquiring a connection, connecting, writing the request
+     * and reading the response, until the response is resolved
+     *
+     * @return the total timeout, or null if none
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
     /**
      * Gets the listeners
      *
@@ -126,6 +162,24 @@ public class AsyncHttpRequest {
         return listeners;
     }
 
+    /**
+     * Determines if the response body is streamed, see {@link AsyncHttpResponse#getBodyPublisher()}
+     *
+     * @return true if the response body is streamed, false if it is buffered
+     */
+    public boolean isStreamResponse() {
+        return streamResponse;
+    }
+
+    /**
+     * Gets the compression of the body, see {@link RequestCompression}
+     *
+     * @return the compression, or null if the compression of the client applies
+     */
+    public RequestCompression getCompression() {
+        return compression;
+    }
+
     /**
      * The HTTP method
      *
@@ -254,14 +308,20 @@ public class AsyncHttpRequest {
 
         private Map<String, List<String>> headers = new HashMap<>();
 
-        private byte[] body = new byte[0];
+        private AsyncHttpRequestBody body = AsyncHttpRequestBody.empty();
 
         private Duration writeTimeout = Duration.ofSeconds(5);
 
         private Duration readTimeout = Duration.ofSeconds(10);
 
+        private Duration timeout;
+
         private List<AsyncHttpClientListener> listeners = new LinkedList<>();
 
+        private boolean streamResponse;
+
+        private RequestCompression compression;
+
         /**
          * Constructor
          *
@@ -279,6 +339,12 @@ public class AsyncHttpRequest {
             this.uri = request.uri;
             this.headers = new HashMap<>(request.headers);
             this.body = request.body;
+            this.writeTimeout = request.writeTimeout;
+            this.readTimeout = request.readTimeout;
+            this.timeout = request.timeout;
+            this.listeners = new LinkedList<>(request.listeners);
+            this.streamResponse = request.streamResponse;
+            this.compression = request.compression;
         }
 
         /**
@@ -346,6 +412,17 @@ public class AsyncHttpRequest {
          * @return the builder
          */
         public Builder withBody(byte[] body) {
+            this.body = body != null ? AsyncHttpRequestBody.ofByteArray(body) : null;
+            return this;
+        }
+
+        /**
+         * Sets the body
+         *
+         * @param body the body
+         * @return the builder
+         */
+        public Builder withBody(AsyncHttpRequestBody body) {
             this.body = body;
             return this;
         }
@@ -368,7 +445,7 @@ public class AsyncHttpRequest {
          * @return the builder
          */
         public Builder withBody(String body, Charset charset) {
-            this.body = body.getBytes(charset);
+            this.body = AsyncHttpRequestBody.ofByteArray(body.getBytes(charset));
             return this;
         }
 
@@ -394,6 +471,19 @@ public class AsyncHttpRequest {
             return this;
         }
 
+        /**
+         * Sets the total timeout, the deadline covering acquiring a connection, connecting, writing the request
+         * and reading the response, until the response is resolved, the write and read timeouts still apply
+         * to their phases, defaults to none
+         *
+         * @param timeout the total timeout
+         * @return the builder
+         */
+        public Builder withTimeout(Duration timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
         /**
          * Sets the listeners
          *
@@ -416,6 +506,30 @@ public class AsyncHttpRequest {
             return this;
         }
 
+        /**
+         * Sets whether the response body is streamed, rather than buffered in memory, the body
+         * is then published as it is read from the connection, see {@link AsyncHttpResponse#getBodyPublisher()}
+         *
+         * @param streamResponse true if the response body is streamed, false if it is buffered
+         * @return the builder
+         */
+        public Builder withStreamResponse(boolean streamResponse) {
+            this.streamResponse = streamResponse;
+            return this;
+        }
+
+        /**
+         * Sets the compression of the body, overriding the compression of the client, see {@link RequestCompression},
+         * {@link RequestCompression#disabled()} sends the body uncompressed
+         *
+         * @param compression the compression
+         * @return the builder
+         */
+        public Builder withCompression(RequestCompression compression) {
+            this.compression = compression;
+            return this;
+        }
+
         /**
          * Builds the request
          *
@@ -428,13 +542,16 @@ public class AsyncHttpRequest {
                 throw new IllegalStateException("The URI should be absolute and should be either HTTP or HTTPS");
             }
             requireNonNull(headers, "The HTTP headers should not be null");
-            if ((method == HttpMethod.GET || method == HttpMethod.HEAD || method == HttpMethod.OPTIONS) && body != null && body.length > 0) {
+            if ((method == HttpMethod.GET || method == HttpMethod.HEAD || method == HttpMethod.OPTIONS) && body != null && body.getContentLength() != 0) {
                 throw new IllegalStateException("GET, HEAD, or OPTIONS should not have request bodies");
             }
             requireNonNull(writeTimeout, "the write timeout should be set");
             requireNonNull(readTimeout, "the read timeout should be set");
+            if (timeout != null && (timeout.isNegative() || timeout.isZero())) {
+                throw new IllegalStateException("The timeout should be positive");
+            }
             requireNonNull(listeners, "the listeners should be set");
-            return new AsyncHttpRequest(method, uri, headers, body != null ? body : new byte[0], writeTimeout, readTimeout, listeners);
+            return new AsyncHttpRequest(method, uri, headers, body != null ? body : AsyncHttpRequestBody.empty(), writeTimeout, readTimeout, timeout, listeners, streamResponse, compression);
         }
     }
 }
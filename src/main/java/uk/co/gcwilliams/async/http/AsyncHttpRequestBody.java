@@ -0,0 +1,357 @@
+package uk.co.gcwilliams.async.http;
+
+import uk.co.gcwilliams.async.http.util.BodyPublishers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static java.util.Arrays.stream;
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toUnmodifiableList;
+
+/**
+ * The async HTTP request body, the body is written to the connection without being copied, byte arrays
+ * and buffers are wrapped, and files are sent with sendfile on plaintext connections, or read in chunks
+ * on TLS connections and HTTP/2 streams. Published bodies are streamed, with chunked transfer encoding
+ * when the length is unknown
+ *
+ * @author : Gareth Williams
+ **/
+public abstract class AsyncHttpRequestBody {
+
+    private static final AsyncHttpRequestBody EMPTY = new ByteBufferBody(List.of());
+
+    /**
+     * Constructor
+     *
+     */
+    private AsyncHttpRequestBody() {
+    }
+
+    /**
+     * Gets the content length
+     *
+     * @return the content length, or -1 if unknown
+     */
+    public abstract long getContentLength();
+
+    /**
+     * Copies the body into a byte array, this reads the whole body into memory
+     *
+     * @return the bytes
+     */
+    public abstract byte[] toByteArray();
+
+    /**
+     * Gets the empty body
+     *
+     * @return the empty body
+     */
+    public static AsyncHttpRequestBody empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates a body of the bytes, the bytes are not copied, so should not be modified
+     * while the request is in use
+     *
+     * @param bytes the bytes
+     * @return the body
+     */
+    public static AsyncHttpRequestBody ofByteArray(byte[] bytes) {
+        requireNonNull(bytes, "the bytes should be provided");
+        return bytes.length == 0 ? EMPTY : new ByteBufferBody(List.of(ByteBuffer.wrap(bytes)));
+    }
+
+    /**
+     * Creates a body of the remaining bytes of the buffers, heap or direct, the buffers are
+     * written in order, as a single body, without being copied. The positions and limits of the
+     * buffers are not modified, the contents should not be modified while the request is in use
+     *
+     * @param buffer the buffer
+     * @param buffers the additional buffers
+     * @return the body
+     */
+    public static AsyncHttpRequestBody ofByteBuffers(ByteBuffer buffer, ByteBuffer... buffers) {
+        requireNonNull(buffer, "the buffer should be provided");
+        return ofByteBuffers(Stream.concat(Stream.of(buffer), stream(buffers))
+            .collect(toUnmodifiableList()));
+    }
+
+    /**
+     * Creates a body of the remaining bytes of the buffers, heap or direct, the buffers are
+     * written in order, as a single body, without being copied. The positions and limits of the
+     * buffers are not modified, the contents should not be modified while the request is in use
+     *
+     * @param buffers the buffers
+     * @return the body
+     */
+    public static AsyncHttpRequestBody ofByteBuffers(List<ByteBuffer> buffers) {
+        requireNonNull(buffers, "the buffers should be provided");
+        return new ByteBufferBody(buffers.stream()
+            .map(buffer -> requireNonNull(buffer, "the buffers should not be null").duplicate())
+            .collect(toUnmodifiableList()));
+    }
+
+    /**
+     * Creates a body of the file, the file is opened when the request is written, so the
+     * request can be sent more than once
+     *
+     * @param path the path
+     * @return the body
+     */
+    public static AsyncHttpRequestBody ofFile(Path path) {
+        requireNonNull(path, "the path should be provided");
+        try {
+            return ofFile(path, 0, Files.size(path));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Creates a body of a region of the file, the file is opened when the request is written,
+     * so the request can be sent more than once
+     *
+     * @param path the path
+     * @param position the position of the region
+     * @param count the number of bytes in the region
+     * @return the body
+     */
+    public static AsyncHttpRequestBody ofFile(Path path, long position, long count) {
+        requireNonNull(path, "the path should be provided");
+        if (position < 0 || count < 0) {
+            throw new IllegalStateException("The position and count should not be negative");
+        }
+        return new FileBody(path, position, count);
+    }
+
+    /**
+     * Creates a streamed body of the chunks published, of an unknown length, so the body is sent with
+     * chunked transfer encoding. The chunks are requested as the connection can write them, and the
+     * buffers published should not be modified once published. The publisher is subscribed to each
+     * time the request is sent
+     *
+     * @param publisher the publisher
+     * @return the body
+     */
+    public static AsyncHttpRequestBody ofPublisher(Flow.Publisher<ByteBuffer> publisher) {
+        return ofPublisher(publisher, -1);
+    }
+
+    /**
+     * Creates a streamed body of the chunks published, of a known length, the publisher should publish
+     * exactly the content length bytes. The chunks are requested as the connection can write them, and the
+     * buffers published should not be modified once published. The publisher is subscribed to each
+     * time the request is sent
+     *
+     * @param publisher the publisher
+     * @param contentLength the content length, or -1 if unknown
+     * @return the body
+     */
+    public static AsyncHttpRequestBody ofPublisher(Flow.Publisher<ByteBuffer> publisher, long contentLength) {
+        requireNonNull(publisher, "the publisher should be provided");
+        if (contentLength < -1) {
+            throw new IllegalStateException("The content length should not be negative, or -1 if unknown");
+        }
+        return new PublisherBody(() -> publisher, contentLength);
+    }
+
+    /**
+     * Creates a streamed body of an input stream, of an unknown length, so the body is sent with chunked
+     * transfer encoding. The input stream is read in chunks as the connection can write them, off the
+     * event loop, so blocking streams are supported. A new input stream is supplied each time the
+     * request is sent, and is closed once read
+     *
+     * @param inputStreamSupplier the input stream supplier
+     * @return the body
+     */
+    public static AsyncHttpRequestBody ofInputStream(Supplier<InputStream> inputStreamSupplier) {
+        requireNonNull(inputStreamSupplier, "the input stream supplier should be provided");
+        // the input stream is supplied on subscription, which is off the event loop
+        return new PublisherBody(() -> subscriber -> BodyPublishers.ofInputStream(inputStreamSupplier.get()).subscribe(subscriber), -1);
+    }
+
+    /**
+     * A body of byte buffers
+     *
+     */
+    public static final class ByteBufferBody extends AsyncHttpRequestBody {
+
+        private final List<ByteBuffer> buffers;
+
+        private final long contentLength;
+
+        /**
+         * Constructor
+         *
+         * @param buffers the buffers
+         */
+        private ByteBufferBody(List<ByteBuffer> buffers) {
+            this.buffers = buffers;
+            this.contentLength = buffers.stream().mapToLong(ByteBuffer::remaining).sum();
+        }
+
+        /**
+         * Gets the buffers, each call returns new views of the buffers, so the
+         * positions can be modified by the caller
+         *
+         * @return the buffers
+         */
+        public ByteBuffer[] getBuffers() {
+            return buffers.stream().map(ByteBuffer::duplicate).toArray(ByteBuffer[]::new);
+        }
+
+        @Override
+        public long getContentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public byte[] toByteArray() {
+            ByteBuffer[] buffers = getBuffers();
+            if (buffers.length == 1 && buffers[0].hasArray() && buffers[0].arrayOffset() == 0
+                    && buffers[0].position() == 0 && buffers[0].remaining() == buffers[0].array().length) {
+                return buffers[0].array();
+            }
+            byte[] bytes = new byte[Math.toIntExact(contentLength)];
+            int offset = 0;
+            for (ByteBuffer buffer : buffers) {
+                int length = buffer.remaining();
+                buffer.get(bytes, offset, length);
+                offset += length;
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * A body of a file region
+     *
+     */
+    public static final class FileBody extends AsyncHttpRequestBody {
+
+        private final Path path;
+
+        private final long position;
+
+        private final long count;
+
+        /**
+         * Constructor
+         *
+         * @param path the path
+         * @param position the position
+         * @param count the count
+         */
+        private FileBody(Path path, long position, long count) {
+            this.path = path;
+            this.position = position;
+            this.count = count;
+        }
+
+        /**
+         * Gets the path
+         *
+         * @return the path
+         */
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * Gets the position of the region
+         *
+         * @return the position
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * Opens the file for reading
+         *
+         * @return the file channel
+         * @throws IOException if the file cannot be opened
+         */
+        public FileChannel open() throws IOException {
+            return FileChannel.open(path, StandardOpenOption.READ);
+        }
+
+        @Override
+        public long getContentLength() {
+            return count;
+        }
+
+        @Override
+        public byte[] toByteArray() {
+            byte[] bytes = new byte[Math.toIntExact(count)];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            try (FileChannel channel = open()) {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        throw new IOException("The file " + path + " is shorter than the region");
+                    }
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * A streamed body of published chunks
+     *
+     */
+    public static final class PublisherBody extends AsyncHttpRequestBody {
+
+        private final Supplier<Flow.Publisher<ByteBuffer>> publisherSupplier;
+
+        private final long contentLength;
+
+        /**
+         * Constructor
+         *
+         * @param publisherSupplier the publisher supplier
+         * @param contentLength the content length, or -1 if unknown
+         */
+        private PublisherBody(Supplier<Flow.Publisher<ByteBuffer>> publisherSupplier, long contentLength) {
+            this.publisherSupplier = publisherSupplier;
+            this.contentLength = contentLength;
+        }
+
+        /**
+         * Gets the publisher of the body, to be subscribed to once
+         *
+         * @return the publisher
+         */
+        public Flow.Publisher<ByteBuffer> getPublisher() {
+            return publisherSupplier.get();
+        }
+
+        @Override
+        public long getContentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public byte[] toByteArray() {
+            try (InputStream inputStream = BodyPublishers.toInputStream(getPublisher())) {
+                return inputStream.readAllBytes();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+}
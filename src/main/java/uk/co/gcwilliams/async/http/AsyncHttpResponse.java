@@ -1,8 +1,13 @@
 package uk.co.gcwilliams.async.http;
 
+import uk.co.gcwilliams.async.http.util.BodyPublishers;
+
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Flow;
 
 import static java.util.Objects.requireNonNull;
 
@@ -19,17 +24,25 @@ public class AsyncHttpResponse {
 
     private final InputStream body;
 
+    private final Flow.Publisher<ByteBuffer> bodyPublisher;
+
     /**
      * Constructor
      *
      * @param statusCode the status code
      * @param headers the headers
      * @param body the body
+     * @param bodyPublisher the body publisher
      */
-    private AsyncHttpResponse(int statusCode, Map<String, List<String>> headers, InputStream body) {
+    private AsyncHttpResponse(
+            int statusCode,
+            Map<String, List<String>> headers,
+            InputStream body,
+            Flow.Publisher<ByteBuffer> bodyPublisher) {
         this.statusCode = statusCode;
         this.headers = headers;
         this.body = body;
+        this.bodyPublisher = bodyPublisher;
     }
 
     /**
@@ -51,7 +64,9 @@ public class AsyncHttpResponse {
     }
 
     /**
-     * Gets the body
+     * Gets the body, for a streamed response reading from the input stream subscribes to the body
+     * publisher, and blocks until the chunks are received, so must not be read on the event loop, e.g.
+     * within a completion on the direct executor
      *
      * @return the body
      */
@@ -59,6 +74,18 @@ public class AsyncHttpResponse {
         return body;
     }
 
+    /**
+     * Gets the body publisher, for a streamed response the chunks are published as they are received
+     * from the connection, and are only read from the connection as they are requested. A streamed
+     * body should be consumed or cancelled, as the connection is held until then. The body can be
+     * consumed once, either by the publisher or the input stream
+     *
+     * @return the body publisher
+     */
+    public Flow.Publisher<ByteBuffer> getBodyPublisher() {
+        return bodyPublisher;
+    }
+
     /**
      * Creates the builder
      *
@@ -80,6 +107,8 @@ public class AsyncHttpResponse {
 
         private InputStream body;
 
+        private Flow.Publisher<ByteBuffer> bodyPublisher;
+
         private Builder() {
         }
 
@@ -113,6 +142,43 @@ public class AsyncHttpResponse {
          */
         public Builder withBody(InputStream body) {
             this.body = body;
+            this.bodyPublisher = null;
+            return this;
+        }
+
+        /**
+         * Sets the body
+         *
+         * @param body the body
+         * @return the builder
+         */
+        public Builder withBody(byte[] body) {
+            this.body = new ByteArrayInputStream(body);
+            this.bodyPublisher = BodyPublishers.ofByteArray(body);
+            return this;
+        }
+
+        /**
+         * Sets the body, a read only view of the buffer is published to each subscriber, so the buffer is not copied
+         *
+         * @param body the body
+         * @return the builder
+         */
+        public Builder withBody(ByteBuffer body) {
+            this.bodyPublisher = BodyPublishers.ofByteBuffer(body);
+            this.body = BodyPublishers.toInputStream(bodyPublisher);
+            return this;
+        }
+
+        /**
+         * Sets the body
+         *
+         * @param bodyPublisher the body publisher
+         * @return the builder
+         */
+        public Builder withBody(Flow.Publisher<ByteBuffer> bodyPublisher) {
+            this.body = null;
+            this.bodyPublisher = bodyPublisher;
             return this;
         }
 
@@ -124,8 +190,14 @@ public class AsyncHttpResponse {
         public AsyncHttpResponse build() {
             requireNonNull(statusCode, "no status code set");
             requireNonNull(headers, "no headers set");
-            requireNonNull(body, "no body set");
-            return new AsyncHttpResponse(statusCode, headers, body);
+            if (body == null && bodyPublisher == null) {
+                throw new NullPointerException("no body set");
+            }
+            return new AsyncHttpResponse(
+                statusCode,
+                headers,
+                body != null ? body : BodyPublishers.toInputStream(bodyPublisher),
+                bodyPublisher != null ? bodyPublisher : BodyPublishers.ofInputStream(body));
         }
     }
 }
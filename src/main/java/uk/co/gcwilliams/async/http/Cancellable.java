@@ -0,0 +1,24 @@
+package uk.co.gcwilliams.async.http;
+
+/**
+ * The cancellable, returned as a task is forked, cancelling it stops the computation, e.g. releasing the connection
+ * of a HTTP request, and rejects the task with a {@link java.util.concurrent.CancellationException}
+ *
+ * @author : Gareth Williams
+ **/
+@FunctionalInterface
+public interface Cancellable {
+
+    /**
+     * The cancellable of a computation which cannot be cancelled
+     *
+     */
+    Cancellable NONE = () -> false;
+
+    /**
+     * Cancels the computation
+     *
+     * @return true if cancelled, false if it had already completed, or been cancelled
+     */
+    boolean cancel();
+}
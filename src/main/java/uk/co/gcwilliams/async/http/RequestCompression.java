@@ -0,0 +1,174 @@
+package uk.co.gcwilliams.async.http;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toUnmodifiableList;
+
+/**
+ * The compression of request bodies, a buffered body is sent gzip compressed, with a content encoding header, when it
+ * is at least the threshold, and its content type is allowed. Published and file bodies are not compressed, nor are
+ * bodies which already have a content encoding. The server must accept gzip request bodies.
+ *
+ * @author : Gareth Williams
+ **/
+public class RequestCompression {
+
+    private static final RequestCompression DISABLED = new RequestCompression(Long.MAX_VALUE, List.of(), Deflater.DEFAULT_COMPRESSION);
+
+    private final long threshold;
+
+    private final List<String> contentTypes;
+
+    private final int level;
+
+    /**
+     * Constructor
+     *
+     * @param threshold the minimum length of a compressed body
+     * @param contentTypes the lower case content types, which may be wildcards, e.g. text/*
+     * @param level the compression level
+     */
+    private RequestCompression(long threshold, List<String> contentTypes, int level) {
+        this.threshold = threshold;
+        this.contentTypes = contentTypes;
+        this.level = level;
+    }
+
+    /**
+     * Gets the minimum length of a compressed body
+     *
+     * @return the threshold
+     */
+    public long getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Gets the content types which are compressed
+     *
+     * @return the content types
+     */
+    public List<String> getContentTypes() {
+        return contentTypes;
+    }
+
+    /**
+     * Gets the compression level, see {@link Deflater}
+     *
+     * @return the compression level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Determines if a body is compressed
+     *
+     * @param contentType the content type, may be null
+     * @param contentLength the content length
+     * @return true if the body is compressed, false otherwise
+     */
+    public boolean isCompressed(String contentType, long contentLength) {
+        if (contentType == null || contentLength < threshold) {
+            return false;
+        }
+        int parameters = contentType.indexOf(';');
+        String mediaType = (parameters >= 0 ? contentType.substring(0, parameters) : contentType).trim().toLowerCase(Locale.ROOT);
+        for (String allowed : contentTypes) {
+            if (allowed.endsWith("/*") ? mediaType.startsWith(allowed.substring(0, allowed.length() - 1)) : allowed.equals(mediaType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the disabled compression, so a request is not compressed, whatever the compression of the client
+     *
+     * @return the disabled compression
+     */
+    public static RequestCompression disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Creates the builder
+     *
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * The builder
+     *
+     */
+    public static class Builder {
+
+        private long threshold = 1024;
+
+        private List<String> contentTypes = List.of("application/json", "application/x-ndjson", "application/xml", "text/*");
+
+        private int level = Deflater.DEFAULT_COMPRESSION;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the minimum length of a compressed body, smaller bodies are not worth compressing, defaults to 1024
+         *
+         * @param threshold the threshold
+         * @return the builder
+         */
+        public Builder withThreshold(long threshold) {
+            this.threshold = threshold;
+            return this;
+        }
+
+        /**
+         * Sets the content types which are compressed, a type may be a wildcard, e.g. text/*, and the parameters of
+         * the content type of a request are ignored, defaults to JSON, NDJSON, XML and text
+         *
+         * @param contentTypes the content types
+         * @return the builder
+         */
+        public Builder withContentTypes(String... contentTypes) {
+            this.contentTypes = contentTypes != null ? List.of(contentTypes) : null;
+            return this;
+        }
+
+        /**
+         * Sets the compression level, 1 is the fastest, 9 the smallest, defaults to {@link Deflater#DEFAULT_COMPRESSION}
+         *
+         * @param level the compression level
+         * @return the builder
+         */
+        public Builder withLevel(int level) {
+            this.level = level;
+            return this;
+        }
+
+        /**
+         * Builds the request compression
+         *
+         * @return the request compression
+         */
+        public RequestCompression build() {
+            requireNonNull(contentTypes, "the content types should be provided");
+            if (threshold < 0) {
+                throw new IllegalStateException("the threshold should not be negative");
+            }
+            if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION)) {
+                throw new IllegalStateException("the level should be between 1 and 9");
+            }
+            return new RequestCompression(
+                threshold,
+                contentTypes.stream().map(type -> type.trim().toLowerCase(Locale.ROOT)).collect(toUnmodifiableList()),
+                level);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package uk.co.gcwilliams.async.http;
+
+import uk.co.gcwilliams.async.http.util.BodyPublishers;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The blocking HTTP client, a facade over an async HTTP client. The calling thread is parked until the response
+ * is resolved, rather than waiting on a monitor, so it is safe to call from virtual threads, which do not pin their
+ * carrier threads while waiting. The request timeouts bound the wait, and interrupting the thread cancels the request.
+ *
+ * @author : Gareth Williams
+ **/
+public class SyncHttpClient implements AutoCloseable {
+
+    private final AsyncHttpClient client;
+
+    /**
+     * Constructor
+     *
+     * @param client the async HTTP client
+     */
+    public SyncHttpClient(AsyncHttpClient client) {
+        this.client = requireNonNull(client, "the client should be provided");
+    }
+
+    /**
+     * Sends the request, and waits for the response
+     *
+     * @param request the request
+     * @return the response
+     * @throws InterruptedException if the calling thread is interrupted while waiting, the request is cancelled
+     * @throws Exception if the request fails
+     */
+    public AsyncHttpResponse send(AsyncHttpRequest request) throws Exception {
+
+        CompletableFuture<AsyncHttpResponse> future = new CompletableFuture<>();
+
+        Cancellable cancellable = client.prepare(request).fork(future::complete, future::completeExceptionally);
+
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            throw cause instanceof Exception ? (Exception) cause : ex;
+        } catch (InterruptedException ex) {
+            if (!cancellable.cancel() && request.isStreamResponse()) {
+                future.thenAccept(response -> BodyPublishers.discard(response.getBodyPublisher())); // nobody will consume the body, which holds the connection
+            }
+            throw ex;
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        client.close();
+    }
+}
@@ -1,25 +1,29 @@
 package uk.co.gcwilliams.async.http;
 
+import java.util.ArrayDeque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
- * The task
+ * The task, a description of a computation, interpreted by a run loop as it is forked. The run loop keeps the
+ * continuations of the task on a heap allocated stack, and continues in a loop when a computation resolves
+ * synchronously, so long chains of tasks run in constant stack space. Consecutive maps are fused into one step.
  *
  * @author : Gareth Williams
  */
-public class Task<T> {
+public abstract class Task<T> {
 
-    private final BiConsumer<Consumer<T>, Consumer<Exception>> computation;
+    private static final int MAX_FUSION_DEPTH = 128;
 
     /**
      * Constructor
      *
-     * @param computation the computation
      */
-    private Task(BiConsumer<Consumer<T>, Consumer<Exception>> computation) {
-        this.computation = computation;
+    private Task() {
     }
 
     /**
@@ -28,32 +32,23 @@ public class Task<T> {
      * @param mapper the mapping function
      * @return the mapped task
      */
+    @SuppressWarnings("unchecked")
     public <R> Task<R> map(Function<T, R> mapper) {
-        BiConsumer<Consumer<T>, Consumer<Exception>> previous = this.computation;
-        return new Task<>((resolve, reject) -> previous.accept(value -> {
-            try {
-                resolve.accept(mapper.apply(value));
-            } catch (Exception exception) {
-                reject.accept(exception);
-            }
-        }, reject));
+        if (this instanceof Map && ((Map<?, T>) this).depth < MAX_FUSION_DEPTH) {
+            Map<Object, T> previous = (Map<Object, T>) this;
+            return new Map<>(previous.source, previous.mapper.andThen(mapper), previous.depth + 1);
+        }
+        return new Map<>(this, mapper, 1);
     }
 
     /**
-     * Flat maps over the task
+     * Flat maps over the task, cancelling the task cancels the mapped task once it has been forked
      *
      * @param mapper the mapping function
      * @return the mapped task
      */
     public <R> Task<R> flatMap(Function<T, Task<R>> mapper) {
-        BiConsumer<Consumer<T>, Consumer<Exception>> previous = this.computation;
-        return new Task<>((resolve, reject) -> previous.accept(value -> {
-            try {
-                mapper.apply(value).fork(resolve, reject);
-            } catch (Exception exception) {
-                reject.accept(exception);
-            }
-        }, reject));
+        return new Bind<>(this, mapper, null);
     }
 
     /**
@@ -63,45 +58,31 @@ public class Task<T> {
      * @return the task
      */
     public Task<T> recover(Function<Exception, T> mapper) {
-        BiConsumer<Consumer<T>, Consumer<Exception>> previous = this.computation;
-        return new Task<>((resolve, reject) -> previous.accept(resolve, ex -> {
-            try {
-                resolve.accept(mapper.apply(ex));
-            } catch (Exception exception) {
-                reject.accept(exception);
-            }
-        }));
+        return new Bind<>(this, null, exception -> of(mapper.apply(exception)));
     }
 
     /**
-     * Recovers a failed task
+     * Recovers a failed task, cancelling the task cancels the recovering task once it has been forked
      *
      * @param mapper the mapper
      * @return the task
      */
     public Task<T> recoverWith(Function<Exception, Task<T>> mapper) {
-        BiConsumer<Consumer<T>, Consumer<Exception>> previous = this.computation;
-        return new Task<>((resolve, reject) -> previous.accept(resolve, ex -> {
-            try {
-                mapper.apply(ex).fork(resolve, reject);
-            } catch (Exception exception) {
-                reject.accept(exception);
-            }
-        }));
+        return new Bind<>(this, null, mapper);
     }
 
     /**
-     * Forks the task
+     * Forks the task, the resolve or reject function is called once, cancelling the task rejects it with
+     * a {@link CancellationException}, unless it has already completed
      *
      * @param resolve the resolve function
      * @param reject the reject function
+     * @return the cancellable
      */
-    public void fork(Consumer<T> resolve, Consumer<Exception> reject) {
-        try {
-            computation.accept(resolve, reject);
-        } catch (Exception exception) {
-            reject.accept(exception);
-        }
+    public Cancellable fork(Consumer<T> resolve, Consumer<Exception> reject) {
+        RunLoop<T> runLoop = new RunLoop<>(resolve, reject);
+        runLoop.run(this, null, null);
+        return runLoop;
     }
 
     /**
@@ -111,7 +92,7 @@ public class Task<T> {
      * @return the task
      */
     public static <T> Task<T> of(T value) {
-        return new Task<>((resolve, reject) -> resolve.accept(value));
+        return new Pure<>(value);
     }
 
     /**
@@ -121,16 +102,350 @@ public class Task<T> {
      * @return the task
      */
     public static <T> Task<T> of(Exception exception) {
-        return new Task<>((resolve, reject) -> reject.accept(exception));
+        return new Failure<>(exception);
     }
 
     /**
-     * Lifts the computation into a task
+     * Lifts the computation into a task, the computation cannot be cancelled, though cancelling the task still
+     * rejects it
      *
      * @param computation the computation
      * @return the task
      */
     public static <T> Task<T> of(BiConsumer<Consumer<T>, Consumer<Exception>> computation) {
-        return new Task<>(computation);
+        return new Async<>((resolve, reject) -> {
+            computation.accept(resolve, reject);
+            return Cancellable.NONE;
+        });
+    }
+
+    /**
+     * Lifts the cancellable computation into a task
+     *
+     * @param computation the computation
+     * @return the task
+     */
+    public static <T> Task<T> cancellable(Computation<T> computation) {
+        return new Async<>(computation);
+    }
+
+    /**
+     * The computation of a task
+     *
+     */
+    @FunctionalInterface
+    public interface Computation<T> {
+
+        /**
+         * Runs the computation
+         *
+         * @param resolve the resolve function
+         * @param reject the reject function
+         * @return the cancellable, which stops the computation
+         */
+        Cancellable run(Consumer<T> resolve, Consumer<Exception> reject);
+    }
+
+    /**
+     * A task of a value
+     *
+     */
+    private static class Pure<T> extends Task<T> {
+
+        private final T value;
+
+        private Pure(T value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * A task of an exception
+     *
+     */
+    private static class Failure<T> extends Task<T> {
+
+        private final Exception exception;
+
+        private Failure(Exception exception) {
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * A task of a computation, which may complete asynchronously
+     *
+     */
+    private static class Async<T> extends Task<T> {
+
+        private final Computation<T> computation;
+
+        private Async(Computation<T> computation) {
+            this.computation = computation;
+        }
+    }
+
+    /**
+     * A task mapping the value of the source task, the mapper may be a fusion of several maps
+     *
+     */
+    private static class Map<S, T> extends Task<T> {
+
+        private final Task<S> source;
+
+        private final Function<S, T> mapper;
+
+        private final int depth;
+
+        private Map(Task<S> source, Function<S, T> mapper, int depth) {
+            this.source = source;
+            this.mapper = mapper;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * A task continuing the source task with the task of its value, or of its exception
+     *
+     */
+    private static class Bind<S, T> extends Task<T> {
+
+        private final Task<S> source;
+
+        private final Function<S, Task<T>> onValue;
+
+        private final Function<Exception, Task<T>> onException;
+
+        private Bind(Task<S> source, Function<S, Task<T>> onValue, Function<Exception, Task<T>> onException) {
+            this.source = source;
+            this.onValue = onValue;
+            this.onException = onException;
+        }
+    }
+
+    /**
+     * The run loop of a forked task, interprets the task, a computation which completes synchronously is continued
+     * in the loop, otherwise the loop returns, and is continued by the thread which completes the computation
+     *
+     */
+    private static class RunLoop<T> implements Cancellable {
+
+        private static final Cancellable CANCELLED = () -> false;
+
+        private final AtomicReference<Cancellable> current = new AtomicReference<>();
+
+        private final Consumer<T> resolve;
+
+        private final Consumer<Exception> reject;
+
+        private ArrayDeque<Task<?>> continuations;
+
+        /**
+         * Constructor
+         *
+         * @param resolve the resolve function
+         * @param reject the reject function
+         */
+        private RunLoop(Consumer<T> resolve, Consumer<Exception> reject) {
+            this.resolve = resolve;
+            this.reject = reject;
+        }
+
+        /**
+         * Runs the loop, from the task, or the value or exception of the previous step
+         *
+         * @param task the task, or null to continue with the value or exception
+         * @param value the value
+         * @param exception the exception, or null
+         */
+        @SuppressWarnings("unchecked")
+        private void run(Task<?> task, Object value, Exception exception) {
+            while (true) {
+                if (task != null) {
+                    if (task instanceof Pure) {
+                        value = ((Pure<?>) task).value;
+                        task = null;
+                    } else if (task instanceof Failure) {
+                        exception = ((Failure<?>) task).exception;
+                        task = null;
+                    } else if (task instanceof Map) {
+                        push(task);
+                        task = ((Map<?, ?>) task).source;
+                    } else if (task instanceof Bind) {
+                        push(task);
+                        task = ((Bind<?, ?>) task).source;
+                    } else {
+                        Callback callback = start((Async<Object>) task);
+                        if (callback == null) {
+                            return; // continued by the callback
+                        }
+                        value = callback.value;
+                        exception = callback.exception;
+                        task = null;
+                    }
+                    continue;
+                }
+                Task<?> continuation = continuations != null ? continuations.pollLast() : null;
+                if (continuation == null) {
+                    complete((T) value, exception);
+                    return;
+                }
+                try {
+                    if (continuation instanceof Map) {
+                        if (exception == null) {
+                            value = ((Map<Object, ?>) continuation).mapper.apply(value);
+                        }
+                    } else {
+                        Bind<Object, ?> bind = (Bind<Object, ?>) continuation;
+                        if (exception == null && bind.onValue != null) {
+                            task = bind.onValue.apply(value);
+                        } else if (exception != null && bind.onException != null) {
+                            Exception recovering = exception;
+                            exception = null;
+                            task = bind.onException.apply(recovering);
+                        }
+                    }
+                } catch (Exception ex) {
+                    exception = ex;
+                    task = null;
+                }
+            }
+        }
+
+        /**
+         * Starts the computation of the task
+         *
+         * @param task the task
+         * @return the callback if the computation completed synchronously, null otherwise
+         */
+        private Callback start(Async<Object> task) {
+            if (current.get() == CANCELLED) {
+                return null;
+            }
+            Callback callback = new Callback();
+            Cancellable cancellable;
+            try {
+                cancellable = task.computation.run(callback::resolve, callback::reject);
+            } catch (Exception ex) {
+                callback.reject(ex);
+                cancellable = Cancellable.NONE;
+            }
+            Cancellable previous;
+            do {
+                previous = current.get();
+                if (previous == CANCELLED) {
+                    cancellable.cancel();
+                    return null;
+                }
+            } while (!current.compareAndSet(previous, cancellable));
+            return callback.started() ? callback : null;
+        }
+
+        /**
+         * Completes the task
+         *
+         * @param value the value
+         * @param exception the exception, or null
+         */
+        private void complete(T value, Exception exception) {
+            if (current.getAndSet(CANCELLED) == CANCELLED) {
+                return;
+            }
+            if (exception == null) {
+                resolve.accept(value);
+            } else {
+                reject.accept(exception);
+            }
+        }
+
+        /**
+         * Pushes the continuation
+         *
+         * @param continuation the continuation
+         */
+        private void push(Task<?> continuation) {
+            if (continuations == null) {
+                continuations = new ArrayDeque<>();
+            }
+            continuations.addLast(continuation);
+        }
+
+        @Override
+        public boolean cancel() {
+            Cancellable previous = current.getAndSet(CANCELLED);
+            if (previous == CANCELLED) {
+                return false;
+            }
+            if (previous != null) {
+                previous.cancel();
+            }
+            reject.accept(new CancellationException("The task was cancelled"));
+            return true;
+        }
+
+        /**
+         * The callback of a computation, completes once, a callback completed while the computation is starting is
+         * continued by the run loop, otherwise by the completing thread
+         *
+         */
+        private class Callback {
+
+            private static final int STARTED = 1;
+
+            private static final int CLAIMED = 2;
+
+            private static final int COMPLETED = 4;
+
+            private final AtomicInteger state = new AtomicInteger();
+
+            private Object value;
+
+            private Exception exception;
+
+            /**
+             * Resolves the computation
+             *
+             * @param value the value
+             */
+            private void resolve(Object value) {
+                complete(value, null);
+            }
+
+            /**
+             * Rejects the computation
+             *
+             * @param exception the exception
+             */
+            private void reject(Exception exception) {
+                complete(null, exception);
+            }
+
+            /**
+             * Marks the computation as started
+             *
+             * @return true if the computation completed while starting, false otherwise
+             */
+            private boolean started() {
+                return (state.getAndAccumulate(STARTED, (state, flag) -> state | flag) & COMPLETED) != 0;
+            }
+
+            /**
+             * Completes the computation, the first completion wins
+             *
+             * @param value the value
+             * @param exception the exception, or null
+             */
+            private void complete(Object value, Exception exception) {
+                if ((state.getAndAccumulate(CLAIMED, (state, flag) -> state | flag) & CLAIMED) != 0) {
+                    return;
+                }
+                this.value = value;
+                this.exception = exception;
+                if ((state.getAndAccumulate(COMPLETED, (state, flag) -> state | flag) & STARTED) != 0
+                        && current.get() != CANCELLED) {
+                    run(null, value, exception);
+                }
+            }
+        }
     }
 }
@@ -1,18 +1,17 @@
 package uk.co.gcwilliams.async.http;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.AtomicReferenceArray;
-import java.util.function.BiConsumer;
 import java.util.function.Consumer;
-import java.util.stream.Stream;
-
-import static java.util.stream.Collectors.toList;
-import static java.util.stream.IntStream.range;
 
 /**
  * The tasks utility
@@ -25,44 +24,28 @@ public class Tasks {
     }
 
     /**
-     * Gets the value from the task
+     * Gets the value from the task, the calling thread is parked rather than waiting on a monitor, so a virtual
+     * thread does not pin its carrier thread, the task is cancelled if the timeout expires, or the thread is interrupted
      *
      * @param task the task
-     * @param timeout the timeout
+     * @param timeout the timeout, or zero to wait until the task completes
      * @return the value
      */
     public static <T> T get(Task<T> task, Duration timeout) throws Exception {
 
-        AtomicBoolean completed = new AtomicBoolean(false);
-        Runnable complete = () -> {
-            synchronized (completed) {
-                completed.set(true);
-                completed.notify();
-            }
-        };
-
-        AtomicReference<T> value = new AtomicReference<>();
-        AtomicReference<Exception> exception = new AtomicReference<>();
-
-        task.fork(
-            v -> { value.set(v); complete.run(); },
-            ex -> { exception.set(ex); complete.run(); });
+        CompletableFuture<T> future = new CompletableFuture<>();
 
-        synchronized (completed) {
-            if (!completed.get()) {
-                completed.wait(timeout.toMillis());
-            }
-        }
-
-        if (!completed.get()) {
-            throw new TimeoutException();
-        }
+        Cancellable cancellable = task.fork(future::complete, future::completeExceptionally);
 
-        if (exception.get() != null) {
-            throw exception.get();
+        try {
+            return timeout.isZero() ? future.get() : future.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            throw cause instanceof Exception ? (Exception) cause : ex;
+        } catch (TimeoutException | InterruptedException ex) {
+            cancellable.cancel();
+            throw ex;
         }
-
-        return value.get();
     }
 
     /**
@@ -72,44 +55,45 @@ public class Tasks {
      * @return the task
      */
     public static <T> Task<List<T>> traverse(List<Task<T>> tasks) {
-        Task<List<T>> seed = Task.of(List.of());
+        Task<List<T>> seed = Task.of((resolve, reject) -> resolve.accept(new ArrayList<>(tasks.size())));
         for (Task<T> task : tasks) {
-            seed = seed.flatMap(previous ->
-                task.map(next ->
-                    Stream.concat(previous.stream(), Stream.of(next)).collect(toList())));
+            seed = seed.flatMap(results ->
+                task.map(next -> {
+                    results.add(next);
+                    return results;
+                }));
         }
         return seed;
     }
 
     /**
-     * Traverses the tasks in parallel. The task will reject with the first exception that's generated. The result
-     * from any successful task will be discarded.
+     * Traverses the tasks in parallel. The task will reject with the first exception that's generated, and cancel
+     * the other tasks. The result from any successful task will be discarded.
      *
      * @param tasks the tasks
      * @return the task
      */
     public static <T> Task<List<T>> traverseP(List<Task<T>> tasks) {
+        return traverseP(tasks, Math.max(tasks.size(), 1));
+    }
+
+    /**
+     * Traverses the tasks in parallel, with at most the parallelism of tasks in flight, the next task is forked as
+     * a task completes. The task will reject with the first exception that's generated, and cancel the other tasks.
+     * The result from any successful task will be discarded.
+     *
+     * @param tasks the tasks
+     * @param parallelism the maximum number of tasks in flight
+     * @return the task
+     */
+    public static <T> Task<List<T>> traverseP(List<Task<T>> tasks, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("The parallelism should be positive");
+        }
         if (tasks.isEmpty()) {
             return Task.of(List.of());
         }
-        return Task.of((resolve, reject) -> {
-            AtomicInteger counter = new AtomicInteger(tasks.size());
-            AtomicReferenceArray<T> collector = new AtomicReferenceArray<>(tasks.size());
-            BiConsumer<Integer, T> resolveHandler = (idx, value) -> {
-                collector.set(idx, value);
-                if (counter.decrementAndGet() == 0) {
-                    resolve.accept(range(0, tasks.size()).mapToObj(collector::get).collect(toList()));
-                }
-            };
-            AtomicBoolean failed = new AtomicBoolean(false);
-            Consumer<Exception> rejectHandler = exception -> {
-                if (!failed.getAndSet(true)) {
-                    reject.accept(exception);
-                }
-            };
-            range(0, tasks.size()).forEach(idx -> tasks.get(idx).fork(value ->
-                resolveHandler.accept(idx, value), rejectHandler));
-        });
+        return Task.cancellable((resolve, reject) -> new Traversal<>(tasks, resolve, reject).start(parallelism));
     }
 
     /**
@@ -349,6 +333,390 @@ public class Tasks {
             tj.flatMap(j -> fn.apply(a, b, c, d, e, f, g, h, i, j)))))))))));
     }
 
+    /**
+     * Applies the tasks in parallel, the tasks are forked at once, the task rejects with the first exception,
+     * and cancels the other tasks
+     *
+     * @param ta the task of A
+     * @param tb the task of B
+     * @param fn the function
+     * @return the task of C
+     */
+    public static <A, B, C> Task<C> applyP(Task<A> ta, Task<B> tb, Fn2<A, B, C> fn) {
+        return all(ta, tb).flatMap(values -> fn.apply(get(values, 0), get(values, 1)));
+    }
+
+    /**
+     * Applies the tasks in parallel, the tasks are forked at once, the task rejects with the first exception,
+     * and cancels the other tasks
+     *
+     * @param ta the task of A
+     * @param tb the task of B
+     * @param tc the task of C
+     * @param fn the function
+     * @return the task of D
+     */
+    public static <A, B, C, D> Task<D> applyP(Task<A> ta, Task<B> tb, Task<C> tc, Fn3<A, B, C, D> fn) {
+        return all(ta, tb, tc).flatMap(values -> fn.apply(get(values, 0), get(values, 1), get(values, 2)));
+    }
+
+    /**
+     * Applies the tasks in parallel, the tasks are forked at once, the task rejects with the first exception,
+     * and cancels the other tasks
+     *
+     * @param ta the task of A
+     * @param tb the task of B
+     * @param tc the task of C
+     * @param td the task of D
+     * @param fn the function
+     * @return the task of E
+     */
+    public static <A, B, C, D, E> Task<E> applyP(Task<A> ta, Task<B> tb, Task<C> tc, Task<D> td, Fn4<A, B, C, D, E> fn) {
+        return all(ta, tb, tc, td).flatMap(values -> fn.apply(get(values, 0), get(values, 1), get(values, 2), get(values, 3)));
+    }
+
+    /**
+     * Applies the tasks in parallel, the tasks are forked at once, the task rejects with the first exception,
+     * and cancels the other tasks
+     *
+     * @param ta the task of A
+     * @param tb the task of B
+     * @param tc the task of C
+     * @param td the task of D
+     * @param te the task of E
+     * @param fn the function
+     * @return the task of F
+     */
+    public static <A, B, C, D, E, F> Task<F> applyP(
+                Task<A> ta,
+                Task<B> tb,
+                Task<C> tc,
+                Task<D> td,
+                Task<E> te,
+                Fn5<A, B, C, D, E, F> fn) {
+        return all(ta, tb, tc, td, te).flatMap(values -> fn.apply(
+            get(values, 0),
+            get(values, 1),
+            get(values, 2),
+            get(values, 3),
+            get(values, 4)));
+    }
+
+    /**
+     * Applies the tasks in parallel, the tasks are forked at once, the task rejects with the first exception,
+     * and cancels the other tasks
+     *
+     * @param ta the task of A
+     * @param tb the task of B
+     * @param tc the task of C
+     * @param td the task of D
+     * @param te the task of E
+     * @param tf the task of F
+     * @param fn the function
+     * @return the task of G
+     */
+    public static <A, B, C, D, E, F, G> Task<G> applyP(
+                Task<A> ta,
+                Task<B> tb,
+                Task<C> tc,
+                Task<D> td,
+                Task<E> te,
+                Task<F> tf,
+                Fn6<A, B, C, D, E, F, G> fn) {
+        return all(ta, tb, tc, td, te, tf).flatMap(values -> fn.apply(
+            get(values, 0),
+            get(values, 1),
+            get(values, 2),
+            get(values, 3),
+            get(values, 4),
+            get(values, 5)));
+    }
+
+    /**
+     * Applies the tasks in parallel, the tasks are forked at once, the task rejects with the first exception,
+     * and cancels the other tasks
+     *
+     * @param ta the task of A
+     * @param tb the task of B
+     * @param tc the task of C
+     * @param td the task of D
+     * @param te the task of E
+     * @param tf the task of F
+     * @param tg the task of G
+     * @param fn the function
+     * @return the task of H
+     */
+    public static <A, B, C, D, E, F, G, H> Task<H> applyP(
+                Task<A> ta,
+                Task<B> tb,
+                Task<C> tc,
+                Task<D> td,
+                Task<E> te,
+                Task<F> tf,
+                Task<G> tg,
+                Fn7<A, B, C, D, E, F, G, H> fn) {
+        return all(ta, tb, tc, td, te, tf, tg).flatMap(values -> fn.apply(
+            get(values, 0),
+            get(values, 1),
+            get(values, 2),
+            get(values, 3),
+            get(values, 4),
+            get(values, 5),
+            get(values, 6)));
+    }
+
+    /**
+     * Applies the tasks in parallel, the tasks are forked at once, the task rejects with the first exception,
+     * and cancels the other tasks
+     *
+     * @param ta the task of A
+     * @param tb the task of B
+     * @param tc the task of C
+     * @param td the task of D
+     * @param te the task of E
+     * @param tf the task of F
+     * @param tg the task of G
+     * @param th the task of H
+     * @param fn the function
+     * @return the task of I
+     */
+    public static <A, B, C, D, E, F, G, H, I> Task<I> applyP(
+                Task<A> ta,
+                Task<B> tb,
+                Task<C> tc,
+                Task<D> td,
+                Task<E> te,
+                Task<F> tf,
+                Task<G> tg,
+                Task<H> th,
+                Fn8<A, B, C, D, E, F, G, H, I> fn) {
+        return all(ta, tb, tc, td, te, tf, tg, th).flatMap(values -> fn.apply(
+            get(values, 0),
+            get(values, 1),
+            get(values, 2),
+            get(values, 3),
+            get(values, 4),
+            get(values, 5),
+            get(values, 6),
+            get(values, 7)));
+    }
+
+    /**
+     * Applies the tasks in parallel, the tasks are forked at once, the task rejects with the first exception,
+     * and cancels the other tasks
+     *
+     * @param ta the task of A
+     * @param tb the task of B
+     * @param tc the task of C
+     * @param td the task of D
+     * @param te the task of E
+     * @param tf the task of F
+     * @param tg the task of G
+     * @param th the task of H
+     * @param ti the task of I
+     * @param fn the function
+     * @return the task of J
+     */
+    public static <A, B, C, D, E, F, G, H, I, J> Task<J> applyP(
+                Task<A> ta,
+                Task<B> tb,
+                Task<C> tc,
+                Task<D> td,
+                Task<E> te,
+                Task<F> tf,
+                Task<G> tg,
+                Task<H> th,
+                Task<I> ti,
+                Fn9<A, B, C, D, E, F, G, H, I, J> fn) {
+        return all(ta, tb, tc, td, te, tf, tg, th, ti).flatMap(values -> fn.apply(
+            get(values, 0),
+            get(values, 1),
+            get(values, 2),
+            get(values, 3),
+            get(values, 4),
+            get(values, 5),
+            get(values, 6),
+            get(values, 7),
+            get(values, 8)));
+    }
+
+    /**
+     * Applies the tasks in parallel, the tasks are forked at once, the task rejects with the first exception,
+     * and cancels the other tasks
+     *
+     * @param ta the task of A
+     * @param tb the task of B
+     * @param tc the task of C
+     * @param td the task of D
+     * @param te the task of E
+     * @param tf the task of F
+     * @param tg the task of G
+     * @param th the task of H
+     * @param ti the task of I
+     * @param tj the task of J
+     * @param fn the function
+     * @return the task of K
+     */
+    public static <A, B, C, D, E, F, G, H, I, J, K> Task<K> applyP(
+                Task<A> ta,
+                Task<B> tb,
+                Task<C> tc,
+                Task<D> td,
+                Task<E> te,
+                Task<F> tf,
+                Task<G> tg,
+                Task<H> th,
+                Task<I> ti,
+                Task<J> tj,
+                Fn10<A, B, C, D, E, F, G, H, I, J, K> fn) {
+        return all(ta, tb, tc, td, te, tf, tg, th, ti, tj).flatMap(values -> fn.apply(
+            get(values, 0),
+            get(values, 1),
+            get(values, 2),
+            get(values, 3),
+            get(values, 4),
+            get(values, 5),
+            get(values, 6),
+            get(values, 7),
+            get(values, 8),
+            get(values, 9)));
+    }
+
+    /**
+     * Traverses the tasks of different types in parallel
+     *
+     * @param tasks the tasks
+     * @return the task of the values
+     */
+    @SuppressWarnings("unchecked")
+    private static Task<List<Object>> all(Task<?>... tasks) {
+        return traverseP(Arrays.asList((Task<Object>[]) tasks));
+    }
+
+    /**
+     * Gets a value of a parallel traversal
+     *
+     * @param values the values
+     * @param index the index
+     * @return the value
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T get(List<Object> values, int index) {
+        return (T) values.get(index);
+    }
+
+    /**
+     * A parallel traversal, the tasks are forked in order, from a drain loop, so tasks which resolve synchronously
+     * fork the next task in the loop, rather than recursively
+     *
+     */
+    private static class Traversal<T> implements Cancellable {
+
+        private final List<Task<T>> tasks;
+
+        private final Consumer<List<T>> resolve;
+
+        private final Consumer<Exception> reject;
+
+        private final Object[] results;
+
+        private final AtomicReferenceArray<Cancellable> forks;
+
+        private final AtomicInteger remaining;
+
+        private final AtomicInteger permits = new AtomicInteger();
+
+        private final AtomicBoolean failed = new AtomicBoolean();
+
+        private int next;
+
+        /**
+         * Constructor
+         *
+         * @param tasks the tasks
+         * @param resolve the resolve function
+         * @param reject the reject function
+         */
+        private Traversal(List<Task<T>> tasks, Consumer<List<T>> resolve, Consumer<Exception> reject) {
+            this.tasks = tasks;
+            this.resolve = resolve;
+            this.reject = reject;
+            this.results = new Object[tasks.size()];
+            this.forks = new AtomicReferenceArray<>(tasks.size());
+            this.remaining = new AtomicInteger(tasks.size());
+        }
+
+        /**
+         * Starts the traversal
+         *
+         * @param parallelism the maximum number of tasks in flight
+         * @return the traversal
+         */
+        private Traversal<T> start(int parallelism) {
+            fork(Math.min(parallelism, tasks.size()));
+            return this;
+        }
+
+        /**
+         * Forks the next tasks, only one thread drains at a time, the others add their permits to the drain
+         *
+         * @param count the number of tasks to fork
+         */
+        private void fork(int count) {
+            if (permits.getAndAdd(count) != 0) {
+                return;
+            }
+            do {
+                if (next < tasks.size() && !failed.get()) {
+                    int index = next++;
+                    Cancellable fork = tasks.get(index).fork(value -> resolved(index, value), this::rejected);
+                    if (!forks.compareAndSet(index, null, fork)) {
+                        fork.cancel(); // cancelled while forking
+                    }
+                }
+            } while (permits.decrementAndGet() != 0);
+        }
+
+        /**
+         * Resolves a task, resolving the traversal once all the tasks have resolved, otherwise forking the next task
+         *
+         * @param index the index of the task
+         * @param value the value
+         */
+        @SuppressWarnings("unchecked")
+        private void resolved(int index, T value) {
+            results[index] = value;
+            if (remaining.decrementAndGet() == 0) {
+                resolve.accept((List<T>) Arrays.asList(results));
+            } else {
+                fork(1);
+            }
+        }
+
+        /**
+         * Rejects the traversal with the first exception, and cancels the other tasks
+         *
+         * @param exception the exception
+         */
+        private void rejected(Exception exception) {
+            if (!failed.getAndSet(true)) {
+                reject.accept(exception);
+                cancel();
+            }
+        }
+
+        @Override
+        public boolean cancel() {
+            failed.set(true);
+            boolean cancelled = false;
+            for (int idx = 0; idx < tasks.size(); idx++) {
+                Cancellable fork = forks.getAndSet(idx, Cancellable.NONE);
+                cancelled |= fork != null && fork.cancel();
+            }
+            return cancelled;
+        }
+    }
+
     @FunctionalInterface
     public interface Fn2<A, B, C> { Task<C> apply(A a, B b); }
 
@@ -0,0 +1,32 @@
+package uk.co.gcwilliams.async.http;
+
+import java.time.Duration;
+
+/**
+ * The TLS handshake listener, told as the TLS handshake of each connection completes. Listeners are called
+ * on the event loops, so they should not block, or throw exceptions.
+ *
+ * @author : Gareth Williams
+ **/
+public interface TlsHandshakeListener {
+
+    /**
+     * Called when a handshake succeeds
+     *
+     * @param host the host
+     * @param port the port
+     * @param duration the duration of the handshake
+     * @param resumed true if a cached session was resumed, false if it was a full handshake
+     */
+    default void onHandshake(String host, int port, Duration duration, boolean resumed) { }
+
+    /**
+     * Called when a handshake fails
+     *
+     * @param host the host
+     * @param port the port
+     * @param duration the duration of the handshake
+     * @param cause the cause
+     */
+    default void onHandshakeFailure(String host, int port, Duration duration, Throwable cause) { }
+}
@@ -0,0 +1,148 @@
+package uk.co.gcwilliams.async.http.cache;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The cache control directives of a request or a response, and the header helpers of the cache. The header names of
+ * the requests and responses are matched ignoring case.
+ *
+ * @author : Gareth Williams
+ **/
+class CacheControl {
+
+    private static final CacheControl NONE = new CacheControl(Map.of());
+
+    private final Map<String, String> directives;
+
+    /**
+     * Constructor
+     *
+     * @param directives the directives, the values are null for the directives without an argument
+     */
+    private CacheControl(Map<String, String> directives) {
+        this.directives = directives;
+    }
+
+    /**
+     * Determines if the directive is present
+     *
+     * @param directive the directive
+     * @return true if present, false otherwise
+     */
+    boolean has(String directive) {
+        return directives.containsKey(directive);
+    }
+
+    /**
+     * Gets the seconds argument of the directive
+     *
+     * @param directive the directive
+     * @return the seconds, or -1 if the directive is absent or its argument is not a number of seconds
+     */
+    long getSeconds(String directive) {
+        String value = directives.get(directive);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parses the cache control directives of the headers
+     *
+     * @param headers the headers
+     * @return the cache control
+     */
+    static CacheControl parse(Map<String, List<String>> headers) {
+        List<String> values = getAll(headers, "Cache-Control");
+        if (values.isEmpty()) {
+            return NONE;
+        }
+        Map<String, String> directives = new HashMap<>();
+        for (String value : values) {
+            for (String directive : value.split(",")) {
+                int equals = directive.indexOf('=');
+                String name = (equals < 0 ? directive : directive.substring(0, equals)).trim().toLowerCase(Locale.ROOT);
+                if (name.isEmpty()) {
+                    continue;
+                }
+                String argument = equals < 0 ? null : unquote(directive.substring(equals + 1).trim());
+                directives.putIfAbsent(name, argument);
+            }
+        }
+        return new CacheControl(directives);
+    }
+
+    /**
+     * Gets all the values of the header
+     *
+     * @param headers the headers
+     * @param name the name of the header
+     * @return the values, or an empty list if absent
+     */
+    static List<String> getAll(Map<String, List<String>> headers, String name) {
+        List<String> values = headers.get(name);
+        if (values != null) {
+            return values;
+        }
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return List.of();
+    }
+
+    /**
+     * Gets the first value of the header
+     *
+     * @param headers the headers
+     * @param name the name of the header
+     * @return the value, or null if absent
+     */
+    static String get(Map<String, List<String>> headers, String name) {
+        List<String> values = getAll(headers, name);
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * Gets the HTTP date of the header
+     *
+     * @param headers the headers
+     * @param name the name of the header
+     * @return the epoch millis, -1 if absent, or {@link Long#MIN_VALUE} if invalid
+     */
+    static long getDate(Map<String, List<String>> headers, String name) {
+        String value = get(headers, name);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException ex) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Unquotes the argument of a directive
+     *
+     * @param argument the argument
+     * @return the unquoted argument
+     */
+    private static String unquote(String argument) {
+        return argument.length() >= 2 && argument.startsWith("\"") && argument.endsWith("\"")
+            ? argument.substring(1, argument.length() - 1)
+            : argument;
+    }
+}
@@ -0,0 +1,37 @@
+package uk.co.gcwilliams.async.http.cache;
+
+/**
+ * The storage of a response cache, keyed by the method and URI of the request. Each key holds one response, the
+ * last variant stored, and the storage may evict responses at any time.
+ *
+ * @author : Gareth Williams
+ **/
+public interface CacheStorage extends AutoCloseable {
+
+    /**
+     * Gets the response
+     *
+     * @param key the key
+     * @return the response, or null if absent
+     */
+    CachedResponse get(String key);
+
+    /**
+     * Puts the response, replacing any response of the key
+     *
+     * @param key the key
+     * @param response the response
+     */
+    void put(String key, CachedResponse response);
+
+    /**
+     * Removes the response
+     *
+     * @param key the key
+     */
+    void remove(String key);
+
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,159 @@
+package uk.co.gcwilliams.async.http.cache;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The cached response, immutable, the body is a read only buffer sized to the body, which is shared by the responses
+ * served from the cache. The age and freshness lifetime are calculated as the response is stored (RFC 9111 4.2).
+ *
+ * @author : Gareth Williams
+ **/
+public final class CachedResponse {
+
+    private final int statusCode;
+
+    private final Map<String, List<String>> headers;
+
+    private final ByteBuffer body;
+
+    private final Map<String, List<String>> varyHeaders;
+
+    private final long responseTime;
+
+    private final long initialAge;
+
+    private final long lifetime;
+
+    private final long weight;
+
+    /**
+     * Constructor
+     *
+     * @param statusCode the status code
+     * @param headers the headers
+     * @param body the body
+     * @param varyHeaders the values of the request headers the response varies on
+     * @param responseTime the time the response was received, in epoch millis
+     * @param initialAge the age of the response as it was received, in millis
+     * @param lifetime the freshness lifetime of the response, in millis
+     */
+    CachedResponse(
+            int statusCode,
+            Map<String, List<String>> headers,
+            ByteBuffer body,
+            Map<String, List<String>> varyHeaders,
+            long responseTime,
+            long initialAge,
+            long lifetime) {
+        this.statusCode = statusCode;
+        this.headers = headers;
+        this.body = body.asReadOnlyBuffer();
+        this.varyHeaders = varyHeaders;
+        this.responseTime = responseTime;
+        this.initialAge = initialAge;
+        this.lifetime = lifetime;
+        this.weight = weigh(this.body, headers);
+    }
+
+    /**
+     * Gets the status code
+     *
+     * @return the status code
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Gets the headers
+     *
+     * @return the headers
+     */
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Gets the body, a read only view of the body
+     *
+     * @return the body
+     */
+    public ByteBuffer getBody() {
+        return body.duplicate();
+    }
+
+    /**
+     * Gets the values of the request headers the response varies on
+     *
+     * @return the vary headers
+     */
+    public Map<String, List<String>> getVaryHeaders() {
+        return varyHeaders;
+    }
+
+    /**
+     * Gets the time the response was received
+     *
+     * @return the epoch millis
+     */
+    public long getResponseTime() {
+        return responseTime;
+    }
+
+    /**
+     * Gets the age of the response as it was received
+     *
+     * @return the millis
+     */
+    public long getInitialAge() {
+        return initialAge;
+    }
+
+    /**
+     * Gets the freshness lifetime of the response
+     *
+     * @return the millis
+     */
+    public long getLifetime() {
+        return lifetime;
+    }
+
+    /**
+     * Gets the current age of the response
+     *
+     * @param now the epoch millis
+     * @return the age in millis
+     */
+    public long getAge(long now) {
+        return initialAge + Math.max(0, now - responseTime);
+    }
+
+    /**
+     * Gets the weight of the response, the approximate bytes it holds
+     *
+     * @return the weight
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Weighs the response
+     *
+     * @param body the body
+     * @param headers the headers
+     * @return the weight
+     */
+    private static long weigh(ByteBuffer body, Map<String, List<String>> headers) {
+        long weight = body.remaining();
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            weight += header.getKey().length();
+            for (String value : header.getValue()) {
+                weight += value.length();
+            }
+        }
+        return weight;
+    }
+}
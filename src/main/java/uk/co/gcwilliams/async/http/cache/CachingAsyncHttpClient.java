@@ -0,0 +1,634 @@
+package uk.co.gcwilliams.async.http.cache;
+
+import uk.co.gcwilliams.async.http.AsyncHttpClient;
+import uk.co.gcwilliams.async.http.AsyncHttpRequest;
+import uk.co.gcwilliams.async.http.AsyncHttpResponse;
+import uk.co.gcwilliams.async.http.Cancellable;
+import uk.co.gcwilliams.async.http.Task;
+import uk.co.gcwilliams.async.http.util.BodyPublishers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The caching async HTTP client, decorates an async HTTP client with a response cache (RFC 9111). The GET responses
+ * are stored as the Cache-Control, Expires, Vary and Age headers allow, and fresh responses are served from the
+ * cache without sending the request. Stale responses are revalidated with their ETag or Last-Modified validators,
+ * and honour stale-while-revalidate and stale-if-error (RFC 5861). A successful unsafe request invalidates the
+ * cached response of its URI. Streamed responses are served from the cache, though a streamed response from the
+ * network is not stored.
+ *
+ * @author : Gareth Williams
+ **/
+public class CachingAsyncHttpClient implements AsyncHttpClient {
+
+    private static final Set<Integer> HEURISTICALLY_CACHEABLE = Set.of(200, 203, 204, 300, 301, 308, 404, 405, 410, 414, 501);
+
+    private final AsyncHttpClient client;
+
+    private final CacheStorage storage;
+
+    private final boolean shared;
+
+    private final Clock clock;
+
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructor
+     *
+     * @param client the client
+     * @param storage the storage
+     * @param shared true if the cache is shared, false if private
+     * @param clock the clock
+     */
+    private CachingAsyncHttpClient(AsyncHttpClient client, CacheStorage storage, boolean shared, Clock clock) {
+        this.client = client;
+        this.storage = storage;
+        this.shared = shared;
+        this.clock = clock;
+    }
+
+    @Override
+    public Task<AsyncHttpResponse> prepare(AsyncHttpRequest request) {
+        switch (request.getMethod()) {
+            case GET:
+                return Task.cancellable((resolve, reject) -> send(request, resolve, reject));
+            case POST:
+            case PUT:
+            case DELETE:
+            case PATCH:
+                return client.prepare(request).map(response -> invalidate(request, response));
+            default:
+                return client.prepare(request);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            client.close();
+        } finally {
+            storage.close();
+        }
+    }
+
+    /**
+     * Sends the request, serving the cached response if it is fresh, or stale within its stale while revalidate
+     * window, when it is revalidated in the background, otherwise sending the request, conditional on the validators
+     * of the cached response
+     *
+     * @param request the request
+     * @param resolve the resolve function
+     * @param reject the reject function
+     * @return the cancellable
+     */
+    private Cancellable send(AsyncHttpRequest request, Consumer<AsyncHttpResponse> resolve, Consumer<Exception> reject) {
+        CacheControl cacheControl = CacheControl.parse(request.getHeaders());
+        String key = key(request.getUri());
+        CachedResponse cached = isConditional(request) ? null : storage.get(key);
+        if (cached != null && !matches(request, cached)) {
+            cached = null;
+        }
+        long now = clock.millis();
+        if (cached != null && !cacheControl.has("no-cache")) {
+            if (isFresh(cached, cacheControl, now)) {
+                resolve.accept(toResponse(cached, now));
+                return Cancellable.NONE;
+            }
+            if (isStaleWhileRevalidate(cached, now)) {
+                resolve.accept(toResponse(cached, now));
+                revalidateInBackground(key, request, cacheControl, cached);
+                return Cancellable.NONE;
+            }
+        }
+        if (cacheControl.has("only-if-cached")) {
+            resolve.accept(AsyncHttpResponse.builder()
+                .withStatusCode(504)
+                .withHeaders(Map.of())
+                .withBody(new byte[0])
+                .build());
+            return Cancellable.NONE;
+        }
+        return revalidate(key, request, cacheControl, cached).fork(resolve, reject);
+    }
+
+    /**
+     * Revalidates the cached response, sending the request conditional on its validators. A 304 refreshes the
+     * cached response, which is served without transferring the body again. When the request fails, or the server
+     * errors, the cached response is served if it is within its stale if error window. Without a cached response
+     * the request is sent, and the response stored.
+     *
+     * @param key the key
+     * @param request the request
+     * @param cacheControl the cache control of the request
+     * @param cached the cached response, or null
+     * @return the task of the response
+     */
+    private Task<AsyncHttpResponse> revalidate(
+            String key,
+            AsyncHttpRequest request,
+            CacheControl cacheControl,
+            CachedResponse cached) {
+        long requestTime = clock.millis();
+        if (cached == null) {
+            return client.prepare(request).map(response -> store(key, request, cacheControl, response, requestTime));
+        }
+        return client.prepare(conditional(request, cached))
+            .map(response -> {
+                if (response.getStatusCode() == 304) {
+                    discard(request, response);
+                    return refresh(key, cached, response, requestTime);
+                }
+                if (response.getStatusCode() >= 500 && isStaleIfError(cached, cacheControl, clock.millis())) {
+                    discard(request, response);
+                    return toResponse(cached, clock.millis());
+                }
+                return store(key, request, cacheControl, response, requestTime);
+            })
+            .recoverWith(exception -> isStaleIfError(cached, cacheControl, clock.millis())
+                ? Task.of(toResponse(cached, clock.millis()))
+                : Task.of(exception));
+    }
+
+    /**
+     * Revalidates the cached response in the background, at most one revalidation of a key is in flight, the
+     * response is buffered, so it can be stored
+     *
+     * @param key the key
+     * @param request the request
+     * @param cacheControl the cache control of the request
+     * @param cached the cached response
+     */
+    private void revalidateInBackground(String key, AsyncHttpRequest request, CacheControl cacheControl, CachedResponse cached) {
+        if (!revalidating.add(key)) {
+            return;
+        }
+        AsyncHttpRequest buffered = AsyncHttpRequest.builder(request).withStreamResponse(false).build();
+        revalidate(key, buffered, cacheControl, cached).fork(
+            response -> revalidating.remove(key),
+            exception -> revalidating.remove(key));
+    }
+
+    /**
+     * Refreshes the cached response with the headers of the 304, the body is reused (RFC 9111 4.3.4)
+     *
+     * @param key the key
+     * @param cached the cached response
+     * @param notModified the 304 response
+     * @param requestTime the time the request was sent, in epoch millis
+     * @return the response
+     */
+    private AsyncHttpResponse refresh(String key, CachedResponse cached, AsyncHttpResponse notModified, long requestTime) {
+        Map<String, List<String>> headers = new HashMap<>(cached.getHeaders());
+        for (Map.Entry<String, List<String>> header : notModified.getHeaders().entrySet()) {
+            if (!header.getKey().equalsIgnoreCase("Content-Length")) {
+                headers.keySet().removeIf(name -> name.equalsIgnoreCase(header.getKey()));
+                headers.put(header.getKey(), header.getValue());
+            }
+        }
+        long responseTime = clock.millis();
+        CachedResponse refreshed = new CachedResponse(
+            cached.getStatusCode(),
+            headers,
+            cached.getBody(),
+            cached.getVaryHeaders(),
+            responseTime,
+            getInitialAge(headers, requestTime, responseTime),
+            getLifetime(cached.getStatusCode(), headers, responseTime));
+        if (!CacheControl.parse(headers).has("no-store")) {
+            storage.put(key, refreshed);
+        } else {
+            storage.remove(key);
+        }
+        return toResponse(refreshed, responseTime);
+    }
+
+    /**
+     * Stores the response, if it may be stored, a buffered response is replaced by a response over the stored body
+     *
+     * @param key the key
+     * @param request the request
+     * @param cacheControl the cache control of the request
+     * @param response the response
+     * @param requestTime the time the request was sent, in epoch millis
+     * @return the response
+     */
+    private AsyncHttpResponse store(
+            String key,
+            AsyncHttpRequest request,
+            CacheControl cacheControl,
+            AsyncHttpResponse response,
+            long requestTime) {
+        Map<String, List<String>> varyHeaders = getVaryHeaders(request, response.getHeaders());
+        if (request.isStreamResponse() || varyHeaders == null || !isStorable(request, cacheControl, response)) {
+            return response;
+        }
+        byte[] body;
+        try {
+            body = response.getBody().readAllBytes();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        long responseTime = clock.millis();
+        Map<String, List<String>> headers = response.getHeaders();
+        storage.put(key, new CachedResponse(
+            response.getStatusCode(),
+            headers,
+            ByteBuffer.wrap(body),
+            varyHeaders,
+            responseTime,
+            getInitialAge(headers, requestTime, responseTime),
+            getLifetime(response.getStatusCode(), headers, responseTime)));
+        return AsyncHttpResponse.builder()
+            .withStatusCode(response.getStatusCode())
+            .withHeaders(headers)
+            .withBody(body)
+            .build();
+    }
+
+    /**
+     * Invalidates the cached response of the URI, once an unsafe request succeeds (RFC 9111 4.4)
+     *
+     * @param request the request
+     * @param response the response
+     * @return the response
+     */
+    private AsyncHttpResponse invalidate(AsyncHttpRequest request, AsyncHttpResponse response) {
+        if (response.getStatusCode() >= 200 && response.getStatusCode() < 400) {
+            storage.remove(key(request.getUri()));
+        }
+        return response;
+    }
+
+    /**
+     * Determines if the response may be stored (RFC 9111 3)
+     *
+     * @param request the request
+     * @param cacheControl the cache control of the request
+     * @param response the response
+     * @return true if the response may be stored, false otherwise
+     */
+    private boolean isStorable(AsyncHttpRequest request, CacheControl cacheControl, AsyncHttpResponse response) {
+        int statusCode = response.getStatusCode();
+        if (statusCode < 200 || statusCode == 206 || statusCode == 304) {
+            return false;
+        }
+        CacheControl responseCacheControl = CacheControl.parse(response.getHeaders());
+        if (cacheControl.has("no-store") || responseCacheControl.has("no-store")) {
+            return false;
+        }
+        if (shared && responseCacheControl.has("private")) {
+            return false;
+        }
+        if (shared
+                && CacheControl.get(request.getHeaders(), "Authorization") != null
+                && !responseCacheControl.has("public")
+                && !responseCacheControl.has("s-maxage")
+                && !responseCacheControl.has("must-revalidate")) {
+            return false;
+        }
+        return responseCacheControl.has("public")
+            || responseCacheControl.has("max-age")
+            || (shared && responseCacheControl.has("s-maxage"))
+            || CacheControl.get(response.getHeaders(), "Expires") != null
+            || HEURISTICALLY_CACHEABLE.contains(statusCode);
+    }
+
+    /**
+     * Determines if the cached response can be served, without validating it (RFC 9111 4.2, 5.2.1)
+     *
+     * @param cached the cached response
+     * @param cacheControl the cache control of the request
+     * @param now the epoch millis
+     * @return true if the cached response can be served, false otherwise
+     */
+    private boolean isFresh(CachedResponse cached, CacheControl cacheControl, long now) {
+        long age = cached.getAge(now);
+        long lifetime = cached.getLifetime();
+        long maxAge = cacheControl.getSeconds("max-age");
+        if (maxAge >= 0 && age > maxAge * 1000) {
+            return false;
+        }
+        long minFresh = cacheControl.getSeconds("min-fresh");
+        if (minFresh >= 0) {
+            lifetime -= minFresh * 1000;
+        }
+        if (age < lifetime) {
+            return true;
+        }
+        if (!cacheControl.has("max-stale")) {
+            return false;
+        }
+        CacheControl responseCacheControl = CacheControl.parse(cached.getHeaders());
+        if (responseCacheControl.has("must-revalidate")
+                || responseCacheControl.has("no-cache")
+                || (shared && responseCacheControl.has("proxy-revalidate"))) {
+            return false;
+        }
+        long maxStale = cacheControl.getSeconds("max-stale");
+        return maxStale < 0 || age - lifetime <= maxStale * 1000;
+    }
+
+    /**
+     * Gets the freshness lifetime of the response, explicit or heuristic (RFC 9111 4.2.1, 4.2.2)
+     *
+     * @param statusCode the status code
+     * @param headers the headers
+     * @param responseTime the time the response was received, in epoch millis
+     * @return the freshness lifetime, in millis
+     */
+    private long getLifetime(int statusCode, Map<String, List<String>> headers, long responseTime) {
+        CacheControl cacheControl = CacheControl.parse(headers);
+        if (cacheControl.has("no-cache")) {
+            return 0;
+        }
+        long sharedMaxAge = cacheControl.getSeconds("s-maxage");
+        if (shared && sharedMaxAge >= 0) {
+            return sharedMaxAge * 1000;
+        }
+        long maxAge = cacheControl.getSeconds("max-age");
+        if (maxAge >= 0) {
+            return maxAge * 1000;
+        }
+        long date = CacheControl.getDate(headers, "Date");
+        if (date < 0) {
+            date = responseTime;
+        }
+        long expires = CacheControl.getDate(headers, "Expires");
+        if (expires != -1) {
+            return expires == Long.MIN_VALUE ? 0 : Math.max(0, expires - date);
+        }
+        long lastModified = CacheControl.getDate(headers, "Last-Modified");
+        if (lastModified >= 0 && (HEURISTICALLY_CACHEABLE.contains(statusCode) || cacheControl.has("public"))) {
+            return Math.max(0, (date - lastModified) / 10);
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the age of the response as it was received (RFC 9111 4.2.3)
+     *
+     * @param headers the headers
+     * @param requestTime the time the request was sent, in epoch millis
+     * @param responseTime the time the response was received, in epoch millis
+     * @return the corrected initial age, in millis
+     */
+    private static long getInitialAge(Map<String, List<String>> headers, long requestTime, long responseTime) {
+        long date = CacheControl.getDate(headers, "Date");
+        long apparentAge = date < 0 ? 0 : Math.max(0, responseTime - date);
+        long ageValue = 0;
+        String age = CacheControl.get(headers, "Age");
+        if (age != null) {
+            try {
+                ageValue = Math.max(0, Long.parseLong(age.trim())) * 1000;
+            } catch (NumberFormatException ex) {
+                // ignored, an invalid age is treated as absent
+            }
+        }
+        return Math.max(apparentAge, ageValue + (responseTime - requestTime));
+    }
+
+    /**
+     * Gets the values of the request headers the response varies on
+     *
+     * @param request the request
+     * @param headers the headers of the response
+     * @return the vary headers, or null if the response varies on everything
+     */
+    private static Map<String, List<String>> getVaryHeaders(AsyncHttpRequest request, Map<String, List<String>> headers) {
+        List<String> vary = CacheControl.getAll(headers, "Vary");
+        if (vary.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, List<String>> varyHeaders = new HashMap<>();
+        for (String value : vary) {
+            for (String name : value.split(",")) {
+                name = name.trim().toLowerCase(Locale.ROOT);
+                if (name.equals("*")) {
+                    return null;
+                }
+                if (!name.isEmpty()) {
+                    varyHeaders.put(name, List.copyOf(CacheControl.getAll(request.getHeaders(), name)));
+                }
+            }
+        }
+        return varyHeaders;
+    }
+
+    /**
+     * Determines if the request matches the vary headers of the cached response
+     *
+     * @param request the request
+     * @param cached the cached response
+     * @return true if matched, false otherwise
+     */
+    private static boolean matches(AsyncHttpRequest request, CachedResponse cached) {
+        for (Map.Entry<String, List<String>> header : cached.getVaryHeaders().entrySet()) {
+            if (!CacheControl.getAll(request.getHeaders(), header.getKey()).equals(header.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines if the stale cached response can be served while it is revalidated (RFC 5861 3)
+     *
+     * @param cached the cached response
+     * @param now the epoch millis
+     * @return true if the cached response can be served, false otherwise
+     */
+    private static boolean isStaleWhileRevalidate(CachedResponse cached, long now) {
+        CacheControl cacheControl = CacheControl.parse(cached.getHeaders());
+        long window = cacheControl.getSeconds("stale-while-revalidate");
+        return window >= 0
+            && !cacheControl.has("no-cache")
+            && cached.getAge(now) - cached.getLifetime() <= window * 1000;
+    }
+
+    /**
+     * Determines if the stale cached response can be served when the request fails (RFC 5861 4), the window is
+     * that of the request, otherwise of the response
+     *
+     * @param cached the cached response
+     * @param cacheControl the cache control of the request
+     * @param now the epoch millis
+     * @return true if the cached response can be served, false otherwise
+     */
+    private boolean isStaleIfError(CachedResponse cached, CacheControl cacheControl, long now) {
+        CacheControl responseCacheControl = CacheControl.parse(cached.getHeaders());
+        if (responseCacheControl.has("must-revalidate") || (shared && responseCacheControl.has("proxy-revalidate"))) {
+            return false;
+        }
+        long window = cacheControl.has("stale-if-error")
+            ? cacheControl.getSeconds("stale-if-error")
+            : responseCacheControl.getSeconds("stale-if-error");
+        return window >= 0 && cached.getAge(now) - cached.getLifetime() <= window * 1000;
+    }
+
+    /**
+     * Determines if the request is conditional, when the response is for the caller to interpret, so the cached
+     * response is not used
+     *
+     * @param request the request
+     * @return true if conditional, false otherwise
+     */
+    private static boolean isConditional(AsyncHttpRequest request) {
+        return CacheControl.get(request.getHeaders(), "If-None-Match") != null
+            || CacheControl.get(request.getHeaders(), "If-Modified-Since") != null;
+    }
+
+    /**
+     * Creates the request conditional on the validators of the cached response (RFC 9111 4.3.1)
+     *
+     * @param request the request
+     * @param cached the cached response
+     * @return the conditional request, or the request if the cached response has no validators
+     */
+    private static AsyncHttpRequest conditional(AsyncHttpRequest request, CachedResponse cached) {
+        String etag = CacheControl.get(cached.getHeaders(), "ETag");
+        String lastModified = CacheControl.get(cached.getHeaders(), "Last-Modified");
+        if (etag == null && lastModified == null) {
+            return request;
+        }
+        AsyncHttpRequest.Builder conditional = AsyncHttpRequest.builder(request);
+        if (etag != null) {
+            conditional.withHeader("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            conditional.withHeader("If-Modified-Since", lastModified);
+        }
+        return conditional.build();
+    }
+
+    /**
+     * Discards the streamed body of the response which is not passed on, so its connection is released
+     *
+     * @param request the request
+     * @param response the response
+     */
+    private static void discard(AsyncHttpRequest request, AsyncHttpResponse response) {
+        if (request.isStreamResponse()) {
+            BodyPublishers.discard(response.getBodyPublisher());
+        }
+    }
+
+    /**
+     * Creates the response served from the cache, with its current age
+     *
+     * @param cached the cached response
+     * @param now the epoch millis
+     * @return the response
+     */
+    private static AsyncHttpResponse toResponse(CachedResponse cached, long now) {
+        Map<String, List<String>> headers = new HashMap<>(cached.getHeaders());
+        headers.keySet().removeIf(name -> name.equalsIgnoreCase("Age"));
+        headers.put("Age", List.of(Long.toString(cached.getAge(now) / 1000)));
+        return AsyncHttpResponse.builder()
+            .withStatusCode(cached.getStatusCode())
+            .withHeaders(headers)
+            .withBody(cached.getBody())
+            .build();
+    }
+
+    /**
+     * Creates the key of the GET request of the URI
+     *
+     * @param uri the URI
+     * @return the key
+     */
+    private static String key(URI uri) {
+        return "GET " + uri;
+    }
+
+    /**
+     * Creates the builder
+     *
+     * @param client the client to decorate
+     * @return the builder
+     */
+    public static Builder builder(AsyncHttpClient client) {
+        return new Builder(client);
+    }
+
+    /**
+     * The builder
+     *
+     */
+    public static class Builder {
+
+        private final AsyncHttpClient client;
+
+        private CacheStorage storage;
+
+        private boolean shared = true;
+
+        private Clock clock = Clock.systemUTC();
+
+        private Builder(AsyncHttpClient client) {
+            this.client = client;
+        }
+
+        /**
+         * Sets the storage, defaults to a {@link MemoryCacheStorage} of 10,000 responses and 64MB
+         *
+         * @param storage the storage
+         * @return the builder
+         */
+        public Builder withStorage(CacheStorage storage) {
+            this.storage = storage;
+            return this;
+        }
+
+        /**
+         * Sets whether the cache is shared, defaults to true, a shared cache does not store private responses, or
+         * responses to authorized requests, unless they are explicitly cacheable
+         *
+         * @param shared true if the cache is shared, false if private
+         * @return the builder
+         */
+        public Builder withShared(boolean shared) {
+            this.shared = shared;
+            return this;
+        }
+
+        /**
+         * Sets the clock, defaults to the system clock
+         *
+         * @param clock the clock
+         * @return the builder
+         */
+        public Builder withClock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Builds the caching async HTTP client
+         *
+         * @return the caching async HTTP client
+         */
+        public CachingAsyncHttpClient build() {
+            requireNonNull(client, "the client should be provided");
+            requireNonNull(clock, "the clock should be provided");
+            return new CachingAsyncHttpClient(
+                client,
+                storage != null ? storage : new MemoryCacheStorage(10_000, 64L * 1024 * 1024),
+                shared,
+                clock);
+        }
+    }
+}
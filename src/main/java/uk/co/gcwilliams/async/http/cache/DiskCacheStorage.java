@@ -0,0 +1,650 @@
+package uk.co.gcwilliams.async.http.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * The disk cache storage, which survives restarts. The responses are appended as records to segment files, which are
+ * memory mapped, so a hit decodes the headers onto the heap, and the body is a slice of the mapped segment, which is
+ * not copied. A removal appends a tombstone. The index, of the record locations by key, is rebuilt from the segments
+ * as the storage is opened. The directory is locked while the storage is open, so it is only opened by one storage,
+ * in one process, at a time.
+ *
+ * <p>When the active segment is full a new segment is started, then the oldest segment is compacted, its live records
+ * copied to the active segment, if at most half of it is live, otherwise it is evicted once the segments exceed the
+ * maximum bytes. Only the oldest segment is reclaimed, so a tombstone never outlives an older record of its key.
+ *
+ * @author : Gareth Williams
+ **/
+public class DiskCacheStorage implements CacheStorage {
+
+    private static final int MAGIC = 0xCAC4E001;
+
+    private static final byte PUT = 1;
+
+    private static final byte REMOVE = 2;
+
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.dat");
+
+    private static final String LOCK_NAME = "storage.lock";
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Map<String, Location> index = new HashMap<>();
+
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final int maxSegments;
+
+    private Segment active;
+
+    private FileChannel lockChannel;
+
+    /**
+     * Constructor, with 64MB segments, so the maximum bytes should be at least 128MB
+     *
+     * @param directory the directory of the segments
+     * @param maxBytes the maximum bytes of the segments
+     */
+    public DiskCacheStorage(Path directory, long maxBytes) {
+        this(directory, maxBytes, 64 * 1024 * 1024);
+    }
+
+    /**
+     * Constructor, there are at least two segments, the active segment and the one being reclaimed, so the maximum
+     * bytes should be at least twice the segment size
+     *
+     * @param directory the directory of the segments
+     * @param maxBytes the maximum bytes of the segments
+     * @param segmentSize the size of a segment, the maximum size of a response
+     */
+    public DiskCacheStorage(Path directory, long maxBytes, int segmentSize) {
+        if (maxBytes <= 0 || segmentSize <= RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("the maximum bytes and segment size should be positive");
+        }
+        if (maxBytes < 2L * segmentSize) {
+            throw new IllegalArgumentException("the maximum bytes should be at least twice the segment size");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = (int) Math.min(Integer.MAX_VALUE, maxBytes / segmentSize);
+        try {
+            Files.createDirectories(directory);
+            lockDirectory();
+            recover();
+        } catch (IOException ex) {
+            close();
+            throw new UncheckedIOException(ex);
+        } catch (RuntimeException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public CachedResponse get(String key) {
+        ByteBuffer record;
+        lock.lock();
+        try {
+            Location location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            record = location.slice();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            return decode(key, record);
+        } catch (RuntimeException ex) {
+            remove(key); // a corrupt record
+            return null;
+        }
+    }
+
+    @Override
+    public void put(String key, CachedResponse response) {
+        byte[] metadata = encode(PUT, key, response);
+        ByteBuffer body = response.getBody();
+        long size = (long) RECORD_HEADER_SIZE + metadata.length + Integer.BYTES + body.remaining();
+        if (size > segmentSize) {
+            remove(key);
+            return;
+        }
+        lock.lock();
+        try {
+            append(key, metadata, body, (int) size);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        lock.lock();
+        try {
+            if (index.containsKey(key)) {
+                byte[] metadata = encode(REMOVE, key, null);
+                append(key, metadata, null, RECORD_HEADER_SIZE + metadata.length);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of responses
+     *
+     * @return the number of responses
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return index.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+            segments.clear();
+            index.clear();
+            active = null;
+            if (lockChannel != null) {
+                try {
+                    lockChannel.close(); // releases the lock
+                } catch (IOException ex) {
+                    // ignored, the lock is released as the process exits
+                }
+                lockChannel = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends the record to the active segment, and indexes it, holding the lock
+     *
+     * @param key the key
+     * @param metadata the metadata of the record
+     * @param body the body, or null for a tombstone
+     * @param size the size of the record
+     */
+    private void append(String key, byte[] metadata, ByteBuffer body, int size) {
+        if (active == null) {
+            throw new IllegalStateException("The disk cache storage is closed");
+        }
+        while (active.remaining() < size) {
+            roll(size);
+        }
+        int offset = active.position;
+        ByteBuffer out = active.buffer.duplicate();
+        out.position(offset + Integer.BYTES);
+        out.putInt(size);
+        out.put(metadata);
+        if (body != null) {
+            out.putInt(body.remaining());
+            out.put(body);
+        }
+        active.buffer.putInt(offset, MAGIC); // last, so a partially written record is not recovered
+        active.position += size;
+        index(key, body != null ? new Location(active, offset, size) : null);
+    }
+
+    /**
+     * Indexes the record of the key, replacing its previous record
+     *
+     * @param key the key
+     * @param location the location of the record, or null for a tombstone
+     */
+    private void index(String key, Location location) {
+        Location previous = location != null ? index.put(key, location) : index.remove(key);
+        if (previous != null) {
+            previous.segment.liveBytes -= previous.size;
+        }
+        if (location != null) {
+            location.segment.liveBytes += location.size;
+        }
+    }
+
+    /**
+     * Starts a new active segment, then compacts or evicts the oldest segments, holding the lock, a segment is only
+     * compacted if the pending record still fits after its live records
+     *
+     * @param size the size of the pending record
+     */
+    private void roll(int size) {
+        try {
+            active = Segment.create(directory, segments.isEmpty() ? 0 : segments.lastKey() + 1, segmentSize);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        segments.put(active.id, active);
+        while (segments.size() > 1) {
+            Segment oldest = segments.firstEntry().getValue();
+            if (oldest.liveBytes <= oldest.position / 2 && oldest.liveBytes + size <= active.remaining()) {
+                compact(oldest);
+            } else if (segments.size() > maxSegments) {
+                evict(oldest);
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Compacts the segment, copying its live records to the active segment, and deleting it
+     *
+     * @param segment the segment
+     */
+    private void compact(Segment segment) {
+        for (Map.Entry<String, Location> entry : index.entrySet()) {
+            Location location = entry.getValue();
+            if (location.segment == segment) {
+                int offset = active.position;
+                ByteBuffer out = active.buffer.duplicate();
+                out.position(offset);
+                out.put(location.record());
+                active.position += location.size;
+                active.liveBytes += location.size;
+                entry.setValue(new Location(active, offset, location.size));
+            }
+        }
+        segments.remove(segment.id);
+        segment.delete();
+    }
+
+    /**
+     * Evicts the segment, removing its records from the index, and deleting it
+     *
+     * @param segment the segment
+     */
+    private void evict(Segment segment) {
+        index.values().removeIf(location -> location.segment == segment);
+        segments.remove(segment.id);
+        segment.delete();
+    }
+
+    /**
+     * Locks the directory, failing fast if another storage, in this process or another, has it open
+     *
+     */
+    private void lockDirectory() throws IOException {
+        lockChannel = FileChannel.open(directory.resolve(LOCK_NAME), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock fileLock;
+        try {
+            fileLock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException ex) {
+            fileLock = null; // held by another storage in this process
+        }
+        if (fileLock == null) {
+            throw new IllegalStateException("The directory " + directory + " is in use by another disk cache storage");
+        }
+    }
+
+    /**
+     * Recovers the segments, and rebuilds the index from their records
+     *
+     */
+    private void recover() throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Iterator<Path> paths = files.iterator(); paths.hasNext(); ) {
+                Matcher matcher = SEGMENT_NAME.matcher(paths.next().getFileName().toString());
+                if (matcher.matches()) {
+                    ids.add(Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        ids.sort(null);
+        for (int id : ids) {
+            Segment segment = Segment.create(directory, id, segmentSize);
+            segments.put(id, segment);
+            scan(segment);
+        }
+        if (segments.isEmpty()) {
+            roll(0);
+        } else {
+            active = segments.lastEntry().getValue();
+        }
+    }
+
+    /**
+     * Scans the records of the segment, indexing them, the segment is truncated at the first corrupt record, as the
+     * segments are not forced to disk, a record may be partially written as the power is lost
+     *
+     * @param segment the segment
+     */
+    private void scan(Segment segment) {
+        ByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        while (offset + RECORD_HEADER_SIZE < segmentSize && buffer.getInt(offset) == MAGIC) {
+            int size = buffer.getInt(offset + Integer.BYTES);
+            if (size <= RECORD_HEADER_SIZE || offset + (long) size > segmentSize) {
+                break;
+            }
+            byte type;
+            String key;
+            try {
+                ByteBuffer record = segment.slice(offset, size);
+                record.position(RECORD_HEADER_SIZE);
+                type = record.get();
+                key = getString(record);
+            } catch (RuntimeException ex) {
+                break;
+            }
+            if (type != PUT && type != REMOVE) {
+                break;
+            }
+            index(key, type == PUT ? new Location(segment, offset, size) : null);
+            offset += size;
+        }
+        if (offset + Integer.BYTES <= segmentSize) {
+            buffer.putInt(offset, 0); // truncated, so the records after it are not recovered
+        }
+        segment.position = offset;
+    }
+
+    /**
+     * Encodes the metadata of a record, the type, key, and for a response its status, times and headers
+     *
+     * @param type the type of the record
+     * @param key the key
+     * @param response the response, or null for a tombstone
+     * @return the metadata
+     */
+    private static byte[] encode(byte type, String key, CachedResponse response) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type);
+            putString(out, key);
+            if (response != null) {
+                out.writeInt(response.getStatusCode());
+                out.writeLong(response.getResponseTime());
+                out.writeLong(response.getInitialAge());
+                out.writeLong(response.getLifetime());
+                putHeaders(out, response.getHeaders());
+                putHeaders(out, response.getVaryHeaders());
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes the response of the record, the body is a slice of the record
+     *
+     * @param key the key
+     * @param record the record
+     * @return the response
+     */
+    private static CachedResponse decode(String key, ByteBuffer record) {
+        record.position(RECORD_HEADER_SIZE);
+        if (record.get() != PUT || !getString(record).equals(key)) {
+            throw new IllegalStateException("The record is not a response of the key");
+        }
+        int statusCode = record.getInt();
+        long responseTime = record.getLong();
+        long initialAge = record.getLong();
+        long lifetime = record.getLong();
+        Map<String, List<String>> headers = getHeaders(record);
+        Map<String, List<String>> varyHeaders = getHeaders(record);
+        int length = record.getInt();
+        ByteBuffer body = record.slice();
+        body.limit(length);
+        return new CachedResponse(statusCode, headers, body, varyHeaders, responseTime, initialAge, lifetime);
+    }
+
+    /**
+     * Puts the headers
+     *
+     * @param out the output
+     * @param headers the headers
+     */
+    private static void putHeaders(DataOutputStream out, Map<String, List<String>> headers) throws IOException {
+        out.writeInt(headers.size());
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            putString(out, header.getKey());
+            out.writeInt(header.getValue().size());
+            for (String value : header.getValue()) {
+                putString(out, value);
+            }
+        }
+    }
+
+    /**
+     * Gets the headers
+     *
+     * @param record the record
+     * @return the headers
+     */
+    private static Map<String, List<String>> getHeaders(ByteBuffer record) {
+        int size = record.getInt();
+        Map<String, List<String>> headers = new HashMap<>();
+        for (int header = 0; header < size; header++) {
+            String name = getString(record);
+            int count = record.getInt();
+            List<String> values = new ArrayList<>(count);
+            for (int value = 0; value < count; value++) {
+                values.add(getString(record));
+            }
+            headers.put(name, values);
+        }
+        return headers;
+    }
+
+    /**
+     * Puts the string, length prefixed UTF-8
+     *
+     * @param out the output
+     * @param value the string
+     */
+    private static void putString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Gets the string, length prefixed UTF-8
+     *
+     * @param record the record
+     * @return the string
+     */
+    private static String getString(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0 || length > record.remaining()) {
+            throw new IllegalStateException("The string length is not valid: " + length);
+        }
+        byte[] bytes = new byte[length];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The location of a record in a segment
+     *
+     */
+    private static class Location {
+
+        private final Segment segment;
+
+        private final int offset;
+
+        private final int size;
+
+        /**
+         * Constructor
+         *
+         * @param segment the segment
+         * @param offset the offset of the record
+         * @param size the size of the record
+         */
+        private Location(Segment segment, int offset, int size) {
+            this.segment = segment;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        /**
+         * Gets the record
+         *
+         * @return a slice of the segment, of the record
+         */
+        private ByteBuffer slice() {
+            return segment.slice(offset, size);
+        }
+
+        /**
+         * Gets the record, read only
+         *
+         * @return a read only slice of the segment, of the record
+         */
+        private ByteBuffer record() {
+            return slice().asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * A segment file, mapped in full, the records are appended at the position
+     *
+     */
+    private static class Segment {
+
+        private final int id;
+
+        private final Path path;
+
+        private final FileChannel channel;
+
+        private final MappedByteBuffer buffer;
+
+        private int position;
+
+        private long liveBytes;
+
+        /**
+         * Constructor
+         *
+         * @param id the id
+         * @param path the path
+         * @param channel the channel
+         * @param buffer the mapped buffer
+         */
+        private Segment(int id, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Gets the bytes remaining
+         *
+         * @return the bytes remaining
+         */
+        private int remaining() {
+            return buffer.capacity() - position;
+        }
+
+        /**
+         * Gets a slice of the segment, the mapped buffer itself is never repositioned, so it can be sliced by
+         * concurrent readers
+         *
+         * @param offset the offset
+         * @param size the size
+         * @return the slice
+         */
+        private ByteBuffer slice(int offset, int size) {
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(offset);
+            slice.limit(offset + size);
+            return slice.slice();
+        }
+
+        /**
+         * Closes the segment, flushing the mapped buffer, the mapping remains valid for the responses still
+         * referencing it
+         *
+         */
+        private void close() {
+            buffer.force();
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                // ignored, the segment is finished
+            }
+        }
+
+        /**
+         * Closes and deletes the segment
+         *
+         */
+        private void delete() {
+            try {
+                channel.close();
+                Files.deleteIfExists(path);
+            } catch (IOException ex) {
+                // ignored, the segment is recovered, and reclaimed again, on the next restart
+            }
+        }
+
+        /**
+         * Creates or opens the segment
+         *
+         * @param directory the directory
+         * @param id the id
+         * @param size the size of the segment
+         * @return the segment
+         */
+        private static Segment create(Path directory, int id, int size) throws IOException {
+            Path path = directory.resolve(String.format("segment-%08d.dat", id));
+            FileChannel channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+            try {
+                return new Segment(id, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            } catch (IOException ex) {
+                channel.close();
+                throw ex;
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package uk.co.gcwilliams.async.http.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The in memory cache storage, bounded by the number of responses and their bytes, evicting by segmented LRU. A
+ * response is stored in the probation segment, and promoted to the protected segment when it is hit again, so a scan
+ * of responses which are only requested once does not flush the responses which are requested repeatedly. The
+ * protected segment holds at most 80% of the bounds, the least recently used protected responses are demoted back
+ * to probation, and the responses are evicted from probation first.
+ *
+ * @author : Gareth Williams
+ **/
+public class MemoryCacheStorage implements CacheStorage {
+
+    private static final double PROTECTED_RATIO = 0.8;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final LinkedHashMap<String, CachedResponse> probation = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LinkedHashMap<String, CachedResponse> protect = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final int maxEntries;
+
+    private final long maxBytes;
+
+    private final int maxProtectedEntries;
+
+    private final long maxProtectedBytes;
+
+    private long bytes;
+
+    private long protectedBytes;
+
+    /**
+     * Constructor
+     *
+     * @param maxEntries the maximum number of responses
+     * @param maxBytes the maximum bytes of the responses
+     */
+    public MemoryCacheStorage(int maxEntries, long maxBytes) {
+        if (maxEntries <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("the maximum entries and bytes should be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.maxProtectedEntries = (int) (maxEntries * PROTECTED_RATIO);
+        this.maxProtectedBytes = (long) (maxBytes * PROTECTED_RATIO);
+    }
+
+    @Override
+    public CachedResponse get(String key) {
+        lock.lock();
+        try {
+            CachedResponse response = protect.get(key);
+            if (response != null) {
+                return response;
+            }
+            response = probation.remove(key);
+            if (response != null) {
+                protect.put(key, response);
+                protectedBytes += response.getWeight();
+                demote();
+            }
+            return response;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(String key, CachedResponse response) {
+        long weight = response.getWeight();
+        lock.lock();
+        try {
+            remove0(key);
+            if (weight > maxBytes) {
+                return;
+            }
+            probation.put(key, response);
+            bytes += weight;
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        lock.lock();
+        try {
+            remove0(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of responses
+     *
+     * @return the number of responses
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return probation.size() + protect.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the response, holding the lock
+     *
+     * @param key the key
+     */
+    private void remove0(String key) {
+        CachedResponse response = probation.remove(key);
+        if (response == null) {
+            response = protect.remove(key);
+            if (response != null) {
+                protectedBytes -= response.getWeight();
+            }
+        }
+        if (response != null) {
+            bytes -= response.getWeight();
+        }
+    }
+
+    /**
+     * Demotes the least recently used protected responses to probation, until the protected segment is within its
+     * bounds, holding the lock
+     *
+     */
+    private void demote() {
+        Iterator<Map.Entry<String, CachedResponse>> lru = protect.entrySet().iterator();
+        while ((protect.size() > maxProtectedEntries || protectedBytes > maxProtectedBytes) && lru.hasNext()) {
+            Map.Entry<String, CachedResponse> demoted = lru.next();
+            lru.remove();
+            protectedBytes -= demoted.getValue().getWeight();
+            probation.put(demoted.getKey(), demoted.getValue());
+        }
+    }
+
+    /**
+     * Evicts the least recently used responses, from probation first, until the storage is within its bounds,
+     * holding the lock
+     *
+     */
+    private void evict() {
+        while (probation.size() + protect.size() > maxEntries || bytes > maxBytes) {
+            boolean fromProbation = !probation.isEmpty();
+            Iterator<Map.Entry<String, CachedResponse>> lru = (fromProbation ? probation : protect).entrySet().iterator();
+            CachedResponse evicted = lru.next().getValue();
+            lru.remove();
+            bytes -= evicted.getWeight();
+            if (!fromProbation) {
+                protectedBytes -= evicted.getWeight();
+            }
+        }
+    }
+}
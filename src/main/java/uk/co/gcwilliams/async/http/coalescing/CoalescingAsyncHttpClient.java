@@ -0,0 +1,366 @@
+package uk.co.gcwilliams.async.http.coalescing;
+
+import uk.co.gcwilliams.async.http.AsyncHttpClient;
+import uk.co.gcwilliams.async.http.AsyncHttpRequest;
+import uk.co.gcwilliams.async.http.AsyncHttpRequest.HttpMethod;
+import uk.co.gcwilliams.async.http.AsyncHttpResponse;
+import uk.co.gcwilliams.async.http.Cancellable;
+import uk.co.gcwilliams.async.http.Task;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The coalescing async HTTP client, decorates an async HTTP client, so concurrent identical GET and HEAD requests
+ * share one request in flight. The requests are identical when their method, URI and key headers are equal. The body
+ * of the shared response is buffered once, and each caller is given its own response, with an independent view of the
+ * body. Cancelling a caller only cancels the shared request once every caller has cancelled.
+ *
+ * <p>The first caller's request is sent, so its timeouts apply to the callers which join it. Streamed responses, and
+ * requests with their own listeners, are not coalesced.
+ *
+ * @author : Gareth Williams
+ **/
+public class CoalescingAsyncHttpClient implements AsyncHttpClient {
+
+    private final Map<Key, Flight> flights = new ConcurrentHashMap<>();
+
+    private final AsyncHttpClient client;
+
+    private final Set<String> keyHeaders;
+
+    /**
+     * Constructor
+     *
+     * @param client the client
+     * @param keyHeaders the lower case names of the key headers, or null if all the headers are in the key
+     */
+    private CoalescingAsyncHttpClient(AsyncHttpClient client, Set<String> keyHeaders) {
+        this.client = client;
+        this.keyHeaders = keyHeaders;
+    }
+
+    @Override
+    public Task<AsyncHttpResponse> prepare(AsyncHttpRequest request) {
+        if ((request.getMethod() != HttpMethod.GET && request.getMethod() != HttpMethod.HEAD)
+                || request.isStreamResponse()
+                || !request.getListeners().isEmpty()) {
+            return client.prepare(request);
+        }
+        return Task.cancellable((resolve, reject) -> join(request, new Caller(resolve, reject)));
+    }
+
+    @Override
+    public void close() throws Exception {
+        client.close();
+    }
+
+    /**
+     * Joins the flight of the request, starting it if there is none in flight
+     *
+     * @param request the request
+     * @param caller the caller
+     * @return the cancellable, which leaves the flight
+     */
+    private Cancellable join(AsyncHttpRequest request, Caller caller) {
+        Key key = new Key(request, keyHeaders);
+        while (true) {
+            Flight flight = flights.computeIfAbsent(key, Flight::new);
+            if (flight.join(request, caller)) {
+                return () -> flight.leave(caller);
+            }
+            flights.remove(key, flight); // completed, though not yet removed
+        }
+    }
+
+    /**
+     * Creates the builder
+     *
+     * @param client the client to decorate
+     * @return the builder
+     */
+    public static Builder builder(AsyncHttpClient client) {
+        return new Builder(client);
+    }
+
+    /**
+     * The key of a request, its method, URI and key headers, the header names are lower case
+     *
+     */
+    private static class Key {
+
+        private final HttpMethod method;
+
+        private final URI uri;
+
+        private final Map<String, List<String>> headers;
+
+        private final int hashCode;
+
+        /**
+         * Constructor
+         *
+         * @param request the request
+         * @param keyHeaders the lower case names of the key headers, or null if all the headers are in the key
+         */
+        private Key(AsyncHttpRequest request, Set<String> keyHeaders) {
+            this.method = request.getMethod();
+            this.uri = request.getUri();
+            this.headers = new HashMap<>();
+            for (Map.Entry<String, List<String>> header : request.getHeaders().entrySet()) {
+                String name = header.getKey().toLowerCase(Locale.ROOT);
+                if (keyHeaders == null || keyHeaders.contains(name)) {
+                    headers.put(name, header.getValue());
+                }
+            }
+            this.hashCode = Objects.hash(method, uri, headers);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return method == key.method && uri.equals(key.uri) && headers.equals(key.headers);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * A caller of a flight
+     *
+     */
+    private static class Caller {
+
+        private final Consumer<AsyncHttpResponse> resolve;
+
+        private final Consumer<Exception> reject;
+
+        /**
+         * Constructor
+         *
+         * @param resolve the resolve function
+         * @param reject the reject function
+         */
+        private Caller(Consumer<AsyncHttpResponse> resolve, Consumer<Exception> reject) {
+            this.resolve = resolve;
+            this.reject = reject;
+        }
+    }
+
+    /**
+     * A request in flight, shared by its callers, the first caller to join sends the request, and the flight is done
+     * once it completes, or every caller has left
+     *
+     */
+    private class Flight {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final List<Caller> callers = new ArrayList<>();
+
+        private final Key key;
+
+        private boolean started;
+
+        private boolean done;
+
+        private Cancellable cancellable;
+
+        /**
+         * Constructor
+         *
+         * @param key the key
+         */
+        private Flight(Key key) {
+            this.key = key;
+        }
+
+        /**
+         * Joins the flight, the first caller sends the request
+         *
+         * @param request the request
+         * @param caller the caller
+         * @return true if joined, false if the flight is done
+         */
+        private boolean join(AsyncHttpRequest request, Caller caller) {
+            lock.lock();
+            try {
+                if (done) {
+                    return false;
+                }
+                callers.add(caller);
+                if (started) {
+                    return true;
+                }
+                started = true;
+            } finally {
+                lock.unlock();
+            }
+            Cancellable cancellable = client.prepare(request).fork(this::resolved, this::rejected);
+            lock.lock();
+            try {
+                if (!done || !callers.isEmpty()) {
+                    this.cancellable = cancellable;
+                    return true;
+                }
+            } finally {
+                lock.unlock();
+            }
+            cancellable.cancel(); // every caller left while the request was sent
+            return true;
+        }
+
+        /**
+         * Leaves the flight, cancelling the request once every caller has left
+         *
+         * @param caller the caller
+         * @return true if left, false if the flight is done
+         */
+        private boolean leave(Caller caller) {
+            Cancellable cancellable;
+            lock.lock();
+            try {
+                if (done || !callers.remove(caller)) {
+                    return false;
+                }
+                if (!callers.isEmpty()) {
+                    return true;
+                }
+                done = true;
+                cancellable = this.cancellable;
+            } finally {
+                lock.unlock();
+            }
+            flights.remove(key, this);
+            if (cancellable != null) {
+                cancellable.cancel();
+            }
+            return true;
+        }
+
+        /**
+         * Resolves the callers, each with its own response, the body is buffered once, and each response has an
+         * independent read only view of it
+         *
+         * @param response the response
+         */
+        private void resolved(AsyncHttpResponse response) {
+            List<Caller> callers = complete();
+            if (callers.isEmpty()) {
+                return;
+            }
+            ByteBuffer body;
+            try {
+                body = ByteBuffer.wrap(response.getBody().readAllBytes()).asReadOnlyBuffer();
+            } catch (IOException ex) {
+                callers.forEach(caller -> caller.reject.accept(ex));
+                return;
+            }
+            Map<String, List<String>> headers = response.getHeaders()
+                .entrySet()
+                .stream()
+                .collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, header -> List.copyOf(header.getValue())));
+            for (Caller caller : callers) {
+                caller.resolve.accept(AsyncHttpResponse.builder()
+                    .withStatusCode(response.getStatusCode())
+                    .withHeaders(headers)
+                    .withBody(body.duplicate())
+                    .build());
+            }
+        }
+
+        /**
+         * Rejects the callers
+         *
+         * @param exception the exception
+         */
+        private void rejected(Exception exception) {
+            complete().forEach(caller -> caller.reject.accept(exception));
+        }
+
+        /**
+         * Completes the flight, so later callers start a new flight
+         *
+         * @return the callers to complete
+         */
+        private List<Caller> complete() {
+            List<Caller> completed;
+            lock.lock();
+            try {
+                if (done) {
+                    return List.of();
+                }
+                done = true;
+                completed = List.copyOf(callers);
+            } finally {
+                lock.unlock();
+            }
+            flights.remove(key, this);
+            return completed;
+        }
+    }
+
+    /**
+     * The builder
+     *
+     */
+    public static class Builder {
+
+        private final AsyncHttpClient client;
+
+        private Set<String> keyHeaders;
+
+        private Builder(AsyncHttpClient client) {
+            this.client = client;
+        }
+
+        /**
+         * Sets the names of the headers in the key, the requests are only coalesced when these headers are equal,
+         * and the other headers are ignored, defaults to all the headers
+         *
+         * @param keyHeaders the names of the key headers
+         * @return the builder
+         */
+        public Builder withKeyHeaders(Set<String> keyHeaders) {
+            this.keyHeaders = keyHeaders;
+            return this;
+        }
+
+        /**
+         * Builds the coalescing async HTTP client
+         *
+         * @return the coalescing async HTTP client
+         */
+        public CoalescingAsyncHttpClient build() {
+            requireNonNull(client, "the client should be provided");
+            return new CoalescingAsyncHttpClient(
+                client,
+                keyHeaders != null
+                    ? keyHeaders.stream().map(name -> name.toLowerCase(Locale.ROOT)).collect(Collectors.toUnmodifiableSet())
+                    : null);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package uk.co.gcwilliams.async.http.hedging;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The hedge budget of a host, a token bucket, each hedgeable request deposits the budget of its policy, a fraction
+ * of a token, and each hedge withdraws a whole token, so the hedges are capped at the fraction of the requests. The
+ * balance is capped, so an idle host cannot save up a burst of hedges.
+ *
+ * @author : Gareth Williams
+ **/
+class HedgeBudget {
+
+    private static final long TOKEN = 1000;
+
+    private static final long MAX_BALANCE = 10 * TOKEN;
+
+    private final AtomicLong balance = new AtomicLong();
+
+    /**
+     * Deposits the budget of a request
+     *
+     * @param budget the budget, the fraction of a token
+     */
+    void deposit(double budget) {
+        balance.accumulateAndGet((long) (budget * TOKEN), (balance, deposit) -> Math.min(balance + deposit, MAX_BALANCE));
+    }
+
+    /**
+     * Withdraws the token of a hedge
+     *
+     * @return true if the budget allows the hedge, false otherwise
+     */
+    boolean withdraw() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+}
@@ -0,0 +1,317 @@
+package uk.co.gcwilliams.async.http.hedging;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import uk.co.gcwilliams.async.http.AsyncHttpClient;
+import uk.co.gcwilliams.async.http.AsyncHttpRequest;
+import uk.co.gcwilliams.async.http.AsyncHttpResponse;
+import uk.co.gcwilliams.async.http.Cancellable;
+import uk.co.gcwilliams.async.http.Task;
+import uk.co.gcwilliams.async.http.util.BodyPublishers;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The hedging async HTTP client, decorates an async HTTP client, sending a duplicate, a hedge, of a request which has
+ * not been answered within the delay of its {@link HedgingPolicy}. The first response wins, and the other request is
+ * cancelled. A request which fails is not retried, the failure is only propagated once no other request is in flight.
+ *
+ * @author : Gareth Williams
+ **/
+public class HedgingAsyncHttpClient implements AsyncHttpClient {
+
+    private final AsyncHttpClient client;
+
+    private final HedgingPolicy policy;
+
+    private final Map<String, HedgingPolicy> hostPolicies;
+
+    private final Timer timer;
+
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param client the client
+     * @param policy the default policy, or null if only the hosts with a policy are hedged
+     * @param hostPolicies the policies of the hosts
+     * @param timer the timer of the hedge delays
+     */
+    private HedgingAsyncHttpClient(
+            AsyncHttpClient client,
+            HedgingPolicy policy,
+            Map<String, HedgingPolicy> hostPolicies,
+            Timer timer) {
+        this.client = client;
+        this.policy = policy;
+        this.hostPolicies = hostPolicies;
+        this.timer = timer;
+    }
+
+    @Override
+    public Task<AsyncHttpResponse> prepare(AsyncHttpRequest request) {
+        return prepare(request, hostPolicies.getOrDefault(request.getUri().getHost(), policy));
+    }
+
+    /**
+     * Prepares the request, hedged by the policy, rather than the policy of the host
+     *
+     * @param request the request
+     * @param policy the policy, or null if the request should not be hedged
+     * @return the task to get the response
+     */
+    public Task<AsyncHttpResponse> prepare(AsyncHttpRequest request, HedgingPolicy policy) {
+        if (policy == null || !policy.isHedgeable(request)) {
+            return client.prepare(request);
+        }
+        return Task.cancellable((resolve, reject) -> {
+            Host host = hosts.computeIfAbsent(request.getUri().getAuthority(), authority -> new Host());
+            host.budget.deposit(policy.getBudget());
+            return new Hedge(request, host, resolve, reject).start(policy.getDelayNanos(host.latencies));
+        });
+    }
+
+    @Override
+    public void close() throws Exception {
+        timer.stop();
+        client.close();
+    }
+
+    /**
+     * Creates the builder
+     *
+     * @param client the client to decorate
+     * @return the builder
+     */
+    public static Builder builder(AsyncHttpClient client) {
+        return new Builder(client);
+    }
+
+    /**
+     * The latencies and hedge budget of a host
+     *
+     */
+    private static class Host {
+
+        private final LatencyHistogram latencies = new LatencyHistogram();
+
+        private final HedgeBudget budget = new HedgeBudget();
+    }
+
+    /**
+     * A hedged request, the first request is sent as the hedge starts, and the hedge once the delay expires, if the
+     * request has not completed and the budget allows
+     *
+     */
+    private class Hedge implements Cancellable {
+
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private final AtomicInteger inFlight = new AtomicInteger(1);
+
+        private final long startedAt = System.nanoTime();
+
+        private final AsyncHttpRequest request;
+
+        private final Host host;
+
+        private final Consumer<AsyncHttpResponse> resolve;
+
+        private final Consumer<Exception> reject;
+
+        private volatile Cancellable first;
+
+        private volatile Cancellable second;
+
+        private volatile Timeout timeout;
+
+        /**
+         * Constructor
+         *
+         * @param request the request
+         * @param host the host
+         * @param resolve the resolve function
+         * @param reject the reject function
+         */
+        private Hedge(
+                AsyncHttpRequest request,
+                Host host,
+                Consumer<AsyncHttpResponse> resolve,
+                Consumer<Exception> reject) {
+            this.request = request;
+            this.host = host;
+            this.resolve = resolve;
+            this.reject = reject;
+        }
+
+        /**
+         * Starts the hedge, sending the first request
+         *
+         * @param delayNanos the delay of the hedge in nanoseconds
+         * @return the hedge
+         */
+        private Hedge start(long delayNanos) {
+            first = send();
+            if (!done.get()) {
+                timeout = timer.newTimeout(timeout -> hedge(), delayNanos, TimeUnit.NANOSECONDS);
+                if (done.get()) {
+                    timeout.cancel();
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Sends the hedge, once the delay expires, unless the request has completed or the budget is spent
+         *
+         */
+        private void hedge() {
+            if (done.get() || !host.budget.withdraw()) {
+                return;
+            }
+            inFlight.incrementAndGet();
+            second = send();
+            if (done.get()) {
+                second.cancel();
+            }
+        }
+
+        /**
+         * Sends the request
+         *
+         * @return the cancellable
+         */
+        private Cancellable send() {
+            return client.prepare(request).fork(this::resolved, this::rejected);
+        }
+
+        /**
+         * Resolves the hedge with the first response, cancelling the other request, a later response is discarded.
+         * The latency of the first request is recorded, when the hedge wins, the time since the first request was
+         * sent is its lower bound, so the hedge's own, shorter, latency does not lower the delay of later hedges
+         *
+         * @param response the response
+         */
+        private void resolved(AsyncHttpResponse response) {
+            if (!done.compareAndSet(false, true)) {
+                if (request.isStreamResponse()) {
+                    BodyPublishers.discard(response.getBodyPublisher()); // the body holds the connection
+                }
+                return;
+            }
+            host.latencies.record(System.nanoTime() - startedAt);
+            stop();
+            resolve.accept(response);
+        }
+
+        /**
+         * Rejects the hedge, once no other request is in flight, and the hedge can no longer be sent
+         *
+         * @param exception the exception
+         */
+        private void rejected(Exception exception) {
+            if (inFlight.decrementAndGet() > 0 || !done.compareAndSet(false, true)) {
+                return;
+            }
+            stop();
+            reject.accept(exception);
+        }
+
+        /**
+         * Stops the hedge, cancelling the delay and the requests in flight
+         *
+         */
+        private void stop() {
+            Timeout timeout = this.timeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            cancel(first);
+            cancel(second);
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!done.compareAndSet(false, true)) {
+                return false;
+            }
+            stop();
+            return true;
+        }
+
+        /**
+         * Cancels the request, if it has been sent
+         *
+         * @param cancellable the cancellable
+         */
+        private void cancel(Cancellable cancellable) {
+            if (cancellable != null) {
+                cancellable.cancel();
+            }
+        }
+    }
+
+    /**
+     * The builder
+     *
+     */
+    public static class Builder {
+
+        private final AsyncHttpClient client;
+
+        private final Map<String, HedgingPolicy> hostPolicies = new HashMap<>();
+
+        private HedgingPolicy policy;
+
+        private Builder(AsyncHttpClient client) {
+            this.client = client;
+        }
+
+        /**
+         * Sets the default policy, of the hosts without a policy, defaults to none, no hedging
+         *
+         * @param policy the policy
+         * @return the builder
+         */
+        public Builder withPolicy(HedgingPolicy policy) {
+            this.policy = policy;
+            return this;
+        }
+
+        /**
+         * Sets the policy of the host
+         *
+         * @param host the host
+         * @param policy the policy
+         * @return the builder
+         */
+        public Builder withPolicy(String host, HedgingPolicy policy) {
+            hostPolicies.put(
+                requireNonNull(host, "the host should be provided"),
+                requireNonNull(policy, "the policy should be provided"));
+            return this;
+        }
+
+        /**
+         * Builds the hedging async HTTP client
+         *
+         * @return the hedging async HTTP client
+         */
+        public HedgingAsyncHttpClient build() {
+            requireNonNull(client, "the client should be provided");
+            Timer timer = new HashedWheelTimer(new DefaultThreadFactory("async-http-hedging-timer", true), 1, TimeUnit.MILLISECONDS);
+            return new HedgingAsyncHttpClient(client, policy, Map.copyOf(hostPolicies), timer);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package uk.co.gcwilliams.async.http.hedging;
+
+import uk.co.gcwilliams.async.http.AsyncHttpRequest;
+import uk.co.gcwilliams.async.http.AsyncHttpRequest.HttpMethod;
+import uk.co.gcwilliams.async.http.AsyncHttpRequestBody.PublisherBody;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The hedging policy, when a duplicate of a request is sent, if the request has not been answered. The delay is
+ * either fixed, or adaptive, the latency percentile of the recent responses from the host, and the hedges are capped
+ * by a budget, a fraction of the requests to the host. Only idempotent requests, without a streamed body, are hedged.
+ *
+ * @author : Gareth Williams
+ **/
+public class HedgingPolicy {
+
+    private final Duration delay;
+
+    private final Double percentile;
+
+    private final int minSamples;
+
+    private final double budget;
+
+    private final Set<HttpMethod> methods;
+
+    /**
+     * Constructor
+     *
+     * @param delay the delay, or the initial delay of an adaptive policy
+     * @param percentile the latency percentile, or null if the delay is fixed
+     * @param minSamples the minimum number of samples before the percentile is used
+     * @param budget the budget, the fraction of requests which may be hedged
+     * @param methods the methods which may be hedged
+     */
+    private HedgingPolicy(Duration delay, Double percentile, int minSamples, double budget, Set<HttpMethod> methods) {
+        this.delay = delay;
+        this.percentile = percentile;
+        this.minSamples = minSamples;
+        this.budget = budget;
+        this.methods = methods;
+    }
+
+    /**
+     * Gets the delay, or the initial delay of an adaptive policy
+     *
+     * @return the delay
+     */
+    public Duration getDelay() {
+        return delay;
+    }
+
+    /**
+     * Gets the latency percentile
+     *
+     * @return the latency percentile, or null if the delay is fixed
+     */
+    public Double getPercentile() {
+        return percentile;
+    }
+
+    /**
+     * Gets the budget, the fraction of requests which may be hedged
+     *
+     * @return the budget
+     */
+    public double getBudget() {
+        return budget;
+    }
+
+    /**
+     * Gets the methods which may be hedged
+     *
+     * @return the methods
+     */
+    public Set<HttpMethod> getMethods() {
+        return methods;
+    }
+
+    /**
+     * Determines if the request may be hedged, a streamed body can only be published once, so is never hedged
+     *
+     * @param request the request
+     * @return true if the request may be hedged, false otherwise
+     */
+    boolean isHedgeable(AsyncHttpRequest request) {
+        return methods.contains(request.getMethod()) && !(request.getRequestBody() instanceof PublisherBody);
+    }
+
+    /**
+     * Gets the delay of the hedge
+     *
+     * @param latencies the latencies of the host
+     * @return the delay in nanoseconds
+     */
+    long getDelayNanos(LatencyHistogram latencies) {
+        if (percentile != null) {
+            long nanos = latencies.getPercentile(percentile, minSamples);
+            if (nanos >= 0) {
+                return nanos;
+            }
+        }
+        return delay.toNanos();
+    }
+
+    /**
+     * Creates the builder
+     *
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * The builder
+     *
+     */
+    public static class Builder {
+
+        private Duration delay = Duration.ofMillis(50);
+
+        private Double percentile;
+
+        private int minSamples = 100;
+
+        private double budget = 0.1;
+
+        private Set<HttpMethod> methods = EnumSet.of(
+            HttpMethod.GET,
+            HttpMethod.HEAD,
+            HttpMethod.PUT,
+            HttpMethod.DELETE,
+            HttpMethod.OPTIONS);
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the delay before the hedge is sent, or the initial delay of an adaptive policy, defaults to 50ms
+         *
+         * @param delay the delay
+         * @return the builder
+         */
+        public Builder withDelay(Duration delay) {
+            this.delay = delay;
+            return this;
+        }
+
+        /**
+         * Sets the latency percentile, e.g. 0.95, which makes the delay adaptive, the hedge is sent once the request
+         * is slower than the percentile of the recent responses from the host
+         *
+         * @param percentile the percentile
+         * @return the builder
+         */
+        public Builder withPercentile(double percentile) {
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * Sets the minimum number of responses from the host before the percentile is used, defaults to 100
+         *
+         * @param minSamples the minimum number of samples
+         * @return the builder
+         */
+        public Builder withMinSamples(int minSamples) {
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /**
+         * Sets the budget, the fraction of the requests to the host which may be hedged, defaults to 0.1
+         *
+         * @param budget the budget
+         * @return the builder
+         */
+        public Builder withBudget(double budget) {
+            this.budget = budget;
+            return this;
+        }
+
+        /**
+         * Sets the methods which may be hedged, defaults to the idempotent methods
+         *
+         * @param methods the methods
+         * @return the builder
+         */
+        public Builder withMethods(Set<HttpMethod> methods) {
+            this.methods = methods;
+            return this;
+        }
+
+        /**
+         * Builds the hedging policy
+         *
+         * @return the hedging policy
+         */
+        public HedgingPolicy build() {
+            requireNonNull(delay, "the delay should be provided");
+            requireNonNull(methods, "the methods should be provided");
+            checkState(!delay.isNegative(), "the delay should not be negative");
+            checkState(percentile == null || (percentile > 0 && percentile < 1), "the percentile should be between 0 and 1");
+            checkState(minSamples > 0, "the minimum number of samples should be positive");
+            checkState(budget >= 0 && budget <= 1, "the budget should be between 0 and 1");
+            return new HedgingPolicy(
+                delay,
+                percentile,
+                minSamples,
+                budget,
+                Collections.unmodifiableSet(methods.isEmpty() ? EnumSet.noneOf(HttpMethod.class) : EnumSet.copyOf(methods)));
+        }
+
+        /**
+         * Checks the state
+         *
+         * @param state the state
+         * @param message the message
+         */
+        private static void checkState(boolean state, String message) {
+            if (!state) {
+                throw new IllegalStateException(message);
+            }
+        }
+    }
+}
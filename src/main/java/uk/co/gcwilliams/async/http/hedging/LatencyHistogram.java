@@ -0,0 +1,84 @@
+package uk.co.gcwilliams.async.http.hedging;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The latency histogram of the responses from a host, the buckets grow exponentially from 10µs, so a percentile is
+ * within 20% of the recorded latency. The counts are halved every {@link #DECAY_INTERVAL} samples, so the histogram
+ * follows the recent latencies of the host.
+ *
+ * @author : Gareth Williams
+ **/
+class LatencyHistogram {
+
+    private static final long DECAY_INTERVAL = 10_000;
+
+    private static final long[] BOUNDS = bounds(10_000, 1.2, 100);
+
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length);
+
+    private final AtomicLong samples = new AtomicLong();
+
+    /**
+     * Records the latency
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    void record(long nanos) {
+        int idx = Arrays.binarySearch(BOUNDS, nanos);
+        counts.incrementAndGet(Math.min(idx < 0 ? -idx - 1 : idx, BOUNDS.length - 1));
+        if (samples.incrementAndGet() % DECAY_INTERVAL == 0) {
+            for (int bucket = 0; bucket < BOUNDS.length; bucket++) {
+                counts.getAndUpdate(bucket, count -> count / 2);
+            }
+        }
+    }
+
+    /**
+     * Gets the percentile of the latencies, the upper bound of the bucket holding the percentile
+     *
+     * @param percentile the percentile
+     * @param minSamples the minimum number of samples
+     * @return the percentile in nanoseconds, or -1 if there are fewer samples than the minimum
+     */
+    long getPercentile(double percentile, int minSamples) {
+        long[] snapshot = new long[BOUNDS.length];
+        long total = 0;
+        for (int bucket = 0; bucket < BOUNDS.length; bucket++) {
+            snapshot[bucket] = counts.get(bucket);
+            total += snapshot[bucket];
+        }
+        if (total < minSamples) {
+            return -1;
+        }
+        long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int bucket = 0; bucket < BOUNDS.length; bucket++) {
+            seen += snapshot[bucket];
+            if (seen >= rank) {
+                return BOUNDS[bucket];
+            }
+        }
+        return BOUNDS[BOUNDS.length - 1];
+    }
+
+    /**
+     * Creates the upper bounds of the buckets
+     *
+     * @param first the upper bound of the first bucket in nanoseconds
+     * @param growth the growth of each bucket
+     * @param buckets the number of buckets
+     * @return the upper bounds
+     */
+    private static long[] bounds(long first, double growth, int buckets) {
+        long[] bounds = new long[buckets];
+        double bound = first;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            bounds[bucket] = (long) bound;
+            bound *= growth;
+        }
+        return bounds;
+    }
+}
@@ -0,0 +1,87 @@
+package uk.co.gcwilliams.async.http.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.concurrent.FastThreadLocal;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses request bodies with gzip, RFC 1952, into a pooled direct buffer, which is written to the channel without
+ * a further copy. Each thread reuses its deflater, so a body does not allocate the native state of a deflater.
+ *
+ * @author : Gareth Williams
+ **/
+final class BodyCompressor {
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private static final int MIN_WRITABLE = 8192;
+
+    private static final FastThreadLocal<Deflater> DEFLATERS = new FastThreadLocal<>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+
+        @Override
+        protected void onRemoval(Deflater deflater) {
+            deflater.end();
+        }
+    };
+
+    private BodyCompressor() { // static
+    }
+
+    /**
+     * Compresses the body with gzip, the positions of the buffers are not changed
+     *
+     * @param allocator the allocator of the compressed body
+     * @param buffers the buffers of the body
+     * @param contentLength the length of the body
+     * @param level the compression level
+     * @return the compressed body
+     */
+    static ByteBuf gzip(ByteBufAllocator allocator, ByteBuffer[] buffers, long contentLength, int level) {
+        Deflater deflater = DEFLATERS.get();
+        deflater.setLevel(level);
+        CRC32 crc = new CRC32();
+        ByteBuf compressed = allocator.directBuffer((int) Math.min(Integer.MAX_VALUE, contentLength / 4 + MIN_WRITABLE));
+        try {
+            compressed.writeBytes(GZIP_HEADER);
+            for (ByteBuffer buffer : buffers) {
+                crc.update(buffer.duplicate());
+                deflater.setInput(buffer.duplicate());
+                while (!deflater.needsInput()) {
+                    deflate(deflater, compressed);
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate(deflater, compressed);
+            }
+            compressed.writeIntLE((int) crc.getValue());
+            compressed.writeIntLE((int) deflater.getBytesRead());
+            return compressed;
+        } catch (RuntimeException ex) {
+            compressed.release();
+            throw ex;
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    /**
+     * Deflates into the compressed body, growing it as needed
+     *
+     * @param deflater the deflater
+     * @param compressed the compressed body
+     */
+    private static void deflate(Deflater deflater, ByteBuf compressed) {
+        compressed.ensureWritable(MIN_WRITABLE);
+        int length = deflater.deflate(compressed.nioBuffer(compressed.writerIndex(), compressed.writableBytes()));
+        compressed.writerIndex(compressed.writerIndex() + length);
+    }
+}
@@ -0,0 +1,134 @@
+package uk.co.gcwilliams.async.http.impl;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The completion executors, on which the responses, failures and listeners of the HTTP client are called
+ *
+ * @author : Gareth Williams
+ **/
+public class CompletionExecutors {
+
+    private static final String VIRTUAL_THREAD_EXECUTOR = "newVirtualThreadPerTaskExecutor";
+
+    private static final Executor DIRECT = Runnable::run;
+
+    private CompletionExecutors() { // static
+    }
+
+    /**
+     * Gets the direct executor, which runs the completions inline, on the event loop which read the response, so
+     * there is no thread hand off. The consumers, listeners, and streamed body subscribers must not block, as
+     * blocking stalls every connection of the event loop. A request which times out before it is sent is completed
+     * on the timer thread.
+     * <p>
+     * The input stream of a streamed response must not be read within a completion, as it blocks the event loop
+     * which would deliver the chunks, subscribe to the body publisher instead. The streamed request bodies are not
+     * requested on the direct executor, but on a separate bounded executor owned by the client, so blocking input
+     * streams are not read on the event loop.
+     *
+     * @return the direct executor
+     */
+    public static Executor direct() {
+        return DIRECT;
+    }
+
+    /**
+     * Determines if the executor is the direct executor
+     *
+     * @param executor the executor
+     * @return true if direct, false otherwise
+     */
+    public static boolean isDirect(Executor executor) {
+        return executor == DIRECT;
+    }
+
+    /**
+     * Creates a bounded executor, with a fixed number of daemon threads, which time out when idle, the completions
+     * queue when all the threads are busy
+     *
+     * @param threads the number of threads
+     * @return the bounded executor
+     */
+    public static ExecutorService bounded(int threads) {
+        return bounded(threads, "async-http-completion");
+    }
+
+    /**
+     * Creates the default executor, bounded to twice the number of processors
+     *
+     * @return the default executor
+     */
+    public static ExecutorService bounded() {
+        return bounded(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * Creates the executor on which the streamed request bodies are requested, when the completions are direct,
+     * bounded to twice the number of processors
+     *
+     * @return the request body executor
+     */
+    static ExecutorService requestBodies() {
+        return bounded(Runtime.getRuntime().availableProcessors() * 2, "async-http-request-body");
+    }
+
+    /**
+     * Creates a bounded executor
+     *
+     * @param threads the number of threads
+     * @param poolName the pool name of the threads
+     * @return the bounded executor
+     */
+    private static ExecutorService bounded(int threads, String poolName) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("The number of threads should be positive");
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            threads,
+            threads,
+            60,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new DefaultThreadFactory(poolName, true));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Determines if the virtual thread executor is available, e.g. running on JDK 21 or later
+     *
+     * @return true if available, false otherwise
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod(VIRTUAL_THREAD_EXECUTOR);
+            return true;
+        } catch (NoSuchMethodException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates an executor which starts a new virtual thread for each completion, so the consumers can block cheaply,
+     * requires JDK 21 or later
+     *
+     * @return the virtual thread executor
+     */
+    public static ExecutorService virtualThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod(VIRTUAL_THREAD_EXECUTOR).invoke(null);
+        } catch (NoSuchMethodException ex) {
+            throw new IllegalStateException("Virtual threads require JDK 21 or later", ex);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Unable to create the virtual thread executor", ex);
+        }
+    }
+}
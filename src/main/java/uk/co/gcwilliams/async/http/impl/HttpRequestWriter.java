@@ -0,0 +1,206 @@
+package uk.co.gcwilliams.async.http.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
+import io.netty.handler.codec.http.HttpChunkedInput;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedNioFile;
+import uk.co.gcwilliams.async.http.AsyncHttpRequest;
+import uk.co.gcwilliams.async.http.AsyncHttpRequestBody;
+import uk.co.gcwilliams.async.http.AsyncHttpRequestBody.ByteBufferBody;
+import uk.co.gcwilliams.async.http.AsyncHttpRequestBody.FileBody;
+import uk.co.gcwilliams.async.http.AsyncHttpRequestBody.PublisherBody;
+import uk.co.gcwilliams.async.http.RequestCompression;
+import uk.co.gcwilliams.async.http.impl.handler.StreamingRequestBody;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+/**
+ * Writes the requests to the channels, the bodies are written without being copied, buffers are wrapped,
+ * and files are sent as a {@link io.netty.channel.FileRegion} (sendfile) on plaintext connections, or
+ * read in chunks with the {@link io.netty.handler.stream.ChunkedWriteHandler} on TLS connections and
+ * HTTP/2 streams, where the bytes must pass through the pipeline. Published bodies are written by a
+ * {@link StreamingRequestBody} as the chunks are published. Buffered bodies are gzip compressed when the
+ * {@link RequestCompression} of the request, or the client, applies to them
+ *
+ * @author : Gareth Williams
+ **/
+class HttpRequestWriter {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private HttpRequestWriter() { // static
+    }
+
+    /**
+     * Writes the request to the channel, failures are fired down the pipeline
+     *
+     * @param channel the channel
+     * @param request the request
+     * @param executor the executor, on which streamed bodies are requested
+     * @param compression the compression of the client, or null if none
+     */
+    static void write(Channel channel, AsyncHttpRequest request, Executor executor, RequestCompression compression) {
+        AsyncHttpRequestBody body = request.getRequestBody();
+        if (body instanceof FileBody) {
+            writeFile(channel, request, (FileBody) body);
+        } else if (body instanceof PublisherBody) {
+            Flow.Publisher<ByteBuffer> publisher;
+            try {
+                publisher = ((PublisherBody) body).getPublisher();
+            } catch (RuntimeException ex) {
+                channel.pipeline().fireExceptionCaught(ex);
+                return;
+            }
+            channel.writeAndFlush(createHttpRequest(request)).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+            // the body writes the chunks, and the last content, as they are published
+            channel.pipeline().addLast(StreamingRequestBody.class.getName(), new StreamingRequestBody(publisher, executor));
+        } else {
+            HttpRequest fullHttpRequest;
+            try {
+                fullHttpRequest = createFullHttpRequest(
+                    channel,
+                    request,
+                    (ByteBufferBody) body,
+                    request.getCompression() != null ? request.getCompression() : compression);
+            } catch (RuntimeException ex) {
+                channel.pipeline().fireExceptionCaught(ex);
+                return;
+            }
+            channel.writeAndFlush(fullHttpRequest).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+        }
+    }
+
+    /**
+     * Creates the netty HTTP request, with the buffered body, which is compressed if the compression applies to it
+     *
+     * @param channel the channel
+     * @param request the request
+     * @param body the body
+     * @param compression the compression, or null if none
+     * @return the netty request
+     */
+    private static HttpRequest createFullHttpRequest(
+            Channel channel,
+            AsyncHttpRequest request,
+            ByteBufferBody body,
+            RequestCompression compression) {
+        HttpHeaders headers = new DefaultHttpHeaders();
+        setHeaders(headers, request);
+        ByteBuf content;
+        if (compression != null
+                && body.getContentLength() > 0
+                && !headers.contains(HttpHeaderNames.CONTENT_ENCODING)
+                && compression.isCompressed(headers.get(HttpHeaderNames.CONTENT_TYPE), body.getContentLength())) {
+            content = BodyCompressor.gzip(channel.alloc(), body.getBuffers(), body.getContentLength(), compression.getLevel());
+            headers.set(HttpHeaderNames.CONTENT_ENCODING, HttpHeaderValues.GZIP);
+            headers.set(HttpHeaderNames.CONTENT_LENGTH, content.readableBytes());
+        } else {
+            content = Unpooled.wrappedBuffer(body.getBuffers());
+        }
+        return new DefaultFullHttpRequest(
+            HttpVersion.HTTP_1_1,
+            HttpMethod.valueOf(request.getMethod().name()),
+            request.getUri().toString(),
+            content,
+            headers,
+            EmptyHttpHeaders.INSTANCE);
+    }
+
+    /**
+     * Writes a request with a file body
+     *
+     * @param channel the channel
+     * @param request the request
+     * @param body the file body
+     */
+    private static void writeFile(Channel channel, AsyncHttpRequest request, FileBody body) {
+        FileChannel fileChannel;
+        try {
+            fileChannel = body.open();
+        } catch (IOException ex) {
+            channel.pipeline().fireExceptionCaught(ex);
+            return;
+        }
+        channel.write(createHttpRequest(request)).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+        if (isFileRegionSupported(channel)) {
+            // the region closes the file channel once it has been written
+            channel.write(new DefaultFileRegion(fileChannel, body.getPosition(), body.getContentLength()))
+                .addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+            channel.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+        } else {
+            try {
+                ChunkedNioFile chunkedFile = new ChunkedNioFile(fileChannel, body.getPosition(), body.getContentLength(), CHUNK_SIZE);
+                channel.writeAndFlush(new HttpChunkedInput(chunkedFile)).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+            } catch (IOException ex) {
+                channel.pipeline().fireExceptionCaught(ex);
+            }
+        }
+    }
+
+    /**
+     * Creates the netty HTTP request, without the body
+     *
+     * @param request the request
+     * @return the netty request
+     */
+    private static HttpRequest createHttpRequest(AsyncHttpRequest request) {
+        DefaultHttpRequest httpRequest = new DefaultHttpRequest(
+            HttpVersion.HTTP_1_1,
+            HttpMethod.valueOf(request.getMethod().name()),
+            request.getUri().toString());
+        setHeaders(httpRequest.headers(), request);
+        return httpRequest;
+    }
+
+    /**
+     * Sets the headers of the request
+     *
+     * @param headers the netty headers
+     * @param request the request
+     */
+    private static void setHeaders(HttpHeaders headers, AsyncHttpRequest request) {
+        request.getHeaders().forEach(headers::add);
+        headers.set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+        headers.set(HttpHeaderNames.HOST, request.getUri().getHost());
+        long contentLength = request.getRequestBody().getContentLength();
+        if (contentLength >= 0) {
+            headers.set(HttpHeaderNames.CONTENT_LENGTH, contentLength);
+        } else {
+            headers.remove(HttpHeaderNames.CONTENT_LENGTH);
+            headers.set(HttpHeaderNames.TRANSFER_ENCODING, HttpHeaderValues.CHUNKED);
+        }
+    }
+
+    /**
+     * Determines if a file region can be written to the channel, the bytes of a file region are transferred
+     * by the kernel, so it can only be written to a plain socket, which supports file regions
+     *
+     * @param channel the channel
+     * @return true if a file region can be written, false otherwise
+     */
+    private static boolean isFileRegionSupported(Channel channel) {
+        return (channel instanceof NioSocketChannel || channel instanceof EpollSocketChannel)
+            && channel.pipeline().get(SslHandler.class) == null;
+    }
+}
@@ -0,0 +1,80 @@
+package uk.co.gcwilliams.async.http.impl;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.incubator.channel.uring.IOUring;
+import io.netty.incubator.channel.uring.IOUringChannelOption;
+import io.netty.incubator.channel.uring.IOUringDatagramChannel;
+import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
+import io.netty.incubator.channel.uring.IOUringSocketChannel;
+import uk.co.gcwilliams.async.http.impl.pool.SocketConfiguration;
+
+/**
+ * The io_uring support, kept separate from {@link Transport} so the optional
+ * io_uring classes are only loaded when the transport is used
+ *
+ * @author : Gareth Williams
+ **/
+class IOUringSupport {
+
+    private IOUringSupport() { // static
+    }
+
+    /**
+     * Determines if io_uring is available
+     *
+     * @return true if available, false otherwise
+     */
+    static boolean isAvailable() {
+        return IOUring.isAvailable();
+    }
+
+    /**
+     * Gets the reason io_uring is unavailable
+     *
+     * @return the cause, or null if available
+     */
+    static Throwable unavailabilityCause() {
+        return IOUring.unavailabilityCause();
+    }
+
+    /**
+     * Creates the event loop group
+     *
+     * @param threads the number of threads
+     * @return the event loop group
+     */
+    static EventLoopGroup createEventLoopGroup(int threads) {
+        return new IOUringEventLoopGroup(threads);
+    }
+
+    /**
+     * Gets the socket channel class
+     *
+     * @return the socket channel class
+     */
+    static Class<? extends SocketChannel> getSocketChannelClass() {
+        return IOUringSocketChannel.class;
+    }
+
+    /**
+     * Gets the datagram channel class
+     *
+     * @return the datagram channel class
+     */
+    static Class<? extends DatagramChannel> getDatagramChannelClass() {
+        return IOUringDatagramChannel.class;
+    }
+
+    /**
+     * Configures the io_uring specific socket options
+     *
+     * @param bootstrap the bootstrap
+     * @param configuration the socket configuration
+     */
+    static void configure(Bootstrap bootstrap, SocketConfiguration configuration) {
+        bootstrap.option(IOUringChannelOption.TCP_QUICKACK, configuration.isTcpQuickAck());
+    }
+}
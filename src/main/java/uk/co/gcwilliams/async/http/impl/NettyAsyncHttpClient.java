@@ -1,38 +1,45 @@
 package uk.co.gcwilliams.async.http.impl;
 
-import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
-import io.netty.channel.ChannelPipeline;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.pool.ChannelPool;
-import io.netty.handler.codec.http.DefaultFullHttpRequest;
-import io.netty.handler.codec.http.FullHttpRequest;
-import io.netty.handler.codec.http.HttpClientCodec;
-import io.netty.handler.codec.http.HttpHeaderNames;
-import io.netty.handler.codec.http.HttpHeaderValues;
-import io.netty.handler.codec.http.HttpMethod;
-import io.netty.handler.codec.http.HttpVersion;
-import io.netty.handler.timeout.ReadTimeoutHandler;
-import io.netty.handler.timeout.WriteTimeoutHandler;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
 import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import io.netty.util.concurrent.GenericFutureListener;
 import uk.co.gcwilliams.async.http.AsyncHttpClient;
 import uk.co.gcwilliams.async.http.AsyncHttpClientListener;
 import uk.co.gcwilliams.async.http.AsyncHttpClientListenerFactory;
 import uk.co.gcwilliams.async.http.AsyncHttpRequest;
 import uk.co.gcwilliams.async.http.AsyncHttpResponse;
+import uk.co.gcwilliams.async.http.Cancellable;
+import uk.co.gcwilliams.async.http.RequestCompression;
 import uk.co.gcwilliams.async.http.Task;
-import uk.co.gcwilliams.async.http.impl.handler.HttpRequestInboundHandler;
-import uk.co.gcwilliams.async.http.impl.handler.HttpRequestOutboundHandler;
+import uk.co.gcwilliams.async.http.TlsHandshakeListener;
+import uk.co.gcwilliams.async.http.impl.handler.DefaultSslContext;
+import uk.co.gcwilliams.async.http.impl.handler.HttpRequestHandler;
+import uk.co.gcwilliams.async.http.impl.pool.AddressPicker;
+import uk.co.gcwilliams.async.http.impl.pool.AddressPickers;
 import uk.co.gcwilliams.async.http.impl.pool.HttpChannelPoolConfiguration;
 import uk.co.gcwilliams.async.http.impl.pool.HttpChannelPools;
+import uk.co.gcwilliams.async.http.impl.pool.SocketConfiguration;
+import uk.co.gcwilliams.async.http.impl.resolver.CachingDnsResolver;
 
+import javax.net.ssl.TrustManagerFactory;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -45,32 +52,59 @@ import static java.util.Objects.requireNonNull;
  **/
 public class NettyAsyncHttpClient implements AsyncHttpClient {
 
+    private static final Object ABORTED = new Object();
+
     private final HttpChannelPools httpChannelPools;
 
     private final AsyncHttpClientListenerFactory listenerFactory;
 
     private final Executor executor;
 
+    private final Executor requestBodyExecutor;
+
+    private final List<ExecutorService> ownedExecutors;
+
+    private final int maxContentLength;
+
+    private final Timer timer;
+
+    private final RequestCompression compression;
+
     /**
      * Constructor
      *
      * @param httpChannelPools the HTTP channel pools
      * @param listenerFactory the listener factory
      * @param executor the executor
+     * @param requestBodyExecutor the executor, on which the streamed request bodies are requested
+     * @param ownedExecutors the executors created by the client, shut down as the client is closed
+     * @param maxContentLength the max content length of a buffered response
+     * @param timer the timer of the request deadlines and the read and write timeouts
+     * @param compression the compression of the request bodies, or null if none
      */
     private NettyAsyncHttpClient(
             HttpChannelPools httpChannelPools,
             AsyncHttpClientListenerFactory listenerFactory,
-            Executor executor) {
+            Executor executor,
+            Executor requestBodyExecutor,
+            List<ExecutorService> ownedExecutors,
+            int maxContentLength,
+            Timer timer,
+            RequestCompression compression) {
         this.httpChannelPools = httpChannelPools;
         this.listenerFactory = listenerFactory;
         this.executor = executor;
+        this.requestBodyExecutor = requestBodyExecutor;
+        this.ownedExecutors = ownedExecutors;
+        this.maxContentLength = maxContentLength;
+        this.timer = timer;
+        this.compression = compression;
     }
 
     @Override
     public Task<AsyncHttpResponse> prepare(AsyncHttpRequest request) {
 
-        return Task.of((resolve, reject) -> {
+        return Task.cancellable((resolve, reject) -> {
 
             List<AsyncHttpClientListener> listeners = Stream.concat(
                     listenerFactory.createListeners().stream(),
@@ -83,28 +117,36 @@ public class NettyAsyncHttpClient implements AsyncHttpClient {
 
             ChannelPool channelPool = httpChannelPools.get(HttpChannelPools.createKey(request.getUri()));
 
-            channelPool.acquire().addListener((GenericFutureListener<Future<Channel>>) future -> {
+            Future<Channel> acquire = channelPool.acquire();
 
-                if (future.isSuccess()) {
+            Exchange exchange = new Exchange(listeners, modified, reject, acquire);
 
-                    Channel channel = future.getNow();
+            Consumer<AsyncHttpResponse> resolved = response -> {
+                exchange.disarm();
+                resolve.accept(response);
+            };
 
-                    ChannelPipeline pipeline = channel.pipeline();
+            Consumer<Exception> rejected = exception -> {
+                exchange.disarm();
+                reject.accept(exception);
+            };
 
-                    WriteTimeoutHandler writeTimeoutHandler = new WriteTimeoutHandler(request.getWriteTimeout().toMillis(), TimeUnit.MILLISECONDS);
-                    pipeline.addBefore(HttpClientCodec.class.getName(), WriteTimeoutHandler.class.getName(), writeTimeoutHandler);
+            exchange.arm();
 
-                    ReadTimeoutHandler readTimeoutHandler = new ReadTimeoutHandler(request.getReadTimeout().toMillis(), TimeUnit.MILLISECONDS);
-                    pipeline.addAfter(WriteTimeoutHandler.class.getName(), ReadTimeoutHandler.class.getName(), readTimeoutHandler);
+            acquire.addListener((GenericFutureListener<Future<Channel>>) future -> {
 
-                    pipeline.addLast(HttpRequestInboundHandler.class.getName(), new HttpRequestInboundHandler(listeners, request, resolve, reject, executor, channelPool));
-                    pipeline.addLast(HttpRequestOutboundHandler.class.getName(), new HttpRequestOutboundHandler(listeners, reject, executor, channelPool));
+                if (future.isSuccess()) {
 
-                    channel.writeAndFlush(createFullHttpRequest(modified));
+                    Channel channel = future.getNow();
 
-                    executor.execute(() -> listeners.forEach(listener -> listener.onSend(modified)));
+                    // the handler's state is confined to the channel's event loop, a channel may be stolen from another
+                    if (channel.eventLoop().inEventLoop()) {
+                        send(channel, channelPool, exchange, listeners, modified, resolved, rejected);
+                    } else {
+                        channel.eventLoop().execute(() -> send(channel, channelPool, exchange, listeners, modified, resolved, rejected));
+                    }
 
-                } else {
+                } else if (!future.isCancelled() && exchange.claim(future.cause())) {
                     executor.execute(() -> {
                         Throwable cause = future.cause();
                         Exception exception = cause instanceof Exception ? (Exception) cause : new Exception(cause);
@@ -113,64 +155,187 @@ public class NettyAsyncHttpClient implements AsyncHttpClient {
                     });
                 }
             });
+
+            return exchange;
         });
     }
 
     @Override
     public void close() throws Exception {
-        httpChannelPools.shutdown();
+        Future<?> terminated = httpChannelPools.shutdown();
+        timer.stop();
+        // once the event loops terminate, so the requests failed as the channels close are still completed
+        terminated.addListener(__ -> ownedExecutors.forEach(ExecutorService::shutdown));
     }
 
     /**
-     * Calls on modify request
+     * Sends the request on the channel, swapping the request into the channel's request handler, unless the
+     * request has timed out, or been cancelled, while acquiring the channel, when the channel is released
      *
-     * @param request the request
+     * @param channel the channel
+     * @param channelPool the channel pool
+     * @param exchange the exchange
      * @param listeners the listeners
-     * @return the modified
+     * @param request the request
+     * @param resolve the resolve consumer
+     * @param reject the reject consumer
      */
-    private AsyncHttpRequest onModifyRequest(AsyncHttpRequest request, List<AsyncHttpClientListener> listeners) {
-        for (AsyncHttpClientListener listener : listeners) {
-            request = listener.onModifyRequest(request);
+    private void send(
+            Channel channel,
+            ChannelPool channelPool,
+            Exchange exchange,
+            List<AsyncHttpClientListener> listeners,
+            AsyncHttpRequest request,
+            Consumer<AsyncHttpResponse> resolve,
+            Consumer<Exception> reject) {
+
+        if (!exchange.claim(channel)) {
+            channelPool.release(channel);
+            return;
         }
-        return request;
+
+        channel.pipeline()
+            .get(HttpRequestHandler.class)
+            .begin(listeners, request, resolve, reject, executor, channelPool, maxContentLength, timer);
+
+        HttpRequestWriter.write(channel, request, requestBodyExecutor, compression);
+
+        executor.execute(() -> listeners.forEach(listener -> listener.onSend(request)));
     }
 
     /**
-     * Creates the netty HTTP request
+     * The exchange of a request, its deadline, covering acquiring a channel, connecting, writing the request and
+     * reading the response, and its cancellation. The exchange is claimed once, by the acquired channel, by a failure
+     * to acquire one, or by aborting it, as the deadline expires or the request is cancelled. When it is aborted
+     * before a channel is acquired the pending acquire is cancelled, and a channel acquired regardless is released,
+     * otherwise the channel's request handler fails the request, and closes the channel, if the response has not
+     * been resolved.
      *
-     * @param request the request
-     * @return the netty request
      */
-    private static FullHttpRequest createFullHttpRequest(AsyncHttpRequest request) {
+    private class Exchange implements TimerTask, Cancellable {
+
+        private final AtomicReference<Object> owner = new AtomicReference<>();
 
-        DefaultFullHttpRequest fullHttpRequest = new DefaultFullHttpRequest(
-            HttpVersion.HTTP_1_1,
-            HttpMethod.valueOf(request.getMethod().name()),
-            request.getUri().toString(),
-            createBody(request));
+        private final List<AsyncHttpClientListener> listeners;
 
-        request.getHeaders().forEach(fullHttpRequest.headers()::add);
+        private final AsyncHttpRequest request;
 
-        fullHttpRequest.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
-        fullHttpRequest.headers().set(HttpHeaderNames.HOST, request.getUri().getHost());
-        fullHttpRequest.headers().set(HttpHeaderNames.CONTENT_LENGTH, request.getBody().length);
+        private final Consumer<Exception> reject;
 
-        return fullHttpRequest;
+        private final Future<Channel> acquire;
+
+        private volatile Timeout timeout;
+
+        /**
+         * Constructor
+         *
+         * @param listeners the listeners
+         * @param request the request
+         * @param reject the reject consumer
+         * @param acquire the acquire future
+         */
+        private Exchange(
+                List<AsyncHttpClientListener> listeners,
+                AsyncHttpRequest request,
+                Consumer<Exception> reject,
+                Future<Channel> acquire) {
+            this.listeners = listeners;
+            this.request = request;
+            this.reject = reject;
+            this.acquire = acquire;
+        }
+
+        /**
+         * Arms the deadline on the timer, if the request has a timeout
+         *
+         */
+        private void arm() {
+            Duration duration = request.getTimeout();
+            if (duration != null) {
+                timeout = timer.newTimeout(this, duration.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /**
+         * Disarms the deadline, as the request is resolved or rejected
+         *
+         */
+        private void disarm() {
+            Timeout armed = timeout;
+            if (armed != null) {
+                armed.cancel();
+            }
+        }
+
+        /**
+         * Claims the exchange
+         *
+         * @param claimant the acquired channel, or the failure to acquire one
+         * @return true if claimed, false if the exchange has been aborted
+         */
+        private boolean claim(Object claimant) {
+            return owner.compareAndSet(null, claimant);
+        }
+
+        /**
+         * Aborts the exchange
+         *
+         * @param cause the cause
+         * @return true if aborted before a channel was acquired, false otherwise
+         */
+        private boolean abort(Exception cause) {
+            if (owner.compareAndSet(null, ABORTED)) {
+                acquire.cancel(false);
+                return true;
+            }
+            Object claimant = owner.get();
+            if (claimant instanceof Channel) {
+                Channel channel = (Channel) claimant;
+                channel.eventLoop().execute(() -> channel.pipeline().get(HttpRequestHandler.class).abort(request, cause));
+            }
+            return false;
+        }
+
+        @Override
+        public void run(Timeout timeout) {
+            aborted(new TimeoutException("The request timed out after " + request.getTimeout().toMillis() + "ms"));
+        }
+
+        @Override
+        public boolean cancel() {
+            disarm();
+            aborted(new CancellationException("The request was cancelled"));
+            return true;
+        }
+
+        /**
+         * Aborts the exchange, notifying the listeners and rejecting the request if it is aborted before a channel was
+         * acquired, otherwise the channel's request handler notifies them
+         *
+         * @param exception the exception
+         */
+        private void aborted(Exception exception) {
+            if (abort(exception)) {
+                executor.execute(() -> {
+                    listeners.forEach(listener -> listener.onException(exception));
+                    reject.accept(exception);
+                });
+            }
+        }
     }
 
     /**
-     * Creates the body
+     * Calls on modify request
      *
-     * @param request the request body
-     * @return the byte buffer
+     * @param request the request
+     * @param listeners the listeners
+     * @return the modified
      */
-    private static ByteBuf createBody(AsyncHttpRequest request) {
-        if (request.getBody().length == 0) {
-            return Unpooled.buffer(0);
+    private AsyncHttpRequest onModifyRequest(AsyncHttpRequest request, List<AsyncHttpClientListener> listeners) {
+        for (AsyncHttpClientListener listener : listeners) {
+            request = listener.onModifyRequest(request);
         }
-        ByteBuf buffer = Unpooled.buffer(request.getBody().length);
-        buffer.writeBytes(request.getBody());
-        return buffer;
+        return request;
     }
 
     /**
@@ -190,10 +355,34 @@ public class NettyAsyncHttpClient implements AsyncHttpClient {
 
         private Integer threads;
 
+        private Transport transport = Transport.AUTO;
+
+        private boolean tcpNoDelay = true;
+
+        private boolean keepAlive = false;
+
+        private boolean tcpQuickAck = false;
+
+        private boolean edgeTriggered = true;
+
         private Duration connectTimeout = Duration.ofSeconds(1);
 
+        private Duration connectionAttemptDelay = Duration.ofMillis(250);
+
+        private Duration dnsMinTtl = Duration.ZERO;
+
+        private Duration dnsMaxTtl = Duration.ofSeconds(Integer.MAX_VALUE);
+
+        private Duration dnsNegativeTtl = Duration.ofSeconds(5);
+
+        private Duration dnsStaleTtl = Duration.ofMinutes(5);
+
         private Duration acquireTimeout = Duration.ofSeconds(10);
 
+        private Supplier<AddressPicker> addressPicker = AddressPickers.roundRobin();
+
+        private Duration rebalanceInterval = Duration.ofSeconds(1);
+
         private int maxConnections = 100;
 
         private int maxPendingAcquires = 100;
@@ -210,7 +399,31 @@ public class NettyAsyncHttpClient implements AsyncHttpClient {
 
         private boolean enableSni = true;
 
-        private Executor executor = Executors.newCachedThreadPool();
+        private SslProvider sslProvider;
+
+        private TrustManagerFactory trustManagerFactory;
+
+        private List<String> tlsProtocols;
+
+        private List<String> tlsCiphers;
+
+        private int tlsSessionCacheSize = 0;
+
+        private Duration tlsSessionTimeout = Duration.ZERO;
+
+        private Duration tlsHandshakeTimeout = Duration.ofSeconds(10);
+
+        private TlsHandshakeListener tlsHandshakeListener = new TlsHandshakeListener() { };
+
+        private boolean enableHttp2 = false;
+
+        private boolean http2PriorKnowledge = false;
+
+        private boolean enableDecompression = true;
+
+        private RequestCompression compression;
+
+        private Executor executor;
 
         private AsyncHttpClientListenerFactory listenerFactory = List::of;
 
@@ -218,7 +431,7 @@ public class NettyAsyncHttpClient implements AsyncHttpClient {
         }
 
         /**
-         * Sets the number of threads for the event loop group, see {@link io.netty.channel.nio.NioEventLoopGroup}
+         * Sets the number of threads for the event loop group, see {@link io.netty.channel.MultithreadEventLoopGroup}
          *
          * @param threads the number of threads
          * @return the builder
@@ -228,6 +441,64 @@ public class NettyAsyncHttpClient implements AsyncHttpClient {
             return this;
         }
 
+        /**
+         * Sets the transport, defaults to {@link Transport#AUTO} which uses the native epoll
+         * transport when available, falling back to NIO
+         *
+         * @param transport the transport
+         * @return the builder
+         */
+        public Builder withTransport(Transport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * Sets whether TCP_NODELAY is enabled, defaults to true
+         *
+         * @param tcpNoDelay true if TCP_NODELAY is enabled, false otherwise
+         * @return the builder
+         */
+        public Builder withTcpNoDelay(boolean tcpNoDelay) {
+            this.tcpNoDelay = tcpNoDelay;
+            return this;
+        }
+
+        /**
+         * Sets whether SO_KEEPALIVE is enabled, defaults to false
+         *
+         * @param keepAlive true if SO_KEEPALIVE is enabled, false otherwise
+         * @return the builder
+         */
+        public Builder withKeepAlive(boolean keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        /**
+         * Sets whether TCP_QUICKACK is enabled, defaults to false, only applies to
+         * the native transports
+         *
+         * @param tcpQuickAck true if TCP_QUICKACK is enabled, false otherwise
+         * @return the builder
+         */
+        public Builder withTcpQuickAck(boolean tcpQuickAck) {
+            this.tcpQuickAck = tcpQuickAck;
+            return this;
+        }
+
+        /**
+         * Sets whether epoll uses edge triggered mode, defaults to true, when false level
+         * triggered mode is used, only applies to the epoll transport
+         *
+         * @param edgeTriggered true if edge triggered, false for level triggered
+         * @return the builder
+         */
+        public Builder withEdgeTriggered(boolean edgeTriggered) {
+            this.edgeTriggered = edgeTriggered;
+            return this;
+        }
+
         /**
          * Sets the connection timeout
          *
@@ -239,9 +510,59 @@ public class NettyAsyncHttpClient implements AsyncHttpClient {
             return this;
         }
 
+        /**
+         * Sets the connection attempt delay, a new connection is attempted to the next resolved address of the
+         * host once the delay has passed without the previous attempts connecting (Happy Eyeballs, RFC 8305),
+         * the first attempt to connect is used, defaults to 250 milliseconds
+         *
+         * @param connectionAttemptDelay the connection attempt delay
+         * @return the builder
+         */
+        public Builder withConnectionAttemptDelay(Duration connectionAttemptDelay) {
+            this.connectionAttemptDelay = connectionAttemptDelay;
+            return this;
+        }
+
+        /**
+         * Sets the minimum and maximum TTLs of the cached DNS records, the record TTLs are used
+         * within these bounds, defaults to zero and unbounded
+         *
+         * @param dnsMinTtl the minimum TTL
+         * @param dnsMaxTtl the maximum TTL
+         * @return the builder
+         */
+        public Builder withDnsTtl(Duration dnsMinTtl, Duration dnsMaxTtl) {
+            this.dnsMinTtl = dnsMinTtl;
+            this.dnsMaxTtl = dnsMaxTtl;
+            return this;
+        }
+
+        /**
+         * Sets the TTL of the cached DNS failures, defaults to 5 seconds
+         *
+         * @param dnsNegativeTtl the negative TTL
+         * @return the builder
+         */
+        public Builder withDnsNegativeTtl(Duration dnsNegativeTtl) {
+            this.dnsNegativeTtl = dnsNegativeTtl;
+            return this;
+        }
+
+        /**
+         * Sets the maximum age of the addresses served when a DNS query fails, defaults to 5 minutes
+         *
+         * @param dnsStaleTtl the stale TTL
+         * @return the builder
+         */
+        public Builder withDnsStaleTtl(Duration dnsStaleTtl) {
+            this.dnsStaleTtl = dnsStaleTtl;
+            return this;
+        }
+
         /**
          * Sets the acquire timeout, the maximum timeout waiting for a connection to
-         * be provided from the connection pool
+         * be provided from the connection pool, after which a new connection is opened,
+         * beyond the maximum number of connections, for both HTTP/1.1 and HTTP/2
          *
          * @param acquireTimeout the acquire timeout
          * @return the builder
@@ -251,6 +572,30 @@ public class NettyAsyncHttpClient implements AsyncHttpClient {
             return this;
         }
 
+        /**
+         * Sets the address picker factory, which picks the resolved address of a host for each new connection,
+         * see {@link AddressPickers}, defaults to round robin
+         *
+         * @param addressPicker the address picker factory
+         * @return the builder
+         */
+        public Builder withAddressPicker(Supplier<AddressPicker> addressPicker) {
+            this.addressPicker = addressPicker;
+            return this;
+        }
+
+        /**
+         * Sets the rebalance interval, when the resolved addresses of a host change, at most one connection
+         * is closed per interval, so the connections are moved gradually, defaults to 1 second
+         *
+         * @param rebalanceInterval the rebalance interval
+         * @return the builder
+         */
+        public Builder withRebalanceInterval(Duration rebalanceInterval) {
+            this.rebalanceInterval = rebalanceInterval;
+            return this;
+        }
+
         /**
          * Sets the maximum number of connections per protocol, host, port
          *
@@ -264,7 +609,7 @@ public class NettyAsyncHttpClient implements AsyncHttpClient {
 
         /**
          * Sets the maximum pending acquires allowed, e.g. the number of requests waiting
-         * for a connection to be provided from the connection pool
+         * for a connection to be provided from the connection pool, per protocol, host, port
          *
          * @param maxPendingAcquires the maximum number of acquires that can be waiting for a connection
          * @return the builder
@@ -319,7 +664,7 @@ public class NettyAsyncHttpClient implements AsyncHttpClient {
         }
 
         /**
-         * Sets the max content length
+         * Sets the max content length of a buffered response body, streamed response bodies are not limited
          *
          * @param maxContentLength the max content length
          * @return the builder
@@ -341,7 +686,140 @@ public class NettyAsyncHttpClient implements AsyncHttpClient {
         }
 
         /**
-         * Sets the executor
+         * Sets the SSL provider, defaults to OpenSSL when netty-tcnative is on the class path, otherwise the JDK
+         *
+         * @param sslProvider the SSL provider
+         * @return the builder
+         */
+        public Builder withSslProvider(SslProvider sslProvider) {
+            this.sslProvider = sslProvider;
+            return this;
+        }
+
+        /**
+         * Sets the trust manager factory, which verifies the server certificates, defaults to the default trust store
+         *
+         * @param trustManagerFactory the trust manager factory
+         * @return the builder
+         */
+        public Builder withTrustManager(TrustManagerFactory trustManagerFactory) {
+            this.trustManagerFactory = trustManagerFactory;
+            return this;
+        }
+
+        /**
+         * Sets the enabled TLS protocols, e.g. TLSv1.3, defaults to the provider's defaults
+         *
+         * @param tlsProtocols the TLS protocols
+         * @return the builder
+         */
+        public Builder withTlsProtocols(String... tlsProtocols) {
+            this.tlsProtocols = List.of(tlsProtocols);
+            return this;
+        }
+
+        /**
+         * Sets the enabled TLS cipher suites, defaults to the provider's defaults
+         *
+         * @param tlsCiphers the TLS cipher suites
+         * @return the builder
+         */
+        public Builder withTlsCiphers(String... tlsCiphers) {
+            this.tlsCiphers = List.of(tlsCiphers);
+            return this;
+        }
+
+        /**
+         * Sets the size and timeout of the TLS session cache, the sessions are cached by host and port, so a
+         * new connection resumes a session rather than doing a full handshake, defaults to the provider's defaults
+         *
+         * @param tlsSessionCacheSize the maximum number of cached sessions
+         * @param tlsSessionTimeout the timeout of the cached sessions
+         * @return the builder
+         */
+        public Builder withTlsSessionCache(int tlsSessionCacheSize, Duration tlsSessionTimeout) {
+            this.tlsSessionCacheSize = tlsSessionCacheSize;
+            this.tlsSessionTimeout = tlsSessionTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the TLS handshake timeout, defaults to 10 seconds
+         *
+         * @param tlsHandshakeTimeout the TLS handshake timeout
+         * @return the builder
+         */
+        public Builder withTlsHandshakeTimeout(Duration tlsHandshakeTimeout) {
+            this.tlsHandshakeTimeout = tlsHandshakeTimeout;
+            return this;
+        }
+
+        /**
+         * Sets the TLS handshake listener, which is told the duration of each handshake, and if the session was resumed
+         *
+         * @param tlsHandshakeListener the TLS handshake listener
+         * @return the builder
+         */
+        public Builder withTlsHandshakeListener(TlsHandshakeListener tlsHandshakeListener) {
+            this.tlsHandshakeListener = tlsHandshakeListener;
+            return this;
+        }
+
+        /**
+         * Sets whether HTTP/2 is offered with ALPN on HTTPS connections, when the server selects HTTP/2
+         * requests are multiplexed as streams over a few connections, otherwise HTTP/1.1 is used
+         *
+         * @param enableHttp2 true if HTTP/2 is enabled, false otherwise
+         * @return the builder
+         */
+        public Builder setEnableHttp2(boolean enableHttp2) {
+            this.enableHttp2 = enableHttp2;
+            return this;
+        }
+
+        /**
+         * Sets whether HTTP/2 is used without negotiation on HTTP connections (h2c with prior knowledge),
+         * the servers must support h2c
+         *
+         * @param http2PriorKnowledge true if h2c with prior knowledge is used, false otherwise
+         * @return the builder
+         */
+        public Builder setHttp2PriorKnowledge(boolean http2PriorKnowledge) {
+            this.http2PriorKnowledge = http2PriorKnowledge;
+            return this;
+        }
+
+        /**
+         * Sets whether the responses are decompressed, a request without an accept encoding header is sent accepting
+         * gzip and deflate, and its response is decoded as it is read, including streamed responses, a request with
+         * its own accept encoding header is given the response as it was sent, defaults to true
+         *
+         * @param enableDecompression true if decompression is enabled, false otherwise
+         * @return the builder
+         */
+        public Builder setEnableDecompression(boolean enableDecompression) {
+            this.enableDecompression = enableDecompression;
+            return this;
+        }
+
+        /**
+         * Sets the compression of the request bodies, which a request may override, see {@link RequestCompression},
+         * defaults to none, as the servers must accept compressed bodies
+         *
+         * @param compression the compression
+         * @return the builder
+         */
+        public Builder withRequestCompression(RequestCompression compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * Sets the executor, on which the responses, failures and listeners are called, see {@link CompletionExecutors},
+         * {@link CompletionExecutors#direct()} completes inline on the event loop, for consumers which do not block,
+         * defaults to {@link CompletionExecutors#bounded()}, which is shut down as the client is closed, a provided
+         * executor is left to the caller to shut down. The streamed request bodies are requested on the executor too,
+         * unless it is direct, when they are requested on a bounded executor owned by the client
          *
          * @param executor the executor
          * @return the builder
@@ -369,6 +847,14 @@ public class NettyAsyncHttpClient implements AsyncHttpClient {
         public AsyncHttpClient build() {
             requireNonNull(connectTimeout, "the connection timeout should be provided");
             requireNonNull(acquireTimeout, "the acquire timeout should be provided");
+            requireNonNull(connectionAttemptDelay, "the connection attempt delay should be provided");
+            requireNonNull(dnsMinTtl, "the DNS minimum TTL should be provided");
+            requireNonNull(dnsMaxTtl, "the DNS maximum TTL should be provided");
+            requireNonNull(dnsNegativeTtl, "the DNS negative TTL should be provided");
+            requireNonNull(dnsStaleTtl, "the DNS stale TTL should be provided");
+            requireNonNull(addressPicker, "the address picker should be provided");
+            requireNonNull(rebalanceInterval, "the rebalance interval should be provided");
+            checkState(dnsMinTtl.compareTo(dnsMaxTtl) <= 0, "the DNS minimum TTL should not be greater than the maximum TTL");
             checkState(maxConnections > 0, "the maximum number of connections should be positive");
             checkState(maxPendingAcquires > 0, "the maximum number of acquires should be positive");
             checkState(maxInitialLineLength > 0, "the maximum initial line length should be positive");
@@ -376,9 +862,18 @@ public class NettyAsyncHttpClient implements AsyncHttpClient {
             checkState(maxChunkSize > 0, "the maximum chunk size should be positive");
             checkState(initialBufferSize > 0, "the initial buffer size should be positive");
             checkState(maxContentLength > 0, "the max content length should be positive");
+            requireNonNull(tlsSessionTimeout, "the TLS session timeout should be provided");
+            requireNonNull(tlsHandshakeTimeout, "the TLS handshake timeout should be provided");
+            requireNonNull(tlsHandshakeListener, "the TLS handshake listener should be provided");
+            checkState(tlsSessionCacheSize >= 0, "the TLS session cache size should not be negative");
             requireNonNull(listenerFactory, "the listener factory should be provided");
+            requireNonNull(transport, "the transport should be provided");
+            checkState(transport.isAvailable(), "the transport " + transport + " is not available, " + transport.unavailabilityCause());
+            Transport resolved = transport.resolve();
             HttpChannelPools httpChannelPools = new HttpChannelPools(
-                threads != null ? new NioEventLoopGroup(threads) : new NioEventLoopGroup(),
+                resolved.createEventLoopGroup(threads != null ? threads : 0),
+                resolved,
+                new SocketConfiguration(tcpNoDelay, keepAlive, tcpQuickAck, edgeTriggered),
                 connectTimeout,
                 acquireTimeout,
                 maxConnections,
@@ -388,9 +883,47 @@ public class NettyAsyncHttpClient implements AsyncHttpClient {
                     maxHeaderSize,
                     maxChunkSize,
                     initialBufferSize,
-                    maxContentLength,
-                    enableSni));
-            return new NettyAsyncHttpClient(httpChannelPools, listenerFactory, executor);
+                    enableSni,
+                    enableHttp2,
+                    http2PriorKnowledge,
+                    enableDecompression,
+                    new DefaultSslContext(
+                        sslProvider,
+                        trustManagerFactory,
+                        tlsProtocols,
+                        tlsCiphers,
+                        tlsSessionCacheSize,
+                        tlsSessionTimeout,
+                        tlsHandshakeTimeout,
+                        tlsHandshakeListener)),
+                new CachingDnsResolver(resolved, dnsMinTtl, dnsMaxTtl, dnsNegativeTtl, dnsStaleTtl),
+                addressPicker,
+                rebalanceInterval,
+                connectionAttemptDelay);
+            Timer timer = new HashedWheelTimer(new DefaultThreadFactory("async-http-timer", true), 10, TimeUnit.MILLISECONDS);
+            List<ExecutorService> ownedExecutors = new ArrayList<>();
+            Executor completionExecutor = executor;
+            if (completionExecutor == null) {
+                ExecutorService defaultExecutor = CompletionExecutors.bounded();
+                ownedExecutors.add(defaultExecutor);
+                completionExecutor = defaultExecutor;
+            }
+            // a streamed request body may block as it is read, so is never requested on the event loop
+            Executor requestBodyExecutor = completionExecutor;
+            if (CompletionExecutors.isDirect(completionExecutor)) {
+                ExecutorService requestBodies = CompletionExecutors.requestBodies();
+                ownedExecutors.add(requestBodies);
+                requestBodyExecutor = requestBodies;
+            }
+            return new NettyAsyncHttpClient(
+                httpChannelPools,
+                listenerFactory,
+                completionExecutor,
+                requestBodyExecutor,
+                ownedExecutors,
+                maxContentLength,
+                timer,
+                compression);
         }
 
         /**
@@ -0,0 +1,241 @@
+package uk.co.gcwilliams.async.http.impl;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import uk.co.gcwilliams.async.http.impl.pool.SocketConfiguration;
+
+/**
+ * The network transport used for the connections, the native transports are only available
+ * on Linux, {@link #AUTO} will use the best transport available, falling back to NIO
+ *
+ * @author : Gareth Williams
+ **/
+public enum Transport {
+
+    /**
+     * Uses epoll when available, otherwise NIO
+     *
+     */
+    AUTO {
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public Throwable unavailabilityCause() {
+            return null;
+        }
+
+        @Override
+        public Transport resolve() {
+            return EPOLL.isAvailable() ? EPOLL : NIO;
+        }
+
+        @Override
+        public EventLoopGroup createEventLoopGroup(int threads) {
+            return resolve().createEventLoopGroup(threads);
+        }
+
+        @Override
+        public Class<? extends SocketChannel> getSocketChannelClass() {
+            return resolve().getSocketChannelClass();
+        }
+
+        @Override
+        public Class<? extends DatagramChannel> getDatagramChannelClass() {
+            return resolve().getDatagramChannelClass();
+        }
+
+        @Override
+        public void configure(Bootstrap bootstrap, SocketConfiguration configuration) {
+            resolve().configure(bootstrap, configuration);
+        }
+    },
+
+    /**
+     * The JDK NIO transport, available everywhere
+     *
+     */
+    NIO {
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public Throwable unavailabilityCause() {
+            return null;
+        }
+
+        @Override
+        public EventLoopGroup createEventLoopGroup(int threads) {
+            return new NioEventLoopGroup(threads);
+        }
+
+        @Override
+        public Class<? extends SocketChannel> getSocketChannelClass() {
+            return NioSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends DatagramChannel> getDatagramChannelClass() {
+            return NioDatagramChannel.class;
+        }
+    },
+
+    /**
+     * The native epoll transport, supports edge triggered mode and TCP_QUICKACK
+     *
+     */
+    EPOLL {
+        @Override
+        public boolean isAvailable() {
+            return Epoll.isAvailable();
+        }
+
+        @Override
+        public Throwable unavailabilityCause() {
+            return Epoll.unavailabilityCause();
+        }
+
+        @Override
+        public EventLoopGroup createEventLoopGroup(int threads) {
+            return new EpollEventLoopGroup(threads);
+        }
+
+        @Override
+        public Class<? extends SocketChannel> getSocketChannelClass() {
+            return EpollSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends DatagramChannel> getDatagramChannelClass() {
+            return EpollDatagramChannel.class;
+        }
+
+        @Override
+        public void configure(Bootstrap bootstrap, SocketConfiguration configuration) {
+            super.configure(bootstrap, configuration);
+            bootstrap.option(EpollChannelOption.TCP_QUICKACK, configuration.isTcpQuickAck());
+            bootstrap.option(EpollChannelOption.EPOLL_MODE, configuration.isEdgeTriggered()
+                ? EpollMode.EDGE_TRIGGERED
+                : EpollMode.LEVEL_TRIGGERED);
+        }
+    },
+
+    /**
+     * The native io_uring transport (incubator), requires a Linux 5.9+ kernel and the optional
+     * netty-incubator-transport-native-io_uring dependency
+     *
+     */
+    IO_URING {
+        @Override
+        public boolean isAvailable() {
+            try {
+                return IOUringSupport.isAvailable();
+            } catch (LinkageError ex) {
+                return false;
+            }
+        }
+
+        @Override
+        public Throwable unavailabilityCause() {
+            try {
+                return IOUringSupport.unavailabilityCause();
+            } catch (LinkageError ex) {
+                return ex;
+            }
+        }
+
+        @Override
+        public EventLoopGroup createEventLoopGroup(int threads) {
+            return IOUringSupport.createEventLoopGroup(threads);
+        }
+
+        @Override
+        public Class<? extends SocketChannel> getSocketChannelClass() {
+            return IOUringSupport.getSocketChannelClass();
+        }
+
+        @Override
+        public Class<? extends DatagramChannel> getDatagramChannelClass() {
+            return IOUringSupport.getDatagramChannelClass();
+        }
+
+        @Override
+        public void configure(Bootstrap bootstrap, SocketConfiguration configuration) {
+            super.configure(bootstrap, configuration);
+            IOUringSupport.configure(bootstrap, configuration);
+        }
+    };
+
+    /**
+     * Determines if the transport is available on this platform
+     *
+     * @return true if available, false otherwise
+     */
+    public abstract boolean isAvailable();
+
+    /**
+     * Gets the reason the transport is unavailable
+     *
+     * @return the cause, or null if available
+     */
+    public abstract Throwable unavailabilityCause();
+
+    /**
+     * Resolves the concrete transport to use
+     *
+     * @return the transport
+     */
+    public Transport resolve() {
+        return this;
+    }
+
+    /**
+     * Creates the event loop group for the transport
+     *
+     * @param threads the number of threads, zero for the netty default
+     * @return the event loop group
+     */
+    public abstract EventLoopGroup createEventLoopGroup(int threads);
+
+    /**
+     * Gets the socket channel class for the transport
+     *
+     * @return the socket channel class
+     */
+    public abstract Class<? extends SocketChannel> getSocketChannelClass();
+
+    /**
+     * Gets the datagram channel class for the transport, used for the DNS queries
+     *
+     * @return the datagram channel class
+     */
+    public abstract Class<? extends DatagramChannel> getDatagramChannelClass();
+
+    /**
+     * Configures the bootstrap with the channel class and the socket options
+     *
+     * @param bootstrap the bootstrap
+     * @param configuration the socket configuration
+     */
+    public void configure(Bootstrap bootstrap, SocketConfiguration configuration) {
+        bootstrap.channel(getSocketChannelClass());
+        bootstrap.option(ChannelOption.TCP_NODELAY, configuration.isTcpNoDelay());
+        bootstrap.option(ChannelOption.SO_KEEPALIVE, configuration.isKeepAlive());
+    }
+}
@@ -0,0 +1,317 @@
+package uk.co.gcwilliams.async.http.impl.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.compression.DecompressionException;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decodes a gzip, or deflate, content coding incrementally, as the content is read. The inflater is acquired from the
+ * {@link InflaterPool} of the event loop, and released to it once the decoder is closed, so the decoder must be used,
+ * and closed, on the event loop. The deflate coding is zlib wrapped, though raw deflate is accepted, as some servers
+ * send it.
+ *
+ * @author : Gareth Williams
+ **/
+final class ContentDecoder {
+
+    private static final int OUTPUT_CHUNK_SIZE = 16384;
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private static final int GZIP_HEADER_LENGTH = 10;
+
+    private static final int GZIP_TRAILER_LENGTH = 8;
+
+    private static final int DEFLATE = 8;
+
+    private static final int FHCRC = 0x02;
+
+    private static final int FEXTRA = 0x04;
+
+    private static final int FNAME = 0x08;
+
+    private static final int FCOMMENT = 0x10;
+
+    private static final int RESERVED = 0xe0;
+
+    private enum State { HEADER, INFLATE, TRAILER, DONE }
+
+    private final CRC32 crc = new CRC32();
+
+    private final boolean gzip;
+
+    private final ByteBufAllocator allocator;
+
+    private State state = State.HEADER;
+
+    private ByteBuf cumulation;
+
+    private Inflater inflater;
+
+    private boolean nowrap;
+
+    private boolean received;
+
+    /**
+     * Constructor
+     *
+     * @param gzip true for the gzip coding, false for deflate
+     * @param allocator the allocator of the decoded content
+     */
+    private ContentDecoder(boolean gzip, ByteBufAllocator allocator) {
+        this.gzip = gzip;
+        this.allocator = allocator;
+    }
+
+    /**
+     * Creates the decoder of the content coding
+     *
+     * @param encoding the content encoding, may be null
+     * @param allocator the allocator of the decoded content
+     * @return the decoder, or null if the content coding is absent, or not supported
+     */
+    static ContentDecoder create(String encoding, ByteBufAllocator allocator) {
+        if (encoding == null) {
+            return null;
+        }
+        switch (encoding.trim().toLowerCase(Locale.ROOT)) {
+            case "gzip":
+            case "x-gzip":
+                return new ContentDecoder(true, allocator);
+            case "deflate":
+            case "x-deflate":
+                return new ContentDecoder(false, allocator);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Decodes the content, the decoded chunks are handed to the consumer, which takes ownership of them
+     *
+     * @param content the content, which is not released
+     * @param decoded the consumer of the decoded chunks
+     * @throws DecompressionException if the content is not valid
+     */
+    void decode(ByteBuf content, Consumer<ByteBuf> decoded) {
+        if (!content.isReadable()) {
+            return;
+        }
+        received = true;
+        cumulation = ByteToMessageDecoder.MERGE_CUMULATOR.cumulate(
+            allocator,
+            cumulation != null ? cumulation : Unpooled.EMPTY_BUFFER,
+            content.retain());
+        try {
+            boolean progress = true;
+            while (progress && cumulation.isReadable()) {
+                switch (state) {
+                    case HEADER:
+                        progress = gzip ? readGzipHeader() : readZlibHeader();
+                        break;
+                    case INFLATE:
+                        progress = inflate(decoded);
+                        break;
+                    case TRAILER:
+                        progress = readGzipTrailer();
+                        break;
+                    default:
+                        cumulation.skipBytes(cumulation.readableBytes()); // anything after the end is ignored
+                }
+            }
+        } finally {
+            if (!cumulation.isReadable()) {
+                cumulation.release();
+                cumulation = null;
+            }
+        }
+    }
+
+    /**
+     * Finishes decoding, as the last content has been read
+     *
+     * @throws DecompressionException if the content was truncated
+     */
+    void finish() {
+        if (received && state != State.DONE) {
+            throw new DecompressionException("The compressed content was truncated");
+        }
+    }
+
+    /**
+     * Closes the decoder, releasing the inflater to the pool
+     *
+     */
+    void close() {
+        if (cumulation != null) {
+            cumulation.release();
+            cumulation = null;
+        }
+        if (inflater != null) {
+            InflaterPool.release(inflater, nowrap);
+            inflater = null;
+        }
+    }
+
+    /**
+     * Reads the gzip header, RFC 1952
+     *
+     * @return true if the header was read, false if more content is needed
+     */
+    private boolean readGzipHeader() {
+        int index = cumulation.readerIndex();
+        int end = cumulation.writerIndex();
+        if (end - index < GZIP_HEADER_LENGTH) {
+            return false;
+        }
+        if (cumulation.getUnsignedShortLE(index) != GZIP_MAGIC || cumulation.getUnsignedByte(index + 2) != DEFLATE) {
+            throw new DecompressionException("The content is not gzip");
+        }
+        int flags = cumulation.getUnsignedByte(index + 3);
+        if ((flags & RESERVED) != 0) {
+            throw new DecompressionException("The gzip header has reserved flags set");
+        }
+        index += GZIP_HEADER_LENGTH;
+        if ((flags & FEXTRA) != 0) {
+            if (end - index < 2) {
+                return false;
+            }
+            index += 2 + cumulation.getUnsignedShortLE(index);
+        }
+        if ((flags & FNAME) != 0 && (index = skipZeroTerminated(index, end)) < 0) {
+            return false;
+        }
+        if ((flags & FCOMMENT) != 0 && (index = skipZeroTerminated(index, end)) < 0) {
+            return false;
+        }
+        if ((flags & FHCRC) != 0) {
+            index += 2;
+        }
+        if (index > end) {
+            return false;
+        }
+        cumulation.readerIndex(index);
+        start(true);
+        return true;
+    }
+
+    /**
+     * Reads the start of the deflate coding, to determine if it is zlib wrapped, RFC 1950, or raw deflate
+     *
+     * @return true if the start was read, false if more content is needed
+     */
+    private boolean readZlibHeader() {
+        if (cumulation.readableBytes() < 2) {
+            return false;
+        }
+        int cmf = cumulation.getUnsignedByte(cumulation.readerIndex());
+        int flg = cumulation.getUnsignedByte(cumulation.readerIndex() + 1);
+        start((cmf & 0x0f) != DEFLATE || ((cmf << 8) | flg) % 31 != 0);
+        return true;
+    }
+
+    /**
+     * Reads the gzip trailer, verifying the checksum and the length of the decoded content
+     *
+     * @return true if the trailer was read, false if more content is needed
+     */
+    private boolean readGzipTrailer() {
+        if (cumulation.readableBytes() < GZIP_TRAILER_LENGTH) {
+            return false;
+        }
+        long checksum = cumulation.readUnsignedIntLE();
+        long length = cumulation.readUnsignedIntLE();
+        if (checksum != crc.getValue()) {
+            throw new DecompressionException("The gzip checksum does not match");
+        }
+        if (length != (inflater.getBytesWritten() & 0xffffffffL)) {
+            throw new DecompressionException("The gzip length does not match");
+        }
+        state = State.DONE;
+        return true;
+    }
+
+    /**
+     * Inflates the content, until the inflater needs more, or the deflate stream is finished
+     *
+     * @param decoded the consumer of the decoded chunks
+     * @return true if the deflate stream is finished, false if more content is needed
+     */
+    private boolean inflate(Consumer<ByteBuf> decoded) {
+        ByteBuffer input = cumulation.nioBuffer();
+        int position = input.position();
+        inflater.setInput(input);
+        try {
+            while (!inflater.finished()) {
+                ByteBuf chunk = allocator.heapBuffer(OUTPUT_CHUNK_SIZE);
+                int length;
+                try {
+                    length = inflater.inflate(chunk.nioBuffer(0, OUTPUT_CHUNK_SIZE));
+                } catch (DataFormatException ex) {
+                    chunk.release();
+                    throw new DecompressionException(ex);
+                }
+                if (length > 0) {
+                    chunk.writerIndex(length);
+                    if (gzip) {
+                        crc.update(chunk.nioBuffer());
+                    }
+                    decoded.accept(chunk);
+                } else {
+                    chunk.release();
+                }
+                if (length < OUTPUT_CHUNK_SIZE) {
+                    // unless the chunk was filled, the inflater has consumed all that it can
+                    if (inflater.needsDictionary()) {
+                        throw new DecompressionException("A preset dictionary is not supported");
+                    }
+                    if (length == 0 || inflater.needsInput()) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            cumulation.skipBytes(input.position() - position);
+        }
+        if (!inflater.finished()) {
+            return false;
+        }
+        state = gzip ? State.TRAILER : State.DONE;
+        return true;
+    }
+
+    /**
+     * Starts inflating, acquiring the inflater
+     *
+     * @param nowrap true for raw deflate, false for zlib wrapped
+     */
+    private void start(boolean nowrap) {
+        this.nowrap = nowrap;
+        this.inflater = InflaterPool.acquire(nowrap);
+        this.state = State.INFLATE;
+    }
+
+    /**
+     * Skips a zero terminated field of the gzip header
+     *
+     * @param index the index of the field
+     * @param end the end of the readable content
+     * @return the index after the field, or -1 if the field is incomplete
+     */
+    private int skipZeroTerminated(int index, int end) {
+        if (index >= end) {
+            return -1;
+        }
+        int zero = cumulation.indexOf(index, end, (byte) 0);
+        return zero < 0 ? -1 : zero + 1;
+    }
+}
@@ -0,0 +1,170 @@
+package uk.co.gcwilliams.async.http.impl.handler;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.compression.DecompressionException;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpStatusClass;
+import io.netty.handler.codec.http.LastHttpContent;
+
+/**
+ * The HTTP decompression handler, installed once per channel, after the codec. A request without an accept encoding
+ * header is sent accepting gzip and deflate, and its response is decoded as it is read, so a streamed body is decoded
+ * incrementally. The decoded response has no content encoding, or content length, header. A request with its own
+ * accept encoding header has negotiated the encoding itself, so its response is not decoded.
+ *
+ * <p>The inflaters are pooled per event loop, see {@link InflaterPool}, rather than allocated per response.
+ *
+ * @author : Gareth Williams
+ **/
+public class DecompressionHandler extends ChannelDuplexHandler {
+
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private boolean decompress;
+
+    private ContentDecoder decoder;
+
+    private boolean discarding;
+
+    private boolean produced;
+
+    private boolean readNeeded;
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof HttpRequest) {
+            HttpHeaders headers = ((HttpRequest) msg).headers();
+            decompress = !headers.contains(HttpHeaderNames.ACCEPT_ENCODING);
+            if (decompress) {
+                headers.set(HttpHeaderNames.ACCEPT_ENCODING, ACCEPT_ENCODING);
+            }
+        }
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof HttpResponse) {
+            onResponse(ctx, (HttpResponse) msg);
+        } else if (msg instanceof HttpContent && (decoder != null || discarding)) {
+            onContent(ctx, (HttpContent) msg);
+        } else {
+            ctx.fireChannelRead(msg);
+        }
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        // as a decoder, the content read may only have been consumed, so read more if nothing else will
+        if (readNeeded && !ctx.channel().config().isAutoRead()) {
+            ctx.read();
+        }
+        readNeeded = false;
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        closeDecoder();
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        closeDecoder();
+    }
+
+    /**
+     * Handles the response status and headers, removing the content coding if it will be decoded
+     *
+     * @param ctx the context
+     * @param msg the response
+     */
+    private void onResponse(ChannelHandlerContext ctx, HttpResponse msg) {
+        closeDecoder();
+        discarding = false;
+        if (decompress && msg.decoderResult().isSuccess() && msg.status().codeClass() != HttpStatusClass.INFORMATIONAL) {
+            decoder = ContentDecoder.create(msg.headers().get(HttpHeaderNames.CONTENT_ENCODING), ctx.alloc());
+        }
+        if (decoder == null) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        msg.headers().remove(HttpHeaderNames.CONTENT_ENCODING);
+        msg.headers().remove(HttpHeaderNames.CONTENT_LENGTH);
+        if (msg instanceof HttpContent) {
+            // a full response, the status and headers are passed on before the decoded content
+            ctx.fireChannelRead(new DefaultHttpResponse(msg.protocolVersion(), msg.status(), msg.headers()));
+            onContent(ctx, (HttpContent) msg);
+        } else {
+            ctx.fireChannelRead(msg);
+        }
+    }
+
+    /**
+     * Handles the response content, passing on the decoded chunks as they are inflated, the content is released
+     *
+     * @param ctx the context
+     * @param msg the content
+     */
+    private void onContent(ChannelHandlerContext ctx, HttpContent msg) {
+        boolean last = msg instanceof LastHttpContent;
+        try {
+            if (discarding) {
+                discarding = !last;
+                return;
+            }
+            if (msg.decoderResult().isFailure()) {
+                closeDecoder();
+                ctx.fireChannelRead(msg.retain());
+                return;
+            }
+            produced = false;
+            decoder.decode(msg.content(), chunk -> {
+                produced = true;
+                ctx.fireChannelRead(new DefaultHttpContent(chunk));
+            });
+            if (!last) {
+                readNeeded |= !produced;
+                return;
+            }
+            decoder.finish();
+            closeDecoder();
+            HttpHeaders trailers = ((LastHttpContent) msg).trailingHeaders();
+            if (trailers.isEmpty()) {
+                ctx.fireChannelRead(LastHttpContent.EMPTY_LAST_CONTENT);
+            } else {
+                LastHttpContent lastContent = new DefaultLastHttpContent(Unpooled.EMPTY_BUFFER);
+                lastContent.trailingHeaders().set(trailers);
+                ctx.fireChannelRead(lastContent);
+            }
+        } catch (DecompressionException ex) {
+            closeDecoder();
+            discarding = !last; // the rest of the response is discarded, the request is failed
+            ctx.fireExceptionCaught(ex);
+        } finally {
+            msg.release();
+        }
+    }
+
+    /**
+     * Closes the decoder, if there is one, releasing its inflater to the pool of the event loop
+     *
+     */
+    private void closeDecoder() {
+        if (decoder != null) {
+            decoder.close();
+            decoder = null;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package uk.co.gcwilliams.async.http.impl.handler;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import uk.co.gcwilliams.async.http.TlsHandshakeListener;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.TrustManagerFactory;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The default SSL context, shared by all the connections of a client, so the TLS sessions are cached by host and port,
+ * and a new connection to a host resumes a session rather than doing a full handshake. The OpenSSL provider is used
+ * when netty-tcnative is on the class path, otherwise the JDK provider.
+ *
+ * @author : Gareth Williams
+ **/
+public class DefaultSslContext {
+
+    private static final ApplicationProtocolConfig HTTP2_APPLICATION_PROTOCOLS = new ApplicationProtocolConfig(
+        ApplicationProtocolConfig.Protocol.ALPN,
+        ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+        ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+        ApplicationProtocolNames.HTTP_2,
+        ApplicationProtocolNames.HTTP_1_1);
+
+    private final SslContext sslContext;
+
+    private final SslContext http2SslContext;
+
+    private final Duration handshakeTimeout;
+
+    private final TlsHandshakeListener handshakeListener;
+
+    /**
+     * Constructor
+     *
+     * @param provider the provider, or null to use OpenSSL when available
+     * @param trustManagerFactory the trust manager factory, or null for the default trust store
+     * @param protocols the protocols, or null for the provider's defaults
+     * @param ciphers the cipher suites, or null for the provider's defaults
+     * @param sessionCacheSize the size of the session cache, or zero for the provider's default
+     * @param sessionTimeout the timeout of the cached sessions, or zero for the provider's default
+     * @param handshakeTimeout the handshake timeout
+     * @param handshakeListener the handshake listener
+     */
+    public DefaultSslContext(
+            SslProvider provider,
+            TrustManagerFactory trustManagerFactory,
+            List<String> protocols,
+            List<String> ciphers,
+            long sessionCacheSize,
+            Duration sessionTimeout,
+            Duration handshakeTimeout,
+            TlsHandshakeListener handshakeListener) {
+        SslProvider resolved = provider != null ? provider : OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK;
+        SslContextBuilder builder = SslContextBuilder.forClient()
+            .sslProvider(resolved)
+            .trustManager(trustManagerFactory)
+            .protocols(protocols)
+            .ciphers(ciphers)
+            .sessionCacheSize(sessionCacheSize)
+            .sessionTimeout(sessionTimeout.getSeconds());
+        try {
+            this.sslContext = builder.build();
+            this.http2SslContext = builder.applicationProtocolConfig(HTTP2_APPLICATION_PROTOCOLS).build();
+        } catch (SSLException e) {
+            throw new IllegalStateException("Unable to create SSL context", e);
+        }
+        this.handshakeTimeout = handshakeTimeout;
+        this.handshakeListener = handshakeListener;
+    }
+
+    /**
+     * Creates a new SSL handler
+     *
+     * @param allocator the allocator
+     * @param host the host
+     * @param port the port
+     * @param enableSni true if the host is sent with SNI, which also keys the session cache, false otherwise
+     * @param http2 true if HTTP/2 is offered with ALPN, false otherwise
+     * @return the SSL handler
+     */
+    public DefaultSslHandler newHandler(ByteBufAllocator allocator, String host, int port, boolean enableSni, boolean http2) {
+        SslContext context = http2 ? http2SslContext : sslContext;
+        SSLEngine engine = enableSni
+            ? context.newEngine(allocator, host, port)
+            : context.newEngine(allocator);
+        DefaultSslHandler handler = new DefaultSslHandler(engine, host, port, handshakeListener);
+        handler.setHandshakeTimeoutMillis(handshakeTimeout.toMillis());
+        return handler;
+    }
+}
@@ -1,60 +1,97 @@
 package uk.co.gcwilliams.async.http.impl.handler;
 
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.ssl.SslHandler;
+import io.netty.util.concurrent.Future;
+import uk.co.gcwilliams.async.http.TlsHandshakeListener;
 
-import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 
 /**
- * The default SSL handler
+ * The default SSL handler, created by the {@link DefaultSslContext}, times the handshake for the handshake listener
  *
  * @author : Gareth Williams
  **/
 public class DefaultSslHandler extends SslHandler {
 
-    private static final SSLContext SSL_CONTEXT;
+    private final String host;
 
-    static {
-        try {
-            SSL_CONTEXT = SSLContext.getInstance("TLS");
-            SSL_CONTEXT.init(null, null, null);
-        } catch (NoSuchAlgorithmException | KeyManagementException e) {
-            throw new IllegalStateException("Unable to create SSL context", e);
-        }
-    }
+    private final int port;
+
+    private final TlsHandshakeListener handshakeListener;
+
+    private long handshakeStartedNanos;
+
+    private long handshakeStartedMillis;
 
     /**
      * Constructor
      *
+     * @param engine the SSL engine
+     * @param host the host
+     * @param port the port
+     * @param handshakeListener the handshake listener
      */
-    public DefaultSslHandler() {
-        this(null, -1);
+    DefaultSslHandler(SSLEngine engine, String host, int port, TlsHandshakeListener handshakeListener) {
+        super(engine);
+        this.host = host;
+        this.port = port;
+        this.handshakeListener = handshakeListener;
     }
 
     /**
-     * Constructor
+     * Gets the application protocol negotiated during the handshake
+     *
+     * @return the application protocol, or null if none was negotiated
+     */
+    public String getNegotiatedApplicationProtocol() {
+        String applicationProtocol = applicationProtocol();
+        return applicationProtocol == null || applicationProtocol.isEmpty() ? null : applicationProtocol;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        Channel channel = ctx.channel();
+        if (channel.isActive()) {
+            handshakeStarted();
+        }
+        handshakeFuture().addListener(this::handshakeCompleted);
+        super.handlerAdded(ctx);
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        handshakeStarted();
+        super.channelActive(ctx);
+    }
+
+    /**
+     * Records the start of the handshake
      *
-     * @param host the host
-     * @param port the port
      */
-    public DefaultSslHandler(String host, int port) {
-        super(createSslEngine(host, port));
+    private void handshakeStarted() {
+        handshakeStartedNanos = System.nanoTime();
+        handshakeStartedMillis = System.currentTimeMillis();
     }
 
     /**
-     * Creates an SSL engine
+     * Tells the handshake listener the handshake completed, the session was resumed if it was created before the
+     * handshake started
      *
-     * @param host the host
-     * @param port the port
-     * @return the SSL engine
+     * @param future the handshake future
      */
-    private static SSLEngine createSslEngine(String host, int port) {
-        SSLEngine sslEngine = host != null
-            ? SSL_CONTEXT.createSSLEngine(host, port)
-            : SSL_CONTEXT.createSSLEngine();
-        sslEngine.setUseClientMode(true);
-        return sslEngine;
+    private void handshakeCompleted(Future<? super Channel> future) {
+        if (handshakeStartedNanos == 0) {
+            return; // the channel was never active
+        }
+        Duration duration = Duration.ofNanos(System.nanoTime() - handshakeStartedNanos);
+        if (future.isSuccess()) {
+            boolean resumed = engine().getSession().getCreationTime() < handshakeStartedMillis;
+            handshakeListener.onHandshake(host, port, duration, resumed);
+        } else {
+            handshakeListener.onHandshakeFailure(host, port, duration, future.cause());
+        }
     }
 }
@@ -0,0 +1,541 @@
+package uk.co.gcwilliams.async.http.impl.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.pool.ChannelPool;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpStatusClass;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.ssl.SslHandshakeCompletionEvent;
+import io.netty.handler.timeout.ReadTimeoutException;
+import io.netty.handler.timeout.WriteTimeoutException;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import uk.co.gcwilliams.async.http.AsyncHttpClientListener;
+import uk.co.gcwilliams.async.http.AsyncHttpRequest;
+import uk.co.gcwilliams.async.http.AsyncHttpResponse;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * The HTTP request handler, installed once per channel, dispatches the response of the current request, buffering
+ * the body, or streaming it if requested, and enforces the read and write timeouts. The state of each request is
+ * swapped in by {@link #begin}, so sending a request does not change the pipeline. The state is confined to the
+ * channel's event loop, the timeouts are armed on the client's shared timer, and checked on the event loop. While a
+ * body is streamed, the read timeout only runs while the body is waiting on the channel, not while the subscriber has
+ * no demand.
+ *
+ * @author : Gareth Williams
+ **/
+public class HttpRequestHandler extends ChannelDuplexHandler {
+
+    private static final int DEFAULT_BODY_SIZE = 1024;
+
+    private static final int MAX_INITIAL_BODY_SIZE = 8192;
+
+    private static final byte[] EMPTY_BODY = new byte[0];
+
+    private final ChannelFutureListener writeCompleted = this::writeCompleted;
+
+    private final TimerTask readTimeoutTask = this::readTimedOut;
+
+    private final TimerTask writeTimeoutTask = this::writeTimedOut;
+
+    private ChannelHandlerContext ctx;
+
+    private List<AsyncHttpClientListener> listeners;
+
+    private AsyncHttpRequest request;
+
+    private Consumer<AsyncHttpResponse> resolve;
+
+    private Consumer<Exception> reject;
+
+    private Executor executor;
+
+    private ChannelPool channelPool;
+
+    private int maxContentLength;
+
+    private Timer timer;
+
+    private long readTimeoutNanos;
+
+    private long writeTimeoutNanos;
+
+    private long lastReadNanos;
+
+    private long lastWriteNanos;
+
+    private int pendingWrites;
+
+    private Timeout readTimeout;
+
+    private Timeout writeTimeout;
+
+    private HttpResponse response;
+
+    private boolean informational;
+
+    private byte[] body;
+
+    private int length;
+
+    private StreamingResponseBody streamingBody;
+
+    private boolean awaitingRead;
+
+    private boolean completed = true;
+
+    /**
+     * Begins a request on the channel, must be called on the channel's event loop, before the request is written
+     *
+     * @param listeners the listeners
+     * @param request the request
+     * @param resolve the resolve consumer
+     * @param reject the reject consumer
+     * @param executor the executor
+     * @param channelPool the channel pool
+     * @param maxContentLength the maximum length of a buffered response body
+     * @param timer the timer of the read and write timeouts
+     */
+    public void begin(
+            List<AsyncHttpClientListener> listeners,
+            AsyncHttpRequest request,
+            Consumer<AsyncHttpResponse> resolve,
+            Consumer<Exception> reject,
+            Executor executor,
+            ChannelPool channelPool,
+            int maxContentLength,
+            Timer timer) {
+        end();
+        this.listeners = listeners;
+        this.request = request;
+        this.resolve = resolve;
+        this.reject = reject;
+        this.executor = executor;
+        this.channelPool = channelPool;
+        this.maxContentLength = maxContentLength;
+        this.timer = timer;
+        this.readTimeoutNanos = request.getReadTimeout().toNanos();
+        this.writeTimeoutNanos = request.getWriteTimeout().toNanos();
+        this.completed = false;
+        this.lastReadNanos = System.nanoTime();
+        if (readTimeoutNanos > 0) {
+            readTimeout = timer.newTimeout(readTimeoutTask, readTimeoutNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Aborts the request, as it times out, or is cancelled, failing it, and closing the channel, if it is still the
+     * current request, and its response has not been resolved, must be called on the channel's event loop
+     *
+     * @param request the request
+     * @param cause the cause
+     */
+    public void abort(AsyncHttpRequest request, Throwable cause) {
+        if (this.request == request && !completed) {
+            timedOut(cause);
+        }
+    }
+
+    /**
+     * Ends the current request, cancelling the timeouts, and clearing its state, called as the channel is released
+     *
+     */
+    public void end() {
+        if (readTimeout != null) {
+            readTimeout.cancel();
+            readTimeout = null;
+        }
+        if (writeTimeout != null) {
+            writeTimeout.cancel();
+            writeTimeout = null;
+        }
+        completed = true;
+        pendingWrites = 0;
+        listeners = null;
+        request = null;
+        resolve = null;
+        reject = null;
+        channelPool = null;
+        timer = null;
+        response = null;
+        informational = false;
+        body = null;
+        length = 0;
+        streamingBody = null;
+        awaitingRead = false;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        end();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof HttpObject)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        try {
+            lastReadNanos = System.nanoTime();
+            awaitingRead = false;
+            onHttpObject(ctx, (HttpObject) msg);
+        } finally {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    @Override
+    public void read(ChannelHandlerContext ctx) throws Exception {
+        // the streamed body reads as the subscriber has demand, the read timeout resumes from the read
+        if (streamingBody != null && !awaitingRead) {
+            awaitingRead = true;
+            lastReadNanos = System.nanoTime();
+            if (readTimeoutNanos > 0 && readTimeout == null) {
+                readTimeout = timer.newTimeout(readTimeoutTask, readTimeoutNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        ctx.read();
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (writeTimeoutNanos > 0 && !completed && !promise.isVoid()) {
+            if (pendingWrites++ == 0) {
+                lastWriteNanos = System.nanoTime();
+            }
+            if (writeTimeout == null) {
+                writeTimeout = timer.newTimeout(writeTimeoutTask, writeTimeoutNanos, TimeUnit.NANOSECONDS);
+            }
+            promise.addListener(writeCompleted);
+        }
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (!completed || streamingBody != null) {
+            exceptionCaught(ctx, new ClosedChannelException());
+        }
+        end();
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        if (completed) {
+            // the response has been resolved, any failure belongs to the streamed body
+            if (streamingBody != null) {
+                streamingBody.onError(cause);
+            } else if (request == null) {
+                ctx.fireExceptionCaught(cause);
+            }
+            return;
+        }
+        completed = true;
+        ChannelPool pool = channelPool;
+        fail(cause);
+        ctx.close(); // the state of the connection is unknown, e.g. a partially read response
+        pool.release(ctx.channel());
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof SslHandshakeCompletionEvent) {
+            SslHandshakeCompletionEvent sslHandshakeCompletionEvent = (SslHandshakeCompletionEvent) evt;
+            if (!sslHandshakeCompletionEvent.isSuccess() && !completed) {
+                completed = true;
+                fail(sslHandshakeCompletionEvent.cause());
+                channelPool.release(ctx.channel());
+            }
+        } else {
+            ctx.fireUserEventTriggered(evt);
+        }
+    }
+
+    /**
+     * Handles a HTTP object of the response
+     *
+     * @param ctx the context
+     * @param msg the HTTP object
+     */
+    private void onHttpObject(ChannelHandlerContext ctx, HttpObject msg) throws Exception {
+        if (completed && streamingBody == null) {
+            return;
+        }
+        if (msg.decoderResult().isFailure()) {
+            exceptionCaught(ctx, msg.decoderResult().cause());
+            return;
+        }
+        if (msg instanceof HttpResponse) {
+            onResponse(ctx, (HttpResponse) msg);
+        }
+        if (msg instanceof HttpContent) {
+            onContent(ctx, (HttpContent) msg);
+        }
+    }
+
+    /**
+     * Handles the response status and headers
+     *
+     * @param ctx the context
+     * @param msg the response
+     */
+    private void onResponse(ChannelHandlerContext ctx, HttpResponse msg) throws TooLongFrameException {
+        // interim responses, e.g. 100 continue, are followed by the final response
+        informational = msg.status().codeClass() == HttpStatusClass.INFORMATIONAL
+            && !HttpResponseStatus.SWITCHING_PROTOCOLS.equals(msg.status());
+        if (informational) {
+            return;
+        }
+        response = msg;
+        if (request.isStreamResponse()) {
+            ChannelPool pool = channelPool;
+            streamingBody = new StreamingResponseBody(ctx.channel(), executor, () -> pool.release(ctx.channel()));
+            complete(ctx, createResponse().withBody(streamingBody).build(), false);
+            return;
+        }
+        long contentLength = HttpUtil.getContentLength(msg, -1L);
+        if (contentLength > maxContentLength) {
+            throw new TooLongFrameException("Response entity too large: " + contentLength);
+        }
+        // the content length is not trusted, the body grows as the content is read, beyond the first chunk
+        if (!hasBody(msg)) {
+            body = EMPTY_BODY;
+        } else {
+            body = new byte[contentLength >= 0 ? (int) Math.min(contentLength, MAX_INITIAL_BODY_SIZE) : DEFAULT_BODY_SIZE];
+        }
+        length = 0;
+    }
+
+    /**
+     * Determines if the response may have a body, the response to a HEAD request, a 204 or a 304 has none, whatever
+     * its content length header
+     *
+     * @param msg the response
+     * @return true if the response may have a body, false otherwise
+     */
+    private boolean hasBody(HttpResponse msg) {
+        int status = msg.status().code();
+        return request.getMethod() != AsyncHttpRequest.HttpMethod.HEAD
+            && status != HttpResponseStatus.NO_CONTENT.code()
+            && status != HttpResponseStatus.NOT_MODIFIED.code();
+    }
+
+    /**
+     * Handles the response content, appending it to the body, or publishing it when streamed
+     *
+     * @param ctx the context
+     * @param msg the content
+     */
+    private void onContent(ChannelHandlerContext ctx, HttpContent msg) throws TooLongFrameException {
+        boolean last = msg instanceof LastHttpContent;
+        if (informational) {
+            informational = !last;
+            return;
+        }
+        if (response == null) {
+            return;
+        }
+        if (streamingBody != null) {
+            streamingBody.onContent(msg.content(), last);
+            return;
+        }
+        append(msg.content());
+        if (last) {
+            byte[] contents = length == body.length ? body : Arrays.copyOf(body, length);
+            complete(ctx, createResponse().withBody(contents).build(), true);
+        }
+    }
+
+    /**
+     * Appends the content to the body
+     *
+     * @param content the content
+     */
+    private void append(ByteBuf content) throws TooLongFrameException {
+        int readable = content.readableBytes();
+        if (readable == 0) {
+            return;
+        }
+        if (length + readable > maxContentLength || length + readable < 0) {
+            throw new TooLongFrameException("Response entity too large: " + (length + (long) readable));
+        }
+        if (length + readable > body.length) {
+            int capacity = (int) Math.min(maxContentLength, Math.max(body.length * 2L, length + (long) readable));
+            body = Arrays.copyOf(body, capacity);
+        }
+        content.getBytes(content.readerIndex(), body, length, readable);
+        length += readable;
+    }
+
+    /**
+     * Creates the response builder, with the status and the headers
+     *
+     * @return the response builder
+     */
+    private AsyncHttpResponse.Builder createResponse() {
+        HttpResponse msg = response;
+        return AsyncHttpResponse.builder()
+            .withStatusCode(msg.status().code())
+            .withHeaders(msg.headers()
+                .names()
+                .stream()
+                .collect(toMap(Function.identity(), name -> msg.headers().getAll(name))));
+    }
+
+    /**
+     * Resolves the response
+     *
+     * @param ctx the context
+     * @param response the response
+     * @param release true if the channel should be released, false if the streamed body will release it
+     */
+    private void complete(ChannelHandlerContext ctx, AsyncHttpResponse response, boolean release) {
+        completed = true;
+        List<AsyncHttpClientListener> listeners = this.listeners;
+        AsyncHttpRequest request = this.request;
+        Consumer<AsyncHttpResponse> resolve = this.resolve;
+        executor.execute(() -> {
+            listeners.forEach(AsyncHttpClientListener::onReceive);
+            listeners.forEach(listener -> listener.onReceive(request, response));
+            resolve.accept(response);
+            listeners.forEach(AsyncHttpClientListener::onComplete);
+        });
+        if (release) {
+            channelPool.release(ctx.channel());
+        }
+    }
+
+    /**
+     * Rejects the request
+     *
+     * @param cause the cause
+     */
+    private void fail(Throwable cause) {
+        Exception exception = cause instanceof Exception ? (Exception) cause : new Exception(cause);
+        List<AsyncHttpClientListener> listeners = this.listeners;
+        Consumer<Exception> reject = this.reject;
+        executor.execute(() -> {
+            listeners.forEach(AsyncHttpClientListener::onReceive);
+            listeners.forEach(listener -> listener.onException(exception));
+            reject.accept(exception);
+        });
+    }
+
+    /**
+     * Completes a write of the request, the write timeout is from the last write progress
+     *
+     * @param future the write future
+     */
+    private void writeCompleted(ChannelFuture future) {
+        if (pendingWrites > 0) {
+            pendingWrites--;
+            lastWriteNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Checks the read timeout on the event loop, called by the timer as it expires
+     *
+     * @param timeout the expired timeout
+     */
+    private void readTimedOut(Timeout timeout) {
+        ctx.executor().execute(() -> checkReadTimeout(timeout));
+    }
+
+    /**
+     * Checks the write timeout on the event loop, called by the timer as it expires
+     *
+     * @param timeout the expired timeout
+     */
+    private void writeTimedOut(Timeout timeout) {
+        ctx.executor().execute(() -> checkWriteTimeout(timeout));
+    }
+
+    /**
+     * Fails the request if nothing has been read within the read timeout, otherwise checks again when it could expire,
+     * a timeout that was cancelled as it expired is ignored. The timeout is suspended while a streamed body is not
+     * waiting on the channel, as the subscriber has no demand, until the body reads again
+     *
+     * @param timeout the expired timeout
+     */
+    private void checkReadTimeout(Timeout timeout) {
+        if (timeout != readTimeout) {
+            return;
+        }
+        readTimeout = null;
+        if (request == null || (streamingBody != null && !awaitingRead)) {
+            return;
+        }
+        long remaining = readTimeoutNanos - (System.nanoTime() - lastReadNanos);
+        if (remaining > 0) {
+            readTimeout = timer.newTimeout(readTimeoutTask, remaining, TimeUnit.NANOSECONDS);
+            return;
+        }
+        timedOut(ReadTimeoutException.INSTANCE);
+    }
+
+    /**
+     * Fails the request if the pending writes have not progressed within the write timeout, otherwise checks
+     * again when it could expire, a timeout that was cancelled as it expired is ignored
+     *
+     * @param timeout the expired timeout
+     */
+    private void checkWriteTimeout(Timeout timeout) {
+        if (timeout != writeTimeout) {
+            return;
+        }
+        writeTimeout = null;
+        if (request == null || pendingWrites == 0) {
+            return;
+        }
+        long remaining = writeTimeoutNanos - (System.nanoTime() - lastWriteNanos);
+        if (remaining > 0) {
+            writeTimeout = timer.newTimeout(writeTimeoutTask, remaining, TimeUnit.NANOSECONDS);
+            return;
+        }
+        timedOut(WriteTimeoutException.INSTANCE);
+    }
+
+    /**
+     * Fails the request, or the streamed body, with the timeout, and closes the channel
+     *
+     * @param cause the timeout
+     */
+    private void timedOut(Throwable cause) {
+        try {
+            exceptionCaught(ctx, cause);
+        } catch (Exception ex) {
+            ctx.fireExceptionCaught(ex);
+        }
+        ctx.close();
+    }
+}
@@ -0,0 +1,70 @@
+package uk.co.gcwilliams.async.http.impl.handler;
+
+import io.netty.util.concurrent.FastThreadLocal;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.zip.Inflater;
+
+/**
+ * The pool of inflaters, one per event loop, so the responses decoded on an event loop reuse its inflaters, rather
+ * than allocating the native state of an inflater per response. The inflaters must be released on the thread which
+ * acquired them, and the inflaters over the maximum are ended as they are released.
+ *
+ * @author : Gareth Williams
+ **/
+final class InflaterPool {
+
+    private static final int MAX_POOLED = 16;
+
+    private static final FastThreadLocal<InflaterPool> POOLS = new FastThreadLocal<>() {
+        @Override
+        protected InflaterPool initialValue() {
+            return new InflaterPool();
+        }
+    };
+
+    private final Deque<Inflater> zlib = new ArrayDeque<>();
+
+    private final Deque<Inflater> raw = new ArrayDeque<>();
+
+    private InflaterPool() {
+    }
+
+    /**
+     * Acquires an inflater from the pool of the current thread
+     *
+     * @param nowrap true for raw deflate, without the zlib header and checksum, false otherwise
+     * @return the inflater
+     */
+    static Inflater acquire(boolean nowrap) {
+        Inflater inflater = POOLS.get().inflaters(nowrap).poll();
+        return inflater != null ? inflater : new Inflater(nowrap);
+    }
+
+    /**
+     * Releases the inflater to the pool of the current thread, resetting it
+     *
+     * @param inflater the inflater
+     * @param nowrap true if the inflater is for raw deflate, false otherwise
+     */
+    static void release(Inflater inflater, boolean nowrap) {
+        Deque<Inflater> inflaters = POOLS.get().inflaters(nowrap);
+        if (inflaters.size() < MAX_POOLED) {
+            inflater.reset();
+            inflaters.push(inflater);
+        } else {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Gets the pooled inflaters
+     *
+     * @param nowrap true for raw deflate, false otherwise
+     * @return the pooled inflaters
+     */
+    private Deque<Inflater> inflaters(boolean nowrap) {
+        return nowrap ? raw : zlib;
+    }
+}
@@ -0,0 +1,61 @@
+package uk.co.gcwilliams.async.http.impl.handler;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the tasks one at a time, in submission order, on the delegate executor
+ *
+ * @author : Gareth Williams
+ **/
+class SerialExecutor implements Executor {
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final Executor delegate;
+
+    /**
+     * Constructor
+     *
+     * @param delegate the delegate executor
+     */
+    SerialExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        schedule();
+    }
+
+    /**
+     * Schedules the draining of the tasks, if not already running
+     *
+     */
+    private void schedule() {
+        if (!tasks.isEmpty() && running.compareAndSet(false, true)) {
+            delegate.execute(this::drain);
+        }
+    }
+
+    /**
+     * Runs the queued tasks
+     *
+     */
+    private void drain() {
+        try {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        } finally {
+            running.set(false);
+            schedule();
+        }
+    }
+}
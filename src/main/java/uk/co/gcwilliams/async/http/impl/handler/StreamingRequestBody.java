@@ -0,0 +1,183 @@
+package uk.co.gcwilliams.async.http.impl.handler;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.LastHttpContent;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+/**
+ * A streamed request body, writes the chunks published to the channel as they are received. A chunk is
+ * only requested while the channel is writable, so the memory used is bounded by the channel's write
+ * buffer, not the size of the body. The state is confined to the channel's event loop, and the subscription
+ * is requested, in order, on the executor, so publishers which block while producing do not block the event loop.
+ * If the handler is removed before the body is complete, the subscription is cancelled and the channel is closed,
+ * as a partially written request cannot be reused.
+ *
+ * @author : Gareth Williams
+ **/
+public class StreamingRequestBody extends ChannelInboundHandlerAdapter implements Flow.Subscriber<ByteBuffer> {
+
+    private final Flow.Publisher<ByteBuffer> publisher;
+
+    private final Executor executor;
+
+    private ChannelHandlerContext ctx;
+
+    private EventLoop eventLoop;
+
+    private Flow.Subscription subscription;
+
+    private boolean requested;
+
+    private boolean done;
+
+    /**
+     * Constructor
+     *
+     * @param publisher the publisher of the body
+     * @param executor the executor, on which the subscription is requested
+     */
+    public StreamingRequestBody(Flow.Publisher<ByteBuffer> publisher, Executor executor) {
+        this.publisher = publisher;
+        this.executor = new SerialExecutor(executor);
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+        this.eventLoop = ctx.channel().eventLoop();
+        executor.execute(() -> {
+            try {
+                publisher.subscribe(this);
+            } catch (RuntimeException ex) {
+                onError(ex);
+            }
+        });
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        if (!done) {
+            done = true;
+            cancel();
+            ctx.channel().close();
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        requestIfWritable();
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (!done) {
+            done = true;
+            cancel();
+        }
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        eventLoop.execute(() -> {
+            if (this.subscription != null) {
+                executor.execute(subscription::cancel);
+                return;
+            }
+            this.subscription = subscription;
+            if (done) {
+                cancel();
+            } else {
+                requestIfWritable();
+            }
+        });
+    }
+
+    @Override
+    public void onNext(ByteBuffer item) {
+        eventLoop.execute(() -> {
+            if (done) {
+                return;
+            }
+            requested = false;
+            if (item.hasRemaining()) {
+                ChannelFuture future = ctx.writeAndFlush(new DefaultHttpContent(Unpooled.wrappedBuffer(item)));
+                future.addListener(written -> {
+                    if (!written.isSuccess()) {
+                        fail(written.cause());
+                    }
+                });
+            }
+            requestIfWritable();
+        });
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        eventLoop.execute(() -> fail(throwable));
+    }
+
+    @Override
+    public void onComplete() {
+        eventLoop.execute(() -> {
+            if (done) {
+                return;
+            }
+            done = true;
+            ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT).addListener(written -> {
+                if (!written.isSuccess()) {
+                    ctx.pipeline().fireExceptionCaught(written.cause());
+                }
+            });
+            ctx.pipeline().remove(this);
+        });
+    }
+
+    /**
+     * Requests the next chunk, if the channel is writable and a chunk is not already requested
+     *
+     */
+    private void requestIfWritable() {
+        if (done || requested || subscription == null || !ctx.channel().isWritable()) {
+            return;
+        }
+        requested = true;
+        Flow.Subscription subscription = this.subscription;
+        executor.execute(() -> subscription.request(1));
+    }
+
+    /**
+     * Cancels the subscription, if subscribed
+     *
+     */
+    private void cancel() {
+        Flow.Subscription subscription = this.subscription;
+        if (subscription != null) {
+            executor.execute(subscription::cancel);
+        }
+    }
+
+    /**
+     * Fails the request, the exception is fired from the head of the pipeline, so the
+     * request handlers reject the request and close the channel
+     *
+     * @param cause the cause
+     */
+    private void fail(Throwable cause) {
+        if (done) {
+            return;
+        }
+        done = true;
+        cancel();
+        ctx.pipeline().fireExceptionCaught(cause);
+    }
+}
@@ -0,0 +1,199 @@
+package uk.co.gcwilliams.async.http.impl.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A streamed response body, publishes the content as it is read from the channel. Auto read is disabled
+ * on the channel while the body is streamed, the channel is only read when the subscriber has demand, so
+ * the memory used is bounded by the demand, not the size of the body. The state is confined to the
+ * channel's event loop, and the subscriber is signalled, in order, on the executor.
+ *
+ * @author : Gareth Williams
+ **/
+class StreamingResponseBody implements Flow.Publisher<ByteBuffer> {
+
+    private final Channel channel;
+
+    private final EventLoop eventLoop;
+
+    private final Executor executor;
+
+    private final Runnable release;
+
+    private final Deque<ByteBuffer> chunks = new ArrayDeque<>();
+
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    private Flow.Subscriber<? super ByteBuffer> subscriber;
+
+    private long demand;
+
+    private boolean last;
+
+    private boolean done;
+
+    private boolean released;
+
+    private Throwable error;
+
+    /**
+     * Constructor
+     *
+     * @param channel the channel
+     * @param executor the executor, on which the subscriber is signalled
+     * @param release the callback to release the channel once the body is finished with
+     */
+    StreamingResponseBody(Channel channel, Executor executor, Runnable release) {
+        this.channel = channel;
+        this.eventLoop = channel.eventLoop();
+        this.executor = new SerialExecutor(executor);
+        this.release = release;
+        channel.config().setAutoRead(false);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) { }
+
+                    @Override
+                    public void cancel() { }
+                });
+                subscriber.onError(new IllegalStateException("The body can only be subscribed to once"));
+            });
+            return;
+        }
+        eventLoop.execute(() -> {
+            this.subscriber = subscriber;
+            Subscription subscription = new Subscription();
+            executor.execute(() -> subscriber.onSubscribe(subscription));
+            drain();
+        });
+    }
+
+    /**
+     * Called on the event loop with the content read from the channel
+     *
+     * @param content the content
+     * @param last true if this is the last content
+     */
+    void onContent(ByteBuf content, boolean last) {
+        if (done) {
+            return;
+        }
+        if (content.isReadable()) {
+            byte[] bytes = new byte[content.readableBytes()];
+            content.readBytes(bytes);
+            chunks.add(ByteBuffer.wrap(bytes));
+        }
+        this.last = last;
+        drain();
+    }
+
+    /**
+     * Called on the event loop if the channel fails, ignored once the body is complete
+     *
+     * @param cause the cause
+     */
+    void onError(Throwable cause) {
+        if (done || last || error != null) {
+            return;
+        }
+        error = cause;
+        chunks.clear();
+        if (subscriber == null) {
+            releaseChannel(true);
+        }
+        drain();
+    }
+
+    /**
+     * Publishes the chunks the subscriber has demand for, and reads from the channel if more are needed
+     *
+     */
+    private void drain() {
+        if (subscriber == null || done) {
+            return;
+        }
+        while (demand > 0 && !chunks.isEmpty()) {
+            demand--;
+            ByteBuffer chunk = chunks.poll();
+            executor.execute(() -> subscriber.onNext(chunk));
+        }
+        if (error != null) {
+            done = true;
+            Throwable cause = error;
+            executor.execute(() -> subscriber.onError(cause));
+            releaseChannel(true);
+        } else if (last && chunks.isEmpty()) {
+            done = true;
+            executor.execute(subscriber::onComplete);
+            releaseChannel(false);
+        } else if (demand > 0) {
+            channel.read();
+        }
+    }
+
+    /**
+     * Releases the channel back to the pool, closing it if the body was not fully read
+     *
+     * @param close true if the channel should be closed
+     */
+    private void releaseChannel(boolean close) {
+        if (released) {
+            return;
+        }
+        released = true;
+        channel.config().setAutoRead(true);
+        if (close) {
+            channel.close();
+        }
+        release.run();
+    }
+
+    /**
+     * The subscription, hands the signals to the event loop
+     *
+     */
+    private class Subscription implements Flow.Subscription {
+
+        @Override
+        public void request(long n) {
+            eventLoop.execute(() -> {
+                if (done) {
+                    return;
+                }
+                if (n <= 0) {
+                    onError(new IllegalArgumentException("The number of chunks requested should be positive"));
+                    return;
+                }
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                drain();
+            });
+        }
+
+        @Override
+        public void cancel() {
+            eventLoop.execute(() -> {
+                if (done) {
+                    return;
+                }
+                done = true;
+                chunks.clear();
+                releaseChannel(!last);
+            });
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package uk.co.gcwilliams.async.http.impl.pool;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+/**
+ * Picks the address of a host to open a new connection to, a picker is created for each pool, and is
+ * told as requests start and finish on the connections to each address, see {@link AddressPickers}.
+ * The picker is called from the event loops concurrently, so should be thread safe.
+ *
+ * @author : Gareth Williams
+ **/
+public interface AddressPicker {
+
+    /**
+     * Picks the address to connect to
+     *
+     * @param addresses the resolved addresses of the host, not empty
+     * @return the address
+     */
+    InetSocketAddress pick(List<InetSocketAddress> addresses);
+
+    /**
+     * Called when a request starts on a connection to the address
+     *
+     * @param address the address
+     */
+    default void onRequestStart(InetSocketAddress address) {
+    }
+
+    /**
+     * Called when a request finishes on a connection to the address
+     *
+     * @param address the address
+     * @param latencyNanos the latency of the request, in nanoseconds
+     */
+    default void onRequestEnd(InetSocketAddress address, long latencyNanos) {
+    }
+}
@@ -0,0 +1,216 @@
+package uk.co.gcwilliams.async.http.impl.pool;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The address pickers
+ *
+ * @author : Gareth Williams
+ **/
+public class AddressPickers {
+
+    private static final long DEFAULT_DECAY_NANOS = Duration.ofSeconds(10).toNanos();
+
+    private AddressPickers() { // static
+    }
+
+    /**
+     * Creates round robin pickers, which pick each address in turn
+     *
+     * @return the picker factory
+     */
+    public static Supplier<AddressPicker> roundRobin() {
+        return RoundRobin::new;
+    }
+
+    /**
+     * Creates power of two choices pickers, which pick two addresses at random, and pick the one
+     * with the fewest requests in flight
+     *
+     * @return the picker factory
+     */
+    public static Supplier<AddressPicker> powerOfTwoChoices() {
+        return () -> new PowerOfTwoChoices(Stats::inFlight, DEFAULT_DECAY_NANOS);
+    }
+
+    /**
+     * Creates least latency pickers, which pick two addresses at random, and pick the one with the lowest
+     * exponentially weighted moving average latency, weighted by the requests in flight. Addresses without
+     * a latency yet are preferred, so they are tried
+     *
+     * @param decay the decay of the moving average, the time after which a latency has a weight of 1/e
+     * @return the picker factory
+     */
+    public static Supplier<AddressPicker> leastLatency(Duration decay) {
+        long decayNanos = decay.toNanos();
+        if (decayNanos <= 0) {
+            throw new IllegalStateException("The decay should be positive");
+        }
+        return () -> new PowerOfTwoChoices(stats -> stats.latency() * (stats.inFlight() + 1), decayNanos);
+    }
+
+    /**
+     * The round robin picker
+     *
+     */
+    private static class RoundRobin implements AddressPicker {
+
+        private final AtomicInteger next = new AtomicInteger();
+
+        @Override
+        public InetSocketAddress pick(List<InetSocketAddress> addresses) {
+            return addresses.get(Math.floorMod(next.getAndIncrement(), addresses.size()));
+        }
+    }
+
+    /**
+     * The power of two choices picker, picks the address with the lowest cost of two random addresses
+     *
+     */
+    private static class PowerOfTwoChoices implements AddressPicker {
+
+        private final ConcurrentMap<InetSocketAddress, Stats> stats = new ConcurrentHashMap<>();
+
+        private final Cost cost;
+
+        private final long decayNanos;
+
+        /**
+         * Constructor
+         *
+         * @param cost the cost of an address
+         * @param decayNanos the decay of the moving average latency
+         */
+        private PowerOfTwoChoices(Cost cost, long decayNanos) {
+            this.cost = cost;
+            this.decayNanos = decayNanos;
+        }
+
+        @Override
+        public InetSocketAddress pick(List<InetSocketAddress> addresses) {
+            if (stats.size() > addresses.size() * 2) {
+                // the addresses no longer resolved
+                stats.keySet().retainAll(addresses);
+            }
+            if (addresses.size() == 1) {
+                return addresses.get(0);
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(addresses.size());
+            int second = random.nextInt(addresses.size() - 1);
+            if (second >= first) {
+                second++;
+            }
+            InetSocketAddress a = addresses.get(first);
+            InetSocketAddress b = addresses.get(second);
+            return cost.of(stats(a)) <= cost.of(stats(b)) ? a : b;
+        }
+
+        @Override
+        public void onRequestStart(InetSocketAddress address) {
+            stats(address).inFlight.incrementAndGet();
+        }
+
+        @Override
+        public void onRequestEnd(InetSocketAddress address, long latencyNanos) {
+            Stats stats = stats(address);
+            stats.inFlight.decrementAndGet();
+            stats.record(latencyNanos);
+        }
+
+        /**
+         * Gets the stats of the address
+         *
+         * @param address the address
+         * @return the stats
+         */
+        private Stats stats(InetSocketAddress address) {
+            return stats.computeIfAbsent(address, __ -> new Stats(decayNanos));
+        }
+    }
+
+    /**
+     * The cost of an address
+     *
+     */
+    @FunctionalInterface
+    private interface Cost {
+
+        /**
+         * Gets the cost of the address
+         *
+         * @param stats the stats of the address
+         * @return the cost
+         */
+        double of(Stats stats);
+    }
+
+    /**
+     * The stats of an address, the requests in flight, and the moving average latency
+     *
+     */
+    private static class Stats {
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final AtomicLong latency = new AtomicLong(Double.doubleToRawLongBits(0));
+
+        private final long decayNanos;
+
+        private volatile long recordedAt = System.nanoTime();
+
+        /**
+         * Constructor
+         *
+         * @param decayNanos the decay of the moving average latency
+         */
+        private Stats(long decayNanos) {
+            this.decayNanos = decayNanos;
+        }
+
+        /**
+         * Gets the requests in flight
+         *
+         * @return the requests in flight
+         */
+        private double inFlight() {
+            return Math.max(inFlight.get(), 0);
+        }
+
+        /**
+         * Gets the moving average latency
+         *
+         * @return the latency, in nanoseconds
+         */
+        private double latency() {
+            return Double.longBitsToDouble(latency.get());
+        }
+
+        /**
+         * Records the latency, see {@link AddressPickers#leastLatency(Duration)}
+         *
+         * @param latencyNanos the latency
+         */
+        private void record(long latencyNanos) {
+            long now = System.nanoTime();
+            long elapsed = Math.max(now - recordedAt, 0);
+            recordedAt = now;
+            latency.getAndUpdate(current -> {
+                double average = Double.longBitsToDouble(current);
+                if (average == 0) {
+                    return Double.doubleToRawLongBits(latencyNanos);
+                }
+                double weight = Math.exp(-elapsed / (double) decayNanos);
+                return Double.doubleToRawLongBits(average * weight + latencyNanos * (1 - weight));
+            });
+        }
+    }
+}
@@ -0,0 +1,552 @@
+package uk.co.gcwilliams.async.http.impl.pool;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.pool.ChannelHealthChecker;
+import io.netty.channel.pool.ChannelPool;
+import io.netty.channel.pool.ChannelPoolHandler;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A channel pool with a sub pool per event loop. A caller running on one of the event loops acquires
+ * a channel owned by its own event loop, without a task hand off, and a caller on any other thread is
+ * assigned an event loop in turn. The idle channels of another event loop are stolen when the sub pool
+ * of the caller's event loop has none, before a new connection is opened, so an idle connection is
+ * reused rather than paying for another handshake. The pending acquires are confined to the sub pool's
+ * event loop, and are handed channels in order, the idle channels are lock free deques, so they can be
+ * stolen, and the connections and the pending acquires are counted across the sub pools.
+ *
+ * @author : Gareth Williams
+ **/
+public class EventLoopChannelPool implements ChannelPool {
+
+    private static final AttributeKey<EventLoopChannelPool> POOL_KEY = AttributeKey.newInstance(EventLoopChannelPool.class.getName());
+
+    private final EventLoopGroup group;
+
+    private final List<SubPool> subPools;
+
+    private final ChannelPoolHandler handler;
+
+    private final ChannelHealthChecker healthChecker;
+
+    private final long acquireTimeoutMillis;
+
+    private final int maxConnections;
+
+    private final int maxPendingAcquires;
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private final AtomicInteger pendingAcquireCount = new AtomicInteger();
+
+    private volatile boolean closed;
+
+    /**
+     * Constructor
+     *
+     * @param bootstrap the bootstrap, the sub pools are created for each event loop of its group
+     * @param handler the channel pool handler
+     * @param healthChecker the health checker, used on release, an idle channel is only checked as active on acquire
+     * @param acquireTimeout the acquire timeout, after which a new connection is opened regardless of the maximum
+     * @param maxConnections the maximum number of connections, across the event loops
+     * @param maxPendingAcquires the maximum number of pending acquires, across the event loops
+     */
+    public EventLoopChannelPool(
+            Bootstrap bootstrap,
+            ChannelPoolHandler handler,
+            ChannelHealthChecker healthChecker,
+            Duration acquireTimeout,
+            int maxConnections,
+            int maxPendingAcquires) {
+        this.group = bootstrap.config().group();
+        this.handler = handler;
+        this.healthChecker = healthChecker;
+        this.acquireTimeoutMillis = acquireTimeout.toMillis();
+        this.maxConnections = maxConnections;
+        this.maxPendingAcquires = maxPendingAcquires;
+        List<SubPool> subPools = new ArrayList<>();
+        for (EventExecutor executor : group) {
+            EventLoop eventLoop = (EventLoop) executor;
+            Bootstrap subPoolBootstrap = bootstrap.clone(eventLoop).handler(new ChannelInitializer<>() {
+                @Override
+                protected void initChannel(Channel channel) throws Exception {
+                    handler.channelCreated(channel);
+                }
+            });
+            subPools.add(new SubPool(eventLoop, subPoolBootstrap, subPools.size()));
+        }
+        this.subPools = List.copyOf(subPools);
+    }
+
+    /**
+     * Connects the channel, sub classes may connect to a particular address
+     *
+     * @param bootstrap the bootstrap, bound to the sub pool's event loop
+     * @param promise the promise of the connected channel
+     * @return the future of the connected channel
+     */
+    protected Future<Channel> connectChannel(Bootstrap bootstrap, Promise<Channel> promise) {
+        bootstrap.connect().addListener((ChannelFuture connected) -> {
+            if (connected.isSuccess()) {
+                promise.trySuccess(connected.channel());
+            } else {
+                promise.tryFailure(connected.cause());
+            }
+        });
+        return promise;
+    }
+
+    @Override
+    public Future<Channel> acquire() {
+        SubPool subPool = currentSubPool();
+        return acquire(subPool, subPool.eventLoop.newPromise());
+    }
+
+    @Override
+    public Future<Channel> acquire(Promise<Channel> promise) {
+        return acquire(currentSubPool(), promise);
+    }
+
+    @Override
+    public Future<Void> release(Channel channel) {
+        return release(channel, channel.eventLoop().newPromise());
+    }
+
+    @Override
+    public Future<Void> release(Channel channel, Promise<Void> promise) {
+        if (channel.attr(POOL_KEY).get() != this) {
+            channel.close();
+            promise.tryFailure(new IllegalArgumentException("The channel " + channel + " was not acquired from this pool"));
+            return promise;
+        }
+        SubPool subPool = subPool(channel.eventLoop());
+        subPool.execute(() -> subPool.release(channel, promise));
+        return promise;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        subPools.forEach(subPool -> subPool.execute(subPool::close));
+    }
+
+    /**
+     * Acquires a channel from the sub pool, running inline when already on its event loop
+     *
+     * @param subPool the sub pool
+     * @param promise the promise
+     * @return the future
+     */
+    private Future<Channel> acquire(SubPool subPool, Promise<Channel> promise) {
+        subPool.execute(() -> subPool.acquire(promise));
+        return promise;
+    }
+
+    /**
+     * Gets the sub pool of the current event loop, or the next sub pool if not on an event loop of the group
+     *
+     * @return the sub pool
+     */
+    private SubPool currentSubPool() {
+        for (SubPool subPool : subPools) {
+            if (subPool.eventLoop.inEventLoop()) {
+                return subPool;
+            }
+        }
+        return subPool(group.next());
+    }
+
+    /**
+     * Gets the sub pool of the event loop
+     *
+     * @param executor the event loop
+     * @return the sub pool
+     */
+    private SubPool subPool(EventExecutor executor) {
+        for (SubPool subPool : subPools) {
+            if (subPool.eventLoop == executor) {
+                return subPool;
+            }
+        }
+        throw new IllegalStateException("The event loop " + executor + " is not part of the pool's group");
+    }
+
+    /**
+     * Reserves a connection, if the maximum number of connections has not been reached
+     *
+     * @return true if reserved, false otherwise
+     */
+    private boolean tryReserveConnection() {
+        int current;
+        do {
+            current = connections.get();
+            if (current >= maxConnections) {
+                return false;
+            }
+        } while (!connections.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Reserves a pending acquire, if the maximum number of pending acquires has not been reached
+     *
+     * @return true if reserved, false otherwise
+     */
+    private boolean tryReservePendingAcquire() {
+        int current;
+        do {
+            current = pendingAcquireCount.get();
+            if (current >= maxPendingAcquires) {
+                return false;
+            }
+        } while (!pendingAcquireCount.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Signals the sub pools with pending acquires that a channel, or a connection, may be available
+     *
+     */
+    private void signalPendingAcquires() {
+        for (SubPool subPool : subPools) {
+            if (subPool.pendingCount > 0) {
+                subPool.execute(subPool::drain);
+            }
+        }
+    }
+
+    /**
+     * The sub pool of an event loop
+     *
+     */
+    private class SubPool {
+
+        private final EventLoop eventLoop;
+
+        private final Bootstrap bootstrap;
+
+        private final int index;
+
+        private final Deque<Channel> idle = new ConcurrentLinkedDeque<>();
+
+        private final Deque<PendingAcquire> pendingAcquires = new ArrayDeque<>();
+
+        private volatile int pendingCount;
+
+        /**
+         * Constructor
+         *
+         * @param eventLoop the event loop
+         * @param bootstrap the bootstrap, bound to the event loop
+         * @param index the index of the sub pool
+         */
+        private SubPool(EventLoop eventLoop, Bootstrap bootstrap, int index) {
+            this.eventLoop = eventLoop;
+            this.bootstrap = bootstrap;
+            this.index = index;
+        }
+
+        /**
+         * Acquires a channel, from the idle channels of this event loop, the idle channels of the other event
+         * loops, a new connection, or waits for a channel to be released
+         *
+         * @param promise the promise
+         */
+        private void acquire(Promise<Channel> promise) {
+            if (closed) {
+                promise.tryFailure(new IllegalStateException("The channel pool has been closed"));
+                return;
+            }
+            // the acquires already waiting are served first
+            drain();
+            if (pendingAcquires.isEmpty() && tryAcquire(promise)) {
+                return;
+            }
+            if (!tryReservePendingAcquire()) {
+                promise.tryFailure(new IllegalStateException("Too many outstanding acquire operations"));
+                return;
+            }
+            PendingAcquire pendingAcquire = new PendingAcquire(promise);
+            pendingAcquire.timeout = eventLoop.schedule(() -> {
+                if (removePending(pendingAcquire)) {
+                    // as a fixed channel pool with AcquireTimeoutAction.NEW, exceeding the maximum
+                    connections.incrementAndGet();
+                    connect(promise);
+                }
+            }, acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+            pendingAcquires.add(pendingAcquire);
+            pendingCount = pendingAcquires.size();
+            promise.addListener(future -> {
+                if (future.isCancelled()) {
+                    execute(() -> cancelled(pendingAcquire));
+                }
+            });
+        }
+
+        /**
+         * Tries to acquire a channel without waiting, from an idle channel, stolen if need be, or a new connection,
+         * the idle channels which are no longer active are closed
+         *
+         * @param promise the promise
+         * @return true if the acquire is handled, false if it has to wait for a channel
+         */
+        private boolean tryAcquire(Promise<Channel> promise) {
+            if (closed) {
+                promise.tryFailure(new IllegalStateException("The channel pool has been closed"));
+                return true;
+            }
+            if (promise.isDone()) {
+                return true;
+            }
+            Channel channel;
+            while ((channel = pollIdle()) != null) {
+                if (channel.isActive()) {
+                    acquired(channel, promise);
+                    return true;
+                }
+                // the full health check is left to the release, so it doesn't delay the acquire
+                channel.close();
+            }
+            if (tryReserveConnection()) {
+                connect(promise);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Removes a cancelled pending acquire, so it no longer counts towards the maximum pending acquires
+         *
+         * @param pendingAcquire the pending acquire
+         */
+        private void cancelled(PendingAcquire pendingAcquire) {
+            if (removePending(pendingAcquire)) {
+                pendingAcquire.timeout.cancel(false);
+            }
+        }
+
+        /**
+         * Removes the pending acquire
+         *
+         * @param pendingAcquire the pending acquire
+         * @return true if removed, false if it was no longer pending
+         */
+        private boolean removePending(PendingAcquire pendingAcquire) {
+            if (!pendingAcquires.remove(pendingAcquire)) {
+                return false;
+            }
+            pendingCount = pendingAcquires.size();
+            pendingAcquireCount.decrementAndGet();
+            return true;
+        }
+
+        /**
+         * Hands the pending acquires a channel, in order, while there are channels, or connections, available, an
+         * acquire which still has to wait stays at the head of the queue, with its original timeout
+         *
+         */
+        private void drain() {
+            while (!pendingAcquires.isEmpty()) {
+                PendingAcquire pendingAcquire = pendingAcquires.peekFirst();
+                if (!tryAcquire(pendingAcquire.promise)) {
+                    return;
+                }
+                removePending(pendingAcquire);
+                pendingAcquire.timeout.cancel(false);
+            }
+        }
+
+        /**
+         * Polls an idle channel, of this event loop, otherwise stolen from another event loop
+         *
+         * @return the channel, or null if there are none
+         */
+        private Channel pollIdle() {
+            Channel channel = idle.pollFirst();
+            return channel != null ? channel : steal();
+        }
+
+        /**
+         * Steals the least recently used idle channel of another event loop, starting from the next event loop
+         *
+         * @return the channel, or null if there are none
+         */
+        private Channel steal() {
+            for (int i = 1; i < subPools.size(); i++) {
+                Channel channel = subPools.get((index + i) % subPools.size()).idle.pollLast();
+                if (channel != null) {
+                    return channel;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Opens a new connection, the connection is reserved
+         *
+         * @param promise the promise
+         */
+        private void connect(Promise<Channel> promise) {
+            Future<Channel> future;
+            try {
+                future = connectChannel(bootstrap.clone(), eventLoop.newPromise());
+            } catch (Throwable ex) {
+                connectionClosed();
+                promise.tryFailure(ex);
+                return;
+            }
+            future.addListener((Future<Channel> connected) -> {
+                if (!connected.isSuccess()) {
+                    connectionClosed();
+                    promise.tryFailure(connected.cause());
+                    return;
+                }
+                Channel channel = connected.getNow();
+                channel.attr(POOL_KEY).set(EventLoopChannelPool.this);
+                channel.closeFuture().addListener(__ -> {
+                    subPool(channel.eventLoop()).idle.remove(channel);
+                    connectionClosed();
+                });
+                acquired(channel, promise);
+            });
+        }
+
+        /**
+         * Frees the connection, for the pending acquires to use
+         *
+         */
+        private void connectionClosed() {
+            connections.decrementAndGet();
+            signalPendingAcquires();
+        }
+
+        /**
+         * Completes the acquire with the channel, or returns the channel to the pool if the acquire was cancelled
+         *
+         * @param channel the channel
+         * @param promise the promise
+         */
+        private void acquired(Channel channel, Promise<Channel> promise) {
+            try {
+                handler.channelAcquired(channel);
+            } catch (Throwable ex) {
+                channel.close();
+                promise.tryFailure(ex);
+                return;
+            }
+            if (!promise.trySuccess(channel)) {
+                EventLoopChannelPool.this.release(channel);
+            }
+        }
+
+        /**
+         * Releases the channel back to this sub pool, handing it to a pending acquire, otherwise
+         * adding it to the idle channels
+         *
+         * @param channel the channel
+         * @param promise the promise
+         */
+        private void release(Channel channel, Promise<Void> promise) {
+            try {
+                handler.channelReleased(channel);
+            } catch (Throwable ex) {
+                channel.close();
+                promise.tryFailure(ex);
+                return;
+            }
+            if (closed) {
+                channel.close();
+                promise.trySuccess(null);
+                return;
+            }
+            Future<Boolean> check;
+            try {
+                check = healthChecker.isHealthy(channel);
+            } catch (Throwable ex) {
+                // the channel is unhealthy, so closed, but it was still released
+                check = eventLoop.newSucceededFuture(false);
+            }
+            check.addListener((Future<Boolean> healthy) -> execute(() -> {
+                if (closed || !healthy.isSuccess() || !healthy.getNow()) {
+                    channel.close();
+                } else {
+                    idle.offerFirst(channel);
+                    if (pendingAcquires.isEmpty()) {
+                        signalPendingAcquires();
+                    } else {
+                        drain();
+                    }
+                }
+                promise.trySuccess(null);
+            }));
+        }
+
+        /**
+         * Closes the idle channels, and fails the pending acquires
+         *
+         */
+        private void close() {
+            Channel channel;
+            while ((channel = idle.pollFirst()) != null) {
+                channel.close();
+            }
+            while (!pendingAcquires.isEmpty()) {
+                PendingAcquire pendingAcquire = pendingAcquires.peekFirst();
+                removePending(pendingAcquire);
+                pendingAcquire.timeout.cancel(false);
+                pendingAcquire.promise.tryFailure(new IllegalStateException("The channel pool has been closed"));
+            }
+        }
+
+        /**
+         * Executes the task on the event loop, inline if already on the event loop
+         *
+         * @param task the task
+         */
+        private void execute(Runnable task) {
+            if (eventLoop.inEventLoop()) {
+                task.run();
+            } else {
+                eventLoop.execute(task);
+            }
+        }
+    }
+
+    /**
+     * A pending acquire
+     *
+     */
+    private static class PendingAcquire {
+
+        private final Promise<Channel> promise;
+
+        private ScheduledFuture<?> timeout;
+
+        /**
+         * Constructor
+         *
+         * @param promise the promise
+         */
+        private PendingAcquire(Promise<Channel> promise) {
+            this.promise = promise;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package uk.co.gcwilliams.async.http.impl.pool;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.EventLoop;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Happy Eyeballs connector (RFC 8305), races staggered connection attempts across the addresses of a host.
+ * An attempt is started on the next address once the connection attempt delay has passed, or as soon as the
+ * previous attempt fails, the first channel to connect wins, and the other attempts are closed. The addresses
+ * are interleaved by family, so an unreachable family only delays a connection by the attempt delay, rather than
+ * the connect timeout. A race is confined to the bootstrap's event loop.
+ *
+ * @author : Gareth Williams
+ **/
+public class HappyEyeballsConnector {
+
+    static final AttributeKey<InetSocketAddress> ADDRESS_KEY = AttributeKey.newInstance(HappyEyeballsConnector.class.getName() + ".address");
+
+    private final long attemptDelayNanos;
+
+    /**
+     * Constructor
+     *
+     * @param attemptDelay the connection attempt delay, between starting the attempts
+     */
+    public HappyEyeballsConnector(Duration attemptDelay) {
+        this.attemptDelayNanos = attemptDelay.toNanos();
+    }
+
+    /**
+     * Connects to the first address to accept a connection, the address is set as an attribute of the channel
+     *
+     * @param bootstrap the bootstrap, bound to an event loop
+     * @param addresses the addresses, in the order to attempt them, not empty
+     * @param promise the promise
+     * @return the future of the connected channel
+     */
+    public Future<Channel> connect(Bootstrap bootstrap, List<InetSocketAddress> addresses, Promise<Channel> promise) {
+        Race race = new Race(bootstrap, addresses, promise);
+        EventLoop eventLoop = race.eventLoop;
+        if (eventLoop.inEventLoop()) {
+            race.attempt();
+        } else {
+            eventLoop.execute(race::attempt);
+        }
+        return promise;
+    }
+
+    /**
+     * Orders the addresses, the preferred address first, then alternating address families
+     *
+     * @param preferred the preferred address
+     * @param addresses the addresses
+     * @return the ordered addresses
+     */
+    public static List<InetSocketAddress> order(InetSocketAddress preferred, List<InetSocketAddress> addresses) {
+        Deque<InetSocketAddress> sameFamily = new ArrayDeque<>();
+        Deque<InetSocketAddress> otherFamily = new ArrayDeque<>();
+        for (InetSocketAddress address : addresses) {
+            if (!address.equals(preferred)) {
+                (isIpv6(address) == isIpv6(preferred) ? sameFamily : otherFamily).add(address);
+            }
+        }
+        List<InetSocketAddress> ordered = new ArrayList<>(addresses.size());
+        ordered.add(preferred);
+        boolean other = true;
+        while (!sameFamily.isEmpty() || !otherFamily.isEmpty()) {
+            Deque<InetSocketAddress> family = (other && !otherFamily.isEmpty()) || sameFamily.isEmpty() ? otherFamily : sameFamily;
+            ordered.add(family.poll());
+            other = !other;
+        }
+        return ordered;
+    }
+
+    /**
+     * Determines if the address is an IPv6 address
+     *
+     * @param address the address
+     * @return true if IPv6, false otherwise
+     */
+    private static boolean isIpv6(InetSocketAddress address) {
+        return address.getAddress() instanceof Inet6Address;
+    }
+
+    /**
+     * A race of connection attempts
+     *
+     */
+    private class Race {
+
+        private final Bootstrap bootstrap;
+
+        private final List<InetSocketAddress> addresses;
+
+        private final Promise<Channel> promise;
+
+        private final EventLoop eventLoop;
+
+        private final List<ChannelFuture> attempts = new ArrayList<>();
+
+        private int next;
+
+        private int inFlight;
+
+        private ScheduledFuture<?> delay;
+
+        private Throwable failure;
+
+        /**
+         * Constructor
+         *
+         * @param bootstrap the bootstrap
+         * @param addresses the addresses
+         * @param promise the promise
+         */
+        private Race(Bootstrap bootstrap, List<InetSocketAddress> addresses, Promise<Channel> promise) {
+            this.bootstrap = bootstrap;
+            this.addresses = addresses;
+            this.promise = promise;
+            this.eventLoop = (EventLoop) bootstrap.config().group();
+        }
+
+        /**
+         * Starts an attempt on the next address, and schedules the attempt after it
+         *
+         */
+        private void attempt() {
+            if (delay != null) {
+                delay.cancel(false);
+                delay = null;
+            }
+            if (promise.isDone() || next >= addresses.size()) {
+                return;
+            }
+            InetSocketAddress address = addresses.get(next++);
+            ChannelFuture attempt = bootstrap.connect(address);
+            attempts.add(attempt);
+            inFlight++;
+            attempt.addListener((ChannelFuture connected) -> completed(connected, address));
+            if (next < addresses.size() && !attempt.isDone()) {
+                delay = eventLoop.schedule(this::attempt, attemptDelayNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /**
+         * Completes an attempt, the first channel to connect wins, otherwise the next attempt is started
+         *
+         * @param connected the attempt
+         * @param address the address
+         */
+        private void completed(ChannelFuture connected, InetSocketAddress address) {
+            inFlight--;
+            if (connected.isSuccess()) {
+                Channel channel = connected.channel();
+                channel.attr(ADDRESS_KEY).set(address);
+                if (!promise.trySuccess(channel)) {
+                    channel.close();
+                    return;
+                }
+                if (delay != null) {
+                    delay.cancel(false);
+                }
+                for (ChannelFuture attempt : attempts) {
+                    if (attempt != connected) {
+                        attempt.channel().close();
+                    }
+                }
+                return;
+            }
+            if (failure == null) {
+                failure = connected.cause();
+            } else if (failure != connected.cause()) {
+                failure.addSuppressed(connected.cause());
+            }
+            if (promise.isDone()) {
+                return;
+            }
+            if (next < addresses.size()) {
+                attempt();
+            } else if (inFlight == 0) {
+                promise.tryFailure(failure);
+            }
+        }
+    }
+}
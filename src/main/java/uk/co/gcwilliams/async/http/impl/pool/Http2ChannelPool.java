@@ -0,0 +1,642 @@
+package uk.co.gcwilliams.async.http.impl.pool;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.pool.ChannelPool;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2GoAwayFrame;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.codec.http2.Http2SettingsFrame;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamChannelBootstrap;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.SslHandshakeCompletionEvent;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
+import uk.co.gcwilliams.async.http.impl.handler.DecompressionHandler;
+import uk.co.gcwilliams.async.http.impl.handler.DefaultSslHandler;
+import uk.co.gcwilliams.async.http.impl.handler.HttpRequestHandler;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The HTTP/2 channel pool, multiplexes requests as streams over a small number of connections.
+ * A new connection is only opened once every existing connection has reached the
+ * SETTINGS_MAX_CONCURRENT_STREAMS advertised by the server. As the HTTP/1.1 pool, an acquire which
+ * waits longer than the acquire timeout opens a new connection, beyond the maximum number of
+ * connections, rather than failing. The channels acquired are stream channels, which are closed on release. If ALPN negotiates HTTP/1.1 the pool falls back
+ * to the HTTP/1.1 channel pool for the host.
+ *
+ * All the pool state is confined to a single executor, in the same way as
+ * {@link io.netty.channel.pool.FixedChannelPool}.
+ *
+ * @author : Gareth Williams
+ **/
+public class Http2ChannelPool implements ChannelPool {
+
+    private static final long DEFAULT_MAX_CONCURRENT_STREAMS = 100;
+
+    private final Bootstrap bootstrap;
+
+    private final EventExecutor executor;
+
+    private final String scheme;
+
+    private final String host;
+
+    private final int port;
+
+    private final Duration acquireTimeout;
+
+    private final int maxConnections;
+
+    private final int maxPendingAcquires;
+
+    private final HttpChannelPoolConfiguration configuration;
+
+    private final Supplier<ChannelPool> fallbackFactory;
+
+    private final ChannelInitializer<Http2StreamChannel> streamInitializer;
+
+    private final List<Http2Connection> connections = new ArrayList<>();
+
+    private final Deque<PendingAcquire> pendingAcquires = new ArrayDeque<>();
+
+    private int connecting;
+
+    private ChannelPool fallback;
+
+    private boolean closed;
+
+    /**
+     * Constructor
+     *
+     * @param bootstrap the bootstrap
+     * @param scheme the scheme
+     * @param host the host
+     * @param port the port
+     * @param acquireTimeout the acquire timeout, after which a new connection is opened regardless of the maximum
+     * @param maxConnections the maximum number of connections
+     * @param maxPendingAcquires the maximum number of pending acquires
+     * @param configuration the configuration
+     * @param fallbackFactory the factory for the HTTP/1.1 pool, used if the server does not negotiate HTTP/2
+     */
+    public Http2ChannelPool(
+            Bootstrap bootstrap,
+            String scheme,
+            String host,
+            int port,
+            Duration acquireTimeout,
+            int maxConnections,
+            int maxPendingAcquires,
+            HttpChannelPoolConfiguration configuration,
+            Supplier<ChannelPool> fallbackFactory) {
+        this.bootstrap = bootstrap;
+        this.executor = bootstrap.config().group().next();
+        this.scheme = scheme;
+        this.host = host;
+        this.port = port;
+        this.acquireTimeout = acquireTimeout;
+        this.maxConnections = maxConnections;
+        this.maxPendingAcquires = maxPendingAcquires;
+        this.configuration = configuration;
+        this.fallbackFactory = fallbackFactory;
+        this.streamInitializer = new ChannelInitializer<>() {
+            @Override
+            protected void initChannel(Http2StreamChannel channel) {
+                ChannelPipeline pipeline = channel.pipeline();
+                pipeline.addLast(Http2StreamFrameToHttpObjectCodec.class.getName(), new Http2StreamFrameToHttpObjectCodec(false));
+                if (configuration.isEnableDecompression()) {
+                    pipeline.addLast(DecompressionHandler.class.getName(), new DecompressionHandler());
+                }
+                pipeline.addLast(ChunkedWriteHandler.class.getName(), new ChunkedWriteHandler());
+                pipeline.addLast(HttpRequestHandler.class.getName(), new HttpRequestHandler());
+            }
+        };
+    }
+
+    @Override
+    public Future<Channel> acquire() {
+        return acquire(executor.newPromise());
+    }
+
+    @Override
+    public Future<Channel> acquire(Promise<Channel> promise) {
+        execute(() -> doAcquire(promise));
+        return promise;
+    }
+
+    @Override
+    public Future<Void> release(Channel channel) {
+        return release(channel, channel.eventLoop().newPromise());
+    }
+
+    @Override
+    public Future<Void> release(Channel channel, Promise<Void> promise) {
+        if (channel instanceof Http2StreamChannel) {
+            // streams are single use, closing the stream frees the slot on the connection
+            channel.close().addListener(future -> promise.trySuccess(null));
+            return promise;
+        }
+        // a HTTP/1.1 channel from the fallback pool
+        return fallback.release(channel, promise);
+    }
+
+    @Override
+    public void close() {
+        execute(() -> {
+            closed = true;
+            connections.forEach(connection -> connection.channel.close());
+            connections.clear();
+            failPendingAcquires(new IllegalStateException("The channel pool has been closed"));
+            if (fallback != null) {
+                fallback.close();
+            }
+        });
+    }
+
+    /**
+     * Acquires a stream channel, opening a new connection if required
+     *
+     * @param promise the promise
+     */
+    private void doAcquire(Promise<Channel> promise) {
+        if (closed) {
+            promise.tryFailure(new IllegalStateException("The channel pool has been closed"));
+            return;
+        }
+        if (fallback != null) {
+            fallback.acquire(promise);
+            return;
+        }
+        Http2Connection connection = nextAvailableConnection();
+        if (connection != null && pendingAcquires.isEmpty()) {
+            openStream(connection, promise);
+            return;
+        }
+        if (pendingAcquires.size() >= maxPendingAcquires) {
+            promise.tryFailure(new IllegalStateException("Too many outstanding acquire operations"));
+            return;
+        }
+        PendingAcquire pendingAcquire = new PendingAcquire(promise);
+        scheduleTimeout(pendingAcquire);
+        pendingAcquires.add(pendingAcquire);
+        promise.addListener(future -> {
+            if (future.isCancelled()) {
+                execute(() -> cancelled(pendingAcquire));
+            }
+        });
+        drain();
+    }
+
+    /**
+     * Schedules the acquire timeout of the pending acquire, as the HTTP/1.1 pool with AcquireTimeoutAction.NEW, a
+     * new connection is opened, exceeding the maximum, unless the connections being established can already serve
+     * the pending acquires. The acquire stays queued in order, and the timeout is checked again, should the
+     * connection fail
+     *
+     * @param pendingAcquire the pending acquire
+     */
+    private void scheduleTimeout(PendingAcquire pendingAcquire) {
+        pendingAcquire.timeout = executor.schedule(() -> {
+            if (!pendingAcquires.contains(pendingAcquire)) {
+                return;
+            }
+            if (pendingAcquires.size() > connecting * DEFAULT_MAX_CONCURRENT_STREAMS) {
+                connect();
+            }
+            scheduleTimeout(pendingAcquire);
+        }, acquireTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Removes a cancelled pending acquire, so it no longer counts towards the maximum pending acquires
+     *
+     * @param pendingAcquire the pending acquire
+     */
+    private void cancelled(PendingAcquire pendingAcquire) {
+        if (pendingAcquires.remove(pendingAcquire)) {
+            pendingAcquire.timeout.cancel(false);
+        }
+    }
+
+    /**
+     * Hands the pending acquires to the connections with free streams, and opens
+     * a new connection if the connections being established cannot serve them all
+     *
+     */
+    private void drain() {
+        while (!pendingAcquires.isEmpty()) {
+            Http2Connection connection = nextAvailableConnection();
+            if (connection == null) {
+                break;
+            }
+            PendingAcquire pendingAcquire = pendingAcquires.poll();
+            pendingAcquire.timeout.cancel(false);
+            openStream(connection, pendingAcquire.promise);
+        }
+        if (pendingAcquires.size() > connecting * DEFAULT_MAX_CONCURRENT_STREAMS
+                && connections.size() + connecting < maxConnections) {
+            connect();
+        }
+    }
+
+    /**
+     * Gets the first connection with a free stream
+     *
+     * @return the connection, or null if there are none
+     */
+    private Http2Connection nextAvailableConnection() {
+        for (Http2Connection connection : connections) {
+            if (connection.isAvailable()) {
+                return connection;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Opens a stream on the connection
+     *
+     * @param connection the connection
+     * @param promise the promise
+     */
+    private void openStream(Http2Connection connection, Promise<Channel> promise) {
+        connection.activeStreams++;
+        new Http2StreamChannelBootstrap(connection.channel)
+            .handler(streamInitializer)
+            .open()
+            .addListener((Future<Http2StreamChannel> future) -> execute(() -> {
+                if (!future.isSuccess()) {
+                    connection.activeStreams--;
+                    promise.tryFailure(future.cause());
+                    drain();
+                    return;
+                }
+                Http2StreamChannel stream = future.getNow();
+                stream.closeFuture().addListener(__ -> execute(() -> {
+                    connection.activeStreams--;
+                    if (connection.goAway && connection.activeStreams == 0) {
+                        connection.channel.close();
+                    }
+                    drain();
+                }));
+                if (!promise.trySuccess(stream)) {
+                    stream.close();
+                }
+            }));
+    }
+
+    /**
+     * Opens a new connection, the connection is added to the pool once the server settings are received
+     *
+     */
+    private void connect() {
+        connecting++;
+        Http2Connection connection = new Http2Connection();
+        bootstrap.clone()
+            .handler(new Http2ConnectionInitializer(connection))
+            .connect(host, port)
+            .addListener((ChannelFuture future) -> {
+                if (future.isSuccess()) {
+                    future.channel().closeFuture().addListener(__ -> execute(connection::closed));
+                } else {
+                    execute(() -> connection.failed(future.cause()));
+                }
+            });
+    }
+
+    /**
+     * Switches to the HTTP/1.1 pool, handing it the pending acquires
+     *
+     */
+    private void fallback() {
+        fallback = fallbackFactory.get();
+        connections.forEach(connection -> connection.channel.close());
+        connections.clear();
+        while (!pendingAcquires.isEmpty()) {
+            PendingAcquire pendingAcquire = pendingAcquires.poll();
+            pendingAcquire.timeout.cancel(false);
+            fallback.acquire(pendingAcquire.promise);
+        }
+    }
+
+    /**
+     * Fails the pending acquires
+     *
+     * @param cause the cause
+     */
+    private void failPendingAcquires(Throwable cause) {
+        while (!pendingAcquires.isEmpty()) {
+            PendingAcquire pendingAcquire = pendingAcquires.poll();
+            pendingAcquire.timeout.cancel(false);
+            pendingAcquire.promise.tryFailure(cause);
+        }
+    }
+
+    /**
+     * Executes the task on the pool executor
+     *
+     * @param task the task
+     */
+    private void execute(Runnable task) {
+        if (executor.inEventLoop()) {
+            task.run();
+        } else {
+            executor.execute(task);
+        }
+    }
+
+    /**
+     * A HTTP/2 connection, mutated on the pool executor only
+     *
+     */
+    private class Http2Connection {
+
+        private Channel channel;
+
+        private int activeStreams;
+
+        private long maxConcurrentStreams = DEFAULT_MAX_CONCURRENT_STREAMS;
+
+        private boolean establishing = true;
+
+        private boolean ready;
+
+        private boolean goAway;
+
+        /**
+         * Determines if a stream can be opened on the connection
+         *
+         * @return true if a stream can be opened, false otherwise
+         */
+        private boolean isAvailable() {
+            return ready && !goAway && channel.isActive() && activeStreams < maxConcurrentStreams;
+        }
+
+        /**
+         * Called when the server settings are received, the first settings frame completes the connection
+         *
+         * @param maxConcurrentStreams the server's SETTINGS_MAX_CONCURRENT_STREAMS, or null if not sent
+         */
+        private void settings(Long maxConcurrentStreams) {
+            if (maxConcurrentStreams != null) {
+                this.maxConcurrentStreams = maxConcurrentStreams;
+            } else if (!ready) {
+                this.maxConcurrentStreams = Long.MAX_VALUE; // no limit until the server sets one
+            }
+            if (establishing) {
+                established();
+                if (closed) {
+                    channel.close();
+                    return;
+                }
+                ready = true;
+                connections.add(this);
+            }
+            drain();
+        }
+
+        /**
+         * Called when the server has negotiated HTTP/1.1
+         *
+         */
+        private void http1() {
+            established();
+            channel.close();
+            if (!closed && fallback == null) {
+                fallback();
+            }
+        }
+
+        /**
+         * Called when the connection could not be established
+         *
+         * @param cause the cause
+         */
+        private void failed(Throwable cause) {
+            if (!establishing) {
+                return;
+            }
+            established();
+            if (connections.isEmpty() && connecting == 0) {
+                failPendingAcquires(cause);
+            } else {
+                drain();
+            }
+        }
+
+        /**
+         * Called when the connection is closed
+         *
+         */
+        private void closed() {
+            if (establishing) {
+                failed(new IllegalStateException("The connection was closed before the HTTP/2 settings were received"));
+                return;
+            }
+            if (connections.remove(this)) {
+                drain();
+            }
+        }
+
+        /**
+         * Marks the connection as no longer being established
+         *
+         */
+        private void established() {
+            establishing = false;
+            connecting--;
+        }
+    }
+
+    /**
+     * The connection initializer, negotiates the protocol for HTTPS and
+     * configures the HTTP/2 frame codec
+     *
+     */
+    private class Http2ConnectionInitializer extends ChannelInitializer<Channel> {
+
+        private final Http2Connection connection;
+
+        /**
+         * Constructor
+         *
+         * @param connection the connection
+         */
+        private Http2ConnectionInitializer(Http2Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        protected void initChannel(Channel channel) {
+            connection.channel = channel;
+            ChannelPipeline pipeline = channel.pipeline();
+            if ("https".equals(scheme)) {
+                DefaultSslHandler defaultSslHandler = configuration.getSslContext()
+                    .newHandler(channel.alloc(), host, port, configuration.isEnableSni(), true);
+                pipeline.addLast(DefaultSslHandler.class.getName(), defaultSslHandler);
+                pipeline.addLast(ProtocolNegotiationHandler.class.getName(), new ProtocolNegotiationHandler(connection));
+            } else {
+                configureHttp2(pipeline, connection);
+            }
+        }
+    }
+
+    /**
+     * Configures the HTTP/2 handlers on the connection pipeline
+     *
+     * @param pipeline the pipeline
+     * @param connection the connection
+     */
+    private void configureHttp2(ChannelPipeline pipeline, Http2Connection connection) {
+        pipeline.addLast(Http2FrameCodecBuilder.forClient()
+            .initialSettings(Http2Settings.defaultSettings().pushEnabled(false))
+            .build());
+        pipeline.addLast(new Http2MultiplexHandler(new ChannelInitializer<Http2StreamChannel>() {
+            @Override
+            protected void initChannel(Http2StreamChannel channel) {
+                channel.close(); // server push is disabled
+            }
+        }));
+        pipeline.addLast(new Http2ConnectionHandler(connection));
+    }
+
+    /**
+     * Selects the protocol once the TLS handshake completes
+     *
+     */
+    private class ProtocolNegotiationHandler extends ChannelInboundHandlerAdapter {
+
+        private final Http2Connection connection;
+
+        /**
+         * Constructor
+         *
+         * @param connection the connection
+         */
+        private ProtocolNegotiationHandler(Http2Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt instanceof SslHandshakeCompletionEvent) {
+                SslHandshakeCompletionEvent sslHandshakeCompletionEvent = (SslHandshakeCompletionEvent) evt;
+                ChannelPipeline pipeline = ctx.pipeline();
+                pipeline.remove(this);
+                if (!sslHandshakeCompletionEvent.isSuccess()) {
+                    execute(() -> connection.failed(sslHandshakeCompletionEvent.cause()));
+                    ctx.close();
+                    return;
+                }
+                String protocol = pipeline.get(DefaultSslHandler.class).getNegotiatedApplicationProtocol();
+                if (ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+                    configureHttp2(pipeline, connection);
+                } else {
+                    execute(connection::http1);
+                }
+            } else {
+                ctx.fireUserEventTriggered(evt);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            execute(() -> connection.failed(cause));
+            ctx.close();
+        }
+    }
+
+    /**
+     * Tracks the server settings and GOAWAY on the connection
+     *
+     */
+    private class Http2ConnectionHandler extends ChannelInboundHandlerAdapter {
+
+        private final Http2Connection connection;
+
+        /**
+         * Constructor
+         *
+         * @param connection the connection
+         */
+        private Http2ConnectionHandler(Http2Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void handlerAdded(ChannelHandlerContext ctx) {
+            if (ctx.channel().isActive()) {
+                ctx.flush(); // the frame codec writes the preface without flushing it
+            }
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            ctx.fireChannelActive();
+            ctx.flush();
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            try {
+                if (msg instanceof Http2SettingsFrame) {
+                    Long maxConcurrentStreams = ((Http2SettingsFrame) msg).settings().maxConcurrentStreams();
+                    execute(() -> connection.settings(maxConcurrentStreams));
+                } else if (msg instanceof Http2GoAwayFrame) {
+                    execute(() -> {
+                        connection.goAway = true;
+                        if (connection.activeStreams == 0) {
+                            connection.channel.close();
+                        }
+                    });
+                }
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            ctx.close();
+        }
+    }
+
+    /**
+     * A pending acquire
+     *
+     */
+    private static class PendingAcquire {
+
+        private final Promise<Channel> promise;
+
+        private ScheduledFuture<?> timeout;
+
+        /**
+         * Constructor
+         *
+         * @param promise the promise
+         */
+        private PendingAcquire(Promise<Channel> promise) {
+            this.promise = promise;
+        }
+    }
+}
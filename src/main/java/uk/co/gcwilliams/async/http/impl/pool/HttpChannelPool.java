@@ -2,45 +2,53 @@ package uk.co.gcwilliams.async.http.impl.pool;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
-import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.pool.AbstractChannelPoolHandler;
 import io.netty.channel.pool.ChannelHealthChecker;
-import io.netty.channel.pool.FixedChannelPool;
 import io.netty.handler.codec.http.HttpClientCodec;
-import io.netty.handler.codec.http.HttpObjectAggregator;
-import io.netty.handler.timeout.ReadTimeoutHandler;
-import io.netty.handler.timeout.WriteTimeoutHandler;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.AttributeKey;
 import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import uk.co.gcwilliams.async.http.impl.handler.DecompressionHandler;
 import uk.co.gcwilliams.async.http.impl.handler.DefaultSslHandler;
-import uk.co.gcwilliams.async.http.impl.handler.HttpRequestInboundHandler;
-import uk.co.gcwilliams.async.http.impl.handler.HttpRequestOutboundHandler;
+import uk.co.gcwilliams.async.http.impl.handler.HttpRequestHandler;
+import uk.co.gcwilliams.async.http.impl.handler.StreamingRequestBody;
+import uk.co.gcwilliams.async.http.impl.resolver.CachingDnsResolver;
 
-import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.UnknownHostException;
 import java.time.Duration;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /**
- * The HTTP channel pool
+ * The HTTP/1.1 channel pool, with a sub pool per event loop. The connections are spread across all the
+ * resolved addresses of the host by the address picker, and when the resolved addresses change, the
+ * connections are rebalanced gradually, at most one connection is closed per rebalance interval. A new
+ * connection races staggered attempts to the picked address, then the other addresses, see {@link HappyEyeballsConnector}
  *
  * @author : Gareth Williams
  **/
-public class HttpChannelPool extends FixedChannelPool {
+public class HttpChannelPool extends EventLoopChannelPool {
+
+    private static final AttributeKey<Long> REQUEST_START_KEY = AttributeKey.newInstance(HttpChannelPool.class.getName() + ".requestStart");
 
     private final String host;
 
     private final int port;
 
+    private final CachingDnsResolver resolver;
+
+    private final Balancer balancer;
+
+    private final HappyEyeballsConnector connector;
+
     /**
      * Constructor
      *
@@ -52,6 +60,10 @@ public class HttpChannelPool extends FixedChannelPool {
      * @param maxConnections the maximum number of connections
      * @param maxPendingAcquires the maximum number of pending acquires
      * @param configuration the configuration
+     * @param resolver the resolver
+     * @param addressPicker the address picker factory
+     * @param rebalanceInterval the rebalance interval
+     * @param connectionAttemptDelay the delay between the connection attempts to the addresses
      */
     public HttpChannelPool(
             Bootstrap bootstrap,
@@ -61,28 +73,95 @@ public class HttpChannelPool extends FixedChannelPool {
             Duration acquireTimeout,
             int maxConnections,
             int maxPendingAcquires,
-            HttpChannelPoolConfiguration configuration) {
+            HttpChannelPoolConfiguration configuration,
+            CachingDnsResolver resolver,
+            Supplier<AddressPicker> addressPicker,
+            Duration rebalanceInterval,
+            Duration connectionAttemptDelay) {
+        this(
+            bootstrap,
+            scheme,
+            host,
+            port,
+            acquireTimeout,
+            maxConnections,
+            maxPendingAcquires,
+            configuration,
+            resolver,
+            new Balancer(addressPicker.get(), rebalanceInterval),
+            new HappyEyeballsConnector(connectionAttemptDelay));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param bootstrap the bootstrap
+     * @param scheme the scheme
+     * @param host the host
+     * @param port the port
+     * @param acquireTimeout the acquire timeout
+     * @param maxConnections the maximum number of connections
+     * @param maxPendingAcquires the maximum number of pending acquires
+     * @param configuration the configuration
+     * @param resolver the resolver
+     * @param balancer the balancer
+     * @param connector the connector
+     */
+    private HttpChannelPool(
+            Bootstrap bootstrap,
+            String scheme,
+            String host,
+            int port,
+            Duration acquireTimeout,
+            int maxConnections,
+            int maxPendingAcquires,
+            HttpChannelPoolConfiguration configuration,
+            CachingDnsResolver resolver,
+            Balancer balancer,
+            HappyEyeballsConnector connector) {
         super(
             bootstrap,
             new HttpChannelPoolHandler(
                     scheme,
                     host,
                     port,
-                    configuration),
-            new HttpChannelHealthChecker(host),
-            AcquireTimeoutAction.NEW,
-            acquireTimeout.toMillis(),
+                    configuration,
+                    balancer.picker),
+            new HttpChannelHealthChecker(host, port, resolver, balancer),
+            acquireTimeout,
             maxConnections,
-            maxPendingAcquires,
-            true,
-            true);
+            maxPendingAcquires);
         this.host = host;
         this.port = port;
+        this.resolver = resolver;
+        this.balancer = balancer;
+        this.connector = connector;
     }
 
     @Override
-    protected ChannelFuture connectChannel(Bootstrap bootstrap) {
-        return bootstrap.remoteAddress(host, port).connect();
+    protected Future<Channel> connectChannel(Bootstrap bootstrap, Promise<Channel> promise) {
+        EventLoopGroup eventLoop = bootstrap.config().group();
+        resolver.resolveAll(host, port, eventLoop.next()).addListener((Future<List<InetSocketAddress>> resolved) -> {
+            if (!resolved.isSuccess()) {
+                promise.tryFailure(resolved.cause());
+                return;
+            }
+            List<InetSocketAddress> addresses = resolved.getNow();
+            InetSocketAddress preferred = balancer.picker.pick(addresses);
+            connector.connect(bootstrap, HappyEyeballsConnector.order(preferred, addresses), eventLoop.next().newPromise())
+                .addListener((Future<Channel> connected) -> {
+                    if (!connected.isSuccess()) {
+                        promise.tryFailure(connected.cause());
+                        return;
+                    }
+                    Channel channel = connected.getNow();
+                    balancer.connected(channel, channel.attr(HappyEyeballsConnector.ADDRESS_KEY).get());
+                    if (!promise.trySuccess(channel)) {
+                        channel.close();
+                    }
+                });
+        });
+        return promise;
     }
 
     /**
@@ -99,6 +178,8 @@ public class HttpChannelPool extends FixedChannelPool {
 
         private final HttpChannelPoolConfiguration configuration;
 
+        private final AddressPicker picker;
+
         /**
          * Constructor
          *
@@ -106,25 +187,27 @@ public class HttpChannelPool extends FixedChannelPool {
          * @param host the host
          * @param port the port
          * @param configuration the configuration
+         * @param picker the address picker, told as requests start and finish
          */
         private HttpChannelPoolHandler(
                 String scheme,
                 String host,
                 int port,
-                HttpChannelPoolConfiguration configuration) {
+                HttpChannelPoolConfiguration configuration,
+                AddressPicker picker) {
             this.scheme = scheme;
             this.host = host;
             this.port = port;
             this.configuration = configuration;
+            this.picker = picker;
         }
 
         @Override
         public void channelCreated(Channel channel) throws Exception {
             ChannelPipeline pipeline = channel.pipeline();
             if ("https".equals(scheme)) {
-                DefaultSslHandler defaultSslHandler = configuration.isEnableSni()
-                    ? new DefaultSslHandler(host, port)
-                    : new DefaultSslHandler();
+                DefaultSslHandler defaultSslHandler = configuration.getSslContext()
+                    .newHandler(channel.alloc(), host, port, configuration.isEnableSni(), false);
                 pipeline.addLast(DefaultSslHandler.class.getName(), defaultSslHandler);
             }
             HttpClientCodec codec = new HttpClientCodec(
@@ -135,36 +218,83 @@ public class HttpChannelPool extends FixedChannelPool {
                 true,
                 configuration.getInitialBufferSize());
             pipeline.addLast(HttpClientCodec.class.getName(), codec);
-            pipeline.addLast(HttpObjectAggregator.class.getName(), new HttpObjectAggregator(configuration.getMaxContentLength()));
+            if (configuration.isEnableDecompression()) {
+                pipeline.addLast(DecompressionHandler.class.getName(), new DecompressionHandler());
+            }
+            pipeline.addLast(ChunkedWriteHandler.class.getName(), new ChunkedWriteHandler());
+            pipeline.addLast(HttpRequestHandler.class.getName(), new HttpRequestHandler());
+        }
+
+        @Override
+        public void channelAcquired(Channel channel) throws Exception {
+            InetSocketAddress address = channel.attr(HappyEyeballsConnector.ADDRESS_KEY).get();
+            if (address != null) {
+                channel.attr(REQUEST_START_KEY).set(System.nanoTime());
+                picker.onRequestStart(address);
+            }
         }
 
         @Override
         public void channelReleased(Channel channel) throws Exception {
+            InetSocketAddress address = channel.attr(HappyEyeballsConnector.ADDRESS_KEY).get();
+            Long requestStart = channel.attr(REQUEST_START_KEY).getAndSet(null);
+            if (address != null && requestStart != null) {
+                picker.onRequestEnd(address, System.nanoTime() - requestStart);
+            }
             ChannelPipeline pipeline = channel.pipeline();
-            pipeline.remove(WriteTimeoutHandler.class.getName());
-            pipeline.remove(ReadTimeoutHandler.class.getName());
-            pipeline.remove(HttpRequestInboundHandler.class.getName());
-            pipeline.remove(HttpRequestOutboundHandler.class.getName());
+            HttpRequestHandler handler = pipeline.get(HttpRequestHandler.class);
+            if (handler != null) {
+                handler.end();
+            }
+            removeIfPresent(pipeline, StreamingRequestBody.class.getName());
+        }
+
+        /**
+         * Removes the handler, if it is still present, the handlers are removed when a channel is closed
+         *
+         * @param pipeline the pipeline
+         * @param name the name of the handler
+         */
+        private static void removeIfPresent(ChannelPipeline pipeline, String name) {
+            if (pipeline.get(name) != null) {
+                pipeline.remove(name);
+            }
         }
     }
 
     /**
-     * The HTTP channel health checker
+     * The HTTP channel health checker, a channel is unhealthy once its address is no longer resolved for the host,
+     * or its address has more than its share of the connections while a resolved address has none, but only one
+     * channel is found unhealthy per rebalance interval, so the connections are moved gradually. The check never
+     * waits on DNS, the channel is checked against the addresses last resolved, which are refreshed in the
+     * background at most once per rebalance interval
      *
      */
     private static class HttpChannelHealthChecker implements ChannelHealthChecker {
 
         private static final Logger LOGGER = LoggerFactory.getLogger(HttpChannelHealthChecker.class);
 
-        private final ScheduledExecutorService EXECUTOR = Executors.newScheduledThreadPool(1);
-
         private final String host;
 
-        private volatile Set<String> allByName = new HashSet<>();
+        private final int port;
+
+        private final CachingDnsResolver resolver;
+
+        private final Balancer balancer;
 
-        private HttpChannelHealthChecker(String host) {
+        /**
+         * Constructor
+         *
+         * @param host the host
+         * @param port the port
+         * @param resolver the resolver
+         * @param balancer the balancer
+         */
+        private HttpChannelHealthChecker(String host, int port, CachingDnsResolver resolver, Balancer balancer) {
             this.host = host;
-            schedule();
+            this.port = port;
+            this.resolver = resolver;
+            this.balancer = balancer;
         }
 
         @Override
@@ -172,27 +302,118 @@ public class HttpChannelPool extends FixedChannelPool {
             if (!(channel.isRegistered() && channel.isActive() && channel.isOpen())) {
                 return channel.eventLoop().newSucceededFuture(false);
             }
-            if (!(channel.remoteAddress() instanceof InetSocketAddress)) {
+            InetSocketAddress address = channel.attr(HappyEyeballsConnector.ADDRESS_KEY).get();
+            if (address == null) {
                 return channel.eventLoop().newSucceededFuture(true);
             }
-            InetSocketAddress address = (InetSocketAddress) channel.remoteAddress();
-            return channel.eventLoop().newSucceededFuture(allByName.contains(address.getAddress().getHostAddress()));
+            if (balancer.shouldRefresh()) {
+                refresh(channel);
+            }
+            // the channel is kept, when the addresses of the host are not known
+            List<InetSocketAddress> addresses = resolver.getResolved(host, port);
+            return channel.eventLoop().newSucceededFuture(addresses == null || !balancer.shouldRebalance(address, addresses));
         }
 
-        private void schedule() {
-            allByName = Arrays.stream(getAllByName(host))
-                .map(InetAddress::getHostAddress)
-                .collect(Collectors.toUnmodifiableSet());
-            EXECUTOR.schedule(this::schedule, 60, TimeUnit.SECONDS);
+        /**
+         * Refreshes the addresses of the host, for the later checks, without waiting on the query
+         *
+         * @param channel the channel
+         */
+        private void refresh(Channel channel) {
+            try {
+                resolver.resolveAll(host, port, channel.eventLoop()).addListener(resolved -> {
+                    if (!resolved.isSuccess()) {
+                        LOGGER.debug("Unable to resolve the addresses of {}", host, resolved.cause());
+                    }
+                });
+            } catch (RuntimeException ex) {
+                LOGGER.debug("Unable to resolve the addresses of {}", host, ex);
+            }
         }
+    }
 
-        private static InetAddress[] getAllByName(String host) {
-            try {
-                return InetAddress.getAllByName(host);
-            } catch (UnknownHostException ex) {
-                LOGGER.warn("Unable to get InetAddresses for {}", host, ex);
-                return new InetAddress[0];
+    /**
+     * The balancer, the address picker, and the connections to each address
+     *
+     */
+    private static class Balancer {
+
+        private final AddressPicker picker;
+
+        private final Map<InetSocketAddress, Integer> connections = new ConcurrentHashMap<>();
+
+        private final long rebalanceIntervalNanos;
+
+        private final AtomicLong rebalancedAt;
+
+        private final AtomicLong refreshedAt;
+
+        /**
+         * Constructor
+         *
+         * @param picker the address picker
+         * @param rebalanceInterval the rebalance interval
+         */
+        private Balancer(AddressPicker picker, Duration rebalanceInterval) {
+            this.picker = picker;
+            this.rebalanceIntervalNanos = rebalanceInterval.toNanos();
+            this.rebalancedAt = new AtomicLong(System.nanoTime() - rebalanceIntervalNanos);
+            this.refreshedAt = new AtomicLong(System.nanoTime());
+        }
+
+        /**
+         * Counts the connection to the address, until the channel is closed
+         *
+         * @param channel the channel
+         * @param address the address
+         */
+        private void connected(Channel channel, InetSocketAddress address) {
+            connections.merge(address, 1, Integer::sum);
+            channel.closeFuture().addListener(__ -> connections.computeIfPresent(address, (key, count) -> count > 1 ? count - 1 : null));
+        }
+
+        /**
+         * Determines if the addresses of the host should be refreshed, at most once per rebalance interval
+         *
+         * @return true if the addresses should be refreshed, false otherwise
+         */
+        private boolean shouldRefresh() {
+            long now = System.nanoTime();
+            long last = refreshedAt.get();
+            return now - last >= rebalanceIntervalNanos && refreshedAt.compareAndSet(last, now);
+        }
+
+        /**
+         * Determines if a connection to the address should be closed, to rebalance the connections
+         *
+         * @param address the address
+         * @param addresses the resolved addresses
+         * @return true if the connection should be closed, false otherwise
+         */
+        private boolean shouldRebalance(InetSocketAddress address, List<InetSocketAddress> addresses) {
+            if (addresses.contains(address) && !isOverloaded(address, addresses)) {
+                return false;
+            }
+            long now = System.nanoTime();
+            long last = rebalancedAt.get();
+            return now - last >= rebalanceIntervalNanos && rebalancedAt.compareAndSet(last, now);
+        }
+
+        /**
+         * Determines if the address has more than its share of the connections, while a resolved address has none,
+         * the picker is otherwise left to weight the addresses, e.g. by latency
+         *
+         * @param address the address
+         * @param addresses the resolved addresses
+         * @return true if overloaded, false otherwise
+         */
+        private boolean isOverloaded(InetSocketAddress address, List<InetSocketAddress> addresses) {
+            if (addresses.stream().allMatch(connections::containsKey)) {
+                return false;
             }
+            int total = connections.values().stream().mapToInt(Integer::intValue).sum();
+            int share = (total + addresses.size() - 1) / addresses.size();
+            return connections.getOrDefault(address, 0) > share;
         }
     }
 }
@@ -1,5 +1,7 @@
 package uk.co.gcwilliams.async.http.impl.pool;
 
+import uk.co.gcwilliams.async.http.impl.handler.DefaultSslContext;
+
 /**
  * The HTTP channel pool handler configuration
  *
@@ -15,23 +17,35 @@ public class HttpChannelPoolConfiguration {
 
     private final int initialBufferSize;
 
-    private final int maxContentLength;
-
     private final boolean enableSni;
 
+    private final boolean enableHttp2;
+
+    private final boolean http2PriorKnowledge;
+
+    private final boolean enableDecompression;
+
+    private final DefaultSslContext sslContext;
+
     public HttpChannelPoolConfiguration(
             int maxInitialLineLength,
             int maxHeaderSize,
             int maxChunkSize,
             int initialBufferSize,
-            int maxContentLength,
-            boolean enableSni) {
+            boolean enableSni,
+            boolean enableHttp2,
+            boolean http2PriorKnowledge,
+            boolean enableDecompression,
+            DefaultSslContext sslContext) {
         this.maxInitialLineLength = maxInitialLineLength;
         this.maxHeaderSize = maxHeaderSize;
         this.maxChunkSize = maxChunkSize;
         this.initialBufferSize = initialBufferSize;
-        this.maxContentLength = maxContentLength;
         this.enableSni = enableSni;
+        this.enableHttp2 = enableHttp2;
+        this.http2PriorKnowledge = http2PriorKnowledge;
+        this.enableDecompression = enableDecompression;
+        this.sslContext = sslContext;
     }
 
     /**
@@ -71,20 +85,47 @@ public class HttpChannelPoolConfiguration {
     }
 
     /**
-     * Gets the max content length
+     * Determines if SNI should be enabled or not
      *
-     * @return the max content length
+     * @return true if SNI should be enabled or not, false otherwise
      */
-    public int getMaxContentLength() {
-        return maxContentLength;
+    public boolean isEnableSni() {
+        return enableSni;
     }
 
     /**
-     * Determines if SNI should be enabled or not
+     * Determines if HTTP/2 should be negotiated with ALPN for HTTPS connections
      *
-     * @return true if SNI should be enabled or not, false otherwise
+     * @return true if HTTP/2 should be negotiated, false otherwise
      */
-    public boolean isEnableSni() {
-        return enableSni;
+    public boolean isEnableHttp2() {
+        return enableHttp2;
+    }
+
+    /**
+     * Determines if HTTP/2 should be used without negotiation for HTTP connections (h2c prior knowledge)
+     *
+     * @return true if h2c prior knowledge should be used, false otherwise
+     */
+    public boolean isHttp2PriorKnowledge() {
+        return http2PriorKnowledge;
+    }
+
+    /**
+     * Determines if the responses should be decompressed, with the encodings accepted by the requests
+     *
+     * @return true if the responses should be decompressed, false otherwise
+     */
+    public boolean isEnableDecompression() {
+        return enableDecompression;
+    }
+
+    /**
+     * Gets the SSL context, shared by the connections
+     *
+     * @return the SSL context
+     */
+    public DefaultSslContext getSslContext() {
+        return sslContext;
     }
 }
@@ -6,11 +6,14 @@ import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.pool.AbstractChannelPoolMap;
 import io.netty.channel.pool.ChannelPool;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.Future;
+import uk.co.gcwilliams.async.http.impl.Transport;
+import uk.co.gcwilliams.async.http.impl.resolver.CachingDnsResolver;
 
 import java.net.URI;
 import java.time.Duration;
 import java.util.Objects;
+import java.util.function.Supplier;
 
 /**
  * The HTTP channel pools
@@ -29,36 +32,95 @@ public class HttpChannelPools extends AbstractChannelPoolMap<HttpChannelPools.Ke
 
     private final HttpChannelPoolConfiguration configuration;
 
+    private final CachingDnsResolver resolver;
+
+    private final Supplier<AddressPicker> addressPicker;
+
+    private final Duration rebalanceInterval;
+
+    private final Duration connectionAttemptDelay;
+
     /**
      * Constructor
      *
      * @param group the event loop group
+     * @param transport the transport
+     * @param socketConfiguration the socket configuration
      * @param connectTimeout the connection timeout
      * @param acquireTimeout the acquire timeout
      * @param maxConnections the maximum number of connections
      * @param maxPendingAcquires the maximum number of pending acquires
      * @param configuration the configuration
+     * @param resolver the resolver, shared by the pools
+     * @param addressPicker the address picker factory, a picker is created per pool
+     * @param rebalanceInterval the interval between closing connections, to rebalance them across the addresses
+     * @param connectionAttemptDelay the delay between the connection attempts to the addresses of a host
      */
     public HttpChannelPools(
             EventLoopGroup group,
+            Transport transport,
+            SocketConfiguration socketConfiguration,
             Duration connectTimeout,
             Duration acquireTimeout,
             int maxConnections,
             int maxPendingAcquires,
-            HttpChannelPoolConfiguration configuration) {
+            HttpChannelPoolConfiguration configuration,
+            CachingDnsResolver resolver,
+            Supplier<AddressPicker> addressPicker,
+            Duration rebalanceInterval,
+            Duration connectionAttemptDelay) {
         this.bootstrap = new Bootstrap();
         this.bootstrap.option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
         this.bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int)connectTimeout.toMillis());
         this.bootstrap.group(group);
-        this.bootstrap.channel(NioSocketChannel.class);
+        this.bootstrap.resolver(resolver.getAddressResolverGroup());
+        transport.configure(this.bootstrap, socketConfiguration);
         this.acquireTimeout = acquireTimeout;
         this.maxConnections = maxConnections;
         this.maxPendingAcquires = maxPendingAcquires;
         this.configuration = configuration;
+        this.resolver = resolver;
+        this.addressPicker = addressPicker;
+        this.rebalanceInterval = rebalanceInterval;
+        this.connectionAttemptDelay = connectionAttemptDelay;
     }
 
     @Override
     protected ChannelPool newPool(Key key) {
+        if (isHttp2(key)) {
+            return new Http2ChannelPool(
+                bootstrap.clone(),
+                key.scheme,
+                key.host,
+                key.port,
+                acquireTimeout,
+                maxConnections,
+                maxPendingAcquires,
+                configuration,
+                () -> newHttp1Pool(key));
+        }
+        return newHttp1Pool(key);
+    }
+
+    /**
+     * Determines if the pool for the key should use HTTP/2
+     *
+     * @param key the key
+     * @return true if HTTP/2 should be used, false otherwise
+     */
+    private boolean isHttp2(Key key) {
+        return "https".equals(key.scheme)
+            ? configuration.isEnableHttp2()
+            : configuration.isHttp2PriorKnowledge();
+    }
+
+    /**
+     * Creates a new HTTP/1.1 pool
+     *
+     * @param key the key
+     * @return the pool
+     */
+    private ChannelPool newHttp1Pool(Key key) {
         return new HttpChannelPool(
             bootstrap.clone(),
             key.scheme,
@@ -67,15 +129,21 @@ public class HttpChannelPools extends AbstractChannelPoolMap<HttpChannelPools.Ke
             acquireTimeout,
             maxConnections,
             maxPendingAcquires,
-            configuration);
+            configuration,
+            resolver,
+            addressPicker,
+            rebalanceInterval,
+            connectionAttemptDelay);
     }
 
     /**
-     * Shuts down the event loop group
+     * Shuts down the resolver and the event loop group
      *
+     * @return the future of the termination of the event loop group
      */
-    public void shutdown() {
-        bootstrap.config().group().shutdownGracefully();
+    public Future<?> shutdown() {
+        resolver.close();
+        return bootstrap.config().group().shutdownGracefully();
     }
 
     /**
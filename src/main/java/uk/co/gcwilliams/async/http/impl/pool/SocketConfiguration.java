@@ -0,0 +1,72 @@
+package uk.co.gcwilliams.async.http.impl.pool;
+
+/**
+ * The socket configuration, applied to every connection the pools create
+ *
+ * @author : Gareth Williams
+ **/
+public class SocketConfiguration {
+
+    private final boolean tcpNoDelay;
+
+    private final boolean keepAlive;
+
+    private final boolean tcpQuickAck;
+
+    private final boolean edgeTriggered;
+
+    /**
+     * Constructor
+     *
+     * @param tcpNoDelay whether TCP_NODELAY should be set
+     * @param keepAlive whether SO_KEEPALIVE should be set
+     * @param tcpQuickAck whether TCP_QUICKACK should be set, native transports only
+     * @param edgeTriggered whether edge triggered mode should be used, epoll only
+     */
+    public SocketConfiguration(
+            boolean tcpNoDelay,
+            boolean keepAlive,
+            boolean tcpQuickAck,
+            boolean edgeTriggered) {
+        this.tcpNoDelay = tcpNoDelay;
+        this.keepAlive = keepAlive;
+        this.tcpQuickAck = tcpQuickAck;
+        this.edgeTriggered = edgeTriggered;
+    }
+
+    /**
+     * Determines if TCP_NODELAY should be set
+     *
+     * @return true if TCP_NODELAY should be set, false otherwise
+     */
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * Determines if SO_KEEPALIVE should be set
+     *
+     * @return true if SO_KEEPALIVE should be set, false otherwise
+     */
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Determines if TCP_QUICKACK should be set
+     *
+     * @return true if TCP_QUICKACK should be set, false otherwise
+     */
+    public boolean isTcpQuickAck() {
+        return tcpQuickAck;
+    }
+
+    /**
+     * Determines if edge triggered mode should be used
+     *
+     * @return true if edge triggered mode should be used, false otherwise
+     */
+    public boolean isEdgeTriggered() {
+        return edgeTriggered;
+    }
+}
@@ -0,0 +1,319 @@
+package uk.co.gcwilliams.async.http.impl.resolver;
+
+import io.netty.channel.EventLoop;
+import io.netty.resolver.AddressResolver;
+import io.netty.resolver.AddressResolverGroup;
+import io.netty.resolver.InetSocketAddressResolver;
+import io.netty.resolver.NameResolver;
+import io.netty.resolver.dns.DefaultAuthoritativeDnsServerCache;
+import io.netty.resolver.dns.DefaultDnsCache;
+import io.netty.resolver.dns.DefaultDnsCnameCache;
+import io.netty.resolver.dns.DnsAddressResolverGroup;
+import io.netty.resolver.dns.DnsNameResolverBuilder;
+import io.netty.resolver.dns.DnsServerAddressStreamProvider;
+import io.netty.resolver.dns.DnsServerAddressStreamProviders;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import uk.co.gcwilliams.async.http.impl.Transport;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The caching DNS resolver, shared by all the pools of a client. The queries are sent asynchronously, from the
+ * event loops, using the transport's datagram channels. The positive and negative caches, which respect the
+ * record TTLs within the configured bounds, are shared by the event loops, as are the queries in flight, so
+ * concurrent resolutions of a host are coalesced into one query. When a query fails, the last addresses
+ * resolved for the host are served, if they were resolved within the stale TTL. The last addresses are
+ * remembered for a bounded number of hosts, the expired hosts are evicted first.
+ *
+ * @author : Gareth Williams
+ **/
+public class CachingDnsResolver implements AutoCloseable {
+
+    private static final int MAX_REMEMBERED_HOSTS = 1024;
+
+    private final ConcurrentMap<String, Resolved> lastResolved = new ConcurrentHashMap<>();
+
+    private final long staleTtlNanos;
+
+    private final AddressResolverGroup<InetSocketAddress> addressResolverGroup;
+
+    private volatile boolean closed;
+
+    /**
+     * Constructor
+     *
+     * @param transport the transport
+     * @param minTtl the minimum TTL of the cached addresses
+     * @param maxTtl the maximum TTL of the cached addresses
+     * @param negativeTtl the TTL of the cached failures
+     * @param staleTtl the maximum age of the addresses served when a query fails
+     */
+    public CachingDnsResolver(Transport transport, Duration minTtl, Duration maxTtl, Duration negativeTtl, Duration staleTtl) {
+        this(transport, minTtl, maxTtl, negativeTtl, staleTtl, DnsServerAddressStreamProviders.platformDefault());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param transport the transport
+     * @param minTtl the minimum TTL of the cached addresses
+     * @param maxTtl the maximum TTL of the cached addresses
+     * @param negativeTtl the TTL of the cached failures
+     * @param staleTtl the maximum age of the addresses served when a query fails
+     * @param nameServers the name servers
+     */
+    CachingDnsResolver(
+            Transport transport,
+            Duration minTtl,
+            Duration maxTtl,
+            Duration negativeTtl,
+            Duration staleTtl,
+            DnsServerAddressStreamProvider nameServers) {
+        this.staleTtlNanos = staleTtl.toNanos();
+        int minTtlSeconds = toSeconds(minTtl);
+        int maxTtlSeconds = toSeconds(maxTtl);
+        DnsNameResolverBuilder builder = new DnsNameResolverBuilder()
+            .channelType(transport.getDatagramChannelClass())
+            .socketChannelType(transport.getSocketChannelClass())
+            .nameServerProvider(nameServers)
+            // the caches are shared by the resolvers of the event loops
+            .resolveCache(new DefaultDnsCache(minTtlSeconds, maxTtlSeconds, toSeconds(negativeTtl)))
+            .cnameCache(new DefaultDnsCnameCache(minTtlSeconds, maxTtlSeconds))
+            .authoritativeDnsServerCache(new DefaultAuthoritativeDnsServerCache(minTtlSeconds, maxTtlSeconds, null));
+        this.addressResolverGroup = new DnsAddressResolverGroup(builder) {
+            @Override
+            protected AddressResolver<InetSocketAddress> newAddressResolver(EventLoop eventLoop, NameResolver<InetAddress> resolver) {
+                return new InetSocketAddressResolver(eventLoop, new StaleOnErrorNameResolver(eventLoop, resolver));
+            }
+        };
+    }
+
+    /**
+     * Gets the address resolver group, for the bootstraps
+     *
+     * @return the address resolver group
+     */
+    public AddressResolverGroup<InetSocketAddress> getAddressResolverGroup() {
+        return addressResolverGroup;
+    }
+
+    /**
+     * Resolves all the addresses of the host, the future completes on the event loop, and fails once the resolver,
+     * or the event loop, has been shut down
+     *
+     * @param host the host
+     * @param port the port
+     * @param eventLoop the event loop
+     * @return the future of the addresses
+     */
+    public Future<List<InetSocketAddress>> resolveAll(String host, int port, EventExecutor eventLoop) {
+        if (closed) {
+            return eventLoop.newFailedFuture(new IllegalStateException("The resolver has been closed"));
+        }
+        try {
+            return addressResolverGroup.getResolver(eventLoop).resolveAll(InetSocketAddress.createUnresolved(host, port));
+        } catch (IllegalStateException ex) {
+            return eventLoop.newFailedFuture(ex);
+        }
+    }
+
+    /**
+     * Gets the addresses last resolved for the host, if resolved within the stale TTL, without a query
+     *
+     * @param host the host
+     * @param port the port
+     * @return the addresses, or null if none
+     */
+    public List<InetSocketAddress> getResolved(String host, int port) {
+        List<InetAddress> addresses = getStale(host);
+        if (addresses == null) {
+            return null;
+        }
+        List<InetSocketAddress> resolved = new ArrayList<>(addresses.size());
+        for (InetAddress address : addresses) {
+            resolved.add(new InetSocketAddress(address, port));
+        }
+        return resolved;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        addressResolverGroup.close();
+        lastResolved.clear();
+    }
+
+    /**
+     * Gets the last addresses resolved for the host, if resolved within the stale TTL
+     *
+     * @param inetHost the host
+     * @return the addresses, or null if none
+     */
+    private List<InetAddress> getStale(String inetHost) {
+        Resolved resolved = lastResolved.get(inetHost);
+        if (resolved == null || resolved.addresses.isEmpty()) {
+            return null;
+        }
+        if (resolved.isExpired(System.nanoTime())) {
+            lastResolved.remove(inetHost, resolved);
+            return null;
+        }
+        return resolved.addresses;
+    }
+
+    /**
+     * Remembers the addresses resolved for the host, the addresses are only replaced when they change, otherwise
+     * the time they were resolved is refreshed, as most resolutions are served from the cache
+     *
+     * @param inetHost the host
+     * @param addresses the addresses
+     * @param partial true if the addresses are only some of the addresses of the host
+     */
+    private void remember(String inetHost, List<InetAddress> addresses, boolean partial) {
+        Resolved resolved = lastResolved.get(inetHost);
+        if (resolved != null && (partial ? resolved.addresses.containsAll(addresses) : resolved.addresses.equals(addresses))) {
+            resolved.resolvedAt = System.nanoTime();
+            return;
+        }
+        if (lastResolved.put(inetHost, new Resolved(List.copyOf(addresses))) == null && lastResolved.size() > MAX_REMEMBERED_HOSTS) {
+            evict();
+        }
+    }
+
+    /**
+     * Evicts the expired hosts, then the least recently resolved hosts, until the hosts are within the bound
+     *
+     */
+    private void evict() {
+        long now = System.nanoTime();
+        lastResolved.values().removeIf(resolved -> resolved.isExpired(now));
+        while (lastResolved.size() > MAX_REMEMBERED_HOSTS) {
+            lastResolved.entrySet().stream()
+                .min(Comparator.comparingLong(entry -> entry.getValue().resolvedAt))
+                .ifPresent(entry -> lastResolved.remove(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * Converts the duration to seconds, capped at {@link Integer#MAX_VALUE}
+     *
+     * @param duration the duration
+     * @return the seconds
+     */
+    private static int toSeconds(Duration duration) {
+        return (int) Math.min(duration.getSeconds(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * A name resolver, which serves the last addresses resolved when a query fails
+     *
+     */
+    private class StaleOnErrorNameResolver implements NameResolver<InetAddress> {
+
+        private final EventExecutor executor;
+
+        private final NameResolver<InetAddress> delegate;
+
+        /**
+         * Constructor
+         *
+         * @param executor the executor
+         * @param delegate the delegate
+         */
+        private StaleOnErrorNameResolver(EventExecutor executor, NameResolver<InetAddress> delegate) {
+            this.executor = executor;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Future<InetAddress> resolve(String inetHost) {
+            return resolve(inetHost, executor.newPromise());
+        }
+
+        @Override
+        public Future<InetAddress> resolve(String inetHost, Promise<InetAddress> promise) {
+            delegate.resolve(inetHost).addListener((Future<InetAddress> future) -> {
+                if (future.isSuccess()) {
+                    // only the first address, so the addresses of resolve all are kept when they include it
+                    remember(inetHost, List.of(future.getNow()), true);
+                    promise.trySuccess(future.getNow());
+                    return;
+                }
+                List<InetAddress> stale = getStale(inetHost);
+                if (stale != null) {
+                    promise.trySuccess(stale.get(0));
+                } else {
+                    promise.tryFailure(future.cause());
+                }
+            });
+            return promise;
+        }
+
+        @Override
+        public Future<List<InetAddress>> resolveAll(String inetHost) {
+            return resolveAll(inetHost, executor.newPromise());
+        }
+
+        @Override
+        public Future<List<InetAddress>> resolveAll(String inetHost, Promise<List<InetAddress>> promise) {
+            delegate.resolveAll(inetHost).addListener((Future<List<InetAddress>> future) -> {
+                if (future.isSuccess()) {
+                    remember(inetHost, future.getNow(), false);
+                    promise.trySuccess(future.getNow());
+                    return;
+                }
+                List<InetAddress> stale = getStale(inetHost);
+                if (stale != null) {
+                    promise.trySuccess(stale);
+                } else {
+                    promise.tryFailure(future.cause());
+                }
+            });
+            return promise;
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+    }
+
+    /**
+     * The addresses last resolved for a host
+     *
+     */
+    private class Resolved {
+
+        private final List<InetAddress> addresses;
+
+        private volatile long resolvedAt = System.nanoTime();
+
+        /**
+         * Constructor
+         *
+         * @param addresses the addresses
+         */
+        private Resolved(List<InetAddress> addresses) {
+            this.addresses = addresses;
+        }
+
+        /**
+         * Determines if the addresses are older than the stale TTL
+         *
+         * @param now the current time, in nanoseconds
+         * @return true if expired, false otherwise
+         */
+        private boolean isExpired(long now) {
+            return now - resolvedAt > staleTtlNanos;
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package uk.co.gcwilliams.async.http.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The body publishers, converts between {@link Flow.Publisher} of {@link ByteBuffer} and {@link InputStream} bodies
+ *
+ * @author : Gareth Williams
+ **/
+public class BodyPublishers {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private BodyPublishers() { // static
+    }
+
+    /**
+     * Creates a publisher which publishes the bytes as a single read only buffer, each subscriber
+     * receives its own view of the bytes
+     *
+     * @param bytes the bytes
+     * @return the publisher
+     */
+    public static Flow.Publisher<ByteBuffer> ofByteArray(byte[] bytes) {
+        return ofByteBuffer(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Creates a publisher which publishes a read only view of the buffer, each subscriber
+     * receives its own view of the buffer
+     *
+     * @param buffer the buffer
+     * @return the publisher
+     */
+    public static Flow.Publisher<ByteBuffer> ofByteBuffer(ByteBuffer buffer) {
+        requireNonNull(buffer, "the buffer should be provided");
+        return subscriber -> new IteratingSubscription(subscriber) {
+
+            private boolean published = !buffer.hasRemaining();
+
+            @Override
+            ByteBuffer next() {
+                if (published) {
+                    return null;
+                }
+                published = true;
+                return buffer.asReadOnlyBuffer();
+            }
+        }.start();
+    }
+
+    /**
+     * Creates a publisher which reads the input stream in chunks as they are requested, the input stream
+     * can only be subscribed to once, reads block the thread requesting the chunks
+     *
+     * @param inputStream the input stream
+     * @return the publisher
+     */
+    public static Flow.Publisher<ByteBuffer> ofInputStream(InputStream inputStream) {
+        requireNonNull(inputStream, "the input stream should be provided");
+        AtomicBoolean subscribed = new AtomicBoolean();
+        return subscriber -> {
+            if (!subscribed.compareAndSet(false, true)) {
+                rejectSubscriber(subscriber);
+                return;
+            }
+            new IteratingSubscription(subscriber) {
+
+                @Override
+                ByteBuffer next() throws IOException {
+                    byte[] chunk = inputStream.readNBytes(CHUNK_SIZE);
+                    return chunk.length > 0 ? ByteBuffer.wrap(chunk) : null;
+                }
+
+                @Override
+                void close() {
+                    try {
+                        inputStream.close();
+                    } catch (IOException ex) {
+                        // ignored, the subscription is finished
+                    }
+                }
+            }.start();
+        };
+    }
+
+    /**
+     * Creates an input stream which subscribes to the publisher on the first read, requesting a chunk
+     * at a time, closing the input stream cancels the subscription
+     *
+     * @param publisher the publisher
+     * @return the input stream
+     */
+    public static InputStream toInputStream(Flow.Publisher<ByteBuffer> publisher) {
+        return new PublisherInputStream(requireNonNull(publisher, "the publisher should be provided"));
+    }
+
+    /**
+     * Discards the publisher, subscribing and cancelling the subscription, e.g. so the connection holding a
+     * streamed body nobody will consume is released
+     *
+     * @param publisher the publisher
+     */
+    public static void discard(Flow.Publisher<ByteBuffer> publisher) {
+        publisher.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.cancel();
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) { }
+
+            @Override
+            public void onError(Throwable throwable) { }
+
+            @Override
+            public void onComplete() { }
+        });
+    }
+
+    /**
+     * Signals an error to a subscriber of a publisher which only supports a single subscriber
+     *
+     * @param subscriber the subscriber
+     */
+    static void rejectSubscriber(Flow.Subscriber<?> subscriber) {
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) { }
+
+            @Override
+            public void cancel() { }
+        });
+        subscriber.onError(new IllegalStateException("The body can only be subscribed to once"));
+    }
+
+    /**
+     * A subscription which publishes the chunks from an iterator like source, synchronously on the
+     * thread requesting them, re-entrant requests from the subscriber are trampolined
+     *
+     */
+    private abstract static class IteratingSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+
+        private final AtomicLong demand = new AtomicLong();
+
+        private volatile boolean done;
+
+        /**
+         * Constructor
+         *
+         * @param subscriber the subscriber
+         */
+        private IteratingSubscription(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * Gets the next chunk
+         *
+         * @return the chunk, or null if there are no more chunks
+         */
+        abstract ByteBuffer next() throws Exception;
+
+        /**
+         * Closes the source
+         *
+         */
+        void close() {
+        }
+
+        /**
+         * Starts the subscription
+         *
+         */
+        void start() {
+            subscriber.onSubscribe(this);
+        }
+
+        @Override
+        public void request(long n) {
+            if (done) {
+                return;
+            }
+            if (n <= 0) {
+                done = true;
+                close();
+                subscriber.onError(new IllegalArgumentException("The number of chunks requested should be positive"));
+                return;
+            }
+            if (demand.getAndAccumulate(n, BodyPublishers::addCap) > 0) {
+                return; // already publishing, the loop below will pick up the demand
+            }
+            long emitted = 0;
+            while (!done) {
+                long requested = demand.get();
+                while (emitted < requested && !done) {
+                    ByteBuffer chunk;
+                    try {
+                        chunk = next();
+                    } catch (Exception ex) {
+                        done = true;
+                        close();
+                        subscriber.onError(ex);
+                        return;
+                    }
+                    if (chunk == null) {
+                        done = true;
+                        close();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    subscriber.onNext(chunk);
+                    emitted++;
+                }
+                if (demand.addAndGet(-emitted) == 0) {
+                    return;
+                }
+                emitted = 0;
+            }
+        }
+
+        @Override
+        public void cancel() {
+            if (!done) {
+                done = true;
+                close();
+            }
+        }
+    }
+
+    /**
+     * An input stream over a publisher
+     *
+     */
+    private static class PublisherInputStream extends InputStream {
+
+        private static final Object COMPLETE = new Object();
+
+        private final Flow.Publisher<ByteBuffer> publisher;
+
+        private final BlockingQueue<Object> signals = new LinkedBlockingQueue<>();
+
+        private volatile Flow.Subscription subscription;
+
+        private ByteBuffer current;
+
+        private boolean subscribed;
+
+        private boolean finished;
+
+        /**
+         * Constructor
+         *
+         * @param publisher the publisher
+         */
+        private PublisherInputStream(Flow.Publisher<ByteBuffer> publisher) {
+            this.publisher = publisher;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            ByteBuffer buffer = nextBuffer();
+            if (buffer == null) {
+                return -1;
+            }
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return current != null ? current.remaining() : 0;
+        }
+
+        @Override
+        public void close() {
+            finished = true;
+            Flow.Subscription subscription = this.subscription;
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+
+        /**
+         * Gets the next buffer with remaining bytes, blocking until one is published
+         *
+         * @return the buffer, or null at the end of the body
+         */
+        private ByteBuffer nextBuffer() throws IOException {
+            while (current == null || !current.hasRemaining()) {
+                if (finished) {
+                    return null;
+                }
+                if (!subscribed) {
+                    subscribed = true;
+                    publisher.subscribe(new QueueingSubscriber());
+                } else {
+                    subscription.request(1);
+                }
+                Object signal;
+                try {
+                    signal = signals.take();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    close();
+                    throw new InterruptedIOException("Interrupted while reading the body");
+                }
+                if (signal == COMPLETE) {
+                    finished = true;
+                    return null;
+                }
+                if (signal instanceof Throwable) {
+                    finished = true;
+                    Throwable cause = (Throwable) signal;
+                    throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                }
+                current = (ByteBuffer) signal;
+            }
+            return current;
+        }
+
+        /**
+         * Queues the signals for the reading thread
+         *
+         */
+        private class QueueingSubscriber implements Flow.Subscriber<ByteBuffer> {
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                PublisherInputStream.this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                signals.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                signals.add(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                signals.add(COMPLETE);
+            }
+        }
+    }
+
+    /**
+     * Adds, capping at {@link Long#MAX_VALUE}
+     *
+     * @param a the first value
+     * @param b the second value
+     * @return the sum, capped
+     */
+    private static long addCap(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+}
@@ -1,5 +1,6 @@
 package uk.co.gcwilliams.async.http.util;
 
+import uk.co.gcwilliams.async.http.Cancellable;
 import uk.co.gcwilliams.async.http.Task;
 
 import java.util.concurrent.CompletableFuture;
@@ -16,14 +17,19 @@ public class CompletionStages {
     }
 
     /**
-     * Converts a task to a completion stage
+     * Converts a task to a completion stage, cancelling the completable future cancels the task
      *
      * @param task the task
      * @return the completion stage
      */
     public static <T> CompletionStage<T> toCompletionStage(Task<T> task) {
         CompletableFuture<T> future = new CompletableFuture<>();
-        task.fork(future::complete, future::completeExceptionally);
+        Cancellable cancellable = task.fork(future::complete, future::completeExceptionally);
+        future.whenComplete((value, exception) -> {
+            if (future.isCancelled()) {
+                cancellable.cancel();
+            }
+        });
         return future;
     }
 }
@@ -0,0 +1,70 @@
+package uk.co.gcwilliams.async.http;
+
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import uk.co.gcwilliams.async.http.impl.NettyAsyncHttpClient;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static java.lang.String.format;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The sync HTTP client tests
+ *
+ * @author : Gareth Williams
+ **/
+@WireMockTest
+class SyncHttpClientTest {
+
+    private static SyncHttpClient HTTP;
+
+    @BeforeAll static void beforeAll() {
+        HTTP = new SyncHttpClient(NettyAsyncHttpClient.builder().build());
+    }
+
+    @AfterAll static void afterAll() throws Exception {
+        HTTP.close();
+    }
+
+    @Test void send(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        stubFor(get("/").willReturn(ok().withBody("hello")));
+
+        AsyncHttpRequest request = AsyncHttpRequest
+            .get(URI.create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort())))
+            .build();
+
+        // act
+        AsyncHttpResponse response = HTTP.send(request);
+
+        // assert
+        assertThat(response.getStatusCode(), equalTo(200));
+        assertThat(new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8), equalTo("hello"));
+    }
+
+    @Test void sendInterrupted(WireMockRuntimeInfo wmRuntimeInfo) {
+
+        // arrange
+        stubFor(get("/slow").willReturn(ok().withFixedDelay(500)));
+
+        AsyncHttpRequest request = AsyncHttpRequest
+            .get(URI.create(format("http://localhost:%s/slow", wmRuntimeInfo.getHttpPort())))
+            .build();
+
+        Thread.currentThread().interrupt();
+
+        // act
+        assertThrows(InterruptedException.class, () -> HTTP.send(request));
+    }
+}
@@ -0,0 +1,127 @@
+package uk.co.gcwilliams.async.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * The task tests
+ *
+ * @author : Gareth Williams
+ */
+class TaskTest {
+
+    @Test void flatMapStackSafe() throws Exception {
+
+        // arrange
+        Task<Integer> task = Task.of(0);
+        for (int idx = 0; idx < 100_000; idx++) {
+            task = task.flatMap(value -> Task.of(value + 1));
+        }
+
+        // act
+        int value = Tasks.get(task, Duration.ZERO);
+
+        // assert
+        assertThat(value, equalTo(100_000));
+    }
+
+    @Test void nestedFlatMapStackSafe() throws Exception {
+
+        // act
+        int value = Tasks.get(count(0, 100_000), Duration.ZERO);
+
+        // assert
+        assertThat(value, equalTo(100_000));
+    }
+
+    @Test void mapStackSafe() throws Exception {
+
+        // arrange
+        Task<Integer> task = Task.of(0);
+        for (int idx = 0; idx < 100_000; idx++) {
+            task = task.map(value -> value + 1);
+        }
+
+        // act
+        int value = Tasks.get(task, Duration.ZERO);
+
+        // assert
+        assertThat(value, equalTo(100_000));
+    }
+
+    @Test void asyncFlatMap() throws Exception {
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+
+            // arrange
+            Task<Integer> task = Task.of(0);
+            for (int idx = 0; idx < 10_000; idx++) {
+                task = task.flatMap(value -> Task.<Integer>of((resolve, reject) ->
+                    executor.execute(() -> resolve.accept(value + 1))));
+            }
+
+            // act
+            int value = Tasks.get(task, Duration.ofMinutes(1));
+
+            // assert
+            assertThat(value, equalTo(10_000));
+
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test void recover() throws Exception {
+
+        // arrange
+        Task<String> task = Task.<String>of(new IllegalStateException("A"))
+            .map(value -> value + "B")
+            .recover(Exception::getMessage)
+            .map(value -> value + "C");
+
+        // act
+        String value = Tasks.get(task, Duration.ZERO);
+
+        // assert
+        assertThat(value, equalTo("AC"));
+    }
+
+    @Test void resolveOnce() {
+
+        // arrange
+        List<Object> completions = new ArrayList<>();
+        Task<String> task = Task.of((resolve, reject) -> {
+            resolve.accept("A");
+            resolve.accept("B");
+            reject.accept(new IllegalStateException("C"));
+        });
+
+        // act
+        task.fork(completions::add, completions::add);
+
+        // assert
+        assertThat(completions, contains("A"));
+    }
+
+    /**
+     * Counts recursively, with flat maps nested to the depth of the count
+     *
+     * @param from the count from
+     * @param to the count to
+     * @return the task of the count
+     */
+    private static Task<Integer> count(int from, int to) {
+        return from == to ? Task.of(from) : Task.of(from + 1).flatMap(next -> count(next, to));
+    }
+}
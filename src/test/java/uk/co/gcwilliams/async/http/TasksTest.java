@@ -3,10 +3,24 @@ package uk.co.gcwilliams.async.http;
 import org.junit.jupiter.api.Test;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
-
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.IntStream.range;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInRelativeOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /**
@@ -62,6 +76,91 @@ class TasksTest {
         assertThrows(IllegalStateException.class, () -> Tasks.get(Tasks.traverseP(List.of(a, b)), Duration.ZERO));
     }
 
+    @Test void traverseLarge() throws Exception {
+
+        // arrange
+        List<Task<Integer>> tasks = range(0, 100_000).mapToObj(Task::of).collect(toList());
+
+        // act
+        List<Integer> traversed = Tasks.get(Tasks.traverse(tasks), Duration.ZERO);
+
+        // assert
+        assertThat(traversed, equalTo(range(0, 100_000).boxed().collect(toList())));
+    }
+
+    @Test void traversePParallelism() throws Exception {
+
+        // arrange
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Task<Integer>> tasks = range(0, 1000)
+            .mapToObj(idx -> Task.<Integer>of((resolve, reject) -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                executor.execute(() -> {
+                    inFlight.decrementAndGet();
+                    resolve.accept(idx);
+                });
+            }))
+            .collect(toList());
+
+        try {
+
+            // act
+            List<Integer> traversed = Tasks.get(Tasks.traverseP(tasks, 4), Duration.ofMinutes(1));
+
+            // assert
+            assertThat(traversed, equalTo(range(0, 1000).boxed().collect(toList())));
+            assertThat(maxInFlight.get(), lessThanOrEqualTo(4));
+
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test void traversePSynchronous() throws Exception {
+
+        // arrange
+        List<Task<Integer>> tasks = range(0, 100_000).mapToObj(Task::of).collect(toList());
+
+        // act
+        List<Integer> traversed = Tasks.get(Tasks.traverseP(tasks, 1), Duration.ZERO);
+
+        // assert
+        assertThat(traversed.size(), equalTo(100_000));
+    }
+
+    @Test void cancelFlatMap() {
+
+        // arrange
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Task<String> pending = Task.cancellable((resolve, reject) -> () -> cancelled.compareAndSet(false, true));
+        List<Exception> rejected = new ArrayList<>();
+
+        // act
+        Cancellable cancellable = Task.of("A").flatMap(a -> pending).fork(value -> { }, rejected::add);
+        boolean cancel = cancellable.cancel();
+
+        // assert
+        assertThat(cancel, equalTo(true));
+        assertThat(cancelled.get(), equalTo(true));
+        assertThat(rejected, contains(instanceOf(CancellationException.class)));
+    }
+
+    @Test void traversePFailedCancels() {
+
+        // arrange
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Task<String> a = Task.cancellable((resolve, reject) -> () -> cancelled.compareAndSet(false, true));
+        Task<String> b = Task.of(new IllegalStateException("B"));
+
+        // act
+        assertThrows(IllegalStateException.class, () -> Tasks.get(Tasks.traverseP(List.of(a, b)), Duration.ZERO));
+
+        // assert
+        assertThat(cancelled.get(), equalTo(true));
+    }
+
     @Test void apply2() throws Exception {
 
         // act
@@ -205,4 +304,69 @@ class TasksTest {
         // assert
         assertThat(applied, containsInRelativeOrder("A", "B", "C", "D", "E", "F", "G", "H", "I", "J"));
     }
+
+    @Test void applyP2() throws Exception {
+
+        // arrange
+        CountDownLatch forked = new CountDownLatch(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Function<String, Task<String>> awaitBoth = value -> Task.of((resolve, reject) -> executor.execute(() -> {
+            forked.countDown();
+            try {
+                forked.await(); // resolves only when both tasks have been forked
+                resolve.accept(value);
+            } catch (InterruptedException ex) {
+                reject.accept(ex);
+            }
+        }));
+
+        try {
+
+            // act
+            List<String> applied = Tasks.get(Tasks.applyP(
+                awaitBoth.apply("A"),
+                awaitBoth.apply("B"),
+                (a, b) -> Task.of(List.of(a, b))), Duration.ofMinutes(1));
+
+            // assert
+            assertThat(applied, containsInRelativeOrder("A", "B"));
+
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test void applyPFailedCancels() {
+
+        // arrange
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Task<String> a = Task.cancellable((resolve, reject) -> () -> cancelled.compareAndSet(false, true));
+        Task<String> b = Task.of(new IllegalStateException("B"));
+
+        // act
+        assertThrows(IllegalStateException.class, () -> Tasks.get(Tasks.applyP(a, b, (x, y) -> Task.of(x + y)), Duration.ZERO));
+
+        // assert
+        assertThat(cancelled.get(), equalTo(true));
+    }
+
+    @Test void applyP10() throws Exception {
+
+        // act
+        List<String> applied = Tasks.get(Tasks.applyP(
+            Task.of("A"),
+            Task.of("B"),
+            Task.of("C"),
+            Task.of("D"),
+            Task.of("E"),
+            Task.of("F"),
+            Task.of("G"),
+            Task.of("H"),
+            Task.of("I"),
+            Task.of("J"),
+            (a, b, c, d, e, f, g, h, i, j) -> Task.of(List.of(a, b, c, d, e, f, g, h, i, j))), Duration.ZERO);
+
+        // assert
+        assertThat(applied, containsInRelativeOrder("A", "B", "C", "D", "E", "F", "G", "H", "I", "J"));
+    }
 }
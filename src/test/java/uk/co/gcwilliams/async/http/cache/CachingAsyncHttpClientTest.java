@@ -0,0 +1,268 @@
+package uk.co.gcwilliams.async.http.cache;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import uk.co.gcwilliams.async.http.AsyncHttpClient;
+import uk.co.gcwilliams.async.http.AsyncHttpRequest;
+import uk.co.gcwilliams.async.http.AsyncHttpResponse;
+import uk.co.gcwilliams.async.http.Tasks;
+import uk.co.gcwilliams.async.http.impl.NettyAsyncHttpClient;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.findAll;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.serverError;
+import static com.github.tomakehurst.wiremock.client.WireMock.status;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static java.lang.String.format;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * The caching async HTTP client tests
+ *
+ * @author : Gareth Williams
+ **/
+@WireMockTest
+class CachingAsyncHttpClientTest {
+
+    private static CachingAsyncHttpClient HTTP;
+
+    @BeforeAll static void beforeAll() {
+        HTTP = CachingAsyncHttpClient.builder(NettyAsyncHttpClient.builder().build()).build();
+    }
+
+    @AfterAll static void afterAll() throws Exception {
+        HTTP.close();
+    }
+
+    @Test void fresh(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        stubFor(get("/fresh").willReturn(ok().withHeader("Cache-Control", "max-age=60").withBody("hello")));
+
+        AsyncHttpRequest request = AsyncHttpRequest.get(uri(wmRuntimeInfo, "/fresh")).build();
+
+        // act
+        AsyncHttpResponse first = Tasks.get(HTTP.prepare(request), Duration.ofSeconds(5));
+        AsyncHttpResponse second = Tasks.get(HTTP.prepare(request), Duration.ofSeconds(5));
+
+        // assert
+        assertThat(body(first), equalTo("hello"));
+        assertThat(body(second), equalTo("hello"));
+        assertThat(second.getHeaders().get("Age"), contains("0"));
+        verify(1, getRequestedFor(urlEqualTo("/fresh")));
+    }
+
+    @Test void noStore(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        stubFor(get("/no-store").willReturn(ok().withHeader("Cache-Control", "no-store, max-age=60")));
+
+        AsyncHttpRequest request = AsyncHttpRequest.get(uri(wmRuntimeInfo, "/no-store")).build();
+
+        // act
+        Tasks.get(HTTP.prepare(request), Duration.ofSeconds(5));
+        Tasks.get(HTTP.prepare(request), Duration.ofSeconds(5));
+
+        // assert
+        verify(2, getRequestedFor(urlEqualTo("/no-store")));
+    }
+
+    @Test void stale(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        stubFor(get("/stale").willReturn(ok().withHeader("Cache-Control", "max-age=60").withHeader("Age", "120")));
+
+        AsyncHttpRequest request = AsyncHttpRequest.get(uri(wmRuntimeInfo, "/stale")).build();
+
+        // act
+        Tasks.get(HTTP.prepare(request), Duration.ofSeconds(5));
+        Tasks.get(HTTP.prepare(request), Duration.ofSeconds(5));
+
+        // assert
+        verify(2, getRequestedFor(urlEqualTo("/stale")));
+    }
+
+    @Test void vary(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        stubFor(get("/vary").willReturn(ok().withHeader("Cache-Control", "max-age=60").withHeader("Vary", "Accept")));
+
+        AsyncHttpRequest json = AsyncHttpRequest.get(uri(wmRuntimeInfo, "/vary"))
+            .withHeader("Accept", "application/json")
+            .build();
+
+        AsyncHttpRequest xml = AsyncHttpRequest.get(uri(wmRuntimeInfo, "/vary"))
+            .withHeader("Accept", "application/xml")
+            .build();
+
+        // act
+        Tasks.get(HTTP.prepare(json), Duration.ofSeconds(5));
+        Tasks.get(HTTP.prepare(json), Duration.ofSeconds(5));
+        Tasks.get(HTTP.prepare(xml), Duration.ofSeconds(5));
+
+        // assert
+        verify(2, getRequestedFor(urlEqualTo("/vary")));
+    }
+
+    @Test void invalidated(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        stubFor(get("/invalidated").willReturn(ok().withHeader("Cache-Control", "max-age=60")));
+        stubFor(post("/invalidated").willReturn(ok()));
+
+        AsyncHttpRequest request = AsyncHttpRequest.get(uri(wmRuntimeInfo, "/invalidated")).build();
+
+        // act
+        Tasks.get(HTTP.prepare(request), Duration.ofSeconds(5));
+        Tasks.get(HTTP.prepare(AsyncHttpRequest.post(uri(wmRuntimeInfo, "/invalidated")).build()), Duration.ofSeconds(5));
+        Tasks.get(HTTP.prepare(request), Duration.ofSeconds(5));
+
+        // assert
+        verify(2, getRequestedFor(urlEqualTo("/invalidated")));
+    }
+
+    @Test void revalidated(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        stubFor(get("/revalidated").willReturn(ok()
+            .withHeader("Cache-Control", "max-age=0")
+            .withHeader("ETag", "\"v1\"")
+            .withBody("hello")));
+
+        stubFor(get("/revalidated")
+            .withHeader("If-None-Match", WireMock.equalTo("\"v1\""))
+            .willReturn(status(304).withHeader("Cache-Control", "max-age=60")));
+
+        AsyncHttpRequest request = AsyncHttpRequest.get(uri(wmRuntimeInfo, "/revalidated")).build();
+
+        // act
+        Tasks.get(HTTP.prepare(request), Duration.ofSeconds(5));
+        AsyncHttpResponse revalidated = Tasks.get(HTTP.prepare(request), Duration.ofSeconds(5));
+        AsyncHttpResponse fresh = Tasks.get(HTTP.prepare(request), Duration.ofSeconds(5));
+
+        // assert
+        assertThat(revalidated.getStatusCode(), equalTo(200));
+        assertThat(body(revalidated), equalTo("hello"));
+        assertThat(body(fresh), equalTo("hello"));
+        verify(2, getRequestedFor(urlEqualTo("/revalidated")));
+        verify(1, getRequestedFor(urlEqualTo("/revalidated")).withHeader("If-None-Match", WireMock.equalTo("\"v1\"")));
+    }
+
+    @Test void revalidatedStreamed(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        AsyncHttpClient client = NettyAsyncHttpClient.builder()
+            .withMaxConnections(1)
+            .withAcquireTimeout(Duration.ofSeconds(2))
+            .build();
+
+        try (CachingAsyncHttpClient http = CachingAsyncHttpClient.builder(client).build()) {
+
+            // arrange
+            stubFor(get("/streamed").willReturn(ok()
+                .withHeader("Cache-Control", "max-age=0")
+                .withHeader("ETag", "\"v1\"")
+                .withBody("hello")));
+
+            stubFor(get("/streamed")
+                .withHeader("If-None-Match", WireMock.equalTo("\"v1\""))
+                .willReturn(status(304).withHeader("Cache-Control", "max-age=0")));
+
+            AsyncHttpRequest request = AsyncHttpRequest.get(uri(wmRuntimeInfo, "/streamed")).build();
+            AsyncHttpRequest streamed = AsyncHttpRequest.builder(request).withStreamResponse(true).build();
+
+            // act
+            Tasks.get(http.prepare(request), Duration.ofSeconds(5));
+            AsyncHttpResponse revalidated = Tasks.get(http.prepare(streamed), Duration.ofSeconds(5));
+            AsyncHttpResponse next = Tasks.get(http.prepare(request), Duration.ofSeconds(1));
+
+            // assert
+            assertThat(body(revalidated), equalTo("hello"));
+            assertThat(body(next), equalTo("hello"));
+            verify(2, getRequestedFor(urlEqualTo("/streamed")).withHeader("If-None-Match", WireMock.equalTo("\"v1\"")));
+        }
+    }
+
+    @Test void staleWhileRevalidate(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        stubFor(get("/swr").willReturn(ok()
+            .withHeader("Cache-Control", "max-age=0, stale-while-revalidate=60")
+            .withBody("hello")));
+
+        AsyncHttpRequest request = AsyncHttpRequest.get(uri(wmRuntimeInfo, "/swr")).build();
+
+        // act
+        Tasks.get(HTTP.prepare(request), Duration.ofSeconds(5));
+        AsyncHttpResponse stale = Tasks.get(HTTP.prepare(request), Duration.ofSeconds(5));
+
+        // assert
+        assertThat(body(stale), equalTo("hello"));
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (findAll(getRequestedFor(urlEqualTo("/swr"))).size() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(10); // the background revalidation
+        }
+        verify(2, getRequestedFor(urlEqualTo("/swr")));
+    }
+
+    @Test void staleIfError(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        stubFor(get("/sie")
+            .inScenario("sie")
+            .whenScenarioStateIs(Scenario.STARTED)
+            .willSetStateTo("failing")
+            .willReturn(ok().withHeader("Cache-Control", "max-age=0, stale-if-error=60").withBody("hello")));
+
+        stubFor(get("/sie")
+            .inScenario("sie")
+            .whenScenarioStateIs("failing")
+            .willReturn(serverError()));
+
+        AsyncHttpRequest request = AsyncHttpRequest.get(uri(wmRuntimeInfo, "/sie")).build();
+
+        // act
+        Tasks.get(HTTP.prepare(request), Duration.ofSeconds(5));
+        AsyncHttpResponse stale = Tasks.get(HTTP.prepare(request), Duration.ofSeconds(5));
+
+        // assert
+        assertThat(stale.getStatusCode(), equalTo(200));
+        assertThat(body(stale), equalTo("hello"));
+    }
+
+    /**
+     * Creates the URI of the path
+     *
+     * @param wmRuntimeInfo the wire mock runtime info
+     * @param path the path
+     * @return the URI
+     */
+    private static URI uri(WireMockRuntimeInfo wmRuntimeInfo, String path) {
+        return URI.create(format("http://localhost:%s%s", wmRuntimeInfo.getHttpPort(), path));
+    }
+
+    /**
+     * Reads the body of the response
+     *
+     * @param response the response
+     * @return the body
+     */
+    private static String body(AsyncHttpResponse response) throws Exception {
+        return new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,215 @@
+package uk.co.gcwilliams.async.http.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The disk cache storage tests
+ *
+ * @author : Gareth Williams
+ **/
+class DiskCacheStorageTest {
+
+    @Test void putAndGet(@TempDir Path directory) {
+
+        // arrange
+        try (DiskCacheStorage storage = new DiskCacheStorage(directory, 1024 * 1024, 64 * 1024)) {
+
+            // act
+            storage.put("GET http://localhost/", response("hello"));
+            CachedResponse response = storage.get("GET http://localhost/");
+
+            // assert
+            assertThat(response.getStatusCode(), equalTo(200));
+            assertThat(response.getHeaders().get("Content-Type"), contains("text/plain"));
+            assertThat(response.getVaryHeaders().get("accept"), contains("text/plain"));
+            assertThat(response.getLifetime(), equalTo(60_000L));
+            assertThat(body(response), equalTo("hello"));
+        }
+    }
+
+    @Test void recovered(@TempDir Path directory) {
+
+        // arrange
+        try (DiskCacheStorage storage = new DiskCacheStorage(directory, 1024 * 1024, 64 * 1024)) {
+            storage.put("GET http://localhost/a", response("a"));
+            storage.put("GET http://localhost/b", response("b"));
+            storage.put("GET http://localhost/a", response("c"));
+            storage.remove("GET http://localhost/b");
+        }
+
+        // act
+        try (DiskCacheStorage storage = new DiskCacheStorage(directory, 1024 * 1024, 64 * 1024)) {
+
+            // assert
+            assertThat(body(storage.get("GET http://localhost/a")), equalTo("c"));
+            assertThat(storage.get("GET http://localhost/b"), nullValue());
+            assertThat(storage.size(), equalTo(1));
+        }
+    }
+
+    @Test void bounded(@TempDir Path directory) throws Exception {
+
+        // arrange
+        String body = "x".repeat(1000);
+
+        try (DiskCacheStorage storage = new DiskCacheStorage(directory, 16 * 1024, 4 * 1024)) {
+
+            // act
+            for (int idx = 0; idx < 100; idx++) {
+                storage.put("GET http://localhost/" + idx, response(body));
+            }
+
+            // assert
+            try (Stream<Path> segments = Files.list(directory)) {
+                assertThat(segments.filter(path -> path.getFileName().toString().startsWith("segment-")).count(), lessThanOrEqualTo(4L));
+            }
+            assertThat(storage.get("GET http://localhost/99"), notNullValue());
+            assertThat(storage.get("GET http://localhost/0"), nullValue());
+        }
+    }
+
+    @Test void compacted(@TempDir Path directory) throws Exception {
+
+        // arrange
+        String body = "x".repeat(1000);
+
+        try (DiskCacheStorage storage = new DiskCacheStorage(directory, 16 * 1024, 4 * 1024)) {
+
+            // act
+            storage.put("GET http://localhost/kept", response(body));
+            for (int idx = 0; idx < 100; idx++) {
+                storage.put("GET http://localhost/replaced", response(body));
+            }
+
+            // assert
+            try (Stream<Path> segments = Files.list(directory)) {
+                assertThat(segments.filter(path -> path.getFileName().toString().startsWith("segment-")).count(), lessThanOrEqualTo(4L));
+            }
+            assertThat(body(storage.get("GET http://localhost/kept")), equalTo(body));
+            assertThat(body(storage.get("GET http://localhost/replaced")), equalTo(body));
+        }
+    }
+
+    @Test void compactedThenFull(@TempDir Path directory) {
+
+        // arrange
+        try (DiskCacheStorage storage = new DiskCacheStorage(directory, 16 * 1024, 4 * 1024)) {
+            storage.put("GET http://localhost/a", response("x".repeat(1000)));
+            storage.put("GET http://localhost/b", response("x".repeat(300)));
+            storage.put("GET http://localhost/a", response("x".repeat(200)));
+            storage.put("GET http://localhost/a", response("x".repeat(100)));
+
+            // act
+            storage.put("GET http://localhost/c", response("x".repeat(3500)));
+
+            // assert
+            assertThat(body(storage.get("GET http://localhost/a")), equalTo("x".repeat(100)));
+            assertThat(body(storage.get("GET http://localhost/b")), equalTo("x".repeat(300)));
+            assertThat(body(storage.get("GET http://localhost/c")), equalTo("x".repeat(3500)));
+        }
+    }
+
+    @Test void corruptRecordTruncated(@TempDir Path directory) throws Exception {
+
+        // arrange
+        try (DiskCacheStorage storage = new DiskCacheStorage(directory, 1024 * 1024, 64 * 1024)) {
+            storage.put("GET http://localhost/a", response("a"));
+            storage.put("GET http://localhost/b", response("b"));
+            storage.put("GET http://localhost/c", response("c"));
+        }
+        Path segment = directory.resolve("segment-00000000.dat");
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(segment));
+        bytes.putInt(bytes.getInt(4) + 9, -1); // the key length of the second record
+        Files.write(segment, bytes.array());
+
+        // act
+        try (DiskCacheStorage storage = new DiskCacheStorage(directory, 1024 * 1024, 64 * 1024)) {
+            storage.put("GET http://localhost/d", response("d"));
+
+            // assert
+            assertThat(body(storage.get("GET http://localhost/a")), equalTo("a"));
+            assertThat(storage.get("GET http://localhost/b"), nullValue());
+            assertThat(storage.get("GET http://localhost/c"), nullValue());
+            assertThat(body(storage.get("GET http://localhost/d")), equalTo("d"));
+        }
+    }
+
+    @Test void directoryLocked(@TempDir Path directory) {
+
+        // arrange
+        try (DiskCacheStorage storage = new DiskCacheStorage(directory, 1024 * 1024, 64 * 1024)) {
+            storage.put("GET http://localhost/a", response("a"));
+
+            // act
+            IllegalStateException exception = assertThrows(
+                IllegalStateException.class,
+                () -> new DiskCacheStorage(directory, 1024 * 1024, 64 * 1024));
+
+            // assert
+            assertThat(exception.getMessage(), equalTo("The directory " + directory + " is in use by another disk cache storage"));
+            assertThat(body(storage.get("GET http://localhost/a")), equalTo("a"));
+        }
+
+        try (DiskCacheStorage storage = new DiskCacheStorage(directory, 1024 * 1024, 64 * 1024)) {
+            assertThat(body(storage.get("GET http://localhost/a")), equalTo("a"));
+        }
+    }
+
+    @Test void maxBytesLessThanTwoSegments(@TempDir Path directory) {
+
+        // act
+        IllegalArgumentException exception = assertThrows(
+            IllegalArgumentException.class,
+            () -> new DiskCacheStorage(directory, 100 * 1024, 64 * 1024));
+
+        // assert
+        assertThat(exception.getMessage(), equalTo("the maximum bytes should be at least twice the segment size"));
+    }
+
+    /**
+     * Creates a response with the body
+     *
+     * @param body the body
+     * @return the response
+     */
+    private static CachedResponse response(String body) {
+        return new CachedResponse(
+            200,
+            Map.of("Content-Type", List.of("text/plain")),
+            ByteBuffer.wrap(body.getBytes(StandardCharsets.UTF_8)),
+            Map.of("accept", List.of("text/plain")),
+            1000,
+            0,
+            60_000);
+    }
+
+    /**
+     * Reads the body of the response
+     *
+     * @param response the response
+     * @return the body
+     */
+    private static String body(CachedResponse response) {
+        ByteBuffer body = response.getBody();
+        byte[] bytes = new byte[body.remaining()];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,62 @@
+package uk.co.gcwilliams.async.http.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * The memory cache storage tests
+ *
+ * @author : Gareth Williams
+ **/
+class MemoryCacheStorageTest {
+
+    @Test void scanResistant() {
+
+        // arrange
+        MemoryCacheStorage storage = new MemoryCacheStorage(10, Long.MAX_VALUE);
+        storage.put("hot", response(1));
+        storage.get("hot");
+
+        // act
+        for (int idx = 0; idx < 100; idx++) {
+            storage.put("scan" + idx, response(1));
+        }
+
+        // assert
+        assertThat(storage.get("hot"), notNullValue());
+        assertThat(storage.size(), equalTo(10));
+    }
+
+    @Test void boundedByBytes() {
+
+        // arrange
+        MemoryCacheStorage storage = new MemoryCacheStorage(100, 1000);
+
+        // act
+        for (int idx = 0; idx < 10; idx++) {
+            storage.put("key" + idx, response(300));
+        }
+
+        // assert
+        assertThat(storage.size(), equalTo(3));
+        assertThat(storage.get("key0"), nullValue());
+        assertThat(storage.get("key9"), notNullValue());
+    }
+
+    /**
+     * Creates a response of the size
+     *
+     * @param size the size of the body
+     * @return the response
+     */
+    private static CachedResponse response(int size) {
+        return new CachedResponse(200, Map.of(), ByteBuffer.allocate(size), Map.of(), 0, 0, 0);
+    }
+}
@@ -0,0 +1,139 @@
+package uk.co.gcwilliams.async.http.coalescing;
+
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import uk.co.gcwilliams.async.http.AsyncHttpRequest;
+import uk.co.gcwilliams.async.http.AsyncHttpResponse;
+import uk.co.gcwilliams.async.http.Cancellable;
+import uk.co.gcwilliams.async.http.Task;
+import uk.co.gcwilliams.async.http.Tasks;
+import uk.co.gcwilliams.async.http.impl.NettyAsyncHttpClient;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static java.lang.String.format;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.IntStream.range;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.everyItem;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The coalescing async HTTP client tests
+ *
+ * @author : Gareth Williams
+ **/
+@WireMockTest
+class CoalescingAsyncHttpClientTest {
+
+    private static CoalescingAsyncHttpClient HTTP;
+
+    @BeforeAll static void beforeAll() {
+        HTTP = CoalescingAsyncHttpClient.builder(NettyAsyncHttpClient.builder().build())
+            .withKeyHeaders(Set.of("Accept"))
+            .build();
+    }
+
+    @AfterAll static void afterAll() throws Exception {
+        HTTP.close();
+    }
+
+    @Test void coalesced(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        stubFor(get("/coalesced").willReturn(ok().withBody("hello").withFixedDelay(300)));
+
+        AsyncHttpRequest request = AsyncHttpRequest.get(uri(wmRuntimeInfo, "/coalesced")).build();
+
+        // act
+        List<String> bodies = Tasks.get(Tasks.traverseP(range(0, 10)
+            .mapToObj(idx -> HTTP.prepare(request).map(CoalescingAsyncHttpClientTest::body))
+            .collect(toList())), Duration.ofSeconds(5));
+
+        // assert
+        assertThat(bodies, everyItem(equalTo("hello")));
+        verify(1, getRequestedFor(urlEqualTo("/coalesced")));
+    }
+
+    @Test void notCoalescedWhenKeyHeadersDiffer(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        stubFor(get("/differ").willReturn(ok().withFixedDelay(300)));
+
+        Task<AsyncHttpResponse> json = HTTP.prepare(AsyncHttpRequest.get(uri(wmRuntimeInfo, "/differ"))
+            .withHeader("Accept", "application/json")
+            .build());
+
+        Task<AsyncHttpResponse> xml = HTTP.prepare(AsyncHttpRequest.get(uri(wmRuntimeInfo, "/differ"))
+            .withHeader("Accept", "application/xml")
+            .build());
+
+        // act
+        Tasks.get(Tasks.traverseP(List.of(json, xml)), Duration.ofSeconds(5));
+
+        // assert
+        verify(2, getRequestedFor(urlEqualTo("/differ")));
+    }
+
+    @Test void cancelledCallerLeaves(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        stubFor(get("/leave").willReturn(ok().withBody("hello").withFixedDelay(300)));
+
+        AsyncHttpRequest request = AsyncHttpRequest.get(uri(wmRuntimeInfo, "/leave")).build();
+
+        CompletableFuture<AsyncHttpResponse> cancelled = new CompletableFuture<>();
+        CompletableFuture<AsyncHttpResponse> kept = new CompletableFuture<>();
+
+        Cancellable cancellable = HTTP.prepare(request).fork(cancelled::complete, cancelled::completeExceptionally);
+        HTTP.prepare(request).fork(kept::complete, kept::completeExceptionally);
+
+        // act
+        cancellable.cancel();
+
+        // assert
+        assertThrows(CancellationException.class, cancelled::get);
+        assertThat(body(kept.get()), equalTo("hello"));
+    }
+
+    /**
+     * Creates the URI of the path
+     *
+     * @param wmRuntimeInfo the wire mock runtime info
+     * @param path the path
+     * @return the URI
+     */
+    private static URI uri(WireMockRuntimeInfo wmRuntimeInfo, String path) {
+        return URI.create(format("http://localhost:%s%s", wmRuntimeInfo.getHttpPort(), path));
+    }
+
+    /**
+     * Reads the body of the response
+     *
+     * @param response the response
+     * @return the body
+     */
+    private static String body(AsyncHttpResponse response) {
+        try {
+            return new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8);
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package uk.co.gcwilliams.async.http.hedging;
+
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import uk.co.gcwilliams.async.http.AsyncHttpClient;
+import uk.co.gcwilliams.async.http.AsyncHttpRequest;
+import uk.co.gcwilliams.async.http.AsyncHttpResponse;
+import uk.co.gcwilliams.async.http.Task;
+import uk.co.gcwilliams.async.http.Tasks;
+import uk.co.gcwilliams.async.http.impl.NettyAsyncHttpClient;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static java.lang.String.format;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+
+/**
+ * The hedging async HTTP client tests
+ *
+ * @author : Gareth Williams
+ **/
+@WireMockTest
+class HedgingAsyncHttpClientTest {
+
+    private static HedgingAsyncHttpClient HTTP;
+
+    @BeforeAll static void beforeAll() {
+        HTTP = HedgingAsyncHttpClient.builder(NettyAsyncHttpClient.builder().build())
+            .withPolicy(HedgingPolicy.builder()
+                .withDelay(Duration.ofMillis(50))
+                .withBudget(1)
+                .build())
+            .build();
+    }
+
+    @AfterAll static void afterAll() throws Exception {
+        HTTP.close();
+    }
+
+    @Test void hedged(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        stubFor(get("/warm").willReturn(ok()));
+
+        Tasks.get(HTTP.prepare(AsyncHttpRequest
+            .get(URI.create(format("http://localhost:%s/warm", wmRuntimeInfo.getHttpPort())))
+            .build()), Duration.ofSeconds(2)); // connected, so the first request reaches the server before the hedge
+
+        stubFor(get("/hedged")
+            .inScenario("hedged")
+            .whenScenarioStateIs(Scenario.STARTED)
+            .willSetStateTo("slow")
+            .willReturn(ok().withBody("first").withFixedDelay(5000)));
+
+        stubFor(get("/hedged")
+            .inScenario("hedged")
+            .whenScenarioStateIs("slow")
+            .willReturn(ok().withBody("hedge")));
+
+        AsyncHttpRequest request = AsyncHttpRequest
+            .get(URI.create(format("http://localhost:%s/hedged", wmRuntimeInfo.getHttpPort())))
+            .build();
+
+        // act
+        AsyncHttpResponse response = Tasks.get(HTTP.prepare(request), Duration.ofSeconds(2));
+
+        // assert
+        assertThat(new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8), equalTo("hedge"));
+        verify(2, getRequestedFor(urlEqualTo("/hedged")));
+    }
+
+    @Test void notHedgedWhenNotIdempotent(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        stubFor(post("/post").willReturn(ok().withFixedDelay(200)));
+
+        AsyncHttpRequest request = AsyncHttpRequest
+            .post(URI.create(format("http://localhost:%s/post", wmRuntimeInfo.getHttpPort())))
+            .withBody("hello")
+            .build();
+
+        // act
+        AsyncHttpResponse response = Tasks.get(HTTP.prepare(request), Duration.ofSeconds(2));
+
+        // assert
+        assertThat(response.getStatusCode(), equalTo(200));
+        verify(1, postRequestedFor(urlEqualTo("/post")));
+    }
+
+    @Test void notHedgedWhenBudgetSpent(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        stubFor(get("/budget").willReturn(ok().withFixedDelay(200)));
+
+        AsyncHttpRequest request = AsyncHttpRequest
+            .get(URI.create(format("http://localhost:%s/budget", wmRuntimeInfo.getHttpPort())))
+            .build();
+
+        HedgingPolicy policy = HedgingPolicy.builder()
+            .withDelay(Duration.ofMillis(10))
+            .withBudget(0)
+            .build();
+
+        try (HedgingAsyncHttpClient http = HedgingAsyncHttpClient.builder(NettyAsyncHttpClient.builder().build())
+                .withPolicy(policy)
+                .build()) {
+
+            // act
+            AsyncHttpResponse response = Tasks.get(http.prepare(request), Duration.ofSeconds(2));
+
+            // assert
+            assertThat(response.getStatusCode(), equalTo(200));
+        }
+        verify(1, getRequestedFor(urlEqualTo("/budget")));
+    }
+
+    @Test void adaptiveDelayAfterMinSamples() throws Exception {
+
+        // arrange
+        StubClient client = new StubClient();
+        HedgingPolicy policy = HedgingPolicy.builder()
+            .withDelay(Duration.ofSeconds(10))
+            .withPercentile(0.5)
+            .withMinSamples(3)
+            .withBudget(1)
+            .build();
+
+        try (HedgingAsyncHttpClient http = HedgingAsyncHttpClient.builder(client).withPolicy(policy).build()) {
+            AsyncHttpRequest request = AsyncHttpRequest.get(URI.create("http://localhost/adaptive")).build();
+            for (int i = 0; i < 3; i++) {
+                http.prepare(request).fork(__ -> { }, __ -> { });
+                client.awaitAttempts(i + 1).resolve(response("first"));
+            }
+            int beforeMinSamples = client.attempts.size();
+
+            // act
+            CompletableFuture<AsyncHttpResponse> response = new CompletableFuture<>();
+            http.prepare(request).fork(response::complete, response::completeExceptionally);
+            client.awaitAttempts(5).resolve(response("hedge"));
+
+            // assert
+            assertThat(beforeMinSamples, equalTo(3));
+            assertThat(new String(response.get(2, TimeUnit.SECONDS).getBody().readAllBytes(), StandardCharsets.UTF_8), equalTo("hedge"));
+            assertThat(client.attempts.get(3).cancelled.get(), equalTo(true));
+        }
+    }
+
+    @Test void recordsFirstRequestLatencyWhenHedgeWins() throws Exception {
+
+        // arrange
+        StubClient client = new StubClient();
+        HedgingPolicy policy = HedgingPolicy.builder()
+            .withDelay(Duration.ofMillis(100))
+            .withPercentile(0.5)
+            .withMinSamples(1)
+            .withBudget(1)
+            .build();
+
+        try (HedgingAsyncHttpClient http = HedgingAsyncHttpClient.builder(client).withPolicy(policy).build()) {
+            AsyncHttpRequest request = AsyncHttpRequest.get(URI.create("http://localhost/latency")).build();
+            http.prepare(request).fork(__ -> { }, __ -> { });
+            client.awaitAttempts(2).resolve(response("hedge")); // the hedge is answered as soon as it is sent
+
+            // act
+            http.prepare(request).fork(__ -> { }, __ -> { });
+            Thread.sleep(20);
+
+            // assert, the delay is at least the 100ms the first request was waited on, not the latency of the hedge
+            assertThat(client.attempts, hasSize(3));
+        }
+    }
+
+    @Test void loserCancelled() throws Exception {
+
+        // arrange
+        StubClient client = new StubClient();
+        HedgingPolicy policy = HedgingPolicy.builder()
+            .withDelay(Duration.ofMillis(10))
+            .withBudget(1)
+            .build();
+
+        try (HedgingAsyncHttpClient http = HedgingAsyncHttpClient.builder(client).withPolicy(policy).build()) {
+            AsyncHttpRequest request = AsyncHttpRequest.get(URI.create("http://localhost/cancelled")).build();
+            CompletableFuture<AsyncHttpResponse> response = new CompletableFuture<>();
+            http.prepare(request).fork(response::complete, response::completeExceptionally);
+            Attempt hedge = client.awaitAttempts(2);
+
+            // act
+            hedge.resolve(response("hedge"));
+
+            // assert
+            assertThat(new String(response.get(2, TimeUnit.SECONDS).getBody().readAllBytes(), StandardCharsets.UTF_8), equalTo("hedge"));
+            assertThat(client.attempts.get(0).cancelled.get(), equalTo(true));
+            assertThat(hedge.cancelled.get(), equalTo(false));
+        }
+    }
+
+    @Test void streamedLoserReleasesConnection(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        AsyncHttpClient client = NettyAsyncHttpClient.builder()
+            .withMaxConnections(2)
+            .withAcquireTimeout(Duration.ofSeconds(2))
+            .build();
+
+        try (HedgingAsyncHttpClient http = HedgingAsyncHttpClient.builder(client)
+                .withPolicy(HedgingPolicy.builder().withDelay(Duration.ofMillis(50)).withBudget(1).build())
+                .build()) {
+
+            stubFor(get("/next").willReturn(ok().withBody("next")));
+
+            Tasks.get(http.prepare(AsyncHttpRequest
+                .get(URI.create(format("http://localhost:%s/next", wmRuntimeInfo.getHttpPort())))
+                .build()), Duration.ofSeconds(2)); // connected, so the first request reaches the server before the hedge
+
+            stubFor(get("/streamed")
+                .inScenario("streamed")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willSetStateTo("slow")
+                .willReturn(ok().withBody("first").withFixedDelay(5000)));
+
+            stubFor(get("/streamed")
+                .inScenario("streamed")
+                .whenScenarioStateIs("slow")
+                .willReturn(ok().withBody("hedge")));
+
+            AsyncHttpRequest streamed = AsyncHttpRequest
+                .get(URI.create(format("http://localhost:%s/streamed", wmRuntimeInfo.getHttpPort())))
+                .withStreamResponse(true)
+                .build();
+
+            AsyncHttpRequest next = AsyncHttpRequest
+                .get(URI.create(format("http://localhost:%s/next", wmRuntimeInfo.getHttpPort())))
+                .build();
+
+            // act
+            AsyncHttpResponse response = Tasks.get(http.prepare(streamed), Duration.ofSeconds(2));
+            String body = new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8);
+            List<AsyncHttpResponse> responses = Tasks.get(
+                Tasks.traverseP(List.of(client.prepare(next), client.prepare(next))),
+                Duration.ofSeconds(1)); // both connections, so the cancelled request no longer holds one
+
+            // assert
+            assertThat(body, equalTo("hedge"));
+            assertThat(responses, hasSize(2));
+        }
+    }
+
+    /**
+     * Creates the response
+     *
+     * @param body the body
+     * @return the response
+     */
+    private static AsyncHttpResponse response(String body) {
+        return AsyncHttpResponse.builder()
+            .withStatusCode(200)
+            .withHeaders(Map.of())
+            .withBody(body.getBytes(StandardCharsets.UTF_8))
+            .build();
+    }
+
+    /**
+     * A stub client, the requests are answered by the test, and their cancellation is recorded
+     *
+     */
+    private static class StubClient implements AsyncHttpClient {
+
+        private final List<Attempt> attempts = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Task<AsyncHttpResponse> prepare(AsyncHttpRequest request) {
+            return Task.cancellable((resolve, reject) -> {
+                Attempt attempt = new Attempt(resolve);
+                attempts.add(attempt);
+                return () -> !attempt.cancelled.getAndSet(true);
+            });
+        }
+
+        /**
+         * Waits for the number of attempts
+         *
+         * @param count the number of attempts
+         * @return the last attempt
+         */
+        private Attempt awaitAttempts(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+            while (attempts.size() < count && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertThat(attempts, hasSize(count));
+            return attempts.get(count - 1);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * An attempt of the stub client
+     *
+     */
+    private static class Attempt {
+
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        private final Consumer<AsyncHttpResponse> resolve;
+
+        /**
+         * Constructor
+         *
+         * @param resolve the resolve function
+         */
+        private Attempt(Consumer<AsyncHttpResponse> resolve) {
+            this.resolve = resolve;
+        }
+
+        /**
+         * Resolves the attempt
+         *
+         * @param response the response
+         */
+        private void resolve(AsyncHttpResponse response) {
+            resolve.accept(response);
+        }
+    }
+}
@@ -38,9 +38,18 @@ class NettyAsyncHttpClientIT {
     }
 
     @ParameterizedTest @MethodSource("urls") void request(String url) throws Exception {
+        request(url, false);
+    }
+
+    @ParameterizedTest @MethodSource("urls") void http2(String url) throws Exception {
+        request(url, true);
+    }
+
+    private static void request(String url, boolean enableHttp2) throws Exception {
 
         try (AsyncHttpClient http = NettyAsyncHttpClient
                 .builder()
+                .setEnableHttp2(enableHttp2)
                 .withListenerFactory(() -> List.of(LoggingListener.INSTANCE))
                 .build()) {
 
@@ -5,43 +5,96 @@ import com.github.tomakehurst.wiremock.http.RequestMethod;
 import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
 import com.github.tomakehurst.wiremock.junit5.WireMockTest;
 import com.github.tomakehurst.wiremock.matching.RequestPatternBuilder;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import io.netty.handler.codec.compression.DecompressionException;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.timeout.ReadTimeoutException;
+import io.netty.util.concurrent.FastThreadLocalThread;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.ValueSource;
 import uk.co.gcwilliams.async.http.AsyncHttpClient;
 import uk.co.gcwilliams.async.http.AsyncHttpClientListener;
 import uk.co.gcwilliams.async.http.AsyncHttpRequest;
+import uk.co.gcwilliams.async.http.AsyncHttpRequestBody;
 import uk.co.gcwilliams.async.http.AsyncHttpResponse;
+import uk.co.gcwilliams.async.http.Cancellable;
+import uk.co.gcwilliams.async.http.RequestCompression;
 import uk.co.gcwilliams.async.http.Task;
 import uk.co.gcwilliams.async.http.Tasks;
+import uk.co.gcwilliams.async.http.TlsHandshakeListener;
 import uk.co.gcwilliams.async.http.listeners.DefaultHeadersListener;
 import uk.co.gcwilliams.async.http.listeners.LoggingListener;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.binaryEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.findAll;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.put;
+import static com.github.tomakehurst.wiremock.client.WireMock.putRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.request;
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.verify;
 import static com.github.tomakehurst.wiremock.matching.RequestPatternBuilder.newRequestPattern;
 import static java.lang.String.format;
+import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.IntStream.range;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.aMapWithSize;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 import static uk.co.gcwilliams.async.http.AsyncHttpRequest.HttpMethod.GET;
 import static uk.co.gcwilliams.async.http.AsyncHttpRequest.HttpMethod.HEAD;
 import static uk.co.gcwilliams.async.http.AsyncHttpRequest.HttpMethod.OPTIONS;
@@ -51,7 +104,7 @@ import static uk.co.gcwilliams.async.http.AsyncHttpRequest.HttpMethod.OPTIONS;
  *
  * @author : Gareth Williams
  **/
-@WireMockTest
+@WireMockTest(httpsEnabled = true)
 class NettyAsyncHttpClientTest {
 
     private static AsyncHttpClient HTTP;
@@ -113,6 +166,674 @@ class NettyAsyncHttpClientTest {
         verify(patternBuilder);
     }
 
+    @ParameterizedTest
+    @EnumSource(Transport.class)
+    void transports(Transport transport, WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        assumeTrue(transport.isAvailable(), () -> transport + " is not available");
+
+        try (AsyncHttpClient http = NettyAsyncHttpClient.builder().withTransport(transport).withTcpQuickAck(true).build()) {
+
+            // arrange
+            stubFor(get("/").willReturn(ok().withBody(randomBytes(200))));
+
+            AsyncHttpRequest request = AsyncHttpRequest
+                .get(URI.create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort())))
+                .build();
+
+            // act
+            AsyncHttpResponse response = Tasks.get(http.prepare(request), Duration.ofMinutes(1));
+
+            // assert
+            assertThat(response.getStatusCode(), equalTo(200));
+            assertThat(response.getBody().readAllBytes().length, equalTo(200));
+        }
+    }
+
+    @Test void http2PriorKnowledge(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        try (ConnectionCountingProxy proxy = new ConnectionCountingProxy(wmRuntimeInfo.getHttpPort());
+             AsyncHttpClient http = NettyAsyncHttpClient.builder()
+                .setHttp2PriorKnowledge(true)
+                .withMaxConnections(1)
+                .withMaxPendingAcquires(Integer.MAX_VALUE)
+                .withAcquireTimeout(Duration.ofMinutes(1))
+                .build()) {
+
+            // arrange
+            stubFor(get("/").willReturn(ok().withBody(randomBytes(200)).withFixedDelay(500)));
+
+            AsyncHttpRequest request = AsyncHttpRequest
+                .get(URI.create(format("http://localhost:%s", proxy.getPort())))
+                .build();
+
+            // act
+            long start = System.nanoTime();
+            List<Task<AsyncHttpResponse>> tasks = range(0, 10)
+                .mapToObj(__ -> http.prepare(request))
+                .collect(toList());
+            List<AsyncHttpResponse> responses = Tasks.get(Tasks.traverseP(tasks), Duration.ofMinutes(1));
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+            // assert, the streams are concurrent, one after another they would take at least 5 seconds
+            assertThat(responses.size(), equalTo(10));
+            for (AsyncHttpResponse response : responses) {
+                assertThat(response.getStatusCode(), equalTo(200));
+                assertThat(response.getBody().readAllBytes().length, equalTo(200));
+            }
+            assertThat(elapsed, lessThan(Duration.ofMillis(2500)));
+            assertThat(proxy.getConnections(), equalTo(1));
+        }
+    }
+
+    @Test void directExecutor(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        try (AsyncHttpClient http = NettyAsyncHttpClient.builder()
+                .withExecutor(CompletionExecutors.direct())
+                .build()) {
+
+            // arrange
+            stubFor(get("/").willReturn(ok().withBody(randomBytes(200))));
+
+            AsyncHttpRequest request = AsyncHttpRequest
+                .get(URI.create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort())))
+                .build();
+
+            CompletableFuture<Thread> thread = new CompletableFuture<>();
+
+            // act
+            http.prepare(request).fork(
+                response -> thread.complete(Thread.currentThread()),
+                thread::completeExceptionally);
+
+            // assert
+            assertThat(thread.get(1, TimeUnit.MINUTES), instanceOf(FastThreadLocalThread.class));
+        }
+    }
+
+    @Test void directExecutorStreamsRequestBodyOffEventLoop(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        try (AsyncHttpClient http = NettyAsyncHttpClient.builder()
+                .withExecutor(CompletionExecutors.direct())
+                .build()) {
+
+            // arrange
+            stubFor(post("/").willReturn(ok()));
+
+            byte[] body = randomBytes(64 * 1024);
+
+            CompletableFuture<Thread> thread = new CompletableFuture<>();
+
+            AsyncHttpRequest request = AsyncHttpRequest
+                .post(URI.create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort())))
+                .withBody(AsyncHttpRequestBody.ofInputStream(() -> new ByteArrayInputStream(body) {
+                    @Override
+                    public synchronized int read(byte[] b, int off, int len) {
+                        thread.complete(Thread.currentThread());
+                        return super.read(b, off, len);
+                    }
+                }))
+                .build();
+
+            // act
+            AsyncHttpResponse response = Tasks.get(http.prepare(request), Duration.ofMinutes(1));
+
+            // assert
+            assertThat(response.getStatusCode(), equalTo(200));
+            assertThat(thread.get(1, TimeUnit.MINUTES).getName(), startsWith("async-http-request-body"));
+            verify(postRequestedFor(urlEqualTo("/")).withRequestBody(binaryEqualTo(body)));
+        }
+    }
+
+    @Test void closeShutsDownDefaultExecutor(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        stubFor(get("/").willReturn(ok()));
+
+        AsyncHttpRequest request = AsyncHttpRequest
+            .get(URI.create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort())))
+            .build();
+
+        ExecutorService provided = CompletionExecutors.bounded(1);
+        AsyncHttpClient defaulted = NettyAsyncHttpClient.builder().build();
+        AsyncHttpClient providing = NettyAsyncHttpClient.builder().withExecutor(provided).build();
+
+        CompletableFuture<Thread> thread = new CompletableFuture<>();
+        defaulted.prepare(request).fork(
+            response -> thread.complete(Thread.currentThread()),
+            thread::completeExceptionally);
+        Tasks.get(providing.prepare(request), Duration.ofSeconds(5));
+        Thread completion = thread.get(5, TimeUnit.SECONDS);
+
+        // act
+        defaulted.close();
+        providing.close();
+        completion.join(TimeUnit.SECONDS.toMillis(10));
+
+        // assert
+        assertThat(completion.isAlive(), equalTo(false));
+        assertThat(provided.isShutdown(), equalTo(false));
+        provided.shutdown();
+    }
+
+        @Test void tlsSessionResumption(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        List<Boolean> resumed = new CopyOnWriteArrayList<>();
+        CountDownLatch handshake = new CountDownLatch(1);
+        TlsHandshakeListener listener = new TlsHandshakeListener() {
+            @Override
+            public void onHandshake(String host, int port, Duration duration, boolean wasResumed) {
+                resumed.add(wasResumed);
+                handshake.countDown();
+            }
+        };
+
+        try (AsyncHttpClient http = NettyAsyncHttpClient.builder()
+                .withTrustManager(InsecureTrustManagerFactory.INSTANCE)
+                .withTlsProtocols("TLSv1.2")
+                .withTlsHandshakeListener(listener)
+                .build()) {
+
+            // arrange
+            stubFor(get("/slow").willReturn(ok().withFixedDelay(1000)));
+            stubFor(get("/").willReturn(ok().withBody(randomBytes(200))));
+
+            URI uri = URI.create(format("https://localhost:%s", wmRuntimeInfo.getHttpsPort()));
+            CompletableFuture<AsyncHttpResponse> slow = new CompletableFuture<>();
+            http.prepare(AsyncHttpRequest.get(uri.resolve("/slow")).build()).fork(slow::complete, slow::completeExceptionally);
+            assertThat(handshake.await(1, TimeUnit.MINUTES), equalTo(true));
+
+            // act, a second connection while the first is in use
+            AsyncHttpResponse response = Tasks.get(http.prepare(AsyncHttpRequest.get(uri).build()), Duration.ofMinutes(1));
+
+            // assert
+            assertThat(response.getStatusCode(), equalTo(200));
+            assertThat(slow.get(1, TimeUnit.MINUTES).getStatusCode(), equalTo(200));
+            assertThat(resumed, contains(false, true));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void streamResponse(boolean http2, WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        try (AsyncHttpClient http = NettyAsyncHttpClient.builder().setHttp2PriorKnowledge(http2).build()) {
+
+            // arrange
+            byte[] body = randomBytes(1024 * 1024);
+            stubFor(get("/").willReturn(ok().withBody(body)));
+
+            AsyncHttpRequest request = AsyncHttpRequest
+                .get(URI.create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort())))
+                .withStreamResponse(true)
+                .build();
+
+            // act
+            AsyncHttpResponse response = Tasks.get(http.prepare(request), Duration.ofMinutes(1));
+            CollectingSubscriber subscriber = new CollectingSubscriber();
+            response.getBodyPublisher().subscribe(subscriber);
+
+            // assert
+            assertThat(response.getStatusCode(), equalTo(200));
+            assertThat(subscriber.body.get(1, TimeUnit.MINUTES), equalTo(body));
+            assertThat(subscriber.chunks, greaterThan(1));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void streamResponseSlowSubscriber(boolean http2, WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        try (AsyncHttpClient http = NettyAsyncHttpClient.builder().setHttp2PriorKnowledge(http2).build()) {
+
+            // arrange
+            byte[] body = randomBytes(1024 * 1024);
+            stubFor(get("/").willReturn(ok().withBody(body)));
+
+            AsyncHttpRequest request = AsyncHttpRequest
+                .get(URI.create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort())))
+                .withStreamResponse(true)
+                .withReadTimeout(Duration.ofSeconds(1))
+                .build();
+
+            Executor paused = CompletableFuture.delayedExecutor(2500, TimeUnit.MILLISECONDS);
+            AtomicBoolean first = new AtomicBoolean(true);
+
+            CollectingSubscriber subscriber = new CollectingSubscriber() {
+                @Override
+                public void onNext(ByteBuffer item) {
+                    if (first.getAndSet(false)) {
+                        // pauses for longer than the read timeout, before requesting the rest of the body
+                        paused.execute(() -> super.onNext(item));
+                    } else {
+                        super.onNext(item);
+                    }
+                }
+            };
+
+            // act
+            AsyncHttpResponse response = Tasks.get(http.prepare(request), Duration.ofMinutes(1));
+            response.getBodyPublisher().subscribe(subscriber);
+
+            // assert
+            assertThat(response.getStatusCode(), equalTo(200));
+            assertThat(subscriber.body.get(1, TimeUnit.MINUTES), equalTo(body));
+        }
+    }
+
+    @Test void streamResponseInputStream(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        byte[] body = randomBytes(256 * 1024);
+        stubFor(get("/").willReturn(ok().withBody(body)));
+
+        AsyncHttpRequest request = AsyncHttpRequest
+            .get(URI.create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort())))
+            .withStreamResponse(true)
+            .build();
+
+        // act
+        AsyncHttpResponse response = Tasks.get(HTTP.prepare(request), Duration.ofMinutes(1));
+
+        // assert
+        assertThat(response.getStatusCode(), equalTo(200));
+        try (InputStream inputStream = response.getBody()) {
+            assertThat(inputStream.readAllBytes(), equalTo(body));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"gzip", "deflate"})
+    void decompressResponse(String encoding, WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        byte[] body = json(1000);
+        stubFor(get("/").willReturn(ok().withHeader("Content-Encoding", encoding).withBody(compress(body, encoding))));
+
+        AsyncHttpRequest request = AsyncHttpRequest
+            .get(URI.create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort())))
+            .build();
+
+        // act
+        AsyncHttpResponse response = Tasks.get(HTTP.prepare(request), Duration.ofMinutes(1));
+
+        // assert
+        assertThat(response.getStatusCode(), equalTo(200));
+        assertThat(response.getBody().readAllBytes(), equalTo(body));
+        assertThat(headerNames(response), not(hasItem("content-encoding")));
+        verify(getRequestedFor(urlEqualTo("/")).withHeader("Accept-Encoding", WireMock.equalTo("gzip, deflate")));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void decompressStreamResponse(boolean http2, WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        try (AsyncHttpClient http = NettyAsyncHttpClient.builder().setHttp2PriorKnowledge(http2).build()) {
+
+            // arrange
+            byte[] body = json(50_000);
+            stubFor(get("/").willReturn(ok().withHeader("Content-Encoding", "gzip").withBody(compress(body, "gzip"))));
+
+            AsyncHttpRequest request = AsyncHttpRequest
+                .get(URI.create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort())))
+                .withStreamResponse(true)
+                .build();
+
+            // act
+            AsyncHttpResponse response = Tasks.get(http.prepare(request), Duration.ofMinutes(1));
+            CollectingSubscriber subscriber = new CollectingSubscriber();
+            response.getBodyPublisher().subscribe(subscriber);
+
+            // assert
+            assertThat(response.getStatusCode(), equalTo(200));
+            assertThat(subscriber.body.get(1, TimeUnit.MINUTES), equalTo(body));
+            assertThat(subscriber.chunks, greaterThan(1));
+        }
+    }
+
+    @Test void decompressNotWhenAcceptEncodingSet(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        byte[] compressed = compress(json(1000), "gzip");
+        stubFor(get("/").willReturn(ok().withHeader("Content-Encoding", "gzip").withBody(compressed)));
+
+        AsyncHttpRequest request = AsyncHttpRequest
+            .get(URI.create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort())))
+            .withHeader("Accept-Encoding", "gzip")
+            .build();
+
+        // act
+        AsyncHttpResponse response = Tasks.get(HTTP.prepare(request), Duration.ofMinutes(1));
+
+        // assert
+        assertThat(response.getStatusCode(), equalTo(200));
+        assertThat(response.getBody().readAllBytes(), equalTo(compressed));
+        assertThat(headerNames(response), hasItem("content-encoding"));
+    }
+
+    @Test void decompressInvalid(WireMockRuntimeInfo wmRuntimeInfo) {
+
+        // arrange
+        stubFor(get("/").willReturn(ok().withHeader("Content-Encoding", "gzip").withBody(json(100))));
+
+        AsyncHttpRequest request = AsyncHttpRequest
+            .get(URI.create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort())))
+            .build();
+
+        // act
+        Exception exception = assertThrows(Exception.class, () -> Tasks.get(HTTP.prepare(request), Duration.ofMinutes(1)));
+
+        // assert
+        assertThat(exception, instanceOf(DecompressionException.class));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void compressRequestBody(boolean http2, WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        AsyncHttpClient http = NettyAsyncHttpClient.builder()
+            .setHttp2PriorKnowledge(http2)
+            .withRequestCompression(RequestCompression.builder().build())
+            .build();
+
+        try (http) {
+
+            // arrange
+            stubFor(post("/").willReturn(ok()));
+
+            byte[] body = json(10_000);
+
+            AsyncHttpRequest request = AsyncHttpRequest
+                .post(URI.create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort())))
+                .withHeader("Content-Type", "application/json; charset=utf-8")
+                .withBody(body)
+                .build();
+
+            // act
+            AsyncHttpResponse response = Tasks.get(http.prepare(request), Duration.ofMinutes(1));
+
+            // assert
+            assertThat(response.getStatusCode(), equalTo(200));
+            LoggedRequest sent = findAll(postRequestedFor(urlEqualTo("/"))).get(0);
+            assertThat(sent.getHeader("Content-Encoding"), equalTo("gzip"));
+            assertThat(Integer.parseInt(sent.getHeader("Content-Length")), lessThan(body.length / 4));
+            assertThat(sent.getBody(), equalTo(body));
+        }
+    }
+
+    @Test void compressRequestBodyPerRequest(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        stubFor(post("/").willReturn(ok()));
+
+        RequestCompression compression = RequestCompression.builder()
+            .withThreshold(2048)
+            .withContentTypes("application/json")
+            .build();
+
+        AsyncHttpRequest.Builder request = AsyncHttpRequest
+            .post(URI.create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort())))
+            .withCompression(compression);
+
+        // act
+        Tasks.get(HTTP.prepare(request.withHeader("Content-Type", "application/json").withBody(json(10)).build()), Duration.ofMinutes(1));
+        Tasks.get(HTTP.prepare(request.withHeader("Content-Type", "text/plain").withBody(json(1000)).build()), Duration.ofMinutes(1));
+        Tasks.get(HTTP.prepare(request.withHeader("Content-Type", "application/json").withBody(json(1000)).build()), Duration.ofMinutes(1));
+
+        // assert
+        List<LoggedRequest> sent = findAll(postRequestedFor(urlEqualTo("/")));
+        assertThat(sent.size(), equalTo(3));
+        assertThat(sent.get(0).containsHeader("Content-Encoding"), equalTo(false));
+        assertThat(sent.get(1).containsHeader("Content-Encoding"), equalTo(false));
+        assertThat(sent.get(2).getHeader("Content-Encoding"), equalTo("gzip"));
+        assertThat(sent.get(2).getBody(), equalTo(json(1000)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void byteBufferRequestBody(boolean http2, WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        try (AsyncHttpClient http = NettyAsyncHttpClient.builder().setHttp2PriorKnowledge(http2).build()) {
+
+            // arrange
+            stubFor(post("/").willReturn(ok()));
+
+            byte[] body = randomBytes(64 * 1024);
+            ByteBuffer direct = ByteBuffer.allocateDirect(32 * 1024).put(body, 0, 32 * 1024).flip();
+            ByteBuffer heap = ByteBuffer.wrap(body, 32 * 1024, 32 * 1024);
+
+            AsyncHttpRequest request = AsyncHttpRequest
+                .post(URI.create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort())))
+                .withBody(AsyncHttpRequestBody.ofByteBuffers(direct, heap))
+                .build();
+
+            // act
+            AsyncHttpResponse response = Tasks.get(http.prepare(request), Duration.ofMinutes(1));
+
+            // assert
+            assertThat(response.getStatusCode(), equalTo(200));
+            assertThat(direct.remaining(), equalTo(32 * 1024));
+            verify(postRequestedFor(urlEqualTo("/"))
+                .withHeader("Content-Length", WireMock.equalTo(String.valueOf(body.length)))
+                .withRequestBody(binaryEqualTo(body)));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void fileRequestBody(boolean http2, @TempDir Path directory, WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        try (AsyncHttpClient http = NettyAsyncHttpClient.builder().setHttp2PriorKnowledge(http2).build()) {
+
+            // arrange
+            stubFor(put("/").willReturn(ok()));
+
+            byte[] body = randomBytes(1024 * 1024);
+            Path file = Files.write(directory.resolve("body"), body);
+
+            AsyncHttpRequest request = AsyncHttpRequest
+                .put(URI.create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort())))
+                .withBody(AsyncHttpRequestBody.ofFile(file, 1024, body.length - 2048))
+                .build();
+
+            // act
+            AsyncHttpResponse response = Tasks.get(http.prepare(request), Duration.ofMinutes(1));
+
+            // assert
+            assertThat(response.getStatusCode(), equalTo(200));
+            verify(putRequestedFor(urlEqualTo("/"))
+                .withRequestBody(binaryEqualTo(Arrays.copyOfRange(body, 1024, body.length - 1024))));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void streamRequestBody(boolean http2, WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        try (AsyncHttpClient http = NettyAsyncHttpClient.builder().setHttp2PriorKnowledge(http2).build()) {
+
+            // arrange
+            stubFor(post("/").willReturn(ok()));
+
+            byte[] body = randomBytes(1024 * 1024);
+
+            AsyncHttpRequest request = AsyncHttpRequest
+                .post(URI.create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort())))
+                .withBody(AsyncHttpRequestBody.ofInputStream(() -> new ByteArrayInputStream(body)))
+                .build();
+
+            // act
+            AsyncHttpResponse response = Tasks.get(http.prepare(request), Duration.ofMinutes(1));
+
+            // assert
+            assertThat(response.getStatusCode(), equalTo(200));
+            RequestPatternBuilder patternBuilder = postRequestedFor(urlEqualTo("/"))
+                .withoutHeader("Content-Length")
+                .withRequestBody(binaryEqualTo(body));
+            if (!http2) {
+                patternBuilder.withHeader("Transfer-Encoding", WireMock.equalTo("chunked"));
+            }
+            verify(patternBuilder);
+        }
+    }
+
+    @Test void streamRequestBodyError(WireMockRuntimeInfo wmRuntimeInfo) {
+
+        // arrange
+        stubFor(post("/").willReturn(ok()));
+
+        IllegalStateException failure = new IllegalStateException("failed");
+        SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<>();
+
+        AsyncHttpRequest request = AsyncHttpRequest
+            .post(URI.create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort())))
+            .withBody(AsyncHttpRequestBody.ofPublisher(subscriber -> {
+                publisher.subscribe(subscriber);
+                publisher.submit(ByteBuffer.wrap(randomBytes(100)));
+                publisher.closeExceptionally(failure);
+            }))
+            .build();
+
+        // act
+        IllegalStateException exception = assertThrows(
+            IllegalStateException.class,
+            () -> Tasks.get(HTTP.prepare(request), Duration.ofMinutes(1)));
+
+        // assert
+        assertThat(exception, equalTo(failure));
+    }
+
+    @Test void readTimeout(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        stubFor(get("/slow").willReturn(ok().withFixedDelay(2000)));
+        stubFor(get("/").willReturn(ok().withBody(randomBytes(200))));
+
+        URI uri = URI.create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort()));
+        AsyncHttpRequest slow = AsyncHttpRequest
+            .get(uri.resolve("/slow"))
+            .withReadTimeout(Duration.ofMillis(200))
+            .build();
+
+        // act
+        ReadTimeoutException exception = assertThrows(
+            ReadTimeoutException.class,
+            () -> Tasks.get(HTTP.prepare(slow), Duration.ofMinutes(1)));
+        AsyncHttpResponse response = Tasks.get(HTTP.prepare(AsyncHttpRequest.get(uri).build()), Duration.ofMinutes(1));
+
+        // assert
+        assertThat(exception, equalTo(ReadTimeoutException.INSTANCE));
+        assertThat(response.getStatusCode(), equalTo(200));
+        assertThat(response.getBody().readAllBytes().length, equalTo(200));
+    }
+
+    @Test void headWithLargeContentLength(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        stubFor(request("HEAD", urlEqualTo("/large")).willReturn(ok().withHeader("Content-Length", "2000000000")));
+
+        AsyncHttpRequest request = AsyncHttpRequest
+            .builder()
+            .withMethod(HEAD)
+            .withURI(URI.create(format("http://localhost:%s/large", wmRuntimeInfo.getHttpPort())))
+            .build();
+
+        // act
+        AsyncHttpResponse response = Tasks.get(HTTP.prepare(request), Duration.ofSeconds(5));
+
+        // assert
+        assertThat(response.getStatusCode(), equalTo(200));
+        assertThat(headerNames(response), hasItem("content-length"));
+        assertThat(response.getBody().readAllBytes().length, equalTo(0));
+    }
+
+        @Test void timeout(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        stubFor(get("/slow").willReturn(ok().withFixedDelay(2000)));
+        stubFor(get("/").willReturn(ok().withBody(randomBytes(200))));
+
+        URI uri = URI.create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort()));
+        AsyncHttpRequest slow = AsyncHttpRequest
+            .get(uri.resolve("/slow"))
+            .withTimeout(Duration.ofMillis(200))
+            .build();
+
+        // act
+        assertThrows(TimeoutException.class, () -> Tasks.get(HTTP.prepare(slow), Duration.ofMinutes(1)));
+        AsyncHttpResponse response = Tasks.get(HTTP.prepare(AsyncHttpRequest.get(uri).build()), Duration.ofMinutes(1));
+
+        // assert
+        assertThat(response.getStatusCode(), equalTo(200));
+        assertThat(response.getBody().readAllBytes().length, equalTo(200));
+    }
+
+    @Test void cancel(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        try (AsyncHttpClient http = NettyAsyncHttpClient.builder()
+                .withThreads(1)
+                .withMaxConnections(1)
+                .build()) {
+
+            // arrange
+            stubFor(get("/slow").willReturn(ok().withFixedDelay(5000)));
+            stubFor(get("/").willReturn(ok().withBody(randomBytes(200))));
+
+            URI uri = URI.create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort()));
+            CompletableFuture<Exception> rejected = new CompletableFuture<>();
+
+            Cancellable cancellable = http.prepare(AsyncHttpRequest.get(uri.resolve("/slow")).build())
+                .fork(response -> { }, rejected::complete);
+            Thread.sleep(200);
+
+            // act
+            boolean cancelled = cancellable.cancel();
+            AsyncHttpResponse response = Tasks.get(http.prepare(AsyncHttpRequest.get(uri).build()), Duration.ofSeconds(2));
+
+            // assert
+            assertThat(cancelled, equalTo(true));
+            assertThat(rejected.get(1, TimeUnit.MINUTES), instanceOf(CancellationException.class));
+            assertThat(response.getStatusCode(), equalTo(200));
+        }
+    }
+
+    @Test void cancelWhileAcquiring(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        try (AsyncHttpClient http = NettyAsyncHttpClient.builder()
+                .withThreads(1)
+                .withMaxConnections(1)
+                .withAcquireTimeout(Duration.ofMinutes(1))
+                .build()) {
+
+            // arrange
+            stubFor(get("/slow").willReturn(ok().withFixedDelay(2000)));
+
+            URI uri = URI.create(format("http://localhost:%s", wmRuntimeInfo.getHttpPort()));
+            CompletableFuture<Exception> notified = new CompletableFuture<>();
+
+            http.prepare(AsyncHttpRequest.get(uri.resolve("/slow")).build()).fork(response -> { }, exception -> { });
+            Thread.sleep(200);
+
+            Cancellable cancellable = http.prepare(AsyncHttpRequest.get(uri.resolve("/slow"))
+                    .withListener(new AsyncHttpClientListener() {
+                        @Override
+                        public void onException(Exception exception) {
+                            notified.complete(exception);
+                        }
+                    })
+                    .build())
+                .fork(response -> { }, exception -> { });
+            Thread.sleep(200);
+
+            // act
+            cancellable.cancel();
+
+            // assert
+            assertThat(notified.get(1, TimeUnit.MINUTES), instanceOf(CancellationException.class));
+            verify(1, getRequestedFor(urlEqualTo("/slow")));
+        }
+    }
+
     @Test void concurrent(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
 
         // arrange
@@ -140,6 +861,167 @@ class NettyAsyncHttpClientTest {
         }
     }
 
+    /**
+     * A TCP proxy to the server, which counts the connections opened through it
+     *
+     */
+    private static class ConnectionCountingProxy implements AutoCloseable {
+
+        private final AtomicInteger connections = new AtomicInteger();
+
+        private final ExecutorService executor = Executors.newCachedThreadPool();
+
+        private final ServerSocket server;
+
+        private final int port;
+
+        /**
+         * Constructor
+         *
+         * @param port the port of the server
+         * @throws IOException if the proxy cannot listen
+         */
+        private ConnectionCountingProxy(int port) throws IOException {
+            this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            this.port = port;
+            executor.execute(this::accept);
+        }
+
+        /**
+         * Gets the port of the proxy
+         *
+         * @return the port
+         */
+        private int getPort() {
+            return server.getLocalPort();
+        }
+
+        /**
+         * Gets the number of connections opened through the proxy
+         *
+         * @return the number of connections
+         */
+        private int getConnections() {
+            return connections.get();
+        }
+
+        /**
+         * Accepts the connections, piping each to a connection to the server, until the proxy is closed
+         *
+         */
+        private void accept() {
+            while (!server.isClosed()) {
+                try {
+                    Socket client = server.accept();
+                    connections.incrementAndGet();
+                    Socket upstream = new Socket(InetAddress.getLoopbackAddress(), port);
+                    executor.execute(() -> pipe(client, upstream));
+                    executor.execute(() -> pipe(upstream, client));
+                } catch (IOException ex) {
+                    return; // closed
+                }
+            }
+        }
+
+        /**
+         * Pipes the bytes from one socket to the other, closing both once either is closed
+         *
+         * @param from the socket read
+         * @param to the socket written
+         */
+        private static void pipe(Socket from, Socket to) {
+            try (from; to) {
+                from.getInputStream().transferTo(to.getOutputStream());
+            } catch (IOException ex) {
+                // closed
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Collects the body, requesting a chunk at a time
+     *
+     */
+    private static class CollectingSubscriber implements Flow.Subscriber<ByteBuffer> {
+
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        private final CompletableFuture<byte[]> body = new CompletableFuture<>();
+
+        private Flow.Subscription subscription;
+
+        private volatile int chunks;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(ByteBuffer item) {
+            byte[] bytes = new byte[item.remaining()];
+            item.get(bytes);
+            output.writeBytes(bytes);
+            chunks++;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            body.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            body.complete(output.toByteArray());
+        }
+    }
+
+    /**
+     * Gets a JSON array of the specified number of objects, which compresses well
+     *
+     * @param size the number of objects
+     * @return the JSON
+     */
+    private static byte[] json(int size) {
+        return range(0, size)
+            .mapToObj(i -> format("{\"id\":%d,\"name\":\"name-%d\",\"active\":%b}", i, i, i % 2 == 0))
+            .collect(joining(",", "[", "]"))
+            .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compresses the bytes with the content coding
+     *
+     * @param bytes the bytes
+     * @param encoding the content coding, gzip or deflate
+     * @return the compressed bytes
+     */
+    private static byte[] compress(byte[] bytes, String encoding) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (OutputStream compressing = "gzip".equals(encoding) ? new GZIPOutputStream(output) : new DeflaterOutputStream(output)) {
+            compressing.write(bytes);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Gets the lower case names of the response headers
+     *
+     * @param response the response
+     * @return the names
+     */
+    private static List<String> headerNames(AsyncHttpResponse response) {
+        return response.getHeaders().keySet().stream().map(name -> name.toLowerCase(Locale.ROOT)).collect(toList());
+    }
+
     /**
      * Gets a random number of random bytes
      *
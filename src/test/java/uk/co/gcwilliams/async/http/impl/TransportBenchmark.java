@@ -0,0 +1,175 @@
+package uk.co.gcwilliams.async.http.impl;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpVersion;
+import uk.co.gcwilliams.async.http.AsyncHttpClient;
+import uk.co.gcwilliams.async.http.AsyncHttpRequest;
+import uk.co.gcwilliams.async.http.AsyncHttpResponse;
+import uk.co.gcwilliams.async.http.Task;
+import uk.co.gcwilliams.async.http.Tasks;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+
+import static java.lang.String.format;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.IntStream.range;
+
+/**
+ * Compares the throughput of the available transports against a local netty HTTP server
+ * using the same transport. Not a unit test, run the main method, the exec plugin is
+ * configured to run it on the test classpath
+ *
+ * <pre>
+ * mvn test-compile exec:java
+ * </pre>
+ *
+ * @author : Gareth Williams
+ **/
+public class TransportBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 5;
+
+    private static final int ITERATIONS = 10;
+
+    private static final int REQUESTS = 20_000;
+
+    private static final int CONCURRENCY = 256;
+
+    private static final byte[] BODY = new byte[1024];
+
+    public static void main(String[] args) throws Exception {
+        for (Transport transport : List.of(Transport.NIO, Transport.EPOLL, Transport.IO_URING)) {
+            if (!transport.isAvailable()) {
+                System.out.printf("%-8s unavailable: %s%n", transport, transport.unavailabilityCause());
+                continue;
+            }
+            run(transport);
+        }
+    }
+
+    /**
+     * Runs the benchmark for the transport
+     *
+     * @param transport the transport
+     */
+    private static void run(Transport transport) throws Exception {
+
+        EventLoopGroup serverGroup = transport.createEventLoopGroup(1);
+        Channel server = new ServerBootstrap()
+            .group(serverGroup)
+            .channel(serverChannelClass(transport))
+            .childHandler(new ChannelInitializer<>() {
+                @Override
+                protected void initChannel(Channel channel) {
+                    channel.pipeline().addLast(new HttpServerCodec(), new HttpObjectAggregator(1024 * 1024), new OkHandler());
+                }
+            })
+            .bind(0)
+            .sync()
+            .channel();
+
+        try (AsyncHttpClient http = NettyAsyncHttpClient.builder()
+                .withTransport(transport)
+                .withMaxConnections(CONCURRENCY)
+                .withMaxPendingAcquires(Integer.MAX_VALUE)
+                .withAcquireTimeout(Duration.ofMinutes(1))
+                .build()) {
+
+            int port = ((InetSocketAddress) server.localAddress()).getPort();
+            AsyncHttpRequest request = AsyncHttpRequest.get(URI.create(format("http://localhost:%s", port))).build();
+
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                iteration(http, request);
+            }
+
+            long best = Long.MAX_VALUE;
+            long total = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                long elapsed = iteration(http, request);
+                best = Math.min(best, elapsed);
+                total += elapsed;
+            }
+
+            System.out.printf(
+                "%-8s best %8.0f req/s, mean %8.0f req/s%n",
+                transport,
+                REQUESTS / (best / 1e9),
+                REQUESTS / ((total / (double) ITERATIONS) / 1e9));
+
+        } finally {
+            server.close().sync();
+            serverGroup.shutdownGracefully().sync();
+        }
+    }
+
+    /**
+     * Sends the requests, in batches of the concurrency
+     *
+     * @param http the HTTP client
+     * @param request the request
+     * @return the elapsed nanoseconds
+     */
+    private static long iteration(AsyncHttpClient http, AsyncHttpRequest request) throws Exception {
+        long start = System.nanoTime();
+        for (int sent = 0; sent < REQUESTS; sent += CONCURRENCY) {
+            List<Task<AsyncHttpResponse>> tasks = range(0, Math.min(CONCURRENCY, REQUESTS - sent))
+                .mapToObj(__ -> http.prepare(request))
+                .collect(toList());
+            Tasks.get(Tasks.traverseP(tasks), Duration.ofMinutes(1));
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Gets the server channel class for the transport
+     *
+     * @param transport the transport
+     * @return the server channel class
+     */
+    private static Class<? extends ServerChannel> serverChannelClass(Transport transport) throws ClassNotFoundException {
+        switch (transport) {
+            case EPOLL:
+                return EpollServerSocketChannel.class;
+            case IO_URING:
+                return Class.forName("io.netty.incubator.channel.uring.IOUringServerSocketChannel").asSubclass(ServerChannel.class);
+            default:
+                return NioServerSocketChannel.class;
+        }
+    }
+
+    /**
+     * Responds with a 200 and a fixed body to every request
+     *
+     */
+    private static class OkHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest msg) {
+            FullHttpResponse response = new DefaultFullHttpResponse(
+                HttpVersion.HTTP_1_1,
+                HttpResponseStatus.OK,
+                Unpooled.wrappedBuffer(BODY));
+            response.headers().set(HttpHeaderNames.CONTENT_LENGTH, BODY.length);
+            ctx.writeAndFlush(response);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package uk.co.gcwilliams.async.http.impl.pool;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.everyItem;
+
+/**
+ * The address pickers tests
+ *
+ * @author : Gareth Williams
+ **/
+class AddressPickersTest {
+
+    private static final InetSocketAddress FIRST = new InetSocketAddress("127.0.0.1", 8080);
+
+    private static final InetSocketAddress SECOND = new InetSocketAddress("127.0.0.2", 8080);
+
+    private static final InetSocketAddress THIRD = new InetSocketAddress("127.0.0.3", 8080);
+
+    @Test void roundRobinPicksEachAddressInTurn() {
+
+        // arrange
+        AddressPicker picker = AddressPickers.roundRobin().get();
+        List<InetSocketAddress> addresses = List.of(FIRST, SECOND, THIRD);
+
+        // act
+        List<InetSocketAddress> picked = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            picked.add(picker.pick(addresses));
+        }
+
+        // assert
+        assertThat(picked, contains(FIRST, SECOND, THIRD, FIRST));
+    }
+
+    @Test void powerOfTwoChoicesPicksTheAddressWithFewestRequestsInFlight() {
+
+        // arrange
+        AddressPicker picker = AddressPickers.powerOfTwoChoices().get();
+        picker.onRequestStart(FIRST);
+        picker.onRequestStart(FIRST);
+        picker.onRequestStart(SECOND);
+
+        // act
+        InetSocketAddress picked = picker.pick(List.of(FIRST, SECOND));
+
+        // assert
+        assertThat(picked, equalTo(SECOND));
+    }
+
+    @Test void leastLatencyPicksTheAddressWithLowestLatency() {
+
+        // arrange
+        AddressPicker picker = AddressPickers.leastLatency(Duration.ofSeconds(10)).get();
+        picker.onRequestStart(FIRST);
+        picker.onRequestEnd(FIRST, TimeUnit.MILLISECONDS.toNanos(5));
+        picker.onRequestStart(SECOND);
+        picker.onRequestEnd(SECOND, TimeUnit.MILLISECONDS.toNanos(50));
+
+        // act
+        List<InetSocketAddress> picked = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            picked.add(picker.pick(List.of(FIRST, SECOND)));
+        }
+
+        // assert
+        assertThat(picked, everyItem(equalTo(FIRST)));
+    }
+}
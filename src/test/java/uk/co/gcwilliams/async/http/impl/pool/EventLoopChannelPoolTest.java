@@ -0,0 +1,265 @@
+package uk.co.gcwilliams.async.http.impl.pool;
+
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.pool.AbstractChannelPoolHandler;
+import io.netty.channel.pool.ChannelHealthChecker;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+/**
+ * The event loop channel pool tests
+ *
+ * @author : Gareth Williams
+ **/
+@WireMockTest
+class EventLoopChannelPoolTest {
+
+    private EventLoopGroup group;
+
+    @BeforeEach void beforeEach() {
+        group = new NioEventLoopGroup(4);
+    }
+
+    @AfterEach void afterEach() {
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    @Test void acquiresChannelOfCallersEventLoop(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        EventLoopChannelPool pool = createPool(wmRuntimeInfo, 10);
+
+        // act
+        List<Channel> channels = new ArrayList<>();
+        List<EventLoop> eventLoops = new ArrayList<>();
+        for (EventExecutor executor : group) {
+            EventLoop eventLoop = (EventLoop) executor;
+            eventLoops.add(eventLoop);
+            channels.add(acquire(eventLoop, pool).get(10, TimeUnit.SECONDS));
+        }
+
+        // assert
+        for (int i = 0; i < channels.size(); i++) {
+            assertThat(channels.get(i).eventLoop(), sameInstance(eventLoops.get(i)));
+        }
+        pool.close();
+    }
+
+    @Test void reusesReleasedChannel(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        EventLoopChannelPool pool = createPool(wmRuntimeInfo, 10);
+        EventLoop eventLoop = group.next();
+        Channel channel = acquire(eventLoop, pool).get(10, TimeUnit.SECONDS);
+        pool.release(channel).get(10, TimeUnit.SECONDS);
+
+        // act
+        Channel reused = acquire(eventLoop, pool).get(10, TimeUnit.SECONDS);
+
+        // assert
+        assertThat(reused, sameInstance(channel));
+        pool.close();
+    }
+
+    @Test void stealsIdleChannelAtMaxConnections(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        EventLoopChannelPool pool = createPool(wmRuntimeInfo, 1);
+        EventLoop first = group.next();
+        EventLoop second = group.next();
+        Channel channel = acquire(first, pool).get(10, TimeUnit.SECONDS);
+
+        // act
+        Future<Channel> pending = acquire(second, pool);
+        boolean acquiredBeforeRelease = pending.isDone();
+        pool.release(channel);
+
+        // assert
+        assertThat(acquiredBeforeRelease, equalTo(false));
+        assertThat(pending.get(10, TimeUnit.SECONDS), sameInstance(channel));
+        pool.close();
+    }
+
+    @Test void stealsIdleChannelBeforeConnecting(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        EventLoopChannelPool pool = createPool(wmRuntimeInfo, 10);
+        EventLoop first = group.next();
+        EventLoop second = group.next();
+        Channel channel = acquire(first, pool).get(10, TimeUnit.SECONDS);
+        pool.release(channel).get(10, TimeUnit.SECONDS);
+
+        // act
+        Channel stolen = acquire(second, pool).get(10, TimeUnit.SECONDS);
+
+        // assert
+        assertThat(stolen, sameInstance(channel));
+        pool.close();
+    }
+
+    @Test void servesPendingAcquiresInOrder(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        EventLoopChannelPool pool = createPool(wmRuntimeInfo, 1);
+        EventLoop first = group.next();
+        EventLoop second = group.next();
+        Channel channel = acquire(first, pool).get(10, TimeUnit.SECONDS);
+        Future<Channel> firstPending = acquire(second, pool);
+        Future<Channel> secondPending = acquire(second, pool);
+
+        // act
+        pool.release(channel);
+        Channel firstAcquired = firstPending.get(10, TimeUnit.SECONDS);
+        boolean secondAcquiredBeforeRelease = secondPending.isDone();
+        pool.release(firstAcquired);
+
+        // assert
+        assertThat(firstAcquired, sameInstance(channel));
+        assertThat(secondAcquiredBeforeRelease, equalTo(false));
+        assertThat(secondPending.get(10, TimeUnit.SECONDS), sameInstance(channel));
+        pool.close();
+    }
+
+    @Test void limitsPendingAcquiresAcrossEventLoops(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        EventLoopChannelPool pool = createPool(wmRuntimeInfo, 1, 1, ChannelHealthChecker.ACTIVE);
+        Channel channel = acquire(group.next(), pool).get(10, TimeUnit.SECONDS);
+        Future<Channel> pending = acquire(group.next(), pool);
+
+        // act
+        Future<Channel> rejected = acquire(group.next(), pool);
+
+        // assert
+        assertThat(rejected.await(10, TimeUnit.SECONDS), equalTo(true));
+        assertThat(rejected.cause(), instanceOf(IllegalStateException.class));
+        assertThat(pending.isDone(), equalTo(false));
+        pool.release(channel);
+        assertThat(pending.get(10, TimeUnit.SECONDS), sameInstance(channel));
+        pool.close();
+    }
+
+    @Test void closesChannelReleasedAfterClose(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        EventLoopChannelPool pool = createPool(wmRuntimeInfo, 1, channel -> {
+            throw new IllegalStateException("executor not accepting a task");
+        });
+        Channel channel = acquire(group.next(), pool).get(10, TimeUnit.SECONDS);
+        pool.close();
+
+        // act
+        pool.release(channel).get(10, TimeUnit.SECONDS);
+
+        // assert
+        assertThat(channel.closeFuture().await(10, TimeUnit.SECONDS), equalTo(true));
+    }
+
+    @Test void closesChannelWhenHealthCheckFails(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        EventLoopChannelPool pool = createPool(wmRuntimeInfo, 1, channel -> {
+            throw new IllegalStateException("executor not accepting a task");
+        });
+        EventLoop eventLoop = group.next();
+        Channel channel = acquire(eventLoop, pool).get(10, TimeUnit.SECONDS);
+
+        // act
+        pool.release(channel).get(10, TimeUnit.SECONDS);
+        Channel acquired = acquire(eventLoop, pool).get(10, TimeUnit.SECONDS);
+
+        // assert
+        assertThat(channel.closeFuture().await(10, TimeUnit.SECONDS), equalTo(true));
+        assertThat(acquired, not(sameInstance(channel)));
+        pool.close();
+    }
+
+    /**
+     * Acquires a channel, from the event loop
+     *
+     * @param eventLoop the event loop
+     * @param pool the pool
+     * @return the acquire future
+     */
+    private static Future<Channel> acquire(EventLoop eventLoop, EventLoopChannelPool pool) throws Exception {
+        Callable<Future<Channel>> acquire = pool::acquire;
+        return eventLoop.submit(acquire).get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Creates the pool
+     *
+     * @param wmRuntimeInfo the wire mock runtime info
+     * @param maxConnections the maximum number of connections
+     * @return the pool
+     */
+    private EventLoopChannelPool createPool(WireMockRuntimeInfo wmRuntimeInfo, int maxConnections) {
+        return createPool(wmRuntimeInfo, maxConnections, ChannelHealthChecker.ACTIVE);
+    }
+
+    /**
+     * Creates the pool
+     *
+     * @param wmRuntimeInfo the wire mock runtime info
+     * @param maxConnections the maximum number of connections
+     * @param healthChecker the health checker
+     * @return the pool
+     */
+    private EventLoopChannelPool createPool(WireMockRuntimeInfo wmRuntimeInfo, int maxConnections, ChannelHealthChecker healthChecker) {
+        return createPool(wmRuntimeInfo, maxConnections, 10, healthChecker);
+    }
+
+    /**
+     * Creates the pool
+     *
+     * @param wmRuntimeInfo the wire mock runtime info
+     * @param maxConnections the maximum number of connections
+     * @param maxPendingAcquires the maximum number of pending acquires
+     * @param healthChecker the health checker
+     * @return the pool
+     */
+    private EventLoopChannelPool createPool(
+            WireMockRuntimeInfo wmRuntimeInfo,
+            int maxConnections,
+            int maxPendingAcquires,
+            ChannelHealthChecker healthChecker) {
+        Bootstrap bootstrap = new Bootstrap()
+            .group(group)
+            .channel(NioSocketChannel.class)
+            .remoteAddress(new InetSocketAddress("localhost", wmRuntimeInfo.getHttpPort()));
+        return new EventLoopChannelPool(
+            bootstrap,
+            new AbstractChannelPoolHandler() {
+                @Override
+                public void channelCreated(Channel channel) {
+                }
+            },
+            healthChecker,
+            Duration.ofMinutes(1),
+            maxConnections,
+            maxPendingAcquires);
+    }
+}
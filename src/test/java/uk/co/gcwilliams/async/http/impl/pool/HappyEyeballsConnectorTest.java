@@ -0,0 +1,199 @@
+package uk.co.gcwilliams.async.http.impl.pool;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The Happy Eyeballs connector tests
+ *
+ * @author : Gareth Williams
+ **/
+class HappyEyeballsConnectorTest {
+
+    private EventLoopGroup group;
+
+    private ServerSocket server;
+
+    @BeforeEach void beforeEach() throws Exception {
+        group = new NioEventLoopGroup(1);
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    }
+
+    @AfterEach void afterEach() throws Exception {
+        server.close();
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    @Test void connectsToNextAddressWhenAttemptFails() throws Exception {
+
+        // arrange
+        HappyEyeballsConnector connector = new HappyEyeballsConnector(Duration.ofMinutes(1));
+        InetSocketAddress refused = refusedAddress();
+        InetSocketAddress accepted = new InetSocketAddress(server.getInetAddress(), server.getLocalPort());
+        EventLoop eventLoop = group.next();
+
+        // act
+        Channel channel = connector.connect(bootstrap(eventLoop), List.of(refused, accepted), eventLoop.newPromise())
+            .get(10, TimeUnit.SECONDS);
+
+        // assert
+        assertThat(channel.remoteAddress(), equalTo(accepted));
+        assertThat(channel.attr(HappyEyeballsConnector.ADDRESS_KEY).get(), equalTo(accepted));
+        channel.close().syncUninterruptibly();
+    }
+
+    @Test void connectsToNextAddressAfterAttemptDelay() throws Exception {
+
+        // arrange
+        HappyEyeballsConnector connector = new HappyEyeballsConnector(Duration.ofMillis(250));
+        InetSocketAddress accepted = new InetSocketAddress(server.getInetAddress(), server.getLocalPort());
+        EventLoop eventLoop = group.next();
+
+        try (Blackhole blackhole = new Blackhole()) {
+
+            // act
+            long start = System.nanoTime();
+            Channel channel = connector.connect(bootstrap(eventLoop), List.of(blackhole.getAddress(), accepted), eventLoop.newPromise())
+                .get(10, TimeUnit.SECONDS);
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+            // assert, the second attempt starts after the delay, rather than the connect timeout of the first
+            assertThat(channel.remoteAddress(), equalTo(accepted));
+            assertThat(channel.attr(HappyEyeballsConnector.ADDRESS_KEY).get(), equalTo(accepted));
+            assertThat(elapsed, greaterThanOrEqualTo(Duration.ofMillis(250)));
+            assertThat(elapsed, lessThan(Duration.ofSeconds(2)));
+            channel.close().syncUninterruptibly();
+        }
+    }
+
+    @Test void failsWhenAllAttemptsFail() throws Exception {
+
+        // arrange
+        HappyEyeballsConnector connector = new HappyEyeballsConnector(Duration.ofMillis(10));
+        EventLoop eventLoop = group.next();
+
+        // act
+        ExecutionException ex = assertThrows(
+            ExecutionException.class,
+            () -> connector.connect(bootstrap(eventLoop), List.of(refusedAddress(), refusedAddress()), eventLoop.newPromise())
+                .get(10, TimeUnit.SECONDS));
+
+        // assert
+        assertThat(ex.getCause() instanceof ConnectException, equalTo(true));
+    }
+
+    @Test void ordersAddressesByAlternatingFamily() throws Exception {
+
+        // arrange
+        InetSocketAddress ipv6First = new InetSocketAddress(InetAddress.getByName("::1"), 80);
+        InetSocketAddress ipv6Second = new InetSocketAddress(InetAddress.getByName("::2"), 80);
+        InetSocketAddress ipv4First = new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 80);
+        InetSocketAddress ipv4Second = new InetSocketAddress(InetAddress.getByName("127.0.0.2"), 80);
+
+        // act
+        List<InetSocketAddress> ordered = HappyEyeballsConnector.order(
+            ipv6Second,
+            List.of(ipv6First, ipv6Second, ipv4First, ipv4Second));
+
+        // assert
+        assertThat(ordered, contains(ipv6Second, ipv4First, ipv6First, ipv4Second));
+    }
+
+    /**
+     * Creates a bootstrap, bound to the event loop
+     *
+     * @param eventLoop the event loop
+     * @return the bootstrap
+     */
+    private static Bootstrap bootstrap(EventLoop eventLoop) {
+        return new Bootstrap()
+            .group(eventLoop)
+            .channel(NioSocketChannel.class)
+            .handler(new ChannelInitializer<>() {
+                @Override
+                protected void initChannel(Channel channel) {
+                }
+            });
+    }
+
+    /**
+     * A loopback address which never completes a connection, its accept queue is full, so its SYNs are dropped
+     *
+     */
+    private static class Blackhole implements AutoCloseable {
+
+        private final ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+
+        private final List<SocketChannel> filling = new ArrayList<>();
+
+        /**
+         * Constructor
+         *
+         * @throws IOException if the accept queue cannot be filled
+         */
+        private Blackhole() throws IOException {
+            for (int i = 0; i < 8; i++) {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.connect(getAddress());
+                filling.add(channel);
+            }
+        }
+
+        /**
+         * Gets the address
+         *
+         * @return the address
+         */
+        private InetSocketAddress getAddress() {
+            return new InetSocketAddress(server.getInetAddress(), server.getLocalPort());
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (SocketChannel channel : filling) {
+                channel.close();
+            }
+            server.close();
+        }
+    }
+
+    /**
+     * Gets a loopback address which refuses connections
+     *
+     * @return the address
+     * @throws Exception if the address cannot be found
+     */
+    private static InetSocketAddress refusedAddress() throws Exception {
+        try (ServerSocket closed = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return new InetSocketAddress(closed.getInetAddress(), closed.getLocalPort());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package uk.co.gcwilliams.async.http.impl.pool;
+
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * The HTTP/2 channel pool tests
+ *
+ * @author : Gareth Williams
+ **/
+@WireMockTest
+class Http2ChannelPoolTest {
+
+    private EventLoopGroup group;
+
+    @BeforeEach void beforeEach() {
+        group = new NioEventLoopGroup(1);
+    }
+
+    @AfterEach void afterEach() {
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    @Test void opensConnectionBeyondMaxOnAcquireTimeout(WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+
+        // arrange
+        Http2ChannelPool pool = new Http2ChannelPool(
+            new Bootstrap().group(group).channel(NioSocketChannel.class),
+            "http",
+            "localhost",
+            wmRuntimeInfo.getHttpPort(),
+            Duration.ofMillis(200),
+            1,
+            1000,
+            new HttpChannelPoolConfiguration(4096, 8192, 8192, 128, false, false, true, false, null),
+            () -> {
+                throw new IllegalStateException("the server should negotiate HTTP/2");
+            });
+
+        // act, the server allows fewer concurrent streams than are acquired
+        List<Future<Channel>> acquires = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            acquires.add(pool.acquire());
+        }
+        Set<Channel> connections = new HashSet<>();
+        for (Future<Channel> acquire : acquires) {
+            connections.add(acquire.get(10, TimeUnit.SECONDS).parent());
+        }
+
+        // assert
+        assertThat(connections.size(), equalTo(2));
+        pool.close();
+    }
+}
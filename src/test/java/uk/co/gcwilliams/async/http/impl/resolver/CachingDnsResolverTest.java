@@ -0,0 +1,364 @@
+package uk.co.gcwilliams.async.http.impl.resolver;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.handler.codec.dns.DatagramDnsQuery;
+import io.netty.handler.codec.dns.DatagramDnsQueryDecoder;
+import io.netty.handler.codec.dns.DatagramDnsResponse;
+import io.netty.handler.codec.dns.DatagramDnsResponseEncoder;
+import io.netty.handler.codec.dns.DefaultDnsRawRecord;
+import io.netty.handler.codec.dns.DnsQuestion;
+import io.netty.handler.codec.dns.DnsRecordType;
+import io.netty.handler.codec.dns.DnsResponseCode;
+import io.netty.handler.codec.dns.DnsSection;
+import io.netty.resolver.dns.SingletonDnsServerAddressStreamProvider;
+import io.netty.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.co.gcwilliams.async.http.impl.Transport;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.hasProperty;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The caching DNS resolver tests
+ *
+ * @author : Gareth Williams
+ **/
+class CachingDnsResolverTest {
+
+    private EventLoopGroup group;
+
+    private CachingDnsResolver resolver;
+
+    private FakeDnsServer dnsServer;
+
+    @BeforeEach void beforeEach() {
+        group = new NioEventLoopGroup(2);
+        resolver = new CachingDnsResolver(
+            Transport.NIO,
+            Duration.ZERO,
+            Duration.ofMinutes(1),
+            Duration.ofSeconds(5),
+            Duration.ofMinutes(5));
+    }
+
+    @AfterEach void afterEach() {
+        resolver.close();
+        if (dnsServer != null) {
+            dnsServer.close();
+        }
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    @Test void resolvesHostsFileEntries() throws Exception {
+
+        // act
+        List<InetSocketAddress> addresses = resolver.resolveAll("localhost", 8080, group.next()).get(10, TimeUnit.SECONDS);
+
+        // assert
+        assertThat(addresses, not(empty()));
+        assertThat(addresses, everyItem(hasProperty("port", equalTo(8080))));
+        for (InetSocketAddress address : addresses) {
+            assertThat(address.getAddress().isLoopbackAddress(), equalTo(true));
+        }
+    }
+
+    @Test void resolvesAddressLiterals() throws Exception {
+
+        // act
+        List<InetSocketAddress> addresses = resolver.resolveAll("10.0.0.1", 443, group.next()).get(10, TimeUnit.SECONDS);
+
+        // assert
+        assertThat(addresses, contains(new InetSocketAddress("10.0.0.1", 443)));
+    }
+
+    @Test void resolvesOnEachEventLoop() throws Exception {
+
+        // act
+        List<InetSocketAddress> first = resolver.resolveAll("localhost", 80, group.next()).get(10, TimeUnit.SECONDS);
+        List<InetSocketAddress> second = resolver.resolveAll("localhost", 80, group.next()).get(10, TimeUnit.SECONDS);
+
+        // assert
+        assertThat(second, equalTo(first));
+    }
+
+    @Test void clampsTtlToMinimum() throws Exception {
+
+        // arrange
+        CachingDnsResolver resolver = createResolver(Duration.ofMinutes(1), Duration.ofMinutes(5), Duration.ZERO, Duration.ofMinutes(5));
+        dnsServer.ttl = 0;
+
+        // act
+        List<InetSocketAddress> first = resolver.resolveAll("service.test", 80, group.next()).get(10, TimeUnit.SECONDS);
+        List<InetSocketAddress> second = resolver.resolveAll("service.test", 80, group.next()).get(10, TimeUnit.SECONDS);
+
+        // assert
+        assertThat(first, contains(new InetSocketAddress(FakeDnsServer.ADDRESS, 80)));
+        assertThat(second, equalTo(first));
+        assertThat(dnsServer.getQueries("service.test"), equalTo(1));
+    }
+
+    @Test void clampsTtlToMaximum() throws Exception {
+
+        // arrange
+        CachingDnsResolver resolver = createResolver(Duration.ZERO, Duration.ofSeconds(1), Duration.ZERO, Duration.ofMinutes(5));
+        dnsServer.ttl = 3600;
+
+        // act
+        resolver.resolveAll("service.test", 80, group.next()).get(10, TimeUnit.SECONDS);
+        resolver.resolveAll("service.test", 80, group.next()).get(10, TimeUnit.SECONDS);
+        int cached = dnsServer.getQueries("service.test");
+        Thread.sleep(1500);
+        resolver.resolveAll("service.test", 80, group.next()).get(10, TimeUnit.SECONDS);
+
+        // assert
+        assertThat(cached, equalTo(1));
+        assertThat(dnsServer.getQueries("service.test"), equalTo(2));
+    }
+
+    @Test void cachesFailures() {
+
+        // arrange
+        CachingDnsResolver resolver = createResolver(Duration.ZERO, Duration.ofMinutes(1), Duration.ofMinutes(1), Duration.ofMinutes(5));
+
+        // act
+        ExecutionException first = assertThrows(
+            ExecutionException.class,
+            () -> resolver.resolveAll("missing.test", 80, group.next()).get(10, TimeUnit.SECONDS));
+        ExecutionException second = assertThrows(
+            ExecutionException.class,
+            () -> resolver.resolveAll("missing.test", 80, group.next()).get(10, TimeUnit.SECONDS));
+
+        // assert
+        assertThat(first.getCause(), instanceOf(UnknownHostException.class));
+        assertThat(second.getCause(), instanceOf(UnknownHostException.class));
+        assertThat(dnsServer.getQueries("missing.test"), equalTo(1));
+    }
+
+    @Test void coalescesConcurrentLookups() throws Exception {
+
+        // arrange
+        CachingDnsResolver resolver = createResolver(Duration.ZERO, Duration.ofMinutes(1), Duration.ZERO, Duration.ofMinutes(5));
+        dnsServer.delayMillis = 200;
+
+        // act
+        List<Future<List<InetSocketAddress>>> lookups = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            lookups.add(resolver.resolveAll("service.test", 80, group.next()));
+        }
+        for (Future<List<InetSocketAddress>> lookup : lookups) {
+            lookup.get(10, TimeUnit.SECONDS);
+        }
+
+        // assert
+        for (Future<List<InetSocketAddress>> lookup : lookups) {
+            assertThat(lookup.getNow(), contains(new InetSocketAddress(FakeDnsServer.ADDRESS, 80)));
+        }
+        assertThat(dnsServer.getQueries("service.test"), equalTo(1));
+    }
+
+    @Test void servesStaleAddressesOnFailure() throws Exception {
+
+        // arrange
+        CachingDnsResolver resolver = createResolver(Duration.ZERO, Duration.ofMinutes(1), Duration.ZERO, Duration.ofMinutes(5));
+        dnsServer.ttl = 0;
+        resolver.resolveAll("service.test", 80, group.next()).get(10, TimeUnit.SECONDS);
+        dnsServer.failure = DnsResponseCode.SERVFAIL;
+
+        // act
+        List<InetSocketAddress> addresses = resolver.resolveAll("service.test", 80, group.next()).get(10, TimeUnit.SECONDS);
+
+        // assert
+        assertThat(addresses, contains(new InetSocketAddress(FakeDnsServer.ADDRESS, 80)));
+        assertThat(dnsServer.getQueries("service.test"), equalTo(2));
+    }
+
+    @Test void refreshesStaleAddressesOnEachResolve() throws Exception {
+
+        // arrange
+        CachingDnsResolver resolver = createResolver(Duration.ZERO, Duration.ofMinutes(1), Duration.ZERO, Duration.ofSeconds(1));
+        dnsServer.ttl = 0;
+        InetSocketAddress unresolved = InetSocketAddress.createUnresolved("service.test", 80);
+        for (int i = 0; i < 3; i++) {
+            resolver.getAddressResolverGroup().getResolver(group.next()).resolve(unresolved).get(10, TimeUnit.SECONDS);
+            Thread.sleep(600);
+        }
+        dnsServer.failure = DnsResponseCode.SERVFAIL;
+
+        // act
+        InetSocketAddress address = resolver.getAddressResolverGroup().getResolver(group.next()).resolve(unresolved).get(10, TimeUnit.SECONDS);
+
+        // assert
+        assertThat(address, equalTo(new InetSocketAddress(FakeDnsServer.ADDRESS, 80)));
+        assertThat(resolver.getResolved("service.test", 80), contains(address));
+    }
+
+    /**
+     * Creates the resolver, of the fake DNS server
+     *
+     * @param minTtl the minimum TTL
+     * @param maxTtl the maximum TTL
+     * @param negativeTtl the negative TTL
+     * @param staleTtl the stale TTL
+     * @return the resolver
+     */
+    private CachingDnsResolver createResolver(Duration minTtl, Duration maxTtl, Duration negativeTtl, Duration staleTtl) {
+        dnsServer = new FakeDnsServer(group);
+        resolver.close();
+        resolver = new CachingDnsResolver(
+            Transport.NIO,
+            minTtl,
+            maxTtl,
+            negativeTtl,
+            staleTtl,
+            new SingletonDnsServerAddressStreamProvider(dnsServer.getAddress()));
+        return resolver;
+    }
+
+    /**
+     * A fake DNS server, which answers the A queries of service.test, and counts the A queries of each name
+     *
+     */
+    private static class FakeDnsServer implements AutoCloseable {
+
+        private static final InetAddress ADDRESS = address(10, 0, 0, 1);
+
+        private final Map<String, AtomicInteger> queries = new ConcurrentHashMap<>();
+
+        private final Channel channel;
+
+        private volatile int ttl = 60;
+
+        private volatile long delayMillis;
+
+        private volatile DnsResponseCode failure;
+
+        /**
+         * Constructor
+         *
+         * @param group the event loop group
+         */
+        private FakeDnsServer(EventLoopGroup group) {
+            this.channel = new Bootstrap()
+                .group(group)
+                .channel(NioDatagramChannel.class)
+                .handler(new ChannelInitializer<DatagramChannel>() {
+                    @Override
+                    protected void initChannel(DatagramChannel channel) {
+                        channel.pipeline().addLast(
+                            new DatagramDnsQueryDecoder(),
+                            new DatagramDnsResponseEncoder(),
+                            new SimpleChannelInboundHandler<DatagramDnsQuery>() {
+                                @Override
+                                protected void channelRead0(ChannelHandlerContext ctx, DatagramDnsQuery query) {
+                                    DatagramDnsResponse response = answer(query);
+                                    ctx.executor().schedule(() -> ctx.writeAndFlush(response), delayMillis, TimeUnit.MILLISECONDS);
+                                }
+                            });
+                    }
+                })
+                .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .syncUninterruptibly()
+                .channel();
+        }
+
+        /**
+         * Gets the address of the server
+         *
+         * @return the address
+         */
+        private InetSocketAddress getAddress() {
+            return (InetSocketAddress) channel.localAddress();
+        }
+
+        /**
+         * Gets the number of A queries of the name
+         *
+         * @param name the name
+         * @return the number of queries
+         */
+        private int getQueries(String name) {
+            AtomicInteger count = queries.get(name + ".");
+            return count != null ? count.get() : 0;
+        }
+
+        /**
+         * Answers the query
+         *
+         * @param query the query
+         * @return the response
+         */
+        private DatagramDnsResponse answer(DatagramDnsQuery query) {
+            DnsQuestion question = query.recordAt(DnsSection.QUESTION);
+            DatagramDnsResponse response = new DatagramDnsResponse(query.recipient(), query.sender(), query.id());
+            response.setRecursionDesired(query.isRecursionDesired());
+            response.setRecursionAvailable(true);
+            response.addRecord(DnsSection.QUESTION, question);
+            if (question.type() == DnsRecordType.A) {
+                queries.computeIfAbsent(question.name(), __ -> new AtomicInteger()).incrementAndGet();
+            }
+            if (failure != null) {
+                response.setCode(failure);
+            } else if (!"service.test.".equals(question.name())) {
+                response.setCode(DnsResponseCode.NXDOMAIN);
+            } else if (question.type() == DnsRecordType.A) {
+                response.addRecord(
+                    DnsSection.ANSWER,
+                    new DefaultDnsRawRecord(question.name(), DnsRecordType.A, ttl, Unpooled.wrappedBuffer(ADDRESS.getAddress())));
+            }
+            return response;
+        }
+
+        @Override
+        public void close() {
+            channel.close().syncUninterruptibly();
+        }
+
+        /**
+         * Creates the IPv4 address
+         *
+         * @param octets the octets
+         * @return the address
+         */
+        private static InetAddress address(int... octets) {
+            byte[] address = new byte[octets.length];
+            for (int i = 0; i < octets.length; i++) {
+                address[i] = (byte) octets[i];
+            }
+            try {
+                return InetAddress.getByAddress(address);
+            } catch (UnknownHostException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+}